@@ -42,11 +42,26 @@ LOCAL_C_INCLUDES += ${MSGPACK_PATH}/include
 LOCAL_C_INCLUDES += ${BOOST_PATH}
 LOCAL_C_INCLUDES += ${LIBSALTPACK_PATH}/include
 
+LOCAL_SRC_FILES += ../../src/main/cpp/common.cpp
 LOCAL_SRC_FILES += ../../src/main/cpp/InputStreamWrapper.cpp
 LOCAL_SRC_FILES += ../../src/main/cpp/com_gherynos_libsaltpack_MessageReader.cpp
 LOCAL_SRC_FILES += ../../src/main/cpp/com_gherynos_libsaltpack_MessageWriter.cpp
 LOCAL_SRC_FILES += ../../src/main/cpp/com_gherynos_libsaltpack_Utils.cpp
 LOCAL_SRC_FILES += ../../src/main/cpp/OutputStreamWrapper.cpp
+LOCAL_SRC_FILES += ../../src/main/cpp/MemoryInputStream.cpp
+LOCAL_SRC_FILES += ../../src/main/cpp/ArrayInputStream.cpp
+LOCAL_SRC_FILES += ../../src/main/cpp/PushInputStream.cpp
+LOCAL_SRC_FILES += ../../src/main/cpp/PrefixedInputStream.cpp
+LOCAL_SRC_FILES += ../../src/main/cpp/RecipientKeyCache.cpp
+LOCAL_SRC_FILES += ../../src/main/cpp/com_gherynos_libsaltpack_SaltpackDecoder.cpp
+LOCAL_SRC_FILES += ../../src/main/cpp/com_gherynos_libsaltpack_AttachedSignatures.cpp
+LOCAL_SRC_FILES += ../../src/main/cpp/com_gherynos_libsaltpack_RecipientKeyCache.cpp
+LOCAL_SRC_FILES += ../../src/main/cpp/com_gherynos_libsaltpack_Keyring.cpp
+LOCAL_SRC_FILES += ../../src/main/cpp/com_gherynos_libsaltpack_SecretKeyHandle.cpp
+LOCAL_SRC_FILES += ../../src/main/cpp/com_gherynos_libsaltpack_SaltpackFiles.cpp
+LOCAL_SRC_FILES += ../../src/main/cpp/com_gherynos_libsaltpack_Saltpack.cpp
+LOCAL_SRC_FILES += ../../src/main/cpp/com_gherynos_libsaltpack_EncryptedPayloads.cpp
+LOCAL_SRC_FILES += ../../src/main/cpp/com_gherynos_libsaltpack_MsgpackFramer.cpp
 
 LOCAL_STATIC_LIBRARIES += saltpack
 LOCAL_STATIC_LIBRARIES += sodium
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack.benchmarks;
+
+import com.gherynos.libsaltpack.Constants;
+import com.gherynos.libsaltpack.InputParameters;
+import com.gherynos.libsaltpack.MessageReader;
+import com.gherynos.libsaltpack.MessageWriter;
+import com.gherynos.libsaltpack.OutputParameters;
+import com.gherynos.libsaltpack.PipelinedMessageReader;
+import com.gherynos.libsaltpack.PipelinedMessageWriter;
+import com.gherynos.libsaltpack.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Throughput of the pipelined writer and reader, compared with the sequential MessageWriter and MessageReader.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelinedBenchmark {
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    @Param({"8", "64"})
+    private int megabytes;
+
+    @Param({"1", "4"})
+    private int threads;
+
+    private byte[] secretkey;
+
+    private byte[][] recipients;
+
+    private byte[] plaintext;
+
+    private byte[] ciphertext;
+
+    private ExecutorService executor;
+
+    private ByteArrayOutputStream bout;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+
+        secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+        recipients = new byte[][]{publickey};
+
+        plaintext = new byte[megabytes * BLOCK_SIZE];
+        new Random(42).nextBytes(plaintext);
+
+        executor = Executors.newFixedThreadPool(threads);
+        bout = new ByteArrayOutputStream(plaintext.length + plaintext.length / 8);
+
+        sequentialEncrypt();
+        ciphertext = bout.toByteArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public int sequentialEncrypt() throws Exception {
+
+        bout.reset();
+        MessageWriter mw = new MessageWriter(new OutputParameters(bout), secretkey, recipients);
+        for (int i = 0; i < plaintext.length; i += BLOCK_SIZE) {
+
+            mw.addBlock(plaintext, i, BLOCK_SIZE, i + BLOCK_SIZE == plaintext.length);
+        }
+        mw.destroy();
+
+        return bout.size();
+    }
+
+    @Benchmark
+    public int pipelinedEncrypt() throws Exception {
+
+        bout.reset();
+        PipelinedMessageWriter pw = new PipelinedMessageWriter(bout, secretkey, recipients, true, executor,
+                PipelinedMessageWriter.DEFAULT_MAX_PENDING_BLOCKS);
+        for (int i = 0; i < plaintext.length; i += BLOCK_SIZE) {
+
+            pw.addBlock(plaintext, i, BLOCK_SIZE, i + BLOCK_SIZE == plaintext.length);
+        }
+        pw.destroy();
+
+        return bout.size();
+    }
+
+    @Benchmark
+    public void sequentialDecrypt(Blackhole bh) throws Exception {
+
+        MessageReader mr = new MessageReader(new InputParameters(new ByteArrayInputStream(ciphertext)), secretkey);
+        while (mr.hasMoreBlocks()) {
+
+            bh.consume(mr.getBlock());
+        }
+        mr.destroy();
+    }
+
+    @Benchmark
+    public void pipelinedDecrypt(Blackhole bh) throws Exception {
+
+        PipelinedMessageReader pr = new PipelinedMessageReader(new ByteArrayInputStream(ciphertext), secretkey, executor,
+                PipelinedMessageReader.DEFAULT_READ_AHEAD_BLOCKS);
+        while (pr.hasMoreBlocks()) {
+
+            bh.consume(pr.getBlock());
+        }
+        pr.destroy();
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack.benchmarks;
+
+import com.gherynos.libsaltpack.Constants;
+import com.gherynos.libsaltpack.InputParameters;
+import com.gherynos.libsaltpack.MessageReader;
+import com.gherynos.libsaltpack.MessageReaderPool;
+import com.gherynos.libsaltpack.MessageWriter;
+import com.gherynos.libsaltpack.MessageWriterPool;
+import com.gherynos.libsaltpack.OutputParameters;
+import com.gherynos.libsaltpack.SaltpackException;
+import com.gherynos.libsaltpack.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/**
+ * Small messages encrypted and decrypted from several threads, with pooled instances and with a new instance per message.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class PoolBenchmark {
+
+    private static final int MESSAGE_SIZE = 512;
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+
+        byte[] secretkey;
+
+        byte[][] recipients;
+
+        byte[] plaintext;
+
+        byte[] ciphertext;
+
+        MessageWriterPool writers;
+
+        MessageReaderPool readers;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+
+            secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+            byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+            Utils.generateKeypair(publickey, secretkey);
+            recipients = new byte[][]{publickey};
+
+            plaintext = new byte[MESSAGE_SIZE];
+            new Random(42).nextBytes(plaintext);
+
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            MessageWriter mw = new MessageWriter(new OutputParameters(bout), secretkey, recipients);
+            mw.addBlock(plaintext, true);
+            mw.destroy();
+            ciphertext = bout.toByteArray();
+
+            writers = new MessageWriterPool(new MessageWriterPool.Factory() {
+
+                @Override
+                public MessageWriter create(OutputParameters op) throws SaltpackException {
+
+                    return new MessageWriter(op, secretkey, recipients);
+                }
+            });
+            readers = new MessageReaderPool(new MessageReaderPool.Factory() {
+
+                @Override
+                public MessageReader create(InputParameters in) throws SaltpackException {
+
+                    return new MessageReader(in, secretkey);
+                }
+            });
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+
+            writers.destroy();
+            readers.destroy();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Local {
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(2 * MESSAGE_SIZE);
+    }
+
+    @Benchmark
+    public int newWriter(Shared shared, Local local) throws Exception {
+
+        local.bout.reset();
+        MessageWriter mw = new MessageWriter(new OutputParameters(local.bout), shared.secretkey, shared.recipients);
+        mw.addBlock(shared.plaintext, true);
+        mw.destroy();
+
+        return local.bout.size();
+    }
+
+    @Benchmark
+    public int pooledWriter(Shared shared, Local local) throws Exception {
+
+        local.bout.reset();
+        MessageWriter mw = shared.writers.get(new OutputParameters(local.bout));
+        mw.addBlock(shared.plaintext, true);
+
+        return local.bout.size();
+    }
+
+    @Benchmark
+    public void newReader(Shared shared, Blackhole bh) throws Exception {
+
+        MessageReader mr = new MessageReader(new InputParameters(new ByteArrayInputStream(shared.ciphertext)), shared.secretkey);
+        while (mr.hasMoreBlocks()) {
+
+            bh.consume(mr.getBlock());
+        }
+        mr.destroy();
+    }
+
+    @Benchmark
+    public void pooledReader(Shared shared, Blackhole bh) throws Exception {
+
+        MessageReader mr = shared.readers.get(new InputParameters(new ByteArrayInputStream(shared.ciphertext)));
+        while (mr.hasMoreBlocks()) {
+
+            bh.consume(mr.getBlock());
+        }
+    }
+}
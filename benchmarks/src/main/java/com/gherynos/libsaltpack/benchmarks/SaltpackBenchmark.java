@@ -0,0 +1,186 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack.benchmarks;
+
+import com.gherynos.libsaltpack.Constants;
+import com.gherynos.libsaltpack.EncryptedBatch;
+import com.gherynos.libsaltpack.MessageWriter;
+import com.gherynos.libsaltpack.OutputParameters;
+import com.gherynos.libsaltpack.Saltpack;
+import com.gherynos.libsaltpack.Utils;
+import com.gherynos.libsaltpack.VerificationResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Cost of the one-shot Saltpack calls on small messages, and of the batch calls processing many of them at once.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SaltpackBenchmark {
+
+    private static final int BATCH_SIZE = 256;
+
+    @Param({"256", "16384"})
+    private int messageSize;
+
+    private byte[] secretkey;
+
+    private byte[][] recipients;
+
+    private byte[] signSecretkey;
+
+    private byte[] signPublickey;
+
+    private byte[] message;
+
+    private byte[] encrypted;
+
+    private byte[] signed;
+
+    private List<byte[]> messages;
+
+    private List<byte[]> signatures;
+
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+
+        secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+        recipients = new byte[][]{publickey};
+
+        signSecretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        signPublickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(signPublickey, signSecretkey);
+
+        Random random = new Random(42);
+        message = new byte[messageSize];
+        random.nextBytes(message);
+        encrypted = Saltpack.encrypt(message, secretkey, recipients);
+        signed = Saltpack.sign(message, signSecretkey);
+
+        messages = new ArrayList<>();
+        signatures = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+
+            byte[] item = new byte[messageSize];
+            random.nextBytes(item);
+            messages.add(item);
+            signatures.add(signDetached(item));
+        }
+
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+
+        executor.shutdown();
+    }
+
+    private byte[] signDetached(byte[] data) throws Exception {
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        MessageWriter mw = new MessageWriter(new OutputParameters(bout), signSecretkey, true);
+        mw.addBlock(data, true);
+        mw.destroy();
+
+        return bout.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+
+        return Saltpack.encrypt(message, secretkey, recipients);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws Exception {
+
+        return Saltpack.decrypt(encrypted, secretkey);
+    }
+
+    @Benchmark
+    public byte[] sign() throws Exception {
+
+        return Saltpack.sign(message, signSecretkey);
+    }
+
+    @Benchmark
+    public byte[] verify() throws Exception {
+
+        return Saltpack.verify(signed, signPublickey);
+    }
+
+    @Benchmark
+    public void encryptLoop(Blackhole bh) throws Exception {
+
+        for (byte[] item : messages) {
+
+            bh.consume(Saltpack.encrypt(item, secretkey, recipients));
+        }
+    }
+
+    @Benchmark
+    public EncryptedBatch encryptBatch() throws Exception {
+
+        return Saltpack.encryptBatch(messages, secretkey, recipients);
+    }
+
+    @Benchmark
+    public EncryptedBatch encryptBatchParallel() throws Exception {
+
+        return Saltpack.encryptBatch(messages, secretkey, recipients, executor, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Benchmark
+    public VerificationResult[] verifyDetachedBatch() throws Exception {
+
+        return Saltpack.verifyDetachedBatch(signatures, messages, new byte[][]{signPublickey});
+    }
+
+    @Benchmark
+    public VerificationResult[] verifyDetachedBatchParallel() throws Exception {
+
+        return Saltpack.verifyDetachedBatch(signatures, messages, new byte[][]{signPublickey}, executor,
+                Runtime.getRuntime().availableProcessors());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include "ArrayInputStream.h"
+#include <algorithm>
+#include <cstring>
+
+const jsize ARRAY_CHUNK_SIZE = 64 * 1024;
+
+ArrayInputStream::ArrayInputStream(JNIEnv *env, jbyteArray array) : std::istream(this) {
+
+    this->env = env;
+    this->array = array;
+
+    size = env->GetArrayLength(array);
+    offset = 0;
+
+    data = std::vector<char>((size_t) std::min(size, ARRAY_CHUNK_SIZE));
+    setg(data.data(), data.data(), data.data());
+}
+
+jsize ArrayInputStream::refill() {
+
+    jsize count = std::min(size - offset, (jsize) data.size());
+    if (count <= 0)
+        return -1;
+
+    env->GetByteArrayRegion(array, offset, count, reinterpret_cast<jbyte *>(data.data()));
+    if (env->ExceptionCheck())
+        return -1;
+    offset += count;
+
+    setg(data.data(), data.data(), data.data() + count);
+
+    return count;
+}
+
+int ArrayInputStream::underflow() {
+
+    if (gptr() < egptr())
+        return std::istream::traits_type::to_int_type(*gptr());
+
+    if (refill() <= 0)
+        return std::istream::traits_type::eof();
+
+    return std::istream::traits_type::to_int_type(*gptr());
+}
+
+std::streamsize ArrayInputStream::xsgetn(char *s, std::streamsize n) {
+
+    std::streamsize copied = 0;
+    while (copied < n) {
+
+        std::streamsize available = egptr() - gptr();
+        if (available == 0) {
+
+            if (refill() <= 0)
+                break;
+
+            available = egptr() - gptr();
+        }
+
+        std::streamsize chunk = std::min(available, n - copied);
+        std::memcpy(s + copied, gptr(), (size_t) chunk);
+        gbump((int) chunk);
+        copied += chunk;
+    }
+
+    return copied;
+}
+
+std::streamsize ArrayInputStream::showmanyc() {
+
+    std::streamsize available = (egptr() - gptr()) + (size - offset);
+
+    return available > 0 ? available : -1;
+}
@@ -16,79 +16,165 @@
 
 #include "InputStreamWrapper.h"
 #include "common.h"
+#include <algorithm>
+#include <cstring>
 
-const int BUF_SIZE = 2048;
-
-InputStreamWrapper::InputStreamWrapper(JNIEnv *env, jobject inputStream) : std::istream(this) {
+InputStreamWrapper::InputStreamWrapper(JNIEnv *env, jobject inputStream, jint bufferSize, bool channel)
+        : std::istream(this) {
 
     this->env = env;
     this->inputStream = inputStream;
+    this->bufferSize = bufferSize;
 
-    jclass clazz = loadClass(env, "java/io/InputStream");
-    mRead = loadMethod(env, clazz, "read", "([BII)I");
+    data = std::vector<char>((size_t) bufferSize);
+    setg(data.data(), data.data(), data.data());
 
-    dataReady = false;
-    index = 0;
-    dataSize = 0;
+    buf = nullptr;
+    byteBuffer = nullptr;
+    if (channel) {
 
-    jbyteArray local_jarray = env->NewByteArray(BUF_SIZE);
-    if (local_jarray == nullptr) {
+        // the channel reads straight into data, no intermediate Java array
+        jobject local_buffer = env->NewDirectByteBuffer(data.data(), bufferSize);
+        if (local_buffer == nullptr)
+            return; /* exception thrown */
 
-        return; /* out of memory error thrown */
+        byteBuffer = env->NewGlobalRef(local_buffer);
+        env->DeleteLocalRef(local_buffer);
+        return;
     }
+
+    jbyteArray local_jarray = env->NewByteArray(bufferSize);
+    if (local_jarray == nullptr)
+        return; /* out of memory error thrown */
+
     buf = (jbyteArray) env->NewGlobalRef(local_jarray);
     env->DeleteLocalRef(local_jarray);
 }
 
 InputStreamWrapper::~InputStreamWrapper() {
 
-    env->DeleteGlobalRef(buf);
+    if (buf != nullptr)
+        env->DeleteGlobalRef(buf);
+
+    if (byteBuffer != nullptr)
+        env->DeleteGlobalRef(byteBuffer);
+}
+
+bool InputStreamWrapper::accepts(jint bufferSize, bool channel) const {
+
+    return bufferSize == this->bufferSize && channel == (byteBuffer != nullptr);
+}
+
+void InputStreamWrapper::reset(jobject inputStream) {
+
+    this->inputStream = inputStream;
+
+    setg(data.data(), data.data(), data.data());
+    clear();
+}
+
+jint InputStreamWrapper::refill() {
+
+    if (inputStream == nullptr || (buf == nullptr && byteBuffer == nullptr))
+        return -1;
+
+    if (byteBuffer != nullptr) {
+
+        env->DeleteLocalRef(env->CallObjectMethod(byteBuffer, jniCache.bufferClear));
+        if (env->ExceptionCheck())
+            return -1;
+    }
+
+    // refill internal buffer with data from Java
+    jint dataSize = 0;
+    while (dataSize == 0) {
+
+        if (byteBuffer != nullptr)
+            dataSize = env->CallIntMethod(inputStream, jniCache.readableByteChannelRead, byteBuffer);
+        else
+            dataSize = env->CallIntMethod(inputStream, jniCache.inputStreamRead, buf, 0, bufferSize);
+        if (env->ExceptionCheck())
+            return -1;
+    }
+
+    if (dataSize == -1) {
+
+        inputStream = nullptr;
+        return -1;
+    }
+
+    if (buf != nullptr) {
+
+        env->GetByteArrayRegion(buf, 0, dataSize, reinterpret_cast<jbyte *>(data.data()));
+        if (env->ExceptionCheck())
+            return -1;
+    }
+
+    // expose the whole refilled region as the get area
+    setg(data.data(), data.data(), data.data() + dataSize);
+
+    return dataSize;
 }
 
 int InputStreamWrapper::underflow() {
 
     try {
 
-        if (!dataReady && inputStream == nullptr)
+        if (gptr() < egptr())
+            return std::istream::traits_type::to_int_type(*gptr());
+
+        if (refill() <= 0)
             return std::istream::traits_type::eof();
 
-        if (!dataReady) {
+        return std::istream::traits_type::to_int_type(*gptr());
 
-            // refill internal buffer with data from Java
-            dataSize = env->CallIntMethod(inputStream, mRead, buf, 0, BUF_SIZE);
-            if (env->ExceptionCheck())
-                return -1;
+    } catch (const std::exception &ex) {
 
-            if (dataSize != -1) {
+        return std::istream::traits_type::eof();
+    }
+}
+
+std::streamsize InputStreamWrapper::xsgetn(char *s, std::streamsize n) {
+
+    std::streamsize copied = 0;
+    while (copied < n) {
 
-                data = GET_BYTES(buf);
-                dataReady = true;
+        std::streamsize available = egptr() - gptr();
+        if (available == 0) {
 
-            } else {
+            if (refill() <= 0)
+                break;
 
-                inputStream = nullptr;
-                return std::istream::traits_type::eof();
-            }
+            available = egptr() - gptr();
         }
 
-        // output current char
-        ch = (char) data[index];
-        setg(&ch, &ch, &ch + 1);
+        std::streamsize chunk = std::min(available, n - copied);
+        std::memcpy(s + copied, gptr(), (size_t) chunk);
+        gbump((int) chunk);
+        copied += chunk;
+    }
 
-        // check for end of internal buffer
-        if (++index == dataSize) {
+    return copied;
+}
 
-            RELEASE_BYTES(buf, data);
+std::streamsize InputStreamWrapper::showmanyc() {
 
-            dataReady = false;
-            index = 0;
-        }
+    std::streamsize available = egptr() - gptr();
+    if (available > 0)
+        return available;
 
-        return std::istream::traits_type::to_int_type(*gptr());
+    if (inputStream == nullptr)
+        return -1;
 
-    } catch (const std::exception &ex) {
+    if (byteBuffer != nullptr)
+        return 0;
 
-        dataReady = false;
-        return std::istream::traits_type::eof();
+    jint javaAvailable = env->CallIntMethod(inputStream, jniCache.inputStreamAvailable);
+    if (env->ExceptionCheck()) {
+
+        env->ExceptionClear();
+        return 0;
     }
+
+    return (std::streamsize) javaAvailable;
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include "MemoryInputStream.h"
+#include <algorithm>
+#include <cstring>
+
+MemoryInputStream::MemoryInputStream(const char *data, size_t size) : std::istream(this) {
+
+    // the whole region is the get area: underflow() is only reached at the end of the data
+    auto *begin = const_cast<char *>(data);
+    setg(begin, begin, begin + size);
+}
+
+std::streamsize MemoryInputStream::xsgetn(char *s, std::streamsize n) {
+
+    std::streamsize count = std::min(n, (std::streamsize) (egptr() - gptr()));
+    if (count > 0) {
+
+        std::memcpy(s, gptr(), (size_t) count);
+        gbump((int) count);
+    }
+
+    return count;
+}
+
+std::streamsize MemoryInputStream::showmanyc() {
+
+    std::streamsize available = egptr() - gptr();
+
+    return available > 0 ? available : -1;
+}
@@ -16,68 +16,174 @@
 
 #include <common.h>
 #include "OutputStreamWrapper.h"
+#include <algorithm>
+#include <cstring>
 
-const int BUF_SIZE = 2048;
-
-OutputStreamWrapper::OutputStreamWrapper(JNIEnv *env, jobject outputStream) : std::ostream(this) {
+OutputStreamWrapper::OutputStreamWrapper(JNIEnv *env, jobject outputStream, jint bufferSize, bool channel)
+        : std::ostream(this) {
 
     this->env = env;
     this->outputStream = outputStream;
+    this->bufferSize = bufferSize;
+
+    buf = std::vector<char>((size_t) bufferSize);
+    setp(buf.data(), buf.data() + bufferSize);
 
-    jclass clazz = loadClass(env, "java/io/OutputStream");
-    mWrite = loadMethod(env, clazz, "write", "([BII)V");
+    array = nullptr;
+    byteBuffer = nullptr;
+    if (channel) {
 
-    buf = saltpack::BYTE_ARRAY(BUF_SIZE);
-    count = 0;
+        // the channel writes straight from buf, no intermediate Java array
+        jobject local_buffer = env->NewDirectByteBuffer(buf.data(), bufferSize);
+        if (local_buffer == nullptr)
+            return; /* exception thrown */
+
+        byteBuffer = env->NewGlobalRef(local_buffer);
+        env->DeleteLocalRef(local_buffer);
+        return;
+    }
+
+    if (outputStream == nullptr)
+        return;
+
+    // single Java array reused for every write
+    jbyteArray local_jarray = env->NewByteArray(bufferSize);
+    if (local_jarray == nullptr)
+        return; /* out of memory error thrown */
+
+    array = (jbyteArray) env->NewGlobalRef(local_jarray);
+    env->DeleteLocalRef(local_jarray);
 }
 
 OutputStreamWrapper::~OutputStreamWrapper() {
 
-    buf.clear();
-    buf.shrink_to_fit();
+    if (array != nullptr)
+        env->DeleteGlobalRef(array);
+
+    if (byteBuffer != nullptr)
+        env->DeleteGlobalRef(byteBuffer);
 }
 
 int OutputStreamWrapper::overflow(int c) {
 
-    if (count < BUF_SIZE) {
+    if (!writeToOutput())
+        return std::ostream::traits_type::eof();
 
-        buf[count] = (saltpack::BYTE) c;
-        count += 1;
+    if (!std::ostream::traits_type::eq_int_type(c, std::ostream::traits_type::eof())) {
 
-    } else {
+        *pptr() = (char) c;
+        pbump(1);
+    }
 
-        writeToOutput();
+    return std::ostream::traits_type::not_eof(c);
+}
 
-        buf[0] = (saltpack::BYTE) c;
-        count = 1;
+std::streamsize OutputStreamWrapper::xsputn(const char *s, std::streamsize n) {
+
+    std::streamsize written = 0;
+    while (written < n) {
+
+        std::streamsize space = epptr() - pptr();
+        if (space == 0) {
+
+            if (!writeToOutput())
+                break;
+
+            space = epptr() - pptr();
+        }
+
+        std::streamsize chunk = std::min(space, n - written);
+        std::memcpy(pptr(), s + written, (size_t) chunk);
+        pbump((int) chunk);
+        written += chunk;
     }
 
-    return c;
+    return written;
 }
 
 void OutputStreamWrapper::finalise() {
 
-    if (count > 0) {
+    writeToOutput();
+}
+
+bool OutputStreamWrapper::accepts(jobject outputStream, jint bufferSize, bool channel) const {
 
-        writeToOutput();
+    if (bufferSize != this->bufferSize || channel != (byteBuffer != nullptr))
+        return false;
 
-        count = 0;
-    }
+    return channel || (outputStream == nullptr) == (array == nullptr);
 }
 
-void OutputStreamWrapper::writeToOutput() {
+void OutputStreamWrapper::reset(jobject outputStream) {
+
+    this->outputStream = outputStream;
 
-    jbyteArray out = env->NewByteArray((jsize) count);
-    if (out == nullptr) {
+    memory.clear();
+    setp(buf.data(), buf.data() + bufferSize);
+    clear();
+}
 
-        return; /* out of memory error thrown */
+void OutputStreamWrapper::drain(std::vector<char> &out) {
+
+    writeToOutput();
+
+    out.swap(memory);
+    memory.clear();
+}
+
+bool OutputStreamWrapper::writeToOutput() {
+
+    auto count = (jint) (pptr() - pbase());
+    if (count == 0)
+        return true;
+
+    if (byteBuffer != nullptr)
+        return writeToChannel(count);
+
+    if (outputStream == nullptr) {
+
+        memory.insert(memory.end(), pbase(), pptr());
+        setp(buf.data(), buf.data() + bufferSize);
+
+        return true;
     }
 
-    env->SetByteArrayRegion(out, 0, (jsize) count, (const jbyte *) buf.data());
+    if (array == nullptr)
+        return false;
 
-    env->CallVoidMethod(outputStream, mWrite, out, 0, count);
+    env->SetByteArrayRegion(array, 0, count, reinterpret_cast<const jbyte *>(pbase()));
     if (env->ExceptionCheck())
-        return;
+        return false;
+
+    env->CallVoidMethod(outputStream, jniCache.outputStreamWrite, array, 0, count);
+    if (env->ExceptionCheck())
+        return false;
+
+    setp(buf.data(), buf.data() + bufferSize);
+
+    return true;
+}
+
+bool OutputStreamWrapper::writeToChannel(jint count) {
+
+    env->DeleteLocalRef(env->CallObjectMethod(byteBuffer, jniCache.bufferClear));
+    if (env->ExceptionCheck())
+        return false;
+
+    env->DeleteLocalRef(env->CallObjectMethod(byteBuffer, jniCache.bufferLimit, count));
+    if (env->ExceptionCheck())
+        return false;
+
+    // channels may write partially, the buffer position tracks the progress
+    jint written = 0;
+    while (written < count) {
+
+        written += env->CallIntMethod(outputStream, jniCache.writableByteChannelWrite, byteBuffer);
+        if (env->ExceptionCheck())
+            return false;
+    }
+
+    setp(buf.data(), buf.data() + bufferSize);
 
-    env->DeleteLocalRef(out);
+    return true;
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+#include "PrefixedInputStream.h"
+#include <algorithm>
+#include <utility>
+#include <cstring>
+
+PrefixedInputStream::PrefixedInputStream(std::vector<char> prefix, std::istream &rest) : std::istream(this),
+                                                                                         prefix(std::move(prefix)),
+                                                                                         rest(rest.rdbuf()),
+                                                                                         inPrefix(true) {
+
+    setg(this->prefix.data(), this->prefix.data(), this->prefix.data() + this->prefix.size());
+}
+
+void PrefixedInputStream::dropPrefix() {
+
+    if (!inPrefix)
+        return;
+
+    inPrefix = false;
+    setg(buffer, buffer, buffer);
+
+    prefix.clear();
+    prefix.shrink_to_fit();
+}
+
+int PrefixedInputStream::underflow() {
+
+    if (gptr() < egptr())
+        return std::istream::traits_type::to_int_type(*gptr());
+
+    dropPrefix();
+
+    std::streamsize count = rest->sgetn(buffer, sizeof(buffer));
+    if (count <= 0)
+        return std::istream::traits_type::eof();
+
+    setg(buffer, buffer, buffer + count);
+
+    return std::istream::traits_type::to_int_type(*gptr());
+}
+
+std::streamsize PrefixedInputStream::xsgetn(char *s, std::streamsize n) {
+
+    // whatever is left in the get area first, then straight from the wrapped stream
+    std::streamsize count = std::min(n, (std::streamsize) (egptr() - gptr()));
+    if (count > 0) {
+
+        std::memcpy(s, gptr(), (size_t) count);
+        gbump((int) count);
+    }
+
+    if (count < n) {
+
+        dropPrefix();
+        count += rest->sgetn(s + count, n - count);
+    }
+
+    return count;
+}
+
+std::streamsize PrefixedInputStream::showmanyc() {
+
+    std::streamsize available = egptr() - gptr();
+    if (available > 0)
+        return available;
+
+    return rest->in_avail();
+}
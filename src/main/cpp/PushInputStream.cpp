@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include "PushInputStream.h"
+#include <algorithm>
+#include <cstring>
+
+PushInputStream::PushInputStream() : std::istream(this) {
+
+    discarded = 0;
+    setg(buffer.data(), buffer.data(), buffer.data());
+}
+
+void PushInputStream::append(const char *data, size_t size) {
+
+    auto read = (size_t) (gptr() - eback());
+    buffer.insert(buffer.end(), data, data + size);
+
+    // the vector may have been reallocated
+    setg(buffer.data(), buffer.data() + read, buffer.data() + buffer.size());
+}
+
+void PushInputStream::compact(size_t keep) {
+
+    auto read = (size_t) (gptr() - eback());
+    size_t drop = std::min(read, keep - discarded);
+    if (drop == 0)
+        return;
+
+    buffer.erase(buffer.begin(), buffer.begin() + (std::ptrdiff_t) drop);
+    discarded += drop;
+
+    setg(buffer.data(), buffer.data() + (read - drop), buffer.data() + buffer.size());
+}
+
+size_t PushInputStream::begin() const {
+
+    return discarded;
+}
+
+size_t PushInputStream::end() const {
+
+    return discarded + buffer.size();
+}
+
+const unsigned char *PushInputStream::at(size_t offset) const {
+
+    return (const unsigned char *) buffer.data() + (offset - discarded);
+}
+
+int PushInputStream::underflow() {
+
+    if (gptr() < egptr())
+        return std::istream::traits_type::to_int_type(*gptr());
+
+    return std::istream::traits_type::eof();
+}
+
+std::streamsize PushInputStream::xsgetn(char *s, std::streamsize n) {
+
+    std::streamsize count = std::min(n, (std::streamsize) (egptr() - gptr()));
+    if (count > 0) {
+
+        std::memcpy(s, gptr(), (size_t) count);
+        gbump((int) count);
+    }
+
+    return count;
+}
+
+std::streamsize PushInputStream::showmanyc() {
+
+    // more data may be appended later, so an empty buffer is not the end of the stream
+    return egptr() - gptr();
+}
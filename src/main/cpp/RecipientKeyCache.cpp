@@ -0,0 +1,99 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+#include "RecipientKeyCache.h"
+#include <cstring>
+#include <iterator>
+
+RecipientKeyCache::RecipientKeyCache(size_t maxEntries) : maxEntries(maxEntries), hitCount(0), missCount(0) {
+}
+
+RecipientKeyCache::~RecipientKeyCache() {
+
+    clear();
+}
+
+void RecipientKeyCache::sharedKey(const saltpack::BYTE *senderPublickey, const saltpack::BYTE *senderSecretkey,
+                                  const saltpack::BYTE *recipientPublickey, saltpack::BYTE *out) {
+
+    std::string id((const char *) senderPublickey, crypto_box_PUBLICKEYBYTES);
+    id.append((const char *) recipientPublickey, crypto_box_PUBLICKEYBYTES);
+
+    {
+        std::lock_guard<std::mutex> guard(lock);
+
+        auto found = index.find(id);
+        if (found != index.end()) {
+
+            entries.splice(entries.begin(), entries, found->second);
+            std::memcpy(out, found->second->key, crypto_box_BEFORENMBYTES);
+            hitCount++;
+
+            return;
+        }
+    }
+
+    // computed without holding the lock, concurrent misses for the same pair store the same value
+    missCount++;
+    if (crypto_box_beforenm(out, recipientPublickey, senderSecretkey) != 0)
+        throw saltpack::SaltpackException("errors while computing the shared key");
+
+    std::lock_guard<std::mutex> guard(lock);
+    if (index.find(id) != index.end())
+        return;
+
+    entries.emplace_front();
+    Entry &entry = entries.front();
+    entry.id = id;
+    std::memcpy(entry.key, out, crypto_box_BEFORENMBYTES);
+    index[id] = entries.begin();
+
+    while (entries.size() > maxEntries)
+        evict(std::prev(entries.end()));
+}
+
+void RecipientKeyCache::clear() {
+
+    std::lock_guard<std::mutex> guard(lock);
+    while (!entries.empty())
+        evict(entries.begin());
+}
+
+size_t RecipientKeyCache::size() {
+
+    std::lock_guard<std::mutex> guard(lock);
+
+    return entries.size();
+}
+
+uint64_t RecipientKeyCache::hits() const {
+
+    return hitCount;
+}
+
+uint64_t RecipientKeyCache::misses() const {
+
+    return missCount;
+}
+
+// to be called holding the lock
+void RecipientKeyCache::evict(std::list<Entry>::iterator entry) {
+
+    sodium_memzero(entry->key, sizeof(entry->key));
+    index.erase(entry->id);
+    entries.erase(entry);
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <jni.h>
+#include "com_gherynos_libsaltpack_AttachedSignatures.h"
+#include <saltpack.h>
+#include <common.h>
+#include <Msgpack.h>
+#include <cstdint>
+#include <cstring>
+#include <string>
+
+/*
+ * Attached signature format (https://saltpack.org/signing-format-v2):
+ *   header:  bin([ "saltpack", [major, minor], mode, sender public key, nonce ])
+ *   packet:  [ final flag, signature, payload ] (v2)  or  [ signature, payload ] (v1)
+ * Every signature covers SHA512(header hash || sequence number || final flag (v2 only) || payload).
+ */
+
+const char SIGNATURE_PREFIX[] = "saltpack attached signature"; // the terminating NUL is part of the signed data
+const size_t NONCE_SIZE = 32;
+
+void signatureInput(const saltpack::BYTE_ARRAY &headerHash, uint64_t seqno, int version, bool isFinal,
+                    const saltpack::BYTE *payload, size_t payloadSize, saltpack::BYTE *out) {
+
+    saltpack::BYTE seq[8];
+    for (int i = 7; i >= 0; i--) {
+
+        seq[i] = (saltpack::BYTE) (seqno & 0xff);
+        seqno >>= 8;
+    }
+
+    std::memcpy(out, SIGNATURE_PREFIX, sizeof(SIGNATURE_PREFIX));
+
+    crypto_hash_sha512_state state;
+    crypto_hash_sha512_init(&state);
+    crypto_hash_sha512_update(&state, headerHash.data(), headerHash.size());
+    crypto_hash_sha512_update(&state, seq, sizeof(seq));
+    if (version >= 2) {
+
+        saltpack::BYTE flag = isFinal ? 1 : 0;
+        crypto_hash_sha512_update(&state, &flag, 1);
+    }
+    crypto_hash_sha512_update(&state, payload, payloadSize);
+    crypto_hash_sha512_final(&state, out + sizeof(SIGNATURE_PREFIX));
+}
+
+saltpack::BYTE_ARRAY hash(const saltpack::BYTE *data, size_t size) {
+
+    saltpack::BYTE_ARRAY out(crypto_hash_sha512_BYTES);
+    crypto_hash_sha512(out.data(), data, size);
+
+    return out;
+}
+
+jobjectArray toJavaArray(JNIEnv *env, std::initializer_list<saltpack::BYTE_ARRAY> items) {
+
+    jobjectArray out = env->NewObjectArray((jsize) items.size(), BYTE_ARRAY_CLASS(env), nullptr);
+    if (out == nullptr)
+        return nullptr; /* out of memory error thrown */
+
+    jsize idx = 0;
+    for (const saltpack::BYTE_ARRAY &item: items) {
+
+        jbyteArray arr = copyBytes(env, item);
+        if (arr == nullptr)
+            return nullptr; /* out of memory error thrown */
+
+        env->SetObjectArrayElement(out, idx++, arr);
+        env->DeleteLocalRef(arr);
+    }
+
+    return out;
+}
+
+struct Packet {
+
+    bool isFinal;
+    std::pair<const saltpack::BYTE *, size_t> signature;
+    std::pair<const saltpack::BYTE *, size_t> payload;
+};
+
+Packet parsePacket(int version, const saltpack::BYTE_ARRAY &data) {
+
+    PackReader reader(data.data(), data.size());
+    Packet packet{};
+
+    size_t size = reader.array();
+    if (version >= 2) {
+
+        if (size < 3)
+            throw saltpack::SaltpackException("wrong payload packet length");
+
+        packet.isFinal = reader.boolean();
+        packet.signature = reader.raw();
+        packet.payload = reader.raw();
+
+    } else {
+
+        if (size < 2)
+            throw saltpack::SaltpackException("wrong payload packet length");
+
+        packet.signature = reader.raw();
+        packet.payload = reader.raw();
+        packet.isFinal = packet.payload.second == 0;
+    }
+
+    if (packet.signature.second != crypto_sign_BYTES)
+        throw saltpack::SaltpackException("wrong signature length");
+
+    return packet;
+}
+
+jobjectArray Java_com_gherynos_libsaltpack_AttachedSignatures_header(JNIEnv *env, jclass cls, jobject senderSecretkeyA) {
+
+    saltpack::BYTE_ARRAY senderSecretkey;
+    try {
+
+        senderSecretkey = copySecretkey(env, senderSecretkeyA);
+        if (senderSecretkey.size() != crypto_sign_SECRETKEYBYTES)
+            throw saltpack::SaltpackException("wrong size for senderSecretkey");
+
+        saltpack::BYTE_ARRAY senderPublickey(crypto_sign_PUBLICKEYBYTES);
+        crypto_sign_ed25519_sk_to_pk(senderPublickey.data(), senderSecretkey.data());
+        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+
+        saltpack::BYTE_ARRAY nonce(NONCE_SIZE);
+        randombytes_buf(nonce.data(), nonce.size());
+
+        PackWriter header;
+        header.array(5);
+        header.str("saltpack");
+        header.array(2);
+        header.integer(2);
+        header.integer(0);
+        header.integer((unsigned int) saltpack::MODE_ATTACHED_SIGNATURE);
+        header.bin(senderPublickey.data(), senderPublickey.size());
+        header.bin(nonce.data(), nonce.size());
+
+        PackWriter packet;
+        packet.bin(header.data.data(), header.data.size());
+
+        return toJavaArray(env, {packet.data, hash(header.data.data(), header.data.size())});
+
+    } catch (...) {
+
+        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jbyteArray Java_com_gherynos_libsaltpack_AttachedSignatures_signPacket(JNIEnv *env, jclass cls,
+                                                                       jobject senderSecretkeyA,
+                                                                       jbyteArray headerHashA, jlong seqno,
+                                                                       jboolean isFinal, jbyteArray dataA, jint off,
+                                                                       jint len) {
+
+    saltpack::BYTE_ARRAY senderSecretkey;
+    try {
+
+        senderSecretkey = copySecretkey(env, senderSecretkeyA);
+        if (senderSecretkey.size() != crypto_sign_SECRETKEYBYTES)
+            throw saltpack::SaltpackException("wrong size for senderSecretkey");
+
+        saltpack::BYTE_ARRAY headerHash = copyBytes(env, headerHashA);
+        saltpack::BYTE_ARRAY data = copyBytes(env, dataA, off, len);
+
+        saltpack::BYTE input[sizeof(SIGNATURE_PREFIX) + crypto_hash_sha512_BYTES];
+        signatureInput(headerHash, (uint64_t) seqno, 2, (bool) isFinal, data.data(), data.size(), input);
+
+        saltpack::BYTE signature[crypto_sign_BYTES];
+        crypto_sign_detached(signature, nullptr, input, sizeof(input), senderSecretkey.data());
+        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+
+        PackWriter packet;
+        packet.data.reserve(data.size() + 80);
+        packet.array(3);
+        packet.boolean((bool) isFinal);
+        packet.bin(signature, sizeof(signature));
+        packet.bin(data.data(), data.size());
+
+        sodium_memzero(data.data(), data.size());
+
+        return copyBytes(env, packet.data);
+
+    } catch (...) {
+
+        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jobjectArray Java_com_gherynos_libsaltpack_AttachedSignatures_parseHeader(JNIEnv *env, jclass cls, jbyteArray headerA) {
+
+    try {
+
+        saltpack::BYTE_ARRAY packet = copyBytes(env, headerA);
+
+        PackReader outer(packet.data(), packet.size());
+        std::pair<const saltpack::BYTE *, size_t> header = outer.raw();
+        outer.end();
+
+        PackReader reader(header.first, header.second);
+        if (reader.array() < 5)
+            throw saltpack::SaltpackException("wrong header length");
+
+        std::pair<const saltpack::BYTE *, size_t> format = reader.raw();
+        if (std::string((const char *) format.first, format.second) != "saltpack")
+            throw saltpack::SaltpackException("wrong format");
+
+        if (reader.array() < 2)
+            throw saltpack::SaltpackException("wrong version");
+        uint64_t major = reader.integer();
+        reader.integer();
+        if (major != 1 && major != 2)
+            throw saltpack::SaltpackException("wrong version");
+
+        if (reader.integer() != (uint64_t) saltpack::MODE_ATTACHED_SIGNATURE)
+            throw saltpack::SaltpackException("wrong mode");
+
+        std::pair<const saltpack::BYTE *, size_t> sender = reader.raw();
+        if (sender.second != crypto_sign_PUBLICKEYBYTES)
+            throw saltpack::SaltpackException("wrong size for sender public key");
+
+        if (reader.raw().second != NONCE_SIZE)
+            throw saltpack::SaltpackException("wrong size for nonce");
+
+        return toJavaArray(env, {saltpack::BYTE_ARRAY(sender.first, sender.first + sender.second),
+                                 hash(header.first, header.second),
+                                 saltpack::BYTE_ARRAY(1, (saltpack::BYTE) major)});
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jboolean Java_com_gherynos_libsaltpack_AttachedSignatures_isFinalPacket(JNIEnv *env, jclass cls, jint version,
+                                                                        jbyteArray packetA) {
+
+    try {
+
+        return (jboolean) parsePacket(version, copyBytes(env, packetA)).isFinal;
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return (jboolean) false;
+    }
+}
+
+jbyteArray Java_com_gherynos_libsaltpack_AttachedSignatures_verifyPacket(JNIEnv *env, jclass cls,
+                                                                         jbyteArray senderPublickeyA,
+                                                                         jbyteArray headerHashA, jint version,
+                                                                         jlong seqno, jbyteArray packetA) {
+
+    try {
+
+        saltpack::BYTE_ARRAY senderPublickey = copyBytes(env, senderPublickeyA);
+        if (senderPublickey.size() != crypto_sign_PUBLICKEYBYTES)
+            throw saltpack::SaltpackException("wrong size for sender public key");
+
+        saltpack::BYTE_ARRAY headerHash = copyBytes(env, headerHashA);
+        saltpack::BYTE_ARRAY data = copyBytes(env, packetA);
+        Packet packet = parsePacket(version, data);
+
+        saltpack::BYTE input[sizeof(SIGNATURE_PREFIX) + crypto_hash_sha512_BYTES];
+        signatureInput(headerHash, (uint64_t) seqno, version, packet.isFinal, packet.payload.first,
+                       packet.payload.second, input);
+
+        if (crypto_sign_verify_detached(packet.signature.first, input, sizeof(input), senderPublickey.data()) != 0)
+            throw saltpack::SaltpackException("signature verification failed");
+
+        return copyBytes(env, saltpack::BYTE_ARRAY(packet.payload.first, packet.payload.first + packet.payload.second));
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
@@ -0,0 +1,834 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+#include <jni.h>
+#include "com_gherynos_libsaltpack_EncryptedPayloads.h"
+#include <saltpack.h>
+#include <common.h>
+#include <Msgpack.h>
+#include <RecipientKeyCache.h>
+#include <cstdint>
+#include <algorithm>
+#include <cstring>
+#include <exception>
+#include <list>
+#include <string>
+#include <vector>
+
+/*
+ * Encryption format (https://saltpack.org/encryption-format-v2):
+ *   header:  bin([ "saltpack", [2, 0], mode, ephemeral public key, sender secretbox, [[recipient, payload key box], ...] ])
+ *   packet:  [ final flag, [authenticator, ...], payload secretbox ]
+ * Every packet is sealed with its own nonce and authenticated over the header hash, its index and its final flag,
+ * so the packets can be encrypted and decrypted independently once the header is known.
+ */
+
+const char RECIPIENT_NONCE_PREFIX[] = "saltpack_recipsb";
+const char SENDER_KEY_NONCE[] = "saltpack_sender_key_sbox";
+const char PAYLOAD_NONCE_PREFIX[] = "saltpack_ploadsb";
+const size_t KEY_SIZE = 32;
+
+// keys needed while the header of a new message is being built, released as soon as it is complete
+struct HeaderBuilder {
+
+    std::vector<saltpack::BYTE_ARRAY> recipients;
+    bool visibleRecipients;
+    RecipientKeyCache *cache; // null when no cache is used, or for anonymous senders
+    saltpack::BYTE_ARRAY senderSecretkey; // the ephemeral key for anonymous senders
+    saltpack::BYTE senderPublickey[crypto_box_PUBLICKEYBYTES];
+    saltpack::BYTE ephemeralPublickey[crypto_box_PUBLICKEYBYTES];
+    saltpack::BYTE ephemeralSecretkey[crypto_box_SECRETKEYBYTES];
+    saltpack::BYTE senderBox[crypto_secretbox_MACBYTES + crypto_box_PUBLICKEYBYTES];
+    std::vector<saltpack::BYTE_ARRAY> boxes;
+};
+
+struct PObjects {
+
+    saltpack::BYTE_ARRAY payloadKey;
+    saltpack::BYTE_ARRAY headerHash;
+    std::vector<saltpack::BYTE_ARRAY> macKeys; // one per recipient when writing, the recipient's one when reading
+    saltpack::BYTE_ARRAY header; // writing only
+    saltpack::BYTE_ARRAY sender; // reading only
+    size_t recipientIndex; // reading only
+    size_t recipients; // reading only
+    HeaderBuilder *builder; // writing only, until the header is complete
+};
+
+void deleteBuilder(PObjects *objs) {
+
+    HeaderBuilder *builder = objs->builder;
+    if (builder == nullptr)
+        return;
+
+    sodium_memzero(builder->senderSecretkey.data(), builder->senderSecretkey.size());
+    sodium_memzero(builder->ephemeralSecretkey, sizeof(builder->ephemeralSecretkey));
+
+    delete builder;
+    objs->builder = nullptr;
+}
+
+void deletePObjects(PObjects *objs) {
+
+    if (objs == nullptr)
+        return;
+
+    deleteBuilder(objs);
+    sodium_memzero(objs->payloadKey.data(), objs->payloadKey.size());
+    for (saltpack::BYTE_ARRAY &key: objs->macKeys)
+        sodium_memzero(key.data(), key.size());
+
+    delete objs;
+}
+
+// 16 bytes prefix followed by the index as a big-endian 64 bits integer
+void indexedNonce(const saltpack::BYTE *prefix, uint64_t index, saltpack::BYTE *out) {
+
+    std::memcpy(out, prefix, 16);
+    for (int i = 23; i >= 16; i--) {
+
+        out[i] = (saltpack::BYTE) (index & 0xff);
+        index >>= 8;
+    }
+}
+
+// last 32 bytes of the box of 32 zero bytes, used to derive the MAC key
+void zeroBoxTail(const saltpack::BYTE *nonce, const saltpack::BYTE *publickey, const saltpack::BYTE *secretkey,
+                 saltpack::BYTE *out) {
+
+    saltpack::BYTE zeros[KEY_SIZE] = {0};
+    saltpack::BYTE box[crypto_box_MACBYTES + KEY_SIZE];
+    if (crypto_box_easy(box, zeros, sizeof(zeros), nonce, publickey, secretkey) != 0)
+        throw saltpack::SaltpackException("errors while computing the MAC key");
+
+    std::memcpy(out, box + crypto_box_MACBYTES, KEY_SIZE);
+    sodium_memzero(box, sizeof(box));
+}
+
+// first 32 bytes of the SHA512 of the two box tails, zeroed
+saltpack::BYTE_ARRAY hashTails(saltpack::BYTE *tails) {
+
+    saltpack::BYTE digest[crypto_hash_sha512_BYTES];
+    crypto_hash_sha512(digest, tails, 2 * KEY_SIZE);
+    sodium_memzero(tails, 2 * KEY_SIZE);
+
+    saltpack::BYTE_ARRAY key(digest, digest + KEY_SIZE);
+    sodium_memzero(digest, sizeof(digest));
+
+    return key;
+}
+
+/*
+ * MAC key of a recipient: the first pair is the long-term key of the sender with the recipient's one,
+ * the second pair is the ephemeral key with the recipient's one (either side of each key exchange works).
+ */
+saltpack::BYTE_ARRAY macKey(const saltpack::BYTE_ARRAY &headerHash, size_t recipientIndex,
+                            const saltpack::BYTE *longTermPublickey, const saltpack::BYTE *longTermSecretkey,
+                            const saltpack::BYTE *ephemeralPublickey, const saltpack::BYTE *ephemeralSecretkey) {
+
+    saltpack::BYTE nonce[crypto_box_NONCEBYTES];
+    indexedNonce(headerHash.data(), (uint64_t) recipientIndex, nonce);
+
+    saltpack::BYTE tails[2 * KEY_SIZE];
+    nonce[15] &= 0xfe;
+    zeroBoxTail(nonce, longTermPublickey, longTermSecretkey, tails);
+    nonce[15] |= 0x01;
+    zeroBoxTail(nonce, ephemeralPublickey, ephemeralSecretkey, tails + KEY_SIZE);
+
+    return hashTails(tails);
+}
+
+// as above, with the shared secret of the long-term keys from the cache
+saltpack::BYTE_ARRAY macKey(const saltpack::BYTE_ARRAY &headerHash, size_t recipientIndex, RecipientKeyCache *cache,
+                            const saltpack::BYTE *senderPublickey, const saltpack::BYTE *senderSecretkey,
+                            const saltpack::BYTE *recipientPublickey, const saltpack::BYTE *ephemeralSecretkey) {
+
+    saltpack::BYTE nonce[crypto_box_NONCEBYTES];
+    indexedNonce(headerHash.data(), (uint64_t) recipientIndex, nonce);
+
+    saltpack::BYTE shared[crypto_box_BEFORENMBYTES];
+    saltpack::BYTE zeros[KEY_SIZE] = {0};
+    saltpack::BYTE box[crypto_box_MACBYTES + KEY_SIZE];
+    saltpack::BYTE tails[2 * KEY_SIZE];
+    nonce[15] &= 0xfe;
+    cache->sharedKey(senderPublickey, senderSecretkey, recipientPublickey, shared);
+    int result = crypto_box_easy_afternm(box, zeros, sizeof(zeros), nonce, shared);
+    sodium_memzero(shared, sizeof(shared));
+    if (result != 0)
+        throw saltpack::SaltpackException("errors while computing the MAC key");
+
+    std::memcpy(tails, box + crypto_box_MACBYTES, KEY_SIZE);
+    sodium_memzero(box, sizeof(box));
+
+    nonce[15] |= 0x01;
+    zeroBoxTail(nonce, recipientPublickey, ephemeralSecretkey, tails + KEY_SIZE);
+
+    return hashTails(tails);
+}
+
+// first 32 bytes of HMAC-SHA512(SHA512(header hash || nonce || final flag || payload secretbox))
+void authenticator(const PObjects *objs, const saltpack::BYTE_ARRAY &macKey, const saltpack::BYTE *nonce,
+                   bool isFinal, const saltpack::BYTE *secretbox, size_t secretboxSize, saltpack::BYTE *out) {
+
+    saltpack::BYTE flag = isFinal ? 1 : 0;
+    saltpack::BYTE digest[crypto_hash_sha512_BYTES];
+    crypto_hash_sha512_state state;
+    crypto_hash_sha512_init(&state);
+    crypto_hash_sha512_update(&state, objs->headerHash.data(), objs->headerHash.size());
+    crypto_hash_sha512_update(&state, nonce, crypto_secretbox_NONCEBYTES);
+    crypto_hash_sha512_update(&state, &flag, 1);
+    crypto_hash_sha512_update(&state, secretbox, secretboxSize);
+    crypto_hash_sha512_final(&state, digest);
+
+    saltpack::BYTE mac[crypto_auth_hmacsha512_BYTES];
+    crypto_auth_hmacsha512(mac, digest, sizeof(digest), macKey.data());
+    std::memcpy(out, mac, KEY_SIZE);
+}
+
+/*
+ * The header is built in steps, so that the payload key box and the MAC key of every recipient, which are independent
+ * (three X25519 operations each), can be computed over ranges of recipients on the threads of a Java Executor:
+ * createHeader, sealPayloadKeys for every range, hashHeader, computeMacKeys for every range, finishHeader.
+ * The optional cache provides the key exchange between the long-term keys, not available for anonymous senders.
+ */
+PObjects *createHeader(const saltpack::BYTE_ARRAY &senderSecretkey, const std::list<saltpack::BYTE_ARRAY> &recipientList,
+                       bool visibleRecipients, RecipientKeyCache *cache) {
+
+    if (recipientList.empty())
+        throw saltpack::SaltpackException("no recipients provided");
+
+    for (const saltpack::BYTE_ARRAY &recipient: recipientList)
+        if (recipient.size() != crypto_box_PUBLICKEYBYTES)
+            throw saltpack::SaltpackException("wrong size for recipient public key");
+
+    auto *objs = new PObjects();
+    try {
+
+        objs->builder = new HeaderBuilder();
+        HeaderBuilder &builder = *objs->builder;
+        builder.recipients.assign(recipientList.begin(), recipientList.end());
+        builder.visibleRecipients = visibleRecipients;
+        builder.boxes.resize(builder.recipients.size());
+
+        crypto_box_keypair(builder.ephemeralPublickey, builder.ephemeralSecretkey);
+
+        // anonymous senders use the ephemeral key as long-term key
+        if (senderSecretkey.empty()) {
+
+            builder.cache = nullptr;
+            builder.senderSecretkey.assign(builder.ephemeralSecretkey,
+                                           builder.ephemeralSecretkey + sizeof(builder.ephemeralSecretkey));
+            std::memcpy(builder.senderPublickey, builder.ephemeralPublickey, sizeof(builder.senderPublickey));
+
+        } else {
+
+            builder.cache = cache;
+            builder.senderSecretkey = senderSecretkey;
+            crypto_scalarmult_base(builder.senderPublickey, senderSecretkey.data());
+        }
+
+        objs->payloadKey.resize(crypto_secretbox_KEYBYTES);
+        randombytes_buf(objs->payloadKey.data(), objs->payloadKey.size());
+
+        crypto_secretbox_easy(builder.senderBox, builder.senderPublickey, sizeof(builder.senderPublickey),
+                              (const saltpack::BYTE *) SENDER_KEY_NONCE, objs->payloadKey.data());
+
+        return objs;
+
+    } catch (...) {
+
+        deletePObjects(objs);
+        throw;
+    }
+}
+
+HeaderBuilder &getBuilder(const PObjects *objs, size_t from, size_t to) {
+
+    if (objs->builder == nullptr)
+        throw saltpack::SaltpackException("header already complete");
+
+    if (from > to || to > objs->builder->recipients.size())
+        throw saltpack::SaltpackException("invalid range of recipients");
+
+    return *objs->builder;
+}
+
+void sealPayloadKeys(PObjects *objs, size_t from, size_t to) {
+
+    HeaderBuilder &builder = getBuilder(objs, from, to);
+    for (size_t i = from; i < to; i++) {
+
+        saltpack::BYTE nonce[crypto_box_NONCEBYTES];
+        indexedNonce((const saltpack::BYTE *) RECIPIENT_NONCE_PREFIX, (uint64_t) i, nonce);
+
+        builder.boxes[i].resize(crypto_box_MACBYTES + crypto_secretbox_KEYBYTES);
+        if (crypto_box_easy(builder.boxes[i].data(), objs->payloadKey.data(), objs->payloadKey.size(), nonce,
+                            builder.recipients[i].data(), builder.ephemeralSecretkey) != 0)
+            throw saltpack::SaltpackException("errors while encrypting the payload key");
+    }
+}
+
+void hashHeader(PObjects *objs) {
+
+    HeaderBuilder &builder = getBuilder(objs, 0, 0);
+    size_t count = builder.recipients.size();
+    for (const saltpack::BYTE_ARRAY &box: builder.boxes)
+        if (box.empty())
+            throw saltpack::SaltpackException("payload key not sealed for every recipient");
+
+    PackWriter header;
+    header.data.reserve(128 + count * (crypto_box_PUBLICKEYBYTES + builder.boxes[0].size() + 5));
+    header.array(6);
+    header.str("saltpack");
+    header.array(2);
+    header.integer(2);
+    header.integer(0);
+    header.integer((unsigned int) saltpack::MODE_ENCRYPTION);
+    header.bin(builder.ephemeralPublickey, sizeof(builder.ephemeralPublickey));
+    header.bin(builder.senderBox, sizeof(builder.senderBox));
+    header.array(count);
+    for (size_t i = 0; i < count; i++) {
+
+        header.array(2);
+        if (builder.visibleRecipients)
+            header.bin(builder.recipients[i].data(), crypto_box_PUBLICKEYBYTES);
+        else
+            header.nil();
+        header.bin(builder.boxes[i].data(), builder.boxes[i].size());
+    }
+
+    objs->headerHash.resize(crypto_hash_sha512_BYTES);
+    crypto_hash_sha512(objs->headerHash.data(), header.data.data(), header.data.size());
+
+    PackWriter packet;
+    packet.bin(header.data.data(), header.data.size());
+    objs->header = std::move(packet.data);
+
+    // every slot is allocated before the ranges are computed concurrently
+    objs->macKeys.resize(count);
+}
+
+void computeMacKeys(PObjects *objs, size_t from, size_t to) {
+
+    HeaderBuilder &builder = getBuilder(objs, from, to);
+    if (objs->headerHash.empty())
+        throw saltpack::SaltpackException("header not hashed");
+
+    for (size_t i = from; i < to; i++) {
+
+        const saltpack::BYTE *recipient = builder.recipients[i].data();
+        objs->macKeys[i] = builder.cache != nullptr
+                           ? macKey(objs->headerHash, i, builder.cache, builder.senderPublickey,
+                                    builder.senderSecretkey.data(), recipient, builder.ephemeralSecretkey)
+                           : macKey(objs->headerHash, i, recipient, builder.senderSecretkey.data(), recipient,
+                                    builder.ephemeralSecretkey);
+    }
+}
+
+void finishHeader(PObjects *objs) {
+
+    getBuilder(objs, 0, 0);
+    for (const saltpack::BYTE_ARRAY &key: objs->macKeys)
+        if (key.empty())
+            throw saltpack::SaltpackException("MAC key not computed for every recipient");
+
+    deleteBuilder(objs);
+}
+
+saltpack::BYTE_ARRAY sealPacket(const PObjects *objs, uint64_t index, bool isFinal, const saltpack::BYTE *data,
+                                size_t size) {
+
+    if (objs->builder != nullptr)
+        throw saltpack::SaltpackException("header not complete");
+
+    saltpack::BYTE nonce[crypto_secretbox_NONCEBYTES];
+    indexedNonce((const saltpack::BYTE *) PAYLOAD_NONCE_PREFIX, index, nonce);
+
+    saltpack::BYTE_ARRAY secretbox(crypto_secretbox_MACBYTES + size);
+    crypto_secretbox_easy(secretbox.data(), data, size, nonce, objs->payloadKey.data());
+
+    PackWriter packet;
+    packet.data.reserve(secretbox.size() + 16 + objs->macKeys.size() * (KEY_SIZE + 2));
+    packet.array(3);
+    packet.boolean(isFinal);
+    packet.array(objs->macKeys.size());
+    for (const saltpack::BYTE_ARRAY &key: objs->macKeys) {
+
+        saltpack::BYTE mac[KEY_SIZE];
+        authenticator(objs, key, nonce, isFinal, secretbox.data(), secretbox.size(), mac);
+        packet.bin(mac, sizeof(mac));
+    }
+    packet.bin(secretbox.data(), secretbox.size());
+
+    return std::move(packet.data);
+}
+
+PObjects *openHeader(const saltpack::BYTE_ARRAY &packet, const saltpack::BYTE_ARRAY &recipientSecretkey) {
+
+    PackReader outer(packet.data(), packet.size());
+    std::pair<const saltpack::BYTE *, size_t> header = outer.raw();
+    outer.end();
+
+    PackReader reader(header.first, header.second);
+    if (reader.array() < 6)
+        throw saltpack::SaltpackException("wrong header length");
+
+    std::pair<const saltpack::BYTE *, size_t> format = reader.raw();
+    if (std::string((const char *) format.first, format.second) != "saltpack")
+        throw saltpack::SaltpackException("wrong format");
+
+    if (reader.array() < 2)
+        throw saltpack::SaltpackException("wrong version");
+    uint64_t major = reader.integer();
+    reader.integer();
+    if (major != 2)
+        throw saltpack::SaltpackException("version 2 message required");
+
+    if (reader.integer() != (uint64_t) saltpack::MODE_ENCRYPTION)
+        throw saltpack::SaltpackException("wrong mode");
+
+    std::pair<const saltpack::BYTE *, size_t> ephemeral = reader.raw();
+    if (ephemeral.second != crypto_box_PUBLICKEYBYTES)
+        throw saltpack::SaltpackException("wrong size for ephemeral public key");
+
+    std::pair<const saltpack::BYTE *, size_t> senderBox = reader.raw();
+    if (senderBox.second != crypto_box_PUBLICKEYBYTES + crypto_secretbox_MACBYTES)
+        throw saltpack::SaltpackException("wrong size for sender secretbox");
+
+    saltpack::BYTE recipientPublickey[crypto_box_PUBLICKEYBYTES];
+    crypto_scalarmult_base(recipientPublickey, recipientSecretkey.data());
+
+    auto *objs = new PObjects();
+    try {
+
+        objs->payloadKey.resize(crypto_secretbox_KEYBYTES);
+
+        bool found = false;
+        size_t recipients = reader.array();
+        objs->recipients = recipients;
+        for (size_t i = 0; i < recipients && !found; i++) {
+
+            if (reader.array() < 2)
+                throw saltpack::SaltpackException("wrong recipient length");
+
+            bool candidate = true;
+            if (!reader.nil()) {
+
+                std::pair<const saltpack::BYTE *, size_t> id = reader.raw();
+                candidate = id.second == sizeof(recipientPublickey)
+                            && std::memcmp(id.first, recipientPublickey, sizeof(recipientPublickey)) == 0;
+            }
+
+            std::pair<const saltpack::BYTE *, size_t> box = reader.raw();
+            if (!candidate || box.second != crypto_secretbox_KEYBYTES + crypto_box_MACBYTES)
+                continue;
+
+            saltpack::BYTE nonce[crypto_box_NONCEBYTES];
+            indexedNonce((const saltpack::BYTE *) RECIPIENT_NONCE_PREFIX, (uint64_t) i, nonce);
+            if (crypto_box_open_easy(objs->payloadKey.data(), box.first, box.second, nonce, ephemeral.first,
+                                     recipientSecretkey.data()) == 0) {
+
+                objs->recipientIndex = i;
+                found = true;
+            }
+        }
+
+        if (!found)
+            throw saltpack::SaltpackException("failed to find matching recipient");
+
+        objs->sender.resize(crypto_box_PUBLICKEYBYTES);
+        if (crypto_secretbox_open_easy(objs->sender.data(), senderBox.first, senderBox.second,
+                                       (const saltpack::BYTE *) SENDER_KEY_NONCE, objs->payloadKey.data()) != 0)
+            throw saltpack::SaltpackException("unable to decrypt sender public key");
+
+        objs->headerHash.resize(crypto_hash_sha512_BYTES);
+        crypto_hash_sha512(objs->headerHash.data(), header.first, header.second);
+
+        objs->macKeys.push_back(macKey(objs->headerHash, objs->recipientIndex, objs->sender.data(),
+                                       recipientSecretkey.data(), ephemeral.first, recipientSecretkey.data()));
+
+        return objs;
+
+    } catch (...) {
+
+        deletePObjects(objs);
+        throw;
+    }
+}
+
+saltpack::BYTE_ARRAY openPacket(const PObjects *objs, uint64_t index, const saltpack::BYTE_ARRAY &packet) {
+
+    PackReader reader(packet.data(), packet.size());
+    if (reader.array() < 3)
+        throw saltpack::SaltpackException("wrong payload packet length");
+
+    bool isFinal = reader.boolean();
+
+    std::pair<const saltpack::BYTE *, size_t> expected(nullptr, 0);
+    size_t authenticators = reader.array();
+    for (size_t i = 0; i < authenticators; i++) {
+
+        std::pair<const saltpack::BYTE *, size_t> item = reader.raw();
+        if (i == objs->recipientIndex)
+            expected = item;
+    }
+    if (expected.second != KEY_SIZE)
+        throw saltpack::SaltpackException("wrong authenticator");
+
+    std::pair<const saltpack::BYTE *, size_t> secretbox = reader.raw();
+    if (secretbox.second < crypto_secretbox_MACBYTES)
+        throw saltpack::SaltpackException("wrong size for payload secretbox");
+
+    saltpack::BYTE nonce[crypto_secretbox_NONCEBYTES];
+    indexedNonce((const saltpack::BYTE *) PAYLOAD_NONCE_PREFIX, index, nonce);
+
+    saltpack::BYTE mac[KEY_SIZE];
+    authenticator(objs, objs->macKeys.front(), nonce, isFinal, secretbox.first, secretbox.second, mac);
+    if (crypto_verify_32(mac, expected.first) != 0)
+        throw saltpack::SaltpackException("invalid authenticator");
+
+    saltpack::BYTE_ARRAY plaintext(secretbox.second - crypto_secretbox_MACBYTES);
+    if (crypto_secretbox_open_easy(plaintext.data(), secretbox.first, secretbox.second, nonce,
+                                   objs->payloadKey.data()) != 0)
+        throw saltpack::SaltpackException("unable to decrypt payload");
+
+    return plaintext;
+}
+
+jobject Java_com_gherynos_libsaltpack_EncryptedPayloads_header(JNIEnv *env, jclass cls, jobject senderSecretkeyA,
+                                                               jobjectArray recipients, jboolean visibleRecipients,
+                                                               jobject cacheA) {
+
+    saltpack::BYTE_ARRAY senderSecretkey;
+    try {
+
+        // null for anonymous senders
+        if (senderSecretkeyA != nullptr) {
+
+            senderSecretkey = copySecretkey(env, senderSecretkeyA);
+            if (senderSecretkey.size() != crypto_box_SECRETKEYBYTES)
+                throw saltpack::SaltpackException("wrong size for senderSecretkey");
+        }
+
+        // null when no cache is used
+        RecipientKeyCache *cache = nullptr;
+        if (cacheA != nullptr)
+            cache = (RecipientKeyCache *) env->GetDirectBufferAddress(cacheA);
+
+        PObjects *objs = createHeader(senderSecretkey, convertRecipients(env, recipients), (bool) visibleRecipients,
+                                      cache);
+        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+
+        return env->NewDirectByteBuffer((void *) objs, sizeof(PObjects));
+
+    } catch (...) {
+
+        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+void Java_com_gherynos_libsaltpack_EncryptedPayloads_sealPayloadKeys(JNIEnv *env, jclass cls, jobject ptr, jint from,
+                                                                      jint to) {
+
+    try {
+
+        sealPayloadKeys((PObjects *) env->GetDirectBufferAddress(ptr), (size_t) from, (size_t) to);
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+    }
+}
+
+void Java_com_gherynos_libsaltpack_EncryptedPayloads_hashHeader(JNIEnv *env, jclass cls, jobject ptr) {
+
+    try {
+
+        hashHeader((PObjects *) env->GetDirectBufferAddress(ptr));
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+    }
+}
+
+void Java_com_gherynos_libsaltpack_EncryptedPayloads_computeMacKeys(JNIEnv *env, jclass cls, jobject ptr, jint from,
+                                                                     jint to) {
+
+    try {
+
+        computeMacKeys((PObjects *) env->GetDirectBufferAddress(ptr), (size_t) from, (size_t) to);
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+    }
+}
+
+void Java_com_gherynos_libsaltpack_EncryptedPayloads_finishHeader(JNIEnv *env, jclass cls, jobject ptr) {
+
+    try {
+
+        finishHeader((PObjects *) env->GetDirectBufferAddress(ptr));
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+    }
+}
+
+jbyteArray Java_com_gherynos_libsaltpack_EncryptedPayloads_headerPacket(JNIEnv *env, jclass cls, jobject ptr) {
+
+    try {
+
+        auto *objs = (PObjects *) env->GetDirectBufferAddress(ptr);
+
+        return copyBytes(env, objs->header);
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jbyteArray Java_com_gherynos_libsaltpack_EncryptedPayloads_sealPacket(JNIEnv *env, jclass cls, jobject ptr,
+                                                                      jlong index, jboolean isFinal, jbyteArray dataA,
+                                                                      jint off, jint len) {
+
+    saltpack::BYTE_ARRAY data;
+    try {
+
+        auto *objs = (PObjects *) env->GetDirectBufferAddress(ptr);
+
+        data = copyBytes(env, dataA, off, len);
+        saltpack::BYTE_ARRAY packet = sealPacket(objs, (uint64_t) index, (bool) isFinal, data.data(), data.size());
+        sodium_memzero(data.data(), data.size());
+
+        return copyBytes(env, packet);
+
+    } catch (...) {
+
+        sodium_memzero(data.data(), data.size());
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jobject Java_com_gherynos_libsaltpack_EncryptedPayloads_openHeader(JNIEnv *env, jclass cls, jbyteArray headerA,
+                                                                   jobject recipientSecretkeyA) {
+
+    saltpack::BYTE_ARRAY recipientSecretkey;
+    try {
+
+        if (recipientSecretkeyA == nullptr)
+            throw saltpack::SaltpackException("null recipientSecretkey provided");
+
+        recipientSecretkey = copySecretkey(env, recipientSecretkeyA);
+        if (recipientSecretkey.size() != crypto_box_SECRETKEYBYTES)
+            throw saltpack::SaltpackException("wrong size for recipientSecretkey");
+
+        PObjects *objs = openHeader(copyBytes(env, headerA), recipientSecretkey);
+        sodium_memzero(recipientSecretkey.data(), recipientSecretkey.size());
+
+        return env->NewDirectByteBuffer((void *) objs, sizeof(PObjects));
+
+    } catch (...) {
+
+        sodium_memzero(recipientSecretkey.data(), recipientSecretkey.size());
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jbyteArray Java_com_gherynos_libsaltpack_EncryptedPayloads_openPacket(JNIEnv *env, jclass cls, jobject ptr,
+                                                                      jlong index, jbyteArray packetA) {
+
+    saltpack::BYTE_ARRAY plaintext;
+    try {
+
+        auto *objs = (PObjects *) env->GetDirectBufferAddress(ptr);
+
+        plaintext = openPacket(objs, (uint64_t) index, copyBytes(env, packetA));
+        jbyteArray out = copyBytes(env, plaintext);
+        sodium_memzero(plaintext.data(), plaintext.size());
+
+        return out;
+
+    } catch (...) {
+
+        sodium_memzero(plaintext.data(), plaintext.size());
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jbyteArray Java_com_gherynos_libsaltpack_EncryptedPayloads_sender(JNIEnv *env, jclass cls, jobject ptr) {
+
+    try {
+
+        auto *objs = (PObjects *) env->GetDirectBufferAddress(ptr);
+
+        return copyBytes(env, objs->sender);
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jlong Java_com_gherynos_libsaltpack_EncryptedPayloads_recipients(JNIEnv *env, jclass cls, jobject ptr) {
+
+    return (jlong) ((PObjects *) env->GetDirectBufferAddress(ptr))->recipients;
+}
+
+void Java_com_gherynos_libsaltpack_EncryptedPayloads_release(JNIEnv *env, jclass cls, jobject ptr) {
+
+    deletePObjects((PObjects *) env->GetDirectBufferAddress(ptr));
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+#include <jni.h>
+#include "com_gherynos_libsaltpack_Keyring.h"
+#include <saltpack.h>
+#include <common.h>
+
+void zero(std::unordered_map<std::string, saltpack::BYTE_ARRAY> &keys) {
+
+    for (auto &key: keys)
+        sodium_memzero(key.second.data(), key.second.size());
+
+    keys.clear();
+}
+
+void put(std::unordered_map<std::string, saltpack::BYTE_ARRAY> &keys, std::string index, saltpack::BYTE_ARRAY key) {
+
+    auto existing = keys.find(index);
+    if (existing != keys.end()) {
+
+        sodium_memzero(existing->second.data(), existing->second.size());
+        existing->second = std::move(key);
+
+    } else
+        keys.emplace(std::move(index), std::move(key));
+}
+
+jobject Java_com_gherynos_libsaltpack_Keyring_constructor(JNIEnv *env, jobject obj) {
+
+    return env->NewDirectByteBuffer((void *) new KObjects(), sizeof(KObjects));
+}
+
+void Java_com_gherynos_libsaltpack_Keyring_destructor(JNIEnv *env, jobject obj, jobject ptr) {
+
+    auto *objs = (KObjects *) env->GetDirectBufferAddress(ptr);
+    if (objs == nullptr)
+        return;
+
+    zero(objs->secretkeys);
+    zero(objs->symmetricKeys);
+
+    delete objs;
+}
+
+void Java_com_gherynos_libsaltpack_Keyring_addSecretkey(JNIEnv *env, jobject obj, jobject ptr,
+                                                         jobject secretkeyA) {
+
+    saltpack::BYTE_ARRAY secretkey;
+    try {
+
+        KObjects *objs = getKObjects(env, ptr);
+
+        secretkey = copySecretkey(env, secretkeyA);
+        if (secretkey.size() != crypto_box_SECRETKEYBYTES)
+            throw saltpack::SaltpackException("wrong size for secret key");
+
+        std::string publickey(crypto_box_PUBLICKEYBYTES, '\0');
+        crypto_scalarmult_base(reinterpret_cast<unsigned char *>(&publickey[0]), secretkey.data());
+
+        put(objs->secretkeys, std::move(publickey), std::move(secretkey));
+
+    } catch (...) {
+
+        sodium_memzero(secretkey.data(), secretkey.size());
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+    }
+}
+
+void Java_com_gherynos_libsaltpack_Keyring_addSymmetricKey(JNIEnv *env, jobject obj, jobject ptr,
+                                                            jbyteArray identifierA, jbyteArray keyA) {
+
+    saltpack::BYTE_ARRAY key;
+    try {
+
+        KObjects *objs = getKObjects(env, ptr);
+
+        saltpack::BYTE_ARRAY identifier = copyBytes(env, identifierA);
+        key = copyBytes(env, keyA);
+        if (key.size() != crypto_secretbox_KEYBYTES)
+            throw saltpack::SaltpackException("wrong size for symmetric key");
+
+        put(objs->symmetricKeys, std::string(identifier.begin(), identifier.end()), std::move(key));
+
+    } catch (...) {
+
+        sodium_memzero(key.data(), key.size());
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+    }
+}
@@ -17,30 +17,60 @@
 #include <jni.h>
 #include <iostream>
 #include <InputStreamWrapper.h>
+#include <OutputStreamWrapper.h>
+#include <MemoryInputStream.h>
+#include <PrefixedInputStream.h>
+#include <Msgpack.h>
 #include "com_gherynos_libsaltpack_MessageReader.h"
 #include <saltpack.h>
 #include <common.h>
+#include <algorithm>
+#include <cstring>
+#include <memory>
+#include <unordered_set>
+#include <vector>
+
+// libsaltpack reader flavours that can be created again when the instance is reset
+enum ReaderType {
+
+    NOT_RESETTABLE,
+    DECRYPTION,
+    VERIFICATION,
+    SIGNCRYPTION_DECRYPTION
+};
+
+// what is needed to create the libsaltpack reader again when the instance is reset
+struct ReaderKeys {
+
+    ReaderType type;
+    saltpack::BYTE_ARRAY recipientSecretkey;
+    std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY> symmetricKey;
+};
 
 struct RObjects {
 
     saltpack::ArmoredInputStream *ain;
     InputStreamWrapper *iw;
     InputStreamWrapper *mw;
+    PrefixedInputStream *pin;
     saltpack::MessageReader *mr;
     jobject inputStream;
     jobject messageIn;
+    jint bufferSize;
+    saltpack::BYTE_ARRAY pending;
+    size_t pendingOffset;
+    ReaderKeys keys;
 };
 
-jclass inputparameters;
-jmethodID mGetInputStream;
-jmethodID mIsArmored;
-jmethodID mGetApp;
-
 void deleteRObjects(JNIEnv *env, RObjects *objs) {
 
     if (objs == nullptr)
         return;
 
+    delete objs->mr;
+
+    delete objs->pin;
+
     delete objs->ain;
 
     if (objs->inputStream != nullptr)
@@ -53,49 +83,72 @@ void deleteRObjects(JNIEnv *env, RObjects *objs) {
 
     delete objs->mw;
 
+    sodium_memzero(objs->pending.data(), objs->pending.size());
+    sodium_memzero(objs->keys.recipientSecretkey.data(), objs->keys.recipientSecretkey.size());
+    sodium_memzero(objs->keys.symmetricKey.second.data(), objs->keys.symmetricKey.second.size());
+
     delete objs;
 }
 
-RObjects *populateInputStreams(JNIEnv *env, jobject inputParameters) {
+// (re)creates the input streams of objs, reusing the existing wrapper when possible
+void openInput(JNIEnv *env, RObjects *objs, jobject inputParameters) {
 
     if (inputParameters == nullptr)
         throw saltpack::SaltpackException("null input parameters provided");
 
-    if (inputparameters == nullptr) {
+    jint bufferSize = env->CallIntMethod(inputParameters, jniCache.ipGetBufferSize);
+    if (env->ExceptionCheck())
+        throw saltpack::SaltpackException("exception thrown while loading bufferSize");
+    if (bufferSize <= 0)
+        throw saltpack::SaltpackException("invalid buffer size");
+
+    jobject channel = env->CallObjectMethod(inputParameters, jniCache.ipGetChannel);
+    if (env->ExceptionCheck())
+        throw saltpack::SaltpackException("exception thrown while loading channel");
+
+    jobject source = channel;
+    if (channel == nullptr) {
 
-        inputparameters = loadClass(env, "com/gherynos/libsaltpack/InputParameters");
-        mGetInputStream = loadMethod(env, inputparameters, "getInputStream", "()Ljava/io/InputStream;");
-        mIsArmored = loadMethod(env, inputparameters, "isArmored", "()Z");
-        mGetApp = loadMethod(env, inputparameters, "getApp", "()Ljava/lang/String;");
+        source = env->CallObjectMethod(inputParameters, jniCache.ipGetInputStream);
+        if (env->ExceptionCheck())
+            throw saltpack::SaltpackException("exception thrown while loading input stream");
     }
 
-    auto *objs = new RObjects();
+    delete objs->pin;
+    objs->pin = nullptr;
 
-    objs->inputStream = env->NewGlobalRef(env->CallObjectMethod(inputParameters, mGetInputStream));
-    objs->iw = new InputStreamWrapper(env, objs->inputStream);
+    delete objs->ain;
+    objs->ain = nullptr;
 
-    bool armored = (bool) env->CallBooleanMethod(inputParameters, mIsArmored);
-    if (env->ExceptionCheck()) {
+    if (objs->inputStream != nullptr)
+        env->DeleteGlobalRef(objs->inputStream);
+    objs->inputStream = source == nullptr ? nullptr : env->NewGlobalRef(source);
+    env->DeleteLocalRef(source);
 
-        deleteRObjects(env, objs);
-        throw saltpack::SaltpackException("exception thrown while checking armored flag");
+    bool isChannel = channel != nullptr;
+    if (objs->iw != nullptr && objs->iw->accepts(bufferSize, isChannel))
+        objs->iw->reset(objs->inputStream);
+
+    else {
+
+        delete objs->iw;
+        objs->iw = new InputStreamWrapper(env, objs->inputStream, bufferSize, isChannel);
     }
-    if (armored) {
+    objs->bufferSize = bufferSize;
 
-        jobject oApp = env->CallObjectMethod(inputParameters, mGetApp);
-        if (env->ExceptionCheck()) {
+    bool armored = (bool) env->CallBooleanMethod(inputParameters, jniCache.ipIsArmored);
+    if (env->ExceptionCheck())
+        throw saltpack::SaltpackException("exception thrown while checking armored flag");
+    if (armored) {
 
-            deleteRObjects(env, objs);
+        jobject oApp = env->CallObjectMethod(inputParameters, jniCache.ipGetApp);
+        if (env->ExceptionCheck())
             throw saltpack::SaltpackException("exception thrown while checking application name");
-        }
         if (oApp != nullptr) {
 
             const char *appCStr = env->GetStringUTFChars((jstring) oApp, 0);
-            if (env->ExceptionCheck()) {
-
-                deleteRObjects(env, objs);
+            if (env->ExceptionCheck())
                 throw saltpack::SaltpackException("exception thrown while getting application name");
-            }
             std::string app(appCStr);
             env->ReleaseStringUTFChars((jstring) oApp, appCStr);
 
@@ -104,29 +157,72 @@ RObjects *populateInputStreams(JNIEnv *env, jobject inputParameters) {
         } else
             objs->ain = new saltpack::ArmoredInputStream(*objs->iw);
     }
+}
+
+RObjects *populateInputStreams(JNIEnv *env, jobject inputParameters) {
+
+    auto *objs = new RObjects();
+
+    try {
+
+        openInput(env, objs, inputParameters);
+
+    } catch (...) {
+
+        deleteRObjects(env, objs);
+        throw;
+    }
 
     return objs;
 }
 
-jobject Java_com_gherynos_libsaltpack_MessageReader_constructor__Lcom_gherynos_libsaltpack_InputParameters_2_3B(JNIEnv *env,
+saltpack::MessageReader *newReader(RObjects *objs) {
+
+    std::istream &in = objs->ain != nullptr ? (std::istream &) *objs->ain : (std::istream &) *objs->iw;
+    const ReaderKeys &keys = objs->keys;
+
+    switch (keys.type) {
+
+        case DECRYPTION:
+            return new saltpack::MessageReader(in, keys.recipientSecretkey);
+
+        case VERIFICATION:
+            return new saltpack::MessageReader(in);
+
+        case SIGNCRYPTION_DECRYPTION:
+            return new saltpack::MessageReader(in, keys.recipientSecretkey, keys.symmetricKey);
+
+        case NOT_RESETTABLE:
+            break;
+    }
+
+    throw saltpack::SaltpackException("reset not supported by this reader");
+}
+
+saltpack::MessageReader *getReader(RObjects *objs) {
+
+    if (objs->mr == nullptr)
+        throw saltpack::SaltpackException("reader not reset after a failure");
+
+    return objs->mr;
+}
+
+jobject Java_com_gherynos_libsaltpack_MessageReader_constructor__Lcom_gherynos_libsaltpack_InputParameters_2Ljava_lang_Object_2(JNIEnv *env,
                                                                                                             jobject obj,
                                                                                                             jobject in,
-                                                                                                            jbyteArray recipientSecretkeyA) {
+                                                                                                            jobject recipientSecretkeyA) {
 
     RObjects *objs = nullptr;
     saltpack::BYTE_ARRAY recipientSecretkey;
     try {
 
-        recipientSecretkey = copyBytes(env, recipientSecretkeyA);
+        recipientSecretkey = copySecretkey(env, recipientSecretkeyA);
 
         objs = populateInputStreams(env, in);
 
-        if (objs->ain == nullptr)
-            objs->mr = new saltpack::MessageReader(*objs->iw, recipientSecretkey);
-        else
-            objs->mr = new saltpack::MessageReader(*objs->ain, recipientSecretkey);
-
-        sodium_memzero(recipientSecretkey.data(), recipientSecretkey.size());
+        objs->keys.type = DECRYPTION;
+        objs->keys.recipientSecretkey = std::move(recipientSecretkey);
+        objs->mr = newReader(objs);
 
         return env->NewDirectByteBuffer((void*) objs, sizeof(RObjects));
 
@@ -162,10 +258,8 @@ jobject Java_com_gherynos_libsaltpack_MessageReader_constructor__Lcom_gherynos_l
 
         objs = populateInputStreams(env, in);
 
-        if (objs->ain == nullptr)
-            objs->mr = new saltpack::MessageReader(*objs->iw);
-        else
-            objs->mr = new saltpack::MessageReader(*objs->ain);
+        objs->keys.type = VERIFICATION;
+        objs->mr = newReader(objs);
 
         return env->NewDirectByteBuffer((void*) objs, sizeof(RObjects));
 
@@ -201,7 +295,7 @@ Java_com_gherynos_libsaltpack_MessageReader_constructor__Lcom_gherynos_libsaltpa
         objs = populateInputStreams(env, in);
 
         objs->messageIn = env->NewGlobalRef(msgIn);
-        objs->mw = new InputStreamWrapper(env, objs->messageIn);
+        objs->mw = new InputStreamWrapper(env, objs->messageIn, objs->bufferSize);
 
         if (objs->ain == nullptr)
             objs->mr = new saltpack::MessageReader(*objs->iw, *objs->mw);
@@ -233,10 +327,10 @@ Java_com_gherynos_libsaltpack_MessageReader_constructor__Lcom_gherynos_libsaltpa
 }
 
 jobject
-Java_com_gherynos_libsaltpack_MessageReader_constructor__Lcom_gherynos_libsaltpack_InputParameters_2_3B_3_3B(JNIEnv *env,
+Java_com_gherynos_libsaltpack_MessageReader_constructor__Lcom_gherynos_libsaltpack_InputParameters_2Ljava_lang_Object_2_3_3B(JNIEnv *env,
                                                                                                            jobject obj,
                                                                                                            jobject in,
-                                                                                                           jbyteArray recipientSecretkeyA,
+                                                                                                           jobject recipientSecretkeyA,
                                                                                                            jobjectArray keyA) {
 
     RObjects *objs = nullptr;
@@ -244,26 +338,290 @@ Java_com_gherynos_libsaltpack_MessageReader_constructor__Lcom_gherynos_libsaltpa
     std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY> key;
     try {
 
-        recipientSecretkey = copyBytes(env, recipientSecretkeyA);
+        recipientSecretkey = copySecretkey(env, recipientSecretkeyA);
         key = convertPair(env, keyA);
 
         objs = populateInputStreams(env, in);
 
-        if (objs->ain == nullptr)
-            objs->mr = new saltpack::MessageReader(*objs->iw, recipientSecretkey, key);
-        else
-            objs->mr = new saltpack::MessageReader(*objs->ain, recipientSecretkey, key);
+        objs->keys.type = SIGNCRYPTION_DECRYPTION;
+        objs->keys.recipientSecretkey = std::move(recipientSecretkey);
+        objs->keys.symmetricKey = std::move(key);
+        objs->mr = newReader(objs);
+
+        return env->NewDirectByteBuffer((void*) objs, sizeof(RObjects));
 
+    } catch (...) {
+
+        deleteRObjects(env, objs);
         sodium_memzero(recipientSecretkey.data(), recipientSecretkey.size());
         sodium_memzero(key.second.data(), key.second.size());
 
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+const size_t HEADER_CHUNK_SIZE = 64 * 1024;
+
+struct KeyCandidate {
+
+    const saltpack::BYTE_ARRAY *secretkey;
+    const std::string *identifier;
+    const saltpack::BYTE_ARRAY *symmetricKey;
+};
+
+std::vector<char> readHeader(std::istream &in) {
+
+    std::vector<char> header(1);
+    in.read(header.data(), 1);
+    if (in.gcount() != 1)
+        throw saltpack::SaltpackException("header not found");
+
+    size_t bytes;
+    switch ((unsigned char) header[0]) {
+
+        case 0xc4:
+            bytes = 1;
+            break;
+
+        case 0xc5:
+            bytes = 2;
+            break;
+
+        case 0xc6:
+            bytes = 4;
+            break;
+
+        default:
+            throw saltpack::SaltpackException("wrong header format");
+    }
+
+    header.resize(1 + bytes);
+    in.read(header.data() + 1, (std::streamsize) bytes);
+    if ((size_t) in.gcount() != bytes)
+        throw saltpack::SaltpackException("not enough data found to decode header (message truncated?)");
+
+    size_t size = 0;
+    for (size_t i = 0; i < bytes; i++)
+        size = (size << 8) | (unsigned char) header[1 + i];
+
+    // the declared size is not trusted: the buffer only grows with the data actually read
+    while (size > 0) {
+
+        size_t offset = header.size();
+        size_t chunk = std::min(size, HEADER_CHUNK_SIZE);
+        header.resize(offset + chunk);
+        in.read(header.data() + offset, (std::streamsize) chunk);
+        if ((size_t) in.gcount() != chunk)
+            throw saltpack::SaltpackException("not enough data found to decode header (message truncated?)");
+
+        size -= chunk;
+    }
+
+    return header;
+}
+
+saltpack::MessageReader *newReader(std::istream &in, int mode, const KeyCandidate &candidate) {
+
+    if (mode == saltpack::MODE_ENCRYPTION)
+        return new saltpack::MessageReader(in, *candidate.secretkey);
+
+    saltpack::BYTE_ARRAY secretkey;
+    std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY> symmetricKey;
+    if (candidate.secretkey != nullptr)
+        secretkey = *candidate.secretkey;
+    else
+        symmetricKey = std::make_pair(saltpack::BYTE_ARRAY(candidate.identifier->begin(), candidate.identifier->end()),
+                                      *candidate.symmetricKey);
+
+    saltpack::MessageReader *mr = nullptr;
+    try {
+
+        mr = new saltpack::MessageReader(in, secretkey, symmetricKey);
+
+    } catch (...) {
+
+        sodium_memzero(secretkey.data(), secretkey.size());
+        sodium_memzero(symmetricKey.second.data(), symmetricKey.second.size());
+        throw;
+    }
+
+    sodium_memzero(secretkey.data(), secretkey.size());
+    sodium_memzero(symmetricKey.second.data(), symmetricKey.second.size());
+
+    return mr;
+}
+
+// fields of a header, parsed without opening it
+struct HeaderFields {
+
+    int mode;
+    int version[2];
+    saltpack::BYTE_ARRAY sender;
+    std::vector<std::pair<bool, saltpack::BYTE_ARRAY>> recipients;
+};
+
+HeaderFields parseHeader(const std::vector<char> &header) {
+
+    PackReader outer(reinterpret_cast<const saltpack::BYTE *>(header.data()), header.size());
+    std::pair<const saltpack::BYTE *, size_t> inner = outer.raw();
+    outer.end();
+
+    PackReader reader(inner.first, inner.second);
+    if (reader.array() < 5)
+        throw saltpack::SaltpackException("wrong header format");
+
+    std::pair<const saltpack::BYTE *, size_t> format = reader.raw();
+    if (std::string(format.first, format.first + format.second) != "saltpack")
+        throw saltpack::SaltpackException("wrong format");
+
+    HeaderFields fields{};
+    size_t versionFields = reader.array();
+    for (size_t i = 0; i < versionFields; i++) {
+
+        uint64_t value = reader.integer();
+        if (i < 2)
+            fields.version[i] = (int) value;
+    }
+
+    fields.mode = (int) reader.integer();
+    if (fields.mode == saltpack::MODE_ATTACHED_SIGNATURE || fields.mode == saltpack::MODE_DETACHED_SIGNATURE) {
+
+        std::pair<const saltpack::BYTE *, size_t> publickey = reader.raw();
+        fields.sender.assign(publickey.first, publickey.first + publickey.second);
+
+    } else if (fields.mode == saltpack::MODE_ENCRYPTION || fields.mode == saltpack::MODE_SIGNCRYPTION) {
+
+        reader.raw(); // ephemeral public key
+        reader.raw(); // sender secretbox
+
+        size_t count = reader.array();
+        for (size_t i = 0; i < count; i++) {
+
+            if (reader.array() < 2)
+                throw saltpack::SaltpackException("wrong recipient format");
+
+            if (reader.nil())
+                fields.recipients.emplace_back(false, saltpack::BYTE_ARRAY());
+
+            else {
+
+                std::pair<const saltpack::BYTE *, size_t> id = reader.raw();
+                fields.recipients.emplace_back(true, saltpack::BYTE_ARRAY(id.first, id.first + id.second));
+            }
+
+            reader.raw(); // payload key box
+        }
+
+    } else
+        throw saltpack::SaltpackException("wrong mode");
+
+    return fields;
+}
+
+/*
+ * Lists the keys that can open the header: the indexed ones first, then the ones that have to be tried
+ * against the boxes of the anonymous recipients (or of the Curve25519 recipients, for signcryption).
+ */
+std::vector<KeyCandidate> findCandidates(const HeaderFields &fields, const KObjects *keys) {
+
+    if (fields.mode != saltpack::MODE_ENCRYPTION && fields.mode != saltpack::MODE_SIGNCRYPTION)
+        throw saltpack::SaltpackException("wrong mode");
+
+    std::vector<KeyCandidate> candidates;
+    std::unordered_set<const saltpack::BYTE_ARRAY *> indexed;
+    bool tryAll = false;
+
+    for (const auto &recipient: fields.recipients) {
+
+        if (!recipient.first) {
+
+            tryAll = true;
+            continue;
+        }
+
+        std::string index(recipient.second.begin(), recipient.second.end());
+        if (fields.mode == saltpack::MODE_ENCRYPTION) {
+
+            auto key = keys->secretkeys.find(index);
+            if (key != keys->secretkeys.end() && indexed.insert(&key->second).second)
+                candidates.push_back(KeyCandidate{&key->second, nullptr, nullptr});
+
+        } else {
+
+            auto key = keys->symmetricKeys.find(index);
+            if (key != keys->symmetricKeys.end() && indexed.insert(&key->second).second)
+                candidates.push_back(KeyCandidate{nullptr, &key->first, &key->second});
+            else
+                tryAll = true;
+        }
+    }
+
+    if (tryAll)
+        for (const auto &key: keys->secretkeys)
+            if (indexed.find(&key.second) == indexed.end())
+                candidates.push_back(KeyCandidate{&key.second, nullptr, nullptr});
+
+    return candidates;
+}
+
+jobject Java_com_gherynos_libsaltpack_MessageReader_keyringConstructor(JNIEnv *env, jclass cls, jobject in,
+                                                                       jobject keyring) {
+
+    RObjects *objs = nullptr;
+    try {
+
+        KObjects *keys = getKObjects(env, keyring);
+
+        objs = populateInputStreams(env, in);
+        std::istream *source = objs->ain;
+        if (source == nullptr)
+            source = objs->iw;
+
+        // the header is read from the source only once, the candidates are tried on the copy in memory
+        std::vector<char> header = readHeader(*source);
+
+        HeaderFields fields = parseHeader(header);
+        int mode = fields.mode;
+        const KeyCandidate *match = nullptr;
+        std::vector<KeyCandidate> candidates = findCandidates(fields, keys);
+        for (const KeyCandidate &candidate: candidates) {
+
+            MemoryInputStream trial(header.data(), header.size());
+            try {
+
+                delete newReader(trial, mode, candidate);
+                match = &candidate;
+                break;
+
+            } catch (const saltpack::SaltpackException &) {
+                // not a recipient
+            }
+        }
+        if (match == nullptr)
+            throw saltpack::SaltpackException("no matching key found in the keyring");
+
+        objs->pin = new PrefixedInputStream(std::move(header), *source);
+        objs->mr = newReader(*objs->pin, mode, *match);
+
         return env->NewDirectByteBuffer((void*) objs, sizeof(RObjects));
 
     } catch (...) {
 
         deleteRObjects(env, objs);
-        sodium_memzero(recipientSecretkey.data(), recipientSecretkey.size());
-        sodium_memzero(key.second.data(), key.second.size());
 
         std::exception_ptr ex = std::current_exception();
         if (ex)
@@ -283,20 +641,160 @@ Java_com_gherynos_libsaltpack_MessageReader_constructor__Lcom_gherynos_libsaltpa
     }
 }
 
-void Java_com_gherynos_libsaltpack_MessageReader_destructor(JNIEnv *env, jobject obj, jobject ptr) {
+jobject Java_com_gherynos_libsaltpack_MessageReader_peekHeaderNative(JNIEnv *env, jclass cls, jobject in,
+                                                                     jobject keyring) {
+
+    RObjects *objs = nullptr;
+    try {
+
+        KObjects *keys = keyring == nullptr ? nullptr : getKObjects(env, keyring);
+
+        objs = populateInputStreams(env, in);
+        std::istream *source = objs->ain;
+        if (source == nullptr)
+            source = objs->iw;
+
+        std::vector<char> header = readHeader(*source);
+        HeaderFields fields = parseHeader(header);
+
+        // only the header is opened, on the copy in memory
+        bool recipient = false;
+        if (keys != nullptr && fields.mode != saltpack::MODE_ATTACHED_SIGNATURE &&
+            fields.mode != saltpack::MODE_DETACHED_SIGNATURE) {
+
+            for (const KeyCandidate &candidate: findCandidates(fields, keys)) {
+
+                MemoryInputStream trial(header.data(), header.size());
+                try {
+
+                    std::unique_ptr<saltpack::MessageReader> mr(newReader(trial, fields.mode, candidate));
+                    fields.sender = mr->getSender();
+
+                    recipient = true;
+                    break;
+
+                } catch (const saltpack::SaltpackException &) {
+                    // not a recipient
+                }
+            }
+        }
+
+        deleteRObjects(env, objs);
+        objs = nullptr;
+
+        jobjectArray recipientsA = env->NewObjectArray((jsize) fields.recipients.size(), BYTE_ARRAY_CLASS(env), nullptr);
+        if (recipientsA == nullptr)
+            return nullptr; /* out of memory error thrown */
+        for (size_t i = 0; i < fields.recipients.size(); i++) {
+
+            if (!fields.recipients[i].first)
+                continue;
+
+            jbyteArray id = copyBytes(env, fields.recipients[i].second);
+            if (id == nullptr)
+                return nullptr; /* out of memory error thrown */
+            env->SetObjectArrayElement(recipientsA, (jsize) i, id);
+            env->DeleteLocalRef(id);
+        }
+
+        jbyteArray senderA = nullptr;
+        if (!fields.sender.empty()) {
+
+            senderA = copyBytes(env, fields.sender);
+            if (senderA == nullptr)
+                return nullptr; /* out of memory error thrown */
+        }
+
+        return env->NewObject(jniCache.saltpackHeader, jniCache.saltpackHeaderInit, (jint) fields.mode, (jint) fields.version[0],
+                              (jint) fields.version[1], recipientsA, senderA, (jboolean) recipient);
+
+    } catch (...) {
+
+        deleteRObjects(env, objs);
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+RObjects *getRObjects(JNIEnv *env, jobject ptr) {
 
     auto *objs = (RObjects *) env->GetDirectBufferAddress(ptr);
+    if (objs != nullptr) {
+
+        objs->iw->setEnv(env);
+        if (objs->mw != nullptr)
+            objs->mw->setEnv(env);
+    }
+
+    return objs;
+}
+
+void Java_com_gherynos_libsaltpack_MessageReader_destructor(JNIEnv *env, jobject obj, jobject ptr) {
+
+    auto *objs = getRObjects(env, ptr);
 
     deleteRObjects(env, objs);
 }
 
+void Java_com_gherynos_libsaltpack_MessageReader_reset(JNIEnv *env, jobject obj, jobject ptr, jobject in) {
+
+    try {
+
+        auto *objs = getRObjects(env, ptr);
+        if (objs->keys.type == NOT_RESETTABLE)
+            throw saltpack::SaltpackException("reset not supported by this reader");
+
+        // the libsaltpack reader refers to the streams, it goes first
+        delete objs->mr;
+        objs->mr = nullptr;
+
+        sodium_memzero(objs->pending.data(), objs->pending.size());
+        objs->pending.clear();
+        objs->pendingOffset = 0;
+
+        openInput(env, objs, in);
+
+        objs->mr = newReader(objs);
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+    }
+}
+
 jboolean Java_com_gherynos_libsaltpack_MessageReader_hasMoreBlocks(JNIEnv *env, jobject obj, jobject ptr) {
 
     try {
 
-        auto *objs = (RObjects *) env->GetDirectBufferAddress(ptr);
+        auto *objs = getRObjects(env, ptr);
 
-        return (jboolean) objs->mr->hasMoreBlocks();
+        return (jboolean) (objs->pendingOffset < objs->pending.size() || getReader(objs)->hasMoreBlocks());
 
     } catch (...) {
 
@@ -322,8 +820,18 @@ jbyteArray Java_com_gherynos_libsaltpack_MessageReader_getBlock(JNIEnv *env, job
 
     try {
 
-        auto *objs = (RObjects *) env->GetDirectBufferAddress(ptr);
-        saltpack::BYTE_ARRAY data = objs->mr->getBlock();
+        auto *objs = getRObjects(env, ptr);
+
+        // return the remainder of a block partially consumed by read()
+        if (objs->pendingOffset < objs->pending.size()) {
+
+            saltpack::BYTE_ARRAY data(objs->pending.begin() + (long) objs->pendingOffset, objs->pending.end());
+            objs->pendingOffset = objs->pending.size();
+
+            return copyBytes(env, data);
+        }
+
+        saltpack::BYTE_ARRAY data = getReader(objs)->getBlock();
 
         return copyBytes(env, data);
 
@@ -347,14 +855,164 @@ jbyteArray Java_com_gherynos_libsaltpack_MessageReader_getBlock(JNIEnv *env, job
     }
 }
 
+size_t nextPending(RObjects *objs) {
+
+    while (objs->pendingOffset == objs->pending.size()) {
+
+        if (!getReader(objs)->hasMoreBlocks())
+            return 0;
+
+        sodium_memzero(objs->pending.data(), objs->pending.size());
+        objs->pending = getReader(objs)->getBlock();
+        objs->pendingOffset = 0;
+    }
+
+    return objs->pending.size() - objs->pendingOffset;
+}
+
+jint Java_com_gherynos_libsaltpack_MessageReader_read(JNIEnv *env, jobject obj, jobject ptr, jbyteArray dst, jint off,
+                                                     jint len) {
+
+    try {
+
+        auto *objs = getRObjects(env, ptr);
+        if (len == 0)
+            return 0;
+
+        size_t available = nextPending(objs);
+        if (available == 0)
+            return -1;
+
+        auto count = (jint) std::min(available, (size_t) len);
+        env->SetByteArrayRegion(dst, off, count, (const jbyte *) objs->pending.data() + objs->pendingOffset);
+        if (env->ExceptionCheck())
+            throw saltpack::SaltpackException("errors while populating byte array");
+
+        objs->pendingOffset += (size_t) count;
+
+        return count;
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return -1;
+    }
+}
+
+jint Java_com_gherynos_libsaltpack_MessageReader_readDirect(JNIEnv *env, jobject obj, jobject ptr, jobject dst, jint off,
+                                                           jint len) {
+
+    try {
+
+        auto *objs = getRObjects(env, ptr);
+
+        auto *address = (saltpack::BYTE *) env->GetDirectBufferAddress(dst);
+        if (address == nullptr)
+            throw saltpack::SaltpackException("direct buffer address not available");
+
+        if (off < 0 || len < 0 || (jlong) off + len > env->GetDirectBufferCapacity(dst))
+            throw saltpack::SaltpackException("invalid buffer range");
+
+        if (len == 0)
+            return 0;
+
+        size_t available = nextPending(objs);
+        if (available == 0)
+            return -1;
+
+        size_t count = std::min(available, (size_t) len);
+        std::memcpy(address + off, objs->pending.data() + objs->pendingOffset, count);
+        objs->pendingOffset += count;
+
+        return (jint) count;
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return -1;
+    }
+}
+
+jlong Java_com_gherynos_libsaltpack_MessageReader_transferTo(JNIEnv *env, jobject obj, jobject ptr, jobject out,
+                                                            jint bufferSize) {
+
+    try {
+
+        auto *objs = getRObjects(env, ptr);
+        OutputStreamWrapper ow(env, out, bufferSize);
+
+        jlong total = 0;
+        size_t available;
+        while ((available = nextPending(objs)) > 0) {
+
+            ow.write((const char *) objs->pending.data() + objs->pendingOffset, (std::streamsize) available);
+            if (env->ExceptionCheck())
+                return -1; /* exception thrown by the output stream */
+
+            objs->pendingOffset += available;
+            total += (jlong) available;
+        }
+
+        ow.finalise();
+        if (env->ExceptionCheck())
+            return -1; /* exception thrown by the output stream */
+
+        return total;
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return -1;
+    }
+}
+
 jobjectArray Java_com_gherynos_libsaltpack_MessageReader_getRecipients(JNIEnv *env, jobject obj, jobject ptr) {
 
     try {
 
-        auto *objs = (RObjects *) env->GetDirectBufferAddress(ptr);
-        std::list<saltpack::BYTE_ARRAY> recipients = objs->mr->getRecipients();
+        auto *objs = getRObjects(env, ptr);
+        std::list<saltpack::BYTE_ARRAY> recipients = getReader(objs)->getRecipients();
 
-        jobjectArray out = env->NewObjectArray((jsize) recipients.size(), BYTE_ARRAY_CLASS(env), env->NewByteArray(1));
+        jobjectArray out = env->NewObjectArray((jsize) recipients.size(), BYTE_ARRAY_CLASS(env), nullptr);
         if (out == nullptr) {
 
             return nullptr; /* out of memory error thrown */
@@ -362,7 +1020,7 @@ jobjectArray Java_com_gherynos_libsaltpack_MessageReader_getRecipients(JNIEnv *e
 
         // convert recipients
         jsize idx = 0;
-        for (saltpack::BYTE_ARRAY recipient: recipients) {
+        for (const saltpack::BYTE_ARRAY &recipient: recipients) {
 
             jbyteArray rec = env->NewByteArray((jsize) recipient.size());
             if (rec == nullptr) {
@@ -405,8 +1063,8 @@ jbyteArray Java_com_gherynos_libsaltpack_MessageReader_getSender(JNIEnv *env, jo
 
     try {
 
-        auto *objs = (RObjects *) env->GetDirectBufferAddress(ptr);
-        saltpack::BYTE_ARRAY sender = objs->mr->getSender();
+        auto *objs = getRObjects(env, ptr);
+        saltpack::BYTE_ARRAY sender = getReader(objs)->getSender();
 
         return copyBytes(env, sender);
 
@@ -434,9 +1092,9 @@ jboolean Java_com_gherynos_libsaltpack_MessageReader_isIntentionallyAnonymous(JN
 
     try {
 
-        auto *objs = (RObjects *) env->GetDirectBufferAddress(ptr);
+        auto *objs = getRObjects(env, ptr);
 
-        return (jboolean) objs->mr->isIntentionallyAnonymous();
+        return (jboolean) getReader(objs)->isIntentionallyAnonymous();
 
     } catch (...) {
 
@@ -15,27 +15,46 @@
  */
 
 #include <jni.h>
+#include <InputStreamWrapper.h>
 #include <OutputStreamWrapper.h>
 #include "com_gherynos_libsaltpack_MessageWriter.h"
 #include <saltpack.h>
 #include <common.h>
 
+const size_t BLOCK_SIZE = 1024 * 1024;
+
+// libsaltpack writer flavours, one for each constructor of the Java class
+enum WriterType {
+
+    ENCRYPTION,
+    ENCRYPTION_DEFAULT_VISIBILITY,
+    ANONYMOUS_ENCRYPTION,
+    ANONYMOUS_ENCRYPTION_DEFAULT_VISIBILITY,
+    SIGNATURE,
+    SIGNCRYPTION,
+    ANONYMOUS_SIGNCRYPTION
+};
+
+// what is needed to create the libsaltpack writer again when the instance is reset
+struct WriterKeys {
+
+    WriterType type;
+    saltpack::BYTE_ARRAY senderSecretkey;
+    std::list<saltpack::BYTE_ARRAY> recipients;
+    std::list<std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY>> symmetricKeys;
+    bool flag; /* visible recipients or detached signature */
+};
+
 struct WObjects {
 
     saltpack::ArmoredOutputStream *aout;
     OutputStreamWrapper *ow;
     saltpack::MessageWriter *mw;
     jobject outputStream;
+    int mode;
+    WriterKeys keys;
 };
 
-jclass outputparameters;
-jmethodID omGetOutputStream;
-jmethodID omIsArmored;
-jmethodID omIntParamsPopulated;
-jmethodID omGetApp;
-jmethodID omGetLettersInWords;
-jmethodID omGetWordsInPhrase;
-
 void deleteWObjects(JNIEnv *env, WObjects *objs) {
 
     if (objs == nullptr)
@@ -50,118 +69,181 @@ void deleteWObjects(JNIEnv *env, WObjects *objs) {
 
     delete objs->mw;
 
+    sodium_memzero(objs->keys.senderSecretkey.data(), objs->keys.senderSecretkey.size());
+    for (std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY> &key: objs->keys.symmetricKeys)
+        sodium_memzero(key.second.data(), key.second.size());
+
     delete objs;
 }
 
-WObjects *populateOutputStreams(JNIEnv *env, jobject outputParameters, int mode) {
+// (re)creates the output streams of objs, reusing the existing wrapper when possible
+void openOutput(JNIEnv *env, WObjects *objs, jobject outputParameters) {
 
     if (outputParameters == nullptr)
         throw saltpack::SaltpackException("null output parameters provided");
 
-    if (outputparameters == nullptr) {
+    jint bufferSize = env->CallIntMethod(outputParameters, jniCache.opGetBufferSize);
+    if (env->ExceptionCheck())
+        throw saltpack::SaltpackException("exception thrown while loading bufferSize");
+    if (bufferSize <= 0)
+        throw saltpack::SaltpackException("invalid buffer size");
+
+    jobject channel = env->CallObjectMethod(outputParameters, jniCache.opGetChannel);
+    if (env->ExceptionCheck())
+        throw saltpack::SaltpackException("exception thrown while loading channel");
+
+    jobject destination = channel;
+    if (channel == nullptr) {
 
-        outputparameters = loadClass(env, "com/gherynos/libsaltpack/OutputParameters");
-        omGetOutputStream = loadMethod(env, outputparameters, "getOutputStream", "()Ljava/io/OutputStream;");
-        omIsArmored = loadMethod(env, outputparameters, "isArmored", "()Z");
-        omIntParamsPopulated = loadMethod(env, outputparameters, "intParamsPopulated", "()Z");
-        omGetApp = loadMethod(env, outputparameters, "getApp", "()Ljava/lang/String;");
-        omGetLettersInWords = loadMethod(env, outputparameters, "getLettersInWords", "()I");
-        omGetWordsInPhrase = loadMethod(env, outputparameters, "getWordsInPhrase", "()I");
+        destination = env->CallObjectMethod(outputParameters, jniCache.opGetOutputStream);
+        if (env->ExceptionCheck())
+            throw saltpack::SaltpackException("exception thrown while loading output stream");
     }
 
-    auto *objs = new WObjects();
+    // only the parameters created by SaltpackEncoder keep the data in memory
+    if (destination == nullptr) {
 
-    objs->outputStream = env->NewGlobalRef(env->CallObjectMethod(outputParameters, omGetOutputStream));
-    objs->ow = new OutputStreamWrapper(env, objs->outputStream);
+        bool memory = (bool) env->CallBooleanMethod(outputParameters, jniCache.opIsMemory);
+        if (env->ExceptionCheck())
+            throw saltpack::SaltpackException("exception thrown while checking memory flag");
+        if (!memory)
+            throw saltpack::SaltpackException("null output stream provided");
+    }
 
-    bool armored = (bool) env->CallBooleanMethod(outputParameters, omIsArmored);
-    if (env->ExceptionCheck()) {
+    delete objs->aout;
+    objs->aout = nullptr;
 
-        deleteWObjects(env, objs);
-        throw saltpack::SaltpackException("exception thrown while checking armored flag");
+    if (objs->outputStream != nullptr)
+        env->DeleteGlobalRef(objs->outputStream);
+    objs->outputStream = destination == nullptr ? nullptr : env->NewGlobalRef(destination);
+    env->DeleteLocalRef(destination);
+
+    bool isChannel = channel != nullptr;
+    if (objs->ow != nullptr && objs->ow->accepts(objs->outputStream, bufferSize, isChannel))
+        objs->ow->reset(objs->outputStream);
+
+    else {
+
+        delete objs->ow;
+        objs->ow = new OutputStreamWrapper(env, objs->outputStream, bufferSize, isChannel);
     }
-    if (armored) {
 
-        jobject oApp = env->CallObjectMethod(outputParameters, omGetApp);
-        if (env->ExceptionCheck()) {
+    bool armored = (bool) env->CallBooleanMethod(outputParameters, jniCache.opIsArmored);
+    if (env->ExceptionCheck())
+        throw saltpack::SaltpackException("exception thrown while checking armored flag");
+    if (armored) {
 
-            deleteWObjects(env, objs);
+        jobject oApp = env->CallObjectMethod(outputParameters, jniCache.opGetApp);
+        if (env->ExceptionCheck())
             throw saltpack::SaltpackException("exception thrown while checking application name");
-        }
-
-        bool intp = (bool) env->CallBooleanMethod(outputParameters, omIntParamsPopulated);
-        if (env->ExceptionCheck()) {
 
-            deleteWObjects(env, objs);
+        bool intp = (bool) env->CallBooleanMethod(outputParameters, jniCache.opIntParamsPopulated);
+        if (env->ExceptionCheck())
             throw saltpack::SaltpackException("exception thrown while checking int params flag");
-        }
         int lettersInWords = -1;
         int wordsInPhrase = -1;
         if (intp) {
 
-            lettersInWords = (int) env->CallIntMethod(outputParameters, omGetLettersInWords);
-            if (env->ExceptionCheck()) {
-
-                deleteWObjects(env, objs);
+            lettersInWords = (int) env->CallIntMethod(outputParameters, jniCache.opGetLettersInWords);
+            if (env->ExceptionCheck())
                 throw saltpack::SaltpackException("exception thrown while loading lettersInWords");
-            }
-
-            wordsInPhrase = (int) env->CallIntMethod(outputParameters, omGetWordsInPhrase);
-            if (env->ExceptionCheck()) {
 
-                deleteWObjects(env, objs);
+            wordsInPhrase = (int) env->CallIntMethod(outputParameters, jniCache.opGetWordsInPhrase);
+            if (env->ExceptionCheck())
                 throw saltpack::SaltpackException("exception thrown while loading wordsInPhrase");
-            }
         }
 
         if (oApp != nullptr) {
 
             const char *appCStr = env->GetStringUTFChars((jstring) oApp, 0);
-            if (env->ExceptionCheck()) {
-
-                deleteWObjects(env, objs);
+            if (env->ExceptionCheck())
                 throw saltpack::SaltpackException("exception thrown while getting application name");
-            }
             std::string app(appCStr);
             env->ReleaseStringUTFChars((jstring) oApp, appCStr);
 
             if (intp)
-                objs->aout = new saltpack::ArmoredOutputStream(*objs->ow, app, mode, lettersInWords, wordsInPhrase);
+                objs->aout = new saltpack::ArmoredOutputStream(*objs->ow, app, objs->mode, lettersInWords,
+                                                               wordsInPhrase);
             else
-                objs->aout = new saltpack::ArmoredOutputStream(*objs->ow, app, mode);
+                objs->aout = new saltpack::ArmoredOutputStream(*objs->ow, app, objs->mode);
 
         } else {
 
             if (intp)
-                objs->aout = new saltpack::ArmoredOutputStream(*objs->ow, mode, lettersInWords, wordsInPhrase);
+                objs->aout = new saltpack::ArmoredOutputStream(*objs->ow, objs->mode, lettersInWords, wordsInPhrase);
             else
-                objs->aout = new saltpack::ArmoredOutputStream(*objs->ow, mode);
+                objs->aout = new saltpack::ArmoredOutputStream(*objs->ow, objs->mode);
         }
     }
+}
+
+WObjects *populateOutputStreams(JNIEnv *env, jobject outputParameters, int mode) {
+
+    auto *objs = new WObjects();
+    objs->mode = mode;
+
+    try {
+
+        openOutput(env, objs, outputParameters);
+
+    } catch (...) {
+
+        deleteWObjects(env, objs);
+        throw;
+    }
 
     return objs;
 }
 
-jobject Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpack_OutputParameters_2_3B_3_3BZ(
-        JNIEnv *env, jobject obj, jobject op, jbyteArray senderSecretkeyA, jobjectArray recipients,
+saltpack::MessageWriter *newWriter(WObjects *objs) {
+
+    std::ostream &out = objs->aout != nullptr ? (std::ostream &) *objs->aout : (std::ostream &) *objs->ow;
+    const WriterKeys &keys = objs->keys;
+
+    switch (keys.type) {
+
+        case ENCRYPTION:
+            return new saltpack::MessageWriter(out, keys.senderSecretkey, keys.recipients, keys.flag);
+
+        case ENCRYPTION_DEFAULT_VISIBILITY:
+            return new saltpack::MessageWriter(out, keys.senderSecretkey, keys.recipients);
+
+        case ANONYMOUS_ENCRYPTION:
+            return new saltpack::MessageWriter(out, keys.recipients, keys.flag);
+
+        case ANONYMOUS_ENCRYPTION_DEFAULT_VISIBILITY:
+            return new saltpack::MessageWriter(out, keys.recipients);
+
+        case SIGNATURE:
+            return new saltpack::MessageWriter(out, keys.senderSecretkey, keys.flag);
+
+        case SIGNCRYPTION:
+            return new saltpack::MessageWriter(out, keys.senderSecretkey, keys.recipients, keys.symmetricKeys);
+
+        case ANONYMOUS_SIGNCRYPTION:
+            return new saltpack::MessageWriter(out, keys.recipients, keys.symmetricKeys);
+    }
+
+    throw saltpack::SaltpackException("unknown writer type");
+}
+
+jobject Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpack_OutputParameters_2Ljava_lang_Object_2_3_3BZ(
+        JNIEnv *env, jobject obj, jobject op, jobject senderSecretkeyA, jobjectArray recipients,
         jboolean visibleRecipients) {
 
     WObjects *objs = nullptr;
     saltpack::BYTE_ARRAY senderSecretkey;
     try {
 
-        senderSecretkey = copyBytes(env, senderSecretkeyA);
+        senderSecretkey = copySecretkey(env, senderSecretkeyA);
 
         objs = populateOutputStreams(env, op, saltpack::MODE_ENCRYPTION);
 
-        if (objs->aout == nullptr)
-            objs->mw = new saltpack::MessageWriter(*objs->ow, senderSecretkey, convertRecipients(env, recipients),
-                                                   (bool) visibleRecipients);
-        else
-            objs->mw = new saltpack::MessageWriter(*objs->aout, senderSecretkey, convertRecipients(env, recipients),
-                                                   (bool) visibleRecipients);
-
-        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+        objs->keys.type = ENCRYPTION;
+        objs->keys.senderSecretkey = std::move(senderSecretkey);
+        objs->keys.recipients = convertRecipients(env, recipients);
+        objs->keys.flag = (bool) visibleRecipients;
+        objs->mw = newWriter(objs);
 
     } catch (...) {
 
@@ -189,26 +271,24 @@ jobject Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_l
 }
 
 jobject
-Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpack_OutputParameters_2_3B_3_3B(JNIEnv *env,
+Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpack_OutputParameters_2Ljava_lang_Object_2_3_3B(JNIEnv *env,
                                                                                                             jobject obj,
                                                                                                             jobject op,
-                                                                                                            jbyteArray senderSecretkeyA,
+                                                                                                            jobject senderSecretkeyA,
                                                                                                             jobjectArray recipients) {
 
     WObjects *objs = nullptr;
     saltpack::BYTE_ARRAY senderSecretkey;
     try {
 
-        senderSecretkey = copyBytes(env, senderSecretkeyA);
+        senderSecretkey = copySecretkey(env, senderSecretkeyA);
 
         objs = populateOutputStreams(env, op, saltpack::MODE_ENCRYPTION);
 
-        if (objs->aout == nullptr)
-            objs->mw = new saltpack::MessageWriter(*objs->ow, senderSecretkey, convertRecipients(env, recipients));
-        else
-            objs->mw = new saltpack::MessageWriter(*objs->aout, senderSecretkey, convertRecipients(env, recipients));
-
-        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+        objs->keys.type = ENCRYPTION_DEFAULT_VISIBILITY;
+        objs->keys.senderSecretkey = std::move(senderSecretkey);
+        objs->keys.recipients = convertRecipients(env, recipients);
+        objs->mw = newWriter(objs);
 
     } catch (...) {
 
@@ -247,12 +327,10 @@ Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpa
 
         objs = populateOutputStreams(env, op, saltpack::MODE_ENCRYPTION);
 
-        if (objs->aout == nullptr)
-            objs->mw = new saltpack::MessageWriter(*objs->ow, convertRecipients(env, recipients),
-                                                   (bool) visibleRecipients);
-        else
-            objs->mw = new saltpack::MessageWriter(*objs->aout, convertRecipients(env, recipients),
-                                                   (bool) visibleRecipients);
+        objs->keys.type = ANONYMOUS_ENCRYPTION;
+        objs->keys.recipients = convertRecipients(env, recipients);
+        objs->keys.flag = (bool) visibleRecipients;
+        objs->mw = newWriter(objs);
 
     } catch (...) {
 
@@ -289,10 +367,9 @@ Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpa
 
         objs = populateOutputStreams(env, op, saltpack::MODE_ENCRYPTION);
 
-        if (objs->aout == nullptr)
-            objs->mw = new saltpack::MessageWriter(*objs->ow, convertRecipients(env, recipients));
-        else
-            objs->mw = new saltpack::MessageWriter(*objs->aout, convertRecipients(env, recipients));
+        objs->keys.type = ANONYMOUS_ENCRYPTION_DEFAULT_VISIBILITY;
+        objs->keys.recipients = convertRecipients(env, recipients);
+        objs->mw = newWriter(objs);
 
     } catch (...) {
 
@@ -319,28 +396,26 @@ Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpa
 }
 
 jobject
-Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpack_OutputParameters_2_3BZ(JNIEnv *env,
+Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpack_OutputParameters_2Ljava_lang_Object_2Z(JNIEnv *env,
                                                                                                         jobject obj,
                                                                                                         jobject op,
-                                                                                                        jbyteArray senderSecretkeyA,
+                                                                                                        jobject senderSecretkeyA,
                                                                                                         jboolean detatchedSignature) {
 
     WObjects *objs = nullptr;
     saltpack::BYTE_ARRAY senderSecretkey;
     try {
 
-        senderSecretkey = copyBytes(env, senderSecretkeyA);
+        senderSecretkey = copySecretkey(env, senderSecretkeyA);
 
         bool ds = (bool) detatchedSignature;
         objs = populateOutputStreams(env, op,
                                      ds ? saltpack::MODE_DETACHED_SIGNATURE : saltpack::MODE_ATTACHED_SIGNATURE);
 
-        if (objs->aout == nullptr)
-            objs->mw = new saltpack::MessageWriter(*objs->ow, senderSecretkey, ds);
-        else
-            objs->mw = new saltpack::MessageWriter(*objs->aout, senderSecretkey, ds);
-
-        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+        objs->keys.type = SIGNATURE;
+        objs->keys.senderSecretkey = std::move(senderSecretkey);
+        objs->keys.flag = ds;
+        objs->mw = newWriter(objs);
 
     } catch (...) {
 
@@ -368,34 +443,30 @@ Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpa
 }
 
 jobject
-Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpack_OutputParameters_2_3B_3_3B_3_3_3B(
-        JNIEnv *env, jobject obj, jobject op, jbyteArray senderSecretkeyA, jobjectArray recipients, jobjectArray keysA) {
+Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpack_OutputParameters_2Ljava_lang_Object_2_3_3B_3_3_3B(
+        JNIEnv *env, jobject obj, jobject op, jobject senderSecretkeyA, jobjectArray recipients, jobjectArray keysA) {
 
     WObjects *objs = nullptr;
     saltpack::BYTE_ARRAY senderSecretkey;
     std::list<std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY>> keys;
     try {
 
-        senderSecretkey = copyBytes(env, senderSecretkeyA);
+        senderSecretkey = copySecretkey(env, senderSecretkeyA);
         keys = convertKeys(env, keysA);
 
         objs = populateOutputStreams(env, op, saltpack::MODE_ENCRYPTION);
 
-        if (objs->aout == nullptr)
-            objs->mw = new saltpack::MessageWriter(*objs->ow, senderSecretkey, convertRecipients(env, recipients), keys);
-        else
-            objs->mw = new saltpack::MessageWriter(*objs->aout, senderSecretkey, convertRecipients(env, recipients), keys);
-
-        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
-        for (std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY> key: keys)
-            sodium_memzero(key.second.data(), key.second.size());
+        objs->keys.type = SIGNCRYPTION;
+        objs->keys.senderSecretkey = std::move(senderSecretkey);
+        objs->keys.recipients = convertRecipients(env, recipients);
+        objs->keys.symmetricKeys = std::move(keys);
+        objs->mw = newWriter(objs);
 
     } catch (...) {
 
-
         deleteWObjects(env, objs);
         sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
-        for (std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY> key: keys)
+        for (std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY> &key: keys)
             sodium_memzero(key.second.data(), key.second.size());
 
         std::exception_ptr ex = std::current_exception();
@@ -429,18 +500,15 @@ jobject Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_l
 
         objs = populateOutputStreams(env, op, saltpack::MODE_ENCRYPTION);
 
-        if (objs->aout == nullptr)
-            objs->mw = new saltpack::MessageWriter(*objs->ow, convertRecipients(env, recipients), keys);
-        else
-            objs->mw = new saltpack::MessageWriter(*objs->aout, convertRecipients(env, recipients), keys);
-
-        for (std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY> key: keys)
-            sodium_memzero(key.second.data(), key.second.size());
+        objs->keys.type = ANONYMOUS_SIGNCRYPTION;
+        objs->keys.recipients = convertRecipients(env, recipients);
+        objs->keys.symmetricKeys = std::move(keys);
+        objs->mw = newWriter(objs);
 
     } catch (...) {
 
         deleteWObjects(env, objs);
-        for (std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY> key: keys)
+        for (std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY> &key: keys)
             sodium_memzero(key.second.data(), key.second.size());
 
         std::exception_ptr ex = std::current_exception();
@@ -463,32 +531,211 @@ jobject Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_l
     return env->NewDirectByteBuffer((void*) objs, sizeof(WObjects));
 }
 
-void Java_com_gherynos_libsaltpack_MessageWriter_destructor(JNIEnv *env, jobject obj, jobject ptr) {
+WObjects *getWObjects(JNIEnv *env, jobject ptr) {
 
     auto *objs = (WObjects *) env->GetDirectBufferAddress(ptr);
+    if (objs != nullptr)
+        objs->ow->setEnv(env);
+
+    return objs;
+}
+
+void writeBlock(WObjects *objs, saltpack::BYTE_ARRAY data, bool isFinal) {
+
+    if (objs->mw == nullptr)
+        throw saltpack::SaltpackException("writer not reset after a failure");
+
+    objs->mw->addBlock(std::move(data), isFinal);
+
+    if (isFinal) {
+
+        if (objs->aout != nullptr)
+            objs->aout->finalise();
+
+        objs->ow->finalise();
+    }
+}
+
+void Java_com_gherynos_libsaltpack_MessageWriter_destructor(JNIEnv *env, jobject obj, jobject ptr) {
+
+    auto *objs = getWObjects(env, ptr);
 
     deleteWObjects(env, objs);
 }
 
+void Java_com_gherynos_libsaltpack_MessageWriter_reset(JNIEnv *env, jobject obj, jobject ptr, jobject op) {
+
+    try {
+
+        auto *objs = getWObjects(env, ptr);
+
+        // the libsaltpack writer refers to the streams, it goes first
+        delete objs->mw;
+        objs->mw = nullptr;
+
+        openOutput(env, objs, op);
+
+        objs->mw = newWriter(objs);
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+    }
+}
+
 void Java_com_gherynos_libsaltpack_MessageWriter_addBlock(JNIEnv *env, jobject obj, jobject ptr, jbyteArray dataA,
         jint off, jint len, jboolean isFinal) {
 
     try {
 
-        auto *objs = (WObjects *) env->GetDirectBufferAddress(ptr);
+        auto *objs = getWObjects(env, ptr);
 
         saltpack::BYTE_ARRAY data = copyBytes(env, dataA, off, len);
 
-        objs->mw->addBlock(data, isFinal);
+        writeBlock(objs, std::move(data), (bool) isFinal);
 
-        if (isFinal) {
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
 
-            if (objs->aout != nullptr)
-                objs->aout->finalise();
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+    }
+}
+
+void Java_com_gherynos_libsaltpack_MessageWriter_addBlockDirect(JNIEnv *env, jobject obj, jobject ptr, jobject src,
+        jint off, jint len, jboolean isFinal) {
+
+    try {
+
+        auto *objs = getWObjects(env, ptr);
+
+        auto *address = (saltpack::BYTE *) env->GetDirectBufferAddress(src);
+        if (address == nullptr)
+            throw saltpack::SaltpackException("direct buffer address not available");
+
+        if (off < 0 || len < 0 || (jlong) off + len > env->GetDirectBufferCapacity(src))
+            throw saltpack::SaltpackException("invalid buffer range");
+
+        writeBlock(objs, saltpack::BYTE_ARRAY(address + off, address + off + len), (bool) isFinal);
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
 
-            objs->ow->finalise();
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+    }
+}
+
+jlong Java_com_gherynos_libsaltpack_MessageWriter_transferFrom(JNIEnv *env, jobject obj, jobject ptr, jobject in,
+                                                              jint bufferSize) {
+
+    try {
+
+        auto *objs = getWObjects(env, ptr);
+        InputStreamWrapper iw(env, in, bufferSize);
+
+        // read one block ahead to know which one is the final
+        saltpack::BYTE_ARRAY current(BLOCK_SIZE);
+        iw.read((char *) current.data(), (std::streamsize) BLOCK_SIZE);
+        if (env->ExceptionCheck())
+            return -1; /* exception thrown by the input stream */
+        current.resize((size_t) iw.gcount());
+
+        jlong total = 0;
+        while (true) {
+
+            saltpack::BYTE_ARRAY next(BLOCK_SIZE);
+            iw.read((char *) next.data(), (std::streamsize) BLOCK_SIZE);
+            if (env->ExceptionCheck())
+                return -1; /* exception thrown by the input stream */
+            next.resize((size_t) iw.gcount());
+
+            bool isFinal = next.empty();
+            total += (jlong) current.size();
+
+            writeBlock(objs, std::move(current), isFinal);
+            if (env->ExceptionCheck())
+                return -1; /* exception thrown by the output stream */
+
+            if (isFinal)
+                break;
+
+            current = std::move(next);
         }
 
+        return total;
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return -1;
+    }
+}
+
+jbyteArray Java_com_gherynos_libsaltpack_MessageWriter_drain(JNIEnv *env, jobject obj, jobject ptr) {
+
+    try {
+
+        auto *objs = getWObjects(env, ptr);
+        if (objs->outputStream != nullptr)
+            throw saltpack::SaltpackException("output not kept in memory");
+
+        std::vector<char> out;
+        objs->ow->drain(out);
+
+        jbyteArray data = env->NewByteArray((jsize) out.size());
+        if (data == nullptr)
+            return nullptr; /* out of memory error thrown */
+
+        env->SetByteArrayRegion(data, 0, (jsize) out.size(), (const jbyte *) out.data());
+
+        return data;
+
     } catch (...) {
 
         std::exception_ptr ex = std::current_exception();
@@ -504,5 +751,7 @@ void Java_com_gherynos_libsaltpack_MessageWriter_addBlock(JNIEnv *env, jobject o
 
         else
             env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
     }
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+#include <jni.h>
+#include "com_gherynos_libsaltpack_MsgpackFramer.h"
+#include <saltpack.h>
+#include <common.h>
+#include <Msgpack.h>
+#include <cstdint>
+
+jlongArray Java_com_gherynos_libsaltpack_MsgpackFramer_frame(JNIEnv *env, jclass cls, jbyteArray dataA, jint len) {
+
+    try {
+
+        if (dataA == nullptr)
+            throw saltpack::SaltpackException("null byte array provided");
+
+        if (len < 0 || len > env->GetArrayLength(dataA))
+            throw saltpack::SaltpackException("invalid buffer range");
+
+        auto *data = (const saltpack::BYTE *) env->GetPrimitiveArrayCritical(dataA, nullptr);
+        if (data == nullptr)
+            return nullptr; /* out of memory error thrown */
+
+        size_t size;
+        uint64_t lastSize = 0;
+        try {
+
+            size = msgpackObjectSize(data, (size_t) len, lastSize);
+
+        } catch (...) {
+
+            env->ReleasePrimitiveArrayCritical(dataA, (void *) data, JNI_ABORT);
+            throw;
+        }
+        env->ReleasePrimitiveArrayCritical(dataA, (void *) data, JNI_ABORT);
+
+        if (size == 0)
+            return nullptr;
+
+        jlong values[2] = {(jlong) size, (jlong) lastSize};
+        jlongArray out = env->NewLongArray(2);
+        if (out == nullptr)
+            return nullptr; /* out of memory error thrown */
+
+        env->SetLongArrayRegion(out, 0, 2, values);
+
+        return out;
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
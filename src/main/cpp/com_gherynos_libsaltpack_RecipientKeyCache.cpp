@@ -0,0 +1,78 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+#include <jni.h>
+#include "com_gherynos_libsaltpack_RecipientKeyCache.h"
+#include <saltpack.h>
+#include <common.h>
+#include <RecipientKeyCache.h>
+
+jobject Java_com_gherynos_libsaltpack_RecipientKeyCache_constructor(JNIEnv *env, jobject obj, jint maxEntries) {
+
+    try {
+
+        if (maxEntries <= 0)
+            throw saltpack::SaltpackException("invalid max entries");
+
+        auto *cache = new RecipientKeyCache((size_t) maxEntries);
+
+        return env->NewDirectByteBuffer((void *) cache, sizeof(RecipientKeyCache));
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+void Java_com_gherynos_libsaltpack_RecipientKeyCache_destructor(JNIEnv *env, jobject obj, jobject ptr) {
+
+    delete (RecipientKeyCache *) env->GetDirectBufferAddress(ptr);
+}
+
+jlong Java_com_gherynos_libsaltpack_RecipientKeyCache_hits(JNIEnv *env, jobject obj, jobject ptr) {
+
+    return (jlong) ((RecipientKeyCache *) env->GetDirectBufferAddress(ptr))->hits();
+}
+
+jlong Java_com_gherynos_libsaltpack_RecipientKeyCache_misses(JNIEnv *env, jobject obj, jobject ptr) {
+
+    return (jlong) ((RecipientKeyCache *) env->GetDirectBufferAddress(ptr))->misses();
+}
+
+jint Java_com_gherynos_libsaltpack_RecipientKeyCache_size(JNIEnv *env, jobject obj, jobject ptr) {
+
+    return (jint) ((RecipientKeyCache *) env->GetDirectBufferAddress(ptr))->size();
+}
+
+void Java_com_gherynos_libsaltpack_RecipientKeyCache_clear(JNIEnv *env, jobject obj, jobject ptr) {
+
+    ((RecipientKeyCache *) env->GetDirectBufferAddress(ptr))->clear();
+}
@@ -0,0 +1,555 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <jni.h>
+#include <algorithm>
+#include <climits>
+#include <sstream>
+#include <string>
+#include <unordered_set>
+#include <vector>
+#include <ArrayInputStream.h>
+#include <MemoryInputStream.h>
+#include "com_gherynos_libsaltpack_Saltpack.h"
+#include <saltpack.h>
+#include <common.h>
+
+const size_t ONE_SHOT_BLOCK_SIZE = 1024 * 1024;
+
+// the blocks are copied straight from the Java array, 1MB at a time
+void addPlaintextBlocks(JNIEnv *env, saltpack::MessageWriter &mw, jbyteArray plaintextA) {
+
+    auto size = (size_t) env->GetArrayLength(plaintextA);
+    size_t offset = 0;
+    do {
+
+        size_t len = std::min(ONE_SHOT_BLOCK_SIZE, size - offset);
+        saltpack::BYTE_ARRAY block(len);
+        env->GetByteArrayRegion(plaintextA, (jsize) offset, (jsize) len, reinterpret_cast<jbyte *>(block.data()));
+        if (env->ExceptionCheck())
+            throw saltpack::SaltpackException("errors while reading byte array");
+        offset += len;
+
+        mw.addBlock(std::move(block), offset == size);
+
+    } while (offset < size);
+}
+
+jbyteArray copyMessage(JNIEnv *env, const std::string &message) {
+
+    jbyteArray out = env->NewByteArray((jsize) message.size());
+    if (out == nullptr)
+        return nullptr; /* out of memory error thrown */
+
+    env->SetByteArrayRegion(out, 0, (jsize) message.size(), (const jbyte *) message.data());
+    if (env->ExceptionCheck())
+        throw saltpack::SaltpackException("errors while populating byte array");
+
+    return out;
+}
+
+std::vector<char> loadMessage(JNIEnv *env, jbyteArray messageA) {
+
+    if (messageA == nullptr)
+        throw saltpack::SaltpackException("null message provided");
+
+    std::vector<char> message((size_t) env->GetArrayLength(messageA));
+    env->GetByteArrayRegion(messageA, 0, (jsize) message.size(), reinterpret_cast<jbyte *>(message.data()));
+    if (env->ExceptionCheck())
+        throw saltpack::SaltpackException("errors while reading byte array");
+
+    return message;
+}
+
+// the blocks are kept apart until the size of the result is known, then zeroed once copied
+jbyteArray readPlaintext(JNIEnv *env, saltpack::MessageReader &mr) {
+
+    std::vector<saltpack::BYTE_ARRAY> blocks;
+    size_t size = 0;
+    try {
+
+        while (mr.hasMoreBlocks()) {
+
+            blocks.push_back(mr.getBlock());
+            size += blocks.back().size();
+        }
+
+        jbyteArray out = env->NewByteArray((jsize) size);
+        if (out != nullptr) {
+
+            jsize offset = 0;
+            for (const saltpack::BYTE_ARRAY &block: blocks) {
+
+                env->SetByteArrayRegion(out, offset, (jsize) block.size(), (const jbyte *) block.data());
+                offset += (jsize) block.size();
+            }
+        }
+
+        for (saltpack::BYTE_ARRAY &block: blocks)
+            sodium_memzero(block.data(), block.size());
+
+        return out; /* null when out of memory error thrown */
+
+    } catch (...) {
+
+        for (saltpack::BYTE_ARRAY &block: blocks)
+            sodium_memzero(block.data(), block.size());
+
+        throw;
+    }
+}
+
+jbyteArray Java_com_gherynos_libsaltpack_Saltpack_encryptNative(JNIEnv *env, jclass cls, jbyteArray plaintextA,
+                                                                jobject senderSecretkeyA, jobjectArray recipients) {
+
+    saltpack::BYTE_ARRAY senderSecretkey;
+    try {
+
+        if (plaintextA == nullptr)
+            throw saltpack::SaltpackException("null plaintext provided");
+
+        std::ostringstream out;
+        if (senderSecretkeyA == nullptr) {
+
+            saltpack::MessageWriter mw(out, convertRecipients(env, recipients));
+            addPlaintextBlocks(env, mw, plaintextA);
+
+        } else {
+
+            senderSecretkey = copySecretkey(env, senderSecretkeyA);
+
+            saltpack::MessageWriter mw(out, senderSecretkey, convertRecipients(env, recipients));
+            addPlaintextBlocks(env, mw, plaintextA);
+
+            sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+        }
+
+        return copyMessage(env, out.str());
+
+    } catch (...) {
+
+        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jbyteArray Java_com_gherynos_libsaltpack_Saltpack_encryptBatchNative(JNIEnv *env, jclass cls, jobjectArray plaintextsA,
+                                                                     jobject senderSecretkeyA,
+                                                                     jobjectArray recipientsA, jintArray offsetsA) {
+
+    saltpack::BYTE_ARRAY senderSecretkey;
+    try {
+
+        if (plaintextsA == nullptr)
+            throw saltpack::SaltpackException("null plaintexts provided");
+
+        jsize count = env->GetArrayLength(plaintextsA);
+        if (offsetsA == nullptr || env->GetArrayLength(offsetsA) != count + 1)
+            throw saltpack::SaltpackException("invalid offsets");
+
+        // the keys are converted once for the whole batch
+        if (senderSecretkeyA != nullptr)
+            senderSecretkey = copySecretkey(env, senderSecretkeyA);
+        std::list<saltpack::BYTE_ARRAY> recipients = convertRecipients(env, recipientsA);
+
+        std::ostringstream out;
+        std::vector<jint> offsets((size_t) count + 1);
+        for (jsize i = 0; i < count; i++) {
+
+            auto plaintextA = (jbyteArray) env->GetObjectArrayElement(plaintextsA, i);
+            if (plaintextA == nullptr)
+                throw saltpack::SaltpackException("null plaintext provided");
+
+            if (senderSecretkeyA == nullptr) {
+
+                saltpack::MessageWriter mw(out, recipients);
+                addPlaintextBlocks(env, mw, plaintextA);
+
+            } else {
+
+                saltpack::MessageWriter mw(out, senderSecretkey, recipients);
+                addPlaintextBlocks(env, mw, plaintextA);
+            }
+
+            // large batches would overflow the local references table
+            env->DeleteLocalRef(plaintextA);
+
+            auto end = (long long) out.tellp();
+            if (end > INT_MAX)
+                throw saltpack::SaltpackException("batch too large");
+            offsets[(size_t) i + 1] = (jint) end;
+        }
+
+        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+
+        env->SetIntArrayRegion(offsetsA, 0, count + 1, offsets.data());
+        if (env->ExceptionCheck())
+            throw saltpack::SaltpackException("errors while populating offsets");
+
+        return copyMessage(env, out.str());
+
+    } catch (...) {
+
+        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+// both arrays are read a chunk at a time: they are neither copied whole nor pinned during the verification
+saltpack::BYTE_ARRAY verifyArrays(JNIEnv *env, jbyteArray signatureA, jbyteArray messageA) {
+
+    ArrayInputStream sis(env, signatureA);
+    ArrayInputStream mis(env, messageA);
+    saltpack::MessageReader mr(sis, mis);
+
+    return mr.getSender();
+}
+
+// returns the signer, or throws when the signature is not valid
+saltpack::BYTE_ARRAY verifyDetachedItem(JNIEnv *env, jobjectArray signaturesA, jobjectArray messagesA, jsize index) {
+
+    auto signatureA = (jbyteArray) env->GetObjectArrayElement(signaturesA, index);
+    auto messageA = (jbyteArray) env->GetObjectArrayElement(messagesA, index);
+    try {
+
+        if (signatureA == nullptr)
+            throw saltpack::SaltpackException("null signature provided");
+        if (messageA == nullptr)
+            throw saltpack::SaltpackException("null message provided");
+
+        saltpack::BYTE_ARRAY signer = verifyArrays(env, signatureA, messageA);
+        env->DeleteLocalRef(messageA);
+        env->DeleteLocalRef(signatureA);
+
+        return signer;
+
+    } catch (...) {
+
+        // large batches would overflow the local references table
+        env->DeleteLocalRef(messageA);
+        env->DeleteLocalRef(signatureA);
+        throw;
+    }
+}
+
+void Java_com_gherynos_libsaltpack_Saltpack_verifyDetachedBatchNative(JNIEnv *env, jclass cls,
+                                                                      jobjectArray signaturesA,
+                                                                      jobjectArray messagesA,
+                                                                      jobjectArray trustedSignersA,
+                                                                      jobjectArray signersA, jobjectArray errorsA) {
+
+    try {
+
+        if (signaturesA == nullptr || messagesA == nullptr)
+            throw saltpack::SaltpackException("null signatures provided");
+
+        std::unordered_set<std::string> trustedSigners;
+        if (trustedSignersA != nullptr)
+            for (const saltpack::BYTE_ARRAY &signer: convertRecipients(env, trustedSignersA))
+                trustedSigners.emplace(signer.begin(), signer.end());
+
+        // a failing item is reported in errors, the others are verified anyway
+        jsize count = env->GetArrayLength(signaturesA);
+        for (jsize i = 0; i < count; i++) {
+
+            std::string error;
+            try {
+
+                saltpack::BYTE_ARRAY signer = verifyDetachedItem(env, signaturesA, messagesA, i);
+
+                jbyteArray signerA = copyBytes(env, signer);
+                if (signerA == nullptr)
+                    return; /* out of memory error thrown */
+                env->SetObjectArrayElement(signersA, i, signerA);
+                env->DeleteLocalRef(signerA);
+
+                if (trustedSignersA != nullptr &&
+                    trustedSigners.find(std::string(signer.begin(), signer.end())) == trustedSigners.end())
+                    error = "untrusted signer";
+
+            } catch (const std::exception &e) {
+
+                error = e.what();
+            }
+
+            if (env->ExceptionCheck())
+                return; /* exception thrown while accessing the arrays */
+
+            if (!error.empty()) {
+
+                jstring errorS = env->NewStringUTF(error.c_str());
+                if (errorS == nullptr)
+                    return; /* out of memory error thrown */
+                env->SetObjectArrayElement(errorsA, i, errorS);
+                env->DeleteLocalRef(errorS);
+            }
+        }
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+    }
+}
+
+jbyteArray Java_com_gherynos_libsaltpack_Saltpack_decryptNative(JNIEnv *env, jclass cls, jbyteArray messageA,
+                                                                jobject recipientSecretkeyA) {
+
+    saltpack::BYTE_ARRAY recipientSecretkey;
+    try {
+
+        std::vector<char> message = loadMessage(env, messageA);
+        recipientSecretkey = copySecretkey(env, recipientSecretkeyA);
+
+        MemoryInputStream in(message.data(), message.size());
+        saltpack::MessageReader mr(in, recipientSecretkey);
+        sodium_memzero(recipientSecretkey.data(), recipientSecretkey.size());
+
+        return readPlaintext(env, mr);
+
+    } catch (...) {
+
+        sodium_memzero(recipientSecretkey.data(), recipientSecretkey.size());
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jbyteArray Java_com_gherynos_libsaltpack_Saltpack_signNative(JNIEnv *env, jclass cls, jbyteArray plaintextA,
+                                                             jobject senderSecretkeyA) {
+
+    saltpack::BYTE_ARRAY senderSecretkey;
+    try {
+
+        if (plaintextA == nullptr)
+            throw saltpack::SaltpackException("null plaintext provided");
+
+        senderSecretkey = copySecretkey(env, senderSecretkeyA);
+
+        std::ostringstream out;
+        {
+            saltpack::MessageWriter mw(out, senderSecretkey, false);
+            addPlaintextBlocks(env, mw, plaintextA);
+        }
+
+        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+
+        return copyMessage(env, out.str());
+
+    } catch (...) {
+
+        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jbyteArray Java_com_gherynos_libsaltpack_Saltpack_verifyNative(JNIEnv *env, jclass cls, jbyteArray messageA,
+                                                               jbyteArray senderPublickeyA) {
+
+    try {
+
+        std::vector<char> message = loadMessage(env, messageA);
+        saltpack::BYTE_ARRAY senderPublickey = copyBytes(env, senderPublickeyA);
+
+        MemoryInputStream in(message.data(), message.size());
+        saltpack::MessageReader mr(in);
+
+        // the signer is known from the header, no need to verify the blocks of someone else
+        if (mr.getSender() != senderPublickey)
+            throw saltpack::SaltpackException("message signed by a different sender");
+
+        return readPlaintext(env, mr);
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jbyteArray Java_com_gherynos_libsaltpack_Saltpack_signcryptNative(JNIEnv *env, jclass cls, jbyteArray plaintextA,
+                                                                  jobject senderSecretkeyA, jobjectArray recipients,
+                                                                  jobjectArray keysA) {
+
+    saltpack::BYTE_ARRAY senderSecretkey;
+    std::list<std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY>> keys;
+    try {
+
+        if (plaintextA == nullptr)
+            throw saltpack::SaltpackException("null plaintext provided");
+
+        senderSecretkey = copySecretkey(env, senderSecretkeyA);
+        keys = convertKeys(env, keysA);
+
+        std::ostringstream out;
+        {
+            saltpack::MessageWriter mw(out, senderSecretkey, convertRecipients(env, recipients), keys);
+            addPlaintextBlocks(env, mw, plaintextA);
+        }
+
+        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+        for (std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY> &key: keys)
+            sodium_memzero(key.second.data(), key.second.size());
+
+        return copyMessage(env, out.str());
+
+    } catch (...) {
+
+        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+        for (std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY> &key: keys)
+            sodium_memzero(key.second.data(), key.second.size());
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jbyteArray Java_com_gherynos_libsaltpack_Saltpack_designcryptNative(JNIEnv *env, jclass cls, jbyteArray messageA,
+                                                                    jobject recipientSecretkeyA, jobjectArray keyA) {
+
+    saltpack::BYTE_ARRAY recipientSecretkey;
+    std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY> key;
+    try {
+
+        std::vector<char> message = loadMessage(env, messageA);
+        recipientSecretkey = copySecretkey(env, recipientSecretkeyA);
+        key = convertPair(env, keyA);
+
+        MemoryInputStream in(message.data(), message.size());
+        saltpack::MessageReader mr(in, recipientSecretkey, key);
+        sodium_memzero(recipientSecretkey.data(), recipientSecretkey.size());
+        sodium_memzero(key.second.data(), key.second.size());
+
+        return readPlaintext(env, mr);
+
+    } catch (...) {
+
+        sodium_memzero(recipientSecretkey.data(), recipientSecretkey.size());
+        sodium_memzero(key.second.data(), key.second.size());
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <jni.h>
+#include <PushInputStream.h>
+#include "com_gherynos_libsaltpack_SaltpackDecoder.h"
+#include <saltpack.h>
+#include <common.h>
+#include <Msgpack.h>
+#include <cstdint>
+#include <list>
+
+struct DObjects {
+
+    PushInputStream *in;
+    saltpack::MessageReader *mr;
+    bool verify;
+    saltpack::BYTE_ARRAY recipientSecretkey;
+    size_t scanned;
+    size_t ready;
+};
+
+void deleteDObjects(DObjects *objs) {
+
+    if (objs == nullptr)
+        return;
+
+    delete objs->mr;
+
+    delete objs->in;
+
+    sodium_memzero(objs->recipientSecretkey.data(), objs->recipientSecretkey.size());
+
+    delete objs;
+}
+
+jobjectArray toJavaArray(JNIEnv *env, const std::list<saltpack::BYTE_ARRAY> &items) {
+
+    jobjectArray out = env->NewObjectArray((jsize) items.size(), BYTE_ARRAY_CLASS(env), nullptr);
+    if (out == nullptr)
+        return nullptr; /* out of memory error thrown */
+
+    jsize idx = 0;
+    for (const saltpack::BYTE_ARRAY &item: items) {
+
+        jbyteArray arr = env->NewByteArray((jsize) item.size());
+        if (arr == nullptr)
+            return nullptr; /* out of memory error thrown */
+
+        env->SetByteArrayRegion(arr, 0, (jsize) item.size(), (const jbyte *) item.data());
+        env->SetObjectArrayElement(out, idx++, arr);
+        env->DeleteLocalRef(arr);
+    }
+
+    return out;
+}
+
+jobjectArray process(JNIEnv *env, DObjects *objs) {
+
+    // count the msgpack objects received in full: libsaltpack is only invoked when it won't run out of data
+    while (objs->scanned < objs->in->end()) {
+
+        uint64_t payloadSize;
+        size_t available = objs->in->end() - objs->scanned;
+        size_t size = msgpackObjectSize(objs->in->at(objs->scanned), available, payloadSize);
+        if (size == 0 || size > available)
+            break;
+
+        objs->scanned += size;
+        objs->ready++;
+    }
+
+    std::list<saltpack::BYTE_ARRAY> blocks;
+    if (objs->mr == nullptr && objs->ready > 0) {
+
+        objs->in->clear();
+        if (objs->verify)
+            objs->mr = new saltpack::MessageReader(*objs->in);
+        else
+            objs->mr = new saltpack::MessageReader(*objs->in, objs->recipientSecretkey);
+
+        sodium_memzero(objs->recipientSecretkey.data(), objs->recipientSecretkey.size());
+        objs->ready--;
+    }
+
+    while (objs->mr != nullptr && objs->ready > 0 && objs->mr->hasMoreBlocks()) {
+
+        objs->in->clear();
+        saltpack::BYTE_ARRAY block = objs->mr->getBlock();
+        objs->ready--;
+
+        if (!block.empty())
+            blocks.push_back(std::move(block));
+    }
+
+    objs->in->compact(objs->scanned);
+
+    jobjectArray out = toJavaArray(env, blocks);
+    for (saltpack::BYTE_ARRAY &block: blocks)
+        sodium_memzero(block.data(), block.size());
+
+    return out;
+}
+
+DObjects *getDObjects(JNIEnv *env, jobject ptr) {
+
+    return (DObjects *) env->GetDirectBufferAddress(ptr);
+}
+
+saltpack::MessageReader *getReader(JNIEnv *env, jobject ptr) {
+
+    DObjects *objs = getDObjects(env, ptr);
+    if (objs->mr == nullptr)
+        throw saltpack::SaltpackException("header not parsed yet");
+
+    return objs->mr;
+}
+
+jobject Java_com_gherynos_libsaltpack_SaltpackDecoder_constructor(JNIEnv *env, jobject obj,
+                                                                  jobject recipientSecretkeyA) {
+
+    DObjects *objs = nullptr;
+    try {
+
+        objs = new DObjects();
+        objs->in = new PushInputStream();
+        objs->verify = recipientSecretkeyA == nullptr;
+        if (!objs->verify)
+            objs->recipientSecretkey = copySecretkey(env, recipientSecretkeyA);
+
+        return env->NewDirectByteBuffer((void *) objs, sizeof(DObjects));
+
+    } catch (...) {
+
+        deleteDObjects(objs);
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+void Java_com_gherynos_libsaltpack_SaltpackDecoder_destructor(JNIEnv *env, jobject obj, jobject ptr) {
+
+    deleteDObjects(getDObjects(env, ptr));
+}
+
+jobjectArray Java_com_gherynos_libsaltpack_SaltpackDecoder_feed(JNIEnv *env, jobject obj, jobject ptr, jbyteArray dataA,
+                                                                jint off, jint len) {
+
+    try {
+
+        if (dataA == nullptr)
+            throw saltpack::SaltpackException("null byte array provided");
+
+        if (off < 0 || len < 0 || (jlong) off + len > env->GetArrayLength(dataA))
+            throw saltpack::SaltpackException("invalid buffer range");
+
+        DObjects *objs = getDObjects(env, ptr);
+
+        auto *data = (const char *) env->GetPrimitiveArrayCritical(dataA, nullptr);
+        if (data == nullptr)
+            return nullptr; /* out of memory error thrown */
+
+        try {
+
+            objs->in->append(data + off, (size_t) len);
+
+        } catch (...) {
+
+            env->ReleasePrimitiveArrayCritical(dataA, (void *) data, JNI_ABORT);
+            throw;
+        }
+        env->ReleasePrimitiveArrayCritical(dataA, (void *) data, JNI_ABORT);
+
+        return process(env, objs);
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jobjectArray Java_com_gherynos_libsaltpack_SaltpackDecoder_feedDirect(JNIEnv *env, jobject obj, jobject ptr, jobject src,
+                                                                      jint off, jint len) {
+
+    try {
+
+        auto *address = (const char *) env->GetDirectBufferAddress(src);
+        if (address == nullptr)
+            throw saltpack::SaltpackException("direct buffer address not available");
+
+        if (off < 0 || len < 0 || (jlong) off + len > env->GetDirectBufferCapacity(src))
+            throw saltpack::SaltpackException("invalid buffer range");
+
+        DObjects *objs = getDObjects(env, ptr);
+        objs->in->append(address + off, (size_t) len);
+
+        return process(env, objs);
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jboolean Java_com_gherynos_libsaltpack_SaltpackDecoder_isHeaderParsed(JNIEnv *env, jobject obj, jobject ptr) {
+
+    return (jboolean) (getDObjects(env, ptr)->mr != nullptr);
+}
+
+jboolean Java_com_gherynos_libsaltpack_SaltpackDecoder_isFinished(JNIEnv *env, jobject obj, jobject ptr) {
+
+    try {
+
+        DObjects *objs = getDObjects(env, ptr);
+
+        return (jboolean) (objs->mr != nullptr && !objs->mr->hasMoreBlocks());
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return (jboolean) false;
+    }
+}
+
+jobjectArray Java_com_gherynos_libsaltpack_SaltpackDecoder_getRecipients(JNIEnv *env, jobject obj, jobject ptr) {
+
+    try {
+
+        return toJavaArray(env, getReader(env, ptr)->getRecipients());
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jbyteArray Java_com_gherynos_libsaltpack_SaltpackDecoder_getSender(JNIEnv *env, jobject obj, jobject ptr) {
+
+    try {
+
+        return copyBytes(env, getReader(env, ptr)->getSender());
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jboolean Java_com_gherynos_libsaltpack_SaltpackDecoder_isIntentionallyAnonymous(JNIEnv *env, jobject obj, jobject ptr) {
+
+    try {
+
+        return (jboolean) getReader(env, ptr)->isIntentionallyAnonymous();
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return (jboolean) false;
+    }
+}
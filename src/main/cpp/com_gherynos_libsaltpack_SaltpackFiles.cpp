@@ -0,0 +1,422 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <jni.h>
+#include <algorithm>
+#include <cstdio>
+#include <fstream>
+#include <vector>
+#include <MemoryInputStream.h>
+#include "com_gherynos_libsaltpack_SaltpackFiles.h"
+#include <saltpack.h>
+#include <common.h>
+
+#ifndef _WIN32
+#include <fcntl.h>
+#include <sys/mman.h>
+#include <sys/stat.h>
+#include <unistd.h>
+#endif
+
+const size_t FILE_BLOCK_SIZE = 1024 * 1024;
+const size_t FILE_OUTPUT_BUFFER_SIZE = 1024 * 1024;
+
+// read-only view of a whole file: memory-mapped where available, loaded in memory otherwise
+class MappedFile {
+
+public:
+
+    explicit MappedFile(const std::string &path) {
+
+#ifndef _WIN32
+        fd = open(path.c_str(), O_RDONLY);
+        if (fd < 0)
+            throw saltpack::SaltpackException("unable to open " + path);
+
+        struct stat st{};
+        if (fstat(fd, &st) != 0) {
+
+            close(fd);
+            throw saltpack::SaltpackException("unable to stat " + path);
+        }
+
+        size = (size_t) st.st_size;
+        if (size == 0)
+            return;
+
+        void *addr = mmap(nullptr, size, PROT_READ, MAP_PRIVATE, fd, 0);
+        if (addr == MAP_FAILED) {
+
+            close(fd);
+            throw saltpack::SaltpackException("unable to map " + path);
+        }
+
+        madvise(addr, size, MADV_SEQUENTIAL);
+        data = (const char *) addr;
+#else
+        std::ifstream in(path, std::ios::binary);
+        if (!in)
+            throw saltpack::SaltpackException("unable to open " + path);
+
+        buffer.assign(std::istreambuf_iterator<char>(in), std::istreambuf_iterator<char>());
+        if (in.bad())
+            throw saltpack::SaltpackException("unable to read " + path);
+
+        size = buffer.size();
+        data = buffer.data();
+#endif
+    }
+
+    MappedFile(const MappedFile &) = delete;
+
+    MappedFile &operator=(const MappedFile &) = delete;
+
+    ~MappedFile() {
+
+#ifndef _WIN32
+        if (data != nullptr)
+            munmap((void *) data, size);
+
+        if (fd >= 0)
+            close(fd);
+#endif
+    }
+
+    const char *data = nullptr;
+    size_t size = 0;
+
+private:
+
+#ifndef _WIN32
+    int fd = -1;
+#else
+    std::vector<char> buffer;
+#endif
+};
+
+std::string getPath(JNIEnv *env, jstring path) {
+
+    if (path == nullptr)
+        throw saltpack::SaltpackException("null path provided");
+
+    const char *pathCStr = env->GetStringUTFChars(path, 0);
+    if (pathCStr == nullptr)
+        throw saltpack::SaltpackException("unable to read path");
+
+    std::string p(pathCStr);
+    env->ReleaseStringUTFChars(path, pathCStr);
+
+    return p;
+}
+
+// written to a temporary file next to the destination, which is replaced only when the operation succeeds
+class OutputFile {
+
+public:
+
+    explicit OutputFile(const std::string &path) : path(path) {
+
+        saltpack::BYTE_ARRAY suffix(8);
+        randombytes_buf(suffix.data(), suffix.size());
+        tmpPath = path + "." + saltpack::Utils::binToHex(suffix) + ".tmp";
+
+        buffer.resize(FILE_OUTPUT_BUFFER_SIZE);
+        out.rdbuf()->pubsetbuf(buffer.data(), (std::streamsize) buffer.size());
+        out.open(tmpPath, std::ios::binary | std::ios::trunc);
+        if (!out)
+            throw saltpack::SaltpackException("unable to open " + path);
+    }
+
+    OutputFile(const OutputFile &) = delete;
+
+    OutputFile &operator=(const OutputFile &) = delete;
+
+    ~OutputFile() {
+
+        if (!committed) {
+
+            out.close();
+            std::remove(tmpPath.c_str());
+        }
+    }
+
+    void commit() {
+
+        out.close();
+        if (out.fail())
+            throw saltpack::SaltpackException("unable to write " + path);
+
+#ifdef _WIN32
+        std::remove(path.c_str());
+#endif
+        if (std::rename(tmpPath.c_str(), path.c_str()) != 0)
+            throw saltpack::SaltpackException("unable to write " + path);
+
+        committed = true;
+    }
+
+    std::ofstream out;
+
+private:
+
+    std::string path;
+    std::string tmpPath;
+    std::vector<char> buffer;
+    bool committed = false;
+};
+
+void writeBlocks(saltpack::MessageWriter &mw, const MappedFile &in) {
+
+    size_t offset = 0;
+    do {
+
+        size_t len = std::min(FILE_BLOCK_SIZE, in.size - offset);
+        saltpack::BYTE_ARRAY block(in.data + offset, in.data + offset + len);
+        offset += len;
+
+        mw.addBlock(std::move(block), offset == in.size);
+
+    } while (offset < in.size);
+}
+
+jlong readBlocks(saltpack::MessageReader &mr, std::ofstream &out) {
+
+    jlong total = 0;
+    while (mr.hasMoreBlocks()) {
+
+        saltpack::BYTE_ARRAY block = mr.getBlock();
+        out.write((const char *) block.data(), (std::streamsize) block.size());
+        total += (jlong) block.size();
+
+        sodium_memzero(block.data(), block.size());
+    }
+
+    return total;
+}
+
+jlong Java_com_gherynos_libsaltpack_SaltpackFiles_encrypt(JNIEnv *env, jclass cls, jstring inPath, jstring outPath,
+                                                          jobject senderSecretkeyA, jobjectArray recipients) {
+
+    saltpack::BYTE_ARRAY senderSecretkey;
+    try {
+
+        std::string inP = getPath(env, inPath);
+        std::string outP = getPath(env, outPath);
+        senderSecretkey = copySecretkey(env, senderSecretkeyA);
+
+        MappedFile in(inP);
+        OutputFile out(outP);
+
+        {
+            saltpack::MessageWriter mw(out.out, senderSecretkey, convertRecipients(env, recipients));
+            writeBlocks(mw, in);
+        }
+
+        out.commit();
+        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+
+        return (jlong) in.size;
+
+    } catch (...) {
+
+        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return -1;
+    }
+}
+
+jlong Java_com_gherynos_libsaltpack_SaltpackFiles_decrypt(JNIEnv *env, jclass cls, jstring inPath, jstring outPath,
+                                                          jobject recipientSecretkeyA) {
+
+    saltpack::BYTE_ARRAY recipientSecretkey;
+    try {
+
+        std::string inP = getPath(env, inPath);
+        std::string outP = getPath(env, outPath);
+        recipientSecretkey = copySecretkey(env, recipientSecretkeyA);
+
+        MappedFile in(inP);
+        MemoryInputStream is(in.data, in.size);
+        OutputFile out(outP);
+
+        jlong total;
+        {
+            saltpack::MessageReader mr(is, recipientSecretkey);
+            total = readBlocks(mr, out.out);
+        }
+
+        out.commit();
+        sodium_memzero(recipientSecretkey.data(), recipientSecretkey.size());
+
+        return total;
+
+    } catch (...) {
+
+        sodium_memzero(recipientSecretkey.data(), recipientSecretkey.size());
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return -1;
+    }
+}
+
+jlong Java_com_gherynos_libsaltpack_SaltpackFiles_sign(JNIEnv *env, jclass cls, jstring inPath, jstring outPath,
+                                                       jobject senderSecretkeyA, jboolean detachedSignature) {
+
+    saltpack::BYTE_ARRAY senderSecretkey;
+    try {
+
+        std::string inP = getPath(env, inPath);
+        std::string outP = getPath(env, outPath);
+        senderSecretkey = copySecretkey(env, senderSecretkeyA);
+
+        MappedFile in(inP);
+        OutputFile out(outP);
+
+        {
+            saltpack::MessageWriter mw(out.out, senderSecretkey, (bool) detachedSignature);
+            writeBlocks(mw, in);
+        }
+
+        out.commit();
+        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+
+        return (jlong) in.size;
+
+    } catch (...) {
+
+        sodium_memzero(senderSecretkey.data(), senderSecretkey.size());
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return -1;
+    }
+}
+
+jbyteArray Java_com_gherynos_libsaltpack_SaltpackFiles_verify(JNIEnv *env, jclass cls, jstring inPath,
+                                                              jstring outPath) {
+
+    try {
+
+        std::string inP = getPath(env, inPath);
+        std::string outP = getPath(env, outPath);
+
+        MappedFile in(inP);
+        MemoryInputStream is(in.data, in.size);
+        OutputFile out(outP);
+
+        saltpack::BYTE_ARRAY sender;
+        {
+            saltpack::MessageReader mr(is);
+            readBlocks(mr, out.out);
+            sender = mr.getSender();
+        }
+
+        out.commit();
+
+        return copyBytes(env, sender);
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jbyteArray Java_com_gherynos_libsaltpack_SaltpackFiles_verifyDetached(JNIEnv *env, jclass cls, jstring signaturePath,
+                                                                      jstring messagePath) {
+
+    try {
+
+        MappedFile signature(getPath(env, signaturePath));
+        MappedFile message(getPath(env, messagePath));
+        MemoryInputStream sis(signature.data, signature.size);
+        MemoryInputStream mis(message.data, message.size);
+
+        saltpack::MessageReader mr(sis, mis);
+
+        return copyBytes(env, mr.getSender());
+
+    } catch (...) {
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+#include <jni.h>
+#include "com_gherynos_libsaltpack_SecretKeyHandle.h"
+#include <saltpack.h>
+#include <common.h>
+
+SKObjects *newSKObjects(size_t size) {
+
+    // guarded and locked memory, never swapped to disk
+    auto *key = (unsigned char *) sodium_malloc(size);
+    if (key == nullptr)
+        throw saltpack::SaltpackException("unable to allocate secure memory");
+
+    auto *objs = new SKObjects();
+    objs->key = key;
+    objs->size = size;
+
+    return objs;
+}
+
+void deleteSKObjects(SKObjects *objs) {
+
+    if (objs == nullptr)
+        return;
+
+    sodium_free(objs->key);
+
+    delete objs;
+}
+
+jobject Java_com_gherynos_libsaltpack_SecretKeyHandle_constructor(JNIEnv *env, jclass cls, jbyteArray secretkeyA) {
+
+    SKObjects *objs = nullptr;
+    try {
+
+        if (secretkeyA == nullptr)
+            throw saltpack::SaltpackException("null byte array provided");
+
+        size_t size = GET_BYTES_SIZE(secretkeyA);
+        if (size != crypto_box_SECRETKEYBYTES && size != crypto_sign_SECRETKEYBYTES)
+            throw saltpack::SaltpackException("wrong size for secret key");
+
+        // copied straight into the secure memory
+        objs = newSKObjects(size);
+        env->GetByteArrayRegion(secretkeyA, 0, (jsize) size, reinterpret_cast<jbyte *>(objs->key));
+        if (env->ExceptionCheck())
+            throw saltpack::SaltpackException("errors while reading byte array");
+
+        return env->NewDirectByteBuffer((void *) objs, sizeof(SKObjects));
+
+    } catch (...) {
+
+        deleteSKObjects(objs);
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jobject Java_com_gherynos_libsaltpack_SecretKeyHandle_generateKeypair(JNIEnv *env, jclass cls, jbyteArray publickeyA,
+                                                                      jboolean signing) {
+
+    SKObjects *objs = nullptr;
+    try {
+
+        if (publickeyA == nullptr)
+            throw saltpack::SaltpackException("null byte array provided");
+
+        size_t publickeySize = signing ? crypto_sign_PUBLICKEYBYTES : crypto_box_PUBLICKEYBYTES;
+        if (GET_BYTES_SIZE(publickeyA) != publickeySize)
+            throw saltpack::SaltpackException("wrong size for public key");
+
+        saltpack::BYTE_ARRAY publickey(publickeySize);
+        if (signing) {
+
+            objs = newSKObjects(crypto_sign_SECRETKEYBYTES);
+            crypto_sign_keypair(publickey.data(), objs->key);
+
+        } else {
+
+            objs = newSKObjects(crypto_box_SECRETKEYBYTES);
+            crypto_box_keypair(publickey.data(), objs->key);
+        }
+
+        env->SetByteArrayRegion(publickeyA, 0, (jsize) publickey.size(), (const jbyte *) publickey.data());
+        if (env->ExceptionCheck())
+            throw saltpack::SaltpackException("errors while populating byte array");
+
+        return env->NewDirectByteBuffer((void *) objs, sizeof(SKObjects));
+
+    } catch (...) {
+
+        deleteSKObjects(objs);
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+jbyteArray Java_com_gherynos_libsaltpack_SecretKeyHandle_derivePublickey(JNIEnv *env, jclass cls, jobject ptr) {
+
+    saltpack::BYTE_ARRAY secretkey;
+    try {
+
+        secretkey = copySecretkey(env, ptr);
+        saltpack::BYTE_ARRAY publickey = saltpack::Utils::derivePublickey(secretkey);
+
+        sodium_memzero(secretkey.data(), secretkey.size());
+
+        return copyBytes(env, publickey);
+
+    } catch (...) {
+
+        sodium_memzero(secretkey.data(), secretkey.size());
+
+        std::exception_ptr ex = std::current_exception();
+        if (ex)
+            try {
+
+                std::rethrow_exception(ex);
+
+            } catch (const std::exception &e) {
+
+                env->ThrowNew(EXCEPTION_CLASS(env), e.what());
+            }
+
+        else
+            env->ThrowNew(EXCEPTION_CLASS(env), "error");
+
+        return nullptr;
+    }
+}
+
+void Java_com_gherynos_libsaltpack_SecretKeyHandle_destructor(JNIEnv *env, jclass cls, jobject ptr) {
+
+    deleteSKObjects((SKObjects *) env->GetDirectBufferAddress(ptr));
+}
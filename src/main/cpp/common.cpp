@@ -0,0 +1,113 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <jni.h>
+#include <common.h>
+
+JNICache jniCache;
+
+jclass loadGlobalClass(JNIEnv *env, const char *cls) {
+
+    jclass local = loadClass(env, cls);
+    auto global = (jclass) env->NewGlobalRef(local);
+    env->DeleteLocalRef(local);
+
+    if (global == nullptr)
+        throw saltpack::SaltpackException(std::string("unable to reference class: ") + cls);
+
+    return global;
+}
+
+JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved) {
+
+    JNIEnv *env;
+    if (vm->GetEnv((void **) &env, JNI_VERSION_1_6) != JNI_OK)
+        return JNI_ERR;
+
+    try {
+
+        jniCache.vm = vm;
+
+        jniCache.saltpackException = loadGlobalClass(env, "com/gherynos/libsaltpack/SaltpackException");
+        jniCache.byteArray = loadGlobalClass(env, "[B");
+
+        jniCache.inputStream = loadGlobalClass(env, "java/io/InputStream");
+        jniCache.inputStreamRead = loadMethod(env, jniCache.inputStream, "read", "([BII)I");
+        jniCache.inputStreamAvailable = loadMethod(env, jniCache.inputStream, "available", "()I");
+
+        jniCache.outputStream = loadGlobalClass(env, "java/io/OutputStream");
+        jniCache.outputStreamWrite = loadMethod(env, jniCache.outputStream, "write", "([BII)V");
+
+        jniCache.readableByteChannel = loadGlobalClass(env, "java/nio/channels/ReadableByteChannel");
+        jniCache.readableByteChannelRead = loadMethod(env, jniCache.readableByteChannel, "read",
+                                                      "(Ljava/nio/ByteBuffer;)I");
+
+        jniCache.writableByteChannel = loadGlobalClass(env, "java/nio/channels/WritableByteChannel");
+        jniCache.writableByteChannelWrite = loadMethod(env, jniCache.writableByteChannel, "write",
+                                                       "(Ljava/nio/ByteBuffer;)I");
+
+        jniCache.buffer = loadGlobalClass(env, "java/nio/Buffer");
+        jniCache.bufferClear = loadMethod(env, jniCache.buffer, "clear", "()Ljava/nio/Buffer;");
+        jniCache.bufferLimit = loadMethod(env, jniCache.buffer, "limit", "(I)Ljava/nio/Buffer;");
+
+        jniCache.inputParameters = loadGlobalClass(env, "com/gherynos/libsaltpack/InputParameters");
+        jniCache.ipGetInputStream = loadMethod(env, jniCache.inputParameters, "getInputStream",
+                                               "()Ljava/io/InputStream;");
+        jniCache.ipGetChannel = loadMethod(env, jniCache.inputParameters, "getChannel",
+                                           "()Ljava/nio/channels/ReadableByteChannel;");
+        jniCache.ipIsArmored = loadMethod(env, jniCache.inputParameters, "isArmored", "()Z");
+        jniCache.ipGetApp = loadMethod(env, jniCache.inputParameters, "getApp", "()Ljava/lang/String;");
+        jniCache.ipGetBufferSize = loadMethod(env, jniCache.inputParameters, "getBufferSize", "()I");
+
+        jniCache.outputParameters = loadGlobalClass(env, "com/gherynos/libsaltpack/OutputParameters");
+        jniCache.opGetOutputStream = loadMethod(env, jniCache.outputParameters, "getOutputStream",
+                                                "()Ljava/io/OutputStream;");
+        jniCache.opGetChannel = loadMethod(env, jniCache.outputParameters, "getChannel",
+                                           "()Ljava/nio/channels/WritableByteChannel;");
+        jniCache.opIsArmored = loadMethod(env, jniCache.outputParameters, "isArmored", "()Z");
+        jniCache.opIntParamsPopulated = loadMethod(env, jniCache.outputParameters, "intParamsPopulated", "()Z");
+        jniCache.opGetApp = loadMethod(env, jniCache.outputParameters, "getApp", "()Ljava/lang/String;");
+        jniCache.opGetLettersInWords = loadMethod(env, jniCache.outputParameters, "getLettersInWords", "()I");
+        jniCache.opGetWordsInPhrase = loadMethod(env, jniCache.outputParameters, "getWordsInPhrase", "()I");
+        jniCache.opGetBufferSize = loadMethod(env, jniCache.outputParameters, "getBufferSize", "()I");
+        jniCache.opIsMemory = loadMethod(env, jniCache.outputParameters, "isMemory", "()Z");
+
+        jniCache.saltpackHeader = loadGlobalClass(env, "com/gherynos/libsaltpack/SaltpackHeader");
+        jniCache.saltpackHeaderInit = loadMethod(env, jniCache.saltpackHeader, "<init>", "(III[[B[BZ)V");
+
+    } catch (const std::exception &ex) {
+
+        return JNI_ERR; /* NoClassDefFoundError or NoSuchMethodError thrown */
+    }
+
+    return JNI_VERSION_1_6;
+}
+
+JNIEXPORT void JNICALL JNI_OnUnload(JavaVM *vm, void *reserved) {
+
+    JNIEnv *env;
+    if (vm->GetEnv((void **) &env, JNI_VERSION_1_6) != JNI_OK)
+        return;
+
+    jclass classes[] = {jniCache.saltpackException, jniCache.byteArray, jniCache.inputStream, jniCache.outputStream,
+                        jniCache.readableByteChannel, jniCache.writableByteChannel, jniCache.buffer,
+                        jniCache.inputParameters, jniCache.outputParameters, jniCache.saltpackHeader};
+    for (jclass cls: classes)
+        if (cls != nullptr)
+            env->DeleteGlobalRef(cls);
+
+    jniCache = JNICache();
+}
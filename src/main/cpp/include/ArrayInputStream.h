@@ -0,0 +1,47 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef LIBSALTPACK_JNI_ARRAYINPUTSTREAM_H
+#define LIBSALTPACK_JNI_ARRAYINPUTSTREAM_H
+
+#include <jni.h>
+#include <iostream>
+#include <vector>
+
+// stream over a Java byte array, copied a chunk at a time so the array is never pinned
+class ArrayInputStream : public std::istream, std::streambuf {
+
+public:
+
+    ArrayInputStream(JNIEnv *env, jbyteArray array);
+
+    int underflow() override;
+
+    std::streamsize xsgetn(char *s, std::streamsize n) override;
+
+    std::streamsize showmanyc() override;
+
+private:
+    JNIEnv *env;
+    jbyteArray array;
+    jsize size;
+    jsize offset;
+    std::vector<char> data;
+
+    jsize refill();
+};
+
+#endif //LIBSALTPACK_JNI_ARRAYINPUTSTREAM_H
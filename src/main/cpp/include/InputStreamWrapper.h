@@ -19,28 +19,45 @@
 
 #include <jni.h>
 #include <iostream>
+#include <vector>
 
 class InputStreamWrapper : public std::istream, std::streambuf {
 
 public:
 
-    InputStreamWrapper(JNIEnv *env, jobject inputStream);
+    // with channel set, inputStream is a ReadableByteChannel filling a direct buffer over the internal storage
+    InputStreamWrapper(JNIEnv *env, jobject inputStream, jint bufferSize, bool channel = false);
 
     ~InputStreamWrapper() override;
 
+    // JNIEnv pointers are thread-local: to be called by every native method using the wrapper
+    void setEnv(JNIEnv *env) {
+
+        this->env = env;
+    }
+
+    // true when the wrapper can be reset for the given input instead of being recreated
+    bool accepts(jint bufferSize, bool channel) const;
+
+    // points the wrapper to a new input, discarding any data not read yet
+    void reset(jobject inputStream);
+
     int underflow() override;
 
+    std::streamsize xsgetn(char *s, std::streamsize n) override;
+
+    std::streamsize showmanyc() override;
+
 private:
     JNIEnv *env;
     jobject inputStream;
-    jmethodID mRead;
 
     jbyteArray buf;
-    unsigned char *data;
-    jint dataSize;
-    int index;
-    char ch;
-    bool dataReady;
+    jobject byteBuffer;
+    jint bufferSize;
+    std::vector<char> data;
+
+    jint refill();
 };
 
 #endif //LIBSALTPACK_JNI_INPUTSTREAMWRAPPER_H
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef LIBSALTPACK_JNI_MSGPACK_H
+#define LIBSALTPACK_JNI_MSGPACK_H
+
+#include <saltpack.h>
+#include <cstdint>
+#include <string>
+#include <utility>
+
+// minimal msgpack encoding and decoding of the saltpack objects handled outside libsaltpack
+
+class PackWriter {
+
+public:
+
+    saltpack::BYTE_ARRAY data;
+
+    void array(size_t size) {
+
+        if (size < 16)
+            data.push_back((saltpack::BYTE) (0x90 | size));
+
+        else if (size <= 0xffff) {
+
+            data.push_back(0xdc);
+            data.push_back((saltpack::BYTE) (size >> 8));
+            data.push_back((saltpack::BYTE) size);
+
+        } else if (size <= 0xffffffff) {
+
+            data.push_back(0xdd);
+            for (int shift = 24; shift >= 0; shift -= 8)
+                data.push_back((saltpack::BYTE) (size >> shift));
+
+        } else
+            throw saltpack::SaltpackException("array too large");
+    }
+
+    void nil() {
+
+        data.push_back(0xc0);
+    }
+
+    void integer(unsigned int value) {
+
+        if (value < 128)
+            data.push_back((saltpack::BYTE) value);
+        else
+            throw saltpack::SaltpackException("integer too large");
+    }
+
+    void boolean(bool value) {
+
+        data.push_back(value ? 0xc3 : 0xc2);
+    }
+
+    void str(const std::string &value) {
+
+        if (value.size() >= 32)
+            throw saltpack::SaltpackException("string too large");
+
+        data.push_back((saltpack::BYTE) (0xa0 | value.size()));
+        data.insert(data.end(), value.begin(), value.end());
+    }
+
+    void bin(const saltpack::BYTE *value, size_t size) {
+
+        if (size <= 0xff) {
+
+            data.push_back(0xc4);
+            data.push_back((saltpack::BYTE) size);
+
+        } else if (size <= 0xffff) {
+
+            data.push_back(0xc5);
+            data.push_back((saltpack::BYTE) (size >> 8));
+            data.push_back((saltpack::BYTE) size);
+
+        } else {
+
+            data.push_back(0xc6);
+            for (int shift = 24; shift >= 0; shift -= 8)
+                data.push_back((saltpack::BYTE) (size >> shift));
+        }
+
+        data.insert(data.end(), value, value + size);
+    }
+};
+
+class PackReader {
+
+public:
+
+    PackReader(const saltpack::BYTE *data, size_t size) : data(data), size(size), pos(0) {
+    }
+
+    size_t array() {
+
+        saltpack::BYTE type = next();
+        if ((type & 0xf0) == 0x90)
+            return type & 0x0f;
+        if (type == 0xdc)
+            return (size_t) length(2);
+        if (type == 0xdd)
+            return (size_t) length(4);
+
+        throw saltpack::SaltpackException("wrong msgpack type: array expected");
+    }
+
+    uint64_t integer() {
+
+        saltpack::BYTE type = next();
+        if (type <= 0x7f)
+            return type;
+        if (type == 0xcc || type == 0xd0)
+            return length(1);
+        if (type == 0xcd || type == 0xd1)
+            return length(2);
+        if (type == 0xce || type == 0xd2)
+            return length(4);
+        if (type == 0xcf || type == 0xd3)
+            return length(8);
+
+        throw saltpack::SaltpackException("wrong msgpack type: integer expected");
+    }
+
+    bool boolean() {
+
+        saltpack::BYTE type = next();
+        if (type == 0xc2 || type == 0xc3)
+            return type == 0xc3;
+
+        throw saltpack::SaltpackException("wrong msgpack type: boolean expected");
+    }
+
+    // bin and str are both accepted, as the raw type of old msgpack encoders
+    std::pair<const saltpack::BYTE *, size_t> raw() {
+
+        saltpack::BYTE type = next();
+        size_t len;
+        if ((type & 0xe0) == 0xa0)
+            len = type & 0x1f;
+        else if (type == 0xc4 || type == 0xd9)
+            len = (size_t) length(1);
+        else if (type == 0xc5 || type == 0xda)
+            len = (size_t) length(2);
+        else if (type == 0xc6 || type == 0xdb)
+            len = (size_t) length(4);
+        else
+            throw saltpack::SaltpackException("wrong msgpack type: raw expected");
+
+        if (len > size - pos)
+            throw saltpack::SaltpackException("truncated msgpack data");
+
+        const saltpack::BYTE *value = data + pos;
+        pos += len;
+
+        return std::make_pair(value, len);
+    }
+
+    // consumes a nil value if present
+    bool nil() {
+
+        if (pos < size && data[pos] == 0xc0) {
+
+            pos++;
+            return true;
+        }
+
+        return false;
+    }
+
+    void end() {
+
+        if (pos != size)
+            throw saltpack::SaltpackException("unexpected data after msgpack object");
+    }
+
+private:
+
+    const saltpack::BYTE *data;
+    size_t size;
+    size_t pos;
+
+    saltpack::BYTE next() {
+
+        if (pos >= size)
+            throw saltpack::SaltpackException("truncated msgpack data");
+
+        return data[pos++];
+    }
+
+    uint64_t length(size_t bytes) {
+
+        uint64_t value = 0;
+        for (size_t i = 0; i < bytes; i++)
+            value = (value << 8) | next();
+
+        return value;
+    }
+};
+
+inline bool msgpackLength(const saltpack::BYTE *data, size_t len, size_t &pos, size_t bytes, uint64_t &value) {
+
+    if (len - pos < bytes)
+        return false;
+
+    value = 0;
+    for (size_t i = 0; i < bytes; i++)
+        value = (value << 8) | data[pos++];
+
+    return true;
+}
+
+/*
+ * Returns the size of the msgpack object at the beginning of data, 0 if the first len bytes are not enough to know it.
+ * The size is known as soon as the header of the last value has been read, so the content of the last bin of a packet
+ * (i.e. the payload) doesn't have to be available yet: its length is stored in lastSize.
+ * Only the framing is checked here, the content is validated when the object is decoded.
+ */
+inline size_t msgpackObjectSize(const saltpack::BYTE *data, size_t len, uint64_t &lastSize) {
+
+    size_t pos = 0;
+    uint64_t pending = 1;
+    while (pos < len) {
+
+        saltpack::BYTE type = data[pos++];
+        pending--;
+
+        uint64_t skip = 0;
+        uint64_t children = 0;
+        uint64_t value;
+        if (type <= 0x7f || type >= 0xe0 || (type >= 0xc0 && type <= 0xc3))
+            skip = 0;
+        else if (type <= 0x8f)
+            children = 2 * (uint64_t) (type & 0x0f);
+        else if (type <= 0x9f)
+            children = type & 0x0f;
+        else if (type <= 0xbf)
+            skip = type & 0x1f;
+        else
+            switch (type) {
+
+                case 0xc4:
+                case 0xd9:
+                case 0xc5:
+                case 0xda:
+                case 0xc6:
+                case 0xdb:
+                case 0xc7:
+                case 0xc8:
+                case 0xc9: {
+
+                    size_t bytes = (type == 0xc4 || type == 0xd9 || type == 0xc7) ? 1 :
+                                   (type == 0xc5 || type == 0xda || type == 0xc8) ? 2 : 4;
+                    if (!msgpackLength(data, len, pos, bytes, value))
+                        return 0;
+
+                    // ext types carry an additional type byte
+                    skip = value + (type >= 0xc7 && type <= 0xc9 ? 1 : 0);
+                    break;
+                }
+
+                case 0xca:
+                case 0xce:
+                case 0xd2:
+                    skip = 4;
+                    break;
+
+                case 0xcb:
+                case 0xcf:
+                case 0xd3:
+                    skip = 8;
+                    break;
+
+                case 0xcc:
+                case 0xd0:
+                    skip = 1;
+                    break;
+
+                case 0xcd:
+                case 0xd1:
+                    skip = 2;
+                    break;
+
+                case 0xd4:
+                case 0xd5:
+                case 0xd6:
+                case 0xd7:
+                case 0xd8:
+                    skip = 1 + ((uint64_t) 1 << (type - 0xd4));
+                    break;
+
+                case 0xdc:
+                case 0xde:
+                    if (!msgpackLength(data, len, pos, 2, value))
+                        return 0;
+
+                    children = type == 0xdc ? value : 2 * value;
+                    break;
+
+                case 0xdd:
+                case 0xdf:
+                    if (!msgpackLength(data, len, pos, 4, value))
+                        return 0;
+
+                    children = type == 0xdd ? value : 2 * value;
+                    break;
+
+                default:
+                    throw saltpack::SaltpackException("invalid msgpack data");
+            }
+
+        // last value: its content is not required
+        if (pending == 0 && children == 0) {
+
+            lastSize = skip;
+
+            return pos + (size_t) skip;
+        }
+
+        if (skip > len - pos)
+            return 0;
+
+        pos += (size_t) skip;
+        pending += children;
+    }
+
+    return 0;
+}
+
+#endif //LIBSALTPACK_JNI_MSGPACK_H
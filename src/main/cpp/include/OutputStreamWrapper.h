@@ -19,28 +19,52 @@
 
 #include <jni.h>
 #include <iostream>
+#include <vector>
 #include <saltpack/types.h>
 
 class OutputStreamWrapper : public std::ostream, std::streambuf {
 
 public:
-    OutputStreamWrapper(JNIEnv *env, jobject outputStream);
+    // with channel set, outputStream is a WritableByteChannel draining a direct buffer over the internal storage;
+    // with a null outputStream the data is kept in memory until drained
+    OutputStreamWrapper(JNIEnv *env, jobject outputStream, jint bufferSize, bool channel = false);
 
     ~OutputStreamWrapper() override;
 
+    // JNIEnv pointers are thread-local: to be called by every native method using the wrapper
+    void setEnv(JNIEnv *env) {
+
+        this->env = env;
+    }
+
     int overflow(int __c) override;
 
+    std::streamsize xsputn(const char *s, std::streamsize n) override;
+
     void finalise();
 
+    // true when the wrapper can be reset for the given output instead of being recreated
+    bool accepts(jobject outputStream, jint bufferSize, bool channel) const;
+
+    // points the wrapper to a new output, discarding any data not written yet
+    void reset(jobject outputStream);
+
+    // moves the data kept in memory (null outputStream only) to out
+    void drain(std::vector<char> &out);
+
 private:
     JNIEnv *env;
     jobject outputStream;
-    jmethodID mWrite;
 
-    saltpack::BYTE_ARRAY buf;
-    int count;
+    jbyteArray array;
+    jobject byteBuffer;
+    jint bufferSize;
+    std::vector<char> buf;
+    std::vector<char> memory;
+
+    bool writeToOutput();
 
-    void writeToOutput();
+    bool writeToChannel(jint count);
 };
 
 #endif //LIBSALTPACK_JNI_OUTPUTSTREAMWRAPPER_H
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+#ifndef LIBSALTPACK_JNI_PREFIXEDINPUTSTREAM_H
+#define LIBSALTPACK_JNI_PREFIXEDINPUTSTREAM_H
+
+#include <iostream>
+#include <vector>
+
+// stream returning the bytes already consumed from another stream, followed by the rest of it
+class PrefixedInputStream : public std::istream, std::streambuf {
+
+public:
+
+    PrefixedInputStream(std::vector<char> prefix, std::istream &rest);
+
+    int underflow() override;
+
+    std::streamsize xsgetn(char *s, std::streamsize n) override;
+
+    std::streamsize showmanyc() override;
+
+private:
+    void dropPrefix();
+
+    std::vector<char> prefix;
+    std::streambuf *rest;
+    bool inPrefix;
+    char buffer[8192];
+};
+
+#endif //LIBSALTPACK_JNI_PREFIXEDINPUTSTREAM_H
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef LIBSALTPACK_JNI_PUSHINPUTSTREAM_H
+#define LIBSALTPACK_JNI_PUSHINPUTSTREAM_H
+
+#include <iostream>
+#include <vector>
+
+// in-memory stream filled by the caller: reads never block, they return what has been appended so far
+class PushInputStream : public std::istream, std::streambuf {
+
+public:
+
+    PushInputStream();
+
+    void append(const char *data, size_t size);
+
+    // drops the bytes already read, keeping everything from the absolute offset keep onwards
+    void compact(size_t keep);
+
+    // absolute offset of the first buffered byte
+    size_t begin() const;
+
+    // absolute offset following the last buffered byte
+    size_t end() const;
+
+    const unsigned char *at(size_t offset) const;
+
+    int underflow() override;
+
+    std::streamsize xsgetn(char *s, std::streamsize n) override;
+
+    std::streamsize showmanyc() override;
+
+private:
+    std::vector<char> buffer;
+    size_t discarded;
+};
+
+#endif //LIBSALTPACK_JNI_PUSHINPUTSTREAM_H
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+#ifndef LIBSALTPACK_JNI_RECIPIENTKEYCACHE_H
+#define LIBSALTPACK_JNI_RECIPIENTKEYCACHE_H
+
+#include <saltpack.h>
+#include <sodium.h>
+#include <atomic>
+#include <cstdint>
+#include <list>
+#include <mutex>
+#include <string>
+#include <unordered_map>
+
+// size-bounded LRU cache of the X25519 shared secrets (crypto_box_beforenm) between sender and recipient keys
+class RecipientKeyCache {
+
+public:
+
+    explicit RecipientKeyCache(size_t maxEntries);
+
+    ~RecipientKeyCache();
+
+    // shared secret between the long-term keys of the sender and the recipient, computed and stored on a miss
+    void sharedKey(const saltpack::BYTE *senderPublickey, const saltpack::BYTE *senderSecretkey,
+                   const saltpack::BYTE *recipientPublickey, saltpack::BYTE *out);
+
+    void clear();
+
+    size_t size();
+
+    uint64_t hits() const;
+
+    uint64_t misses() const;
+
+private:
+
+    struct Entry {
+
+        std::string id;
+        saltpack::BYTE key[crypto_box_BEFORENMBYTES];
+    };
+
+    void evict(std::list<Entry>::iterator entry);
+
+    size_t maxEntries;
+    std::list<Entry> entries; // most recently used first
+    std::unordered_map<std::string, std::list<Entry>::iterator> index;
+    std::mutex lock;
+    std::atomic<uint64_t> hitCount;
+    std::atomic<uint64_t> missCount;
+};
+
+#endif //LIBSALTPACK_JNI_RECIPIENTKEYCACHE_H
@@ -0,0 +1,53 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class com_gherynos_libsaltpack_AttachedSignatures */
+
+#ifndef _Included_com_gherynos_libsaltpack_AttachedSignatures
+#define _Included_com_gherynos_libsaltpack_AttachedSignatures
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     com_gherynos_libsaltpack_AttachedSignatures
+ * Method:    header
+ * Signature: (Ljava/lang/Object;)[[B
+ */
+JNIEXPORT jobjectArray JNICALL Java_com_gherynos_libsaltpack_AttachedSignatures_header
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_AttachedSignatures
+ * Method:    signPacket
+ * Signature: (Ljava/lang/Object;[BJZ[BII)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_gherynos_libsaltpack_AttachedSignatures_signPacket
+  (JNIEnv *, jclass, jobject, jbyteArray, jlong, jboolean, jbyteArray, jint, jint);
+
+/*
+ * Class:     com_gherynos_libsaltpack_AttachedSignatures
+ * Method:    parseHeader
+ * Signature: ([B)[[B
+ */
+JNIEXPORT jobjectArray JNICALL Java_com_gherynos_libsaltpack_AttachedSignatures_parseHeader
+  (JNIEnv *, jclass, jbyteArray);
+
+/*
+ * Class:     com_gherynos_libsaltpack_AttachedSignatures
+ * Method:    isFinalPacket
+ * Signature: (I[B)Z
+ */
+JNIEXPORT jboolean JNICALL Java_com_gherynos_libsaltpack_AttachedSignatures_isFinalPacket
+  (JNIEnv *, jclass, jint, jbyteArray);
+
+/*
+ * Class:     com_gherynos_libsaltpack_AttachedSignatures
+ * Method:    verifyPacket
+ * Signature: ([B[BIJ[B)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_gherynos_libsaltpack_AttachedSignatures_verifyPacket
+  (JNIEnv *, jclass, jbyteArray, jbyteArray, jint, jlong, jbyteArray);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
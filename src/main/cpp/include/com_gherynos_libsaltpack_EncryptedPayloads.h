@@ -0,0 +1,109 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class com_gherynos_libsaltpack_EncryptedPayloads */
+
+#ifndef _Included_com_gherynos_libsaltpack_EncryptedPayloads
+#define _Included_com_gherynos_libsaltpack_EncryptedPayloads
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     com_gherynos_libsaltpack_EncryptedPayloads
+ * Method:    header
+ * Signature: (Ljava/lang/Object;[[BZLjava/nio/ByteBuffer;)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_EncryptedPayloads_header
+  (JNIEnv *, jclass, jobject, jobjectArray, jboolean, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_EncryptedPayloads
+ * Method:    sealPayloadKeys
+ * Signature: (Ljava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_EncryptedPayloads_sealPayloadKeys
+  (JNIEnv *, jclass, jobject, jint, jint);
+
+/*
+ * Class:     com_gherynos_libsaltpack_EncryptedPayloads
+ * Method:    hashHeader
+ * Signature: (Ljava/nio/ByteBuffer;)V
+ */
+JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_EncryptedPayloads_hashHeader
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_EncryptedPayloads
+ * Method:    computeMacKeys
+ * Signature: (Ljava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_EncryptedPayloads_computeMacKeys
+  (JNIEnv *, jclass, jobject, jint, jint);
+
+/*
+ * Class:     com_gherynos_libsaltpack_EncryptedPayloads
+ * Method:    finishHeader
+ * Signature: (Ljava/nio/ByteBuffer;)V
+ */
+JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_EncryptedPayloads_finishHeader
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_EncryptedPayloads
+ * Method:    headerPacket
+ * Signature: (Ljava/nio/ByteBuffer;)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_gherynos_libsaltpack_EncryptedPayloads_headerPacket
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_EncryptedPayloads
+ * Method:    sealPacket
+ * Signature: (Ljava/nio/ByteBuffer;JZ[BII)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_gherynos_libsaltpack_EncryptedPayloads_sealPacket
+  (JNIEnv *, jclass, jobject, jlong, jboolean, jbyteArray, jint, jint);
+
+/*
+ * Class:     com_gherynos_libsaltpack_EncryptedPayloads
+ * Method:    openHeader
+ * Signature: ([BLjava/lang/Object;)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_EncryptedPayloads_openHeader
+  (JNIEnv *, jclass, jbyteArray, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_EncryptedPayloads
+ * Method:    openPacket
+ * Signature: (Ljava/nio/ByteBuffer;J[B)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_gherynos_libsaltpack_EncryptedPayloads_openPacket
+  (JNIEnv *, jclass, jobject, jlong, jbyteArray);
+
+/*
+ * Class:     com_gherynos_libsaltpack_EncryptedPayloads
+ * Method:    sender
+ * Signature: (Ljava/nio/ByteBuffer;)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_gherynos_libsaltpack_EncryptedPayloads_sender
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_EncryptedPayloads
+ * Method:    recipients
+ * Signature: (Ljava/nio/ByteBuffer;)J
+ */
+JNIEXPORT jlong JNICALL Java_com_gherynos_libsaltpack_EncryptedPayloads_recipients
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_EncryptedPayloads
+ * Method:    release
+ * Signature: (Ljava/nio/ByteBuffer;)V
+ */
+JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_EncryptedPayloads_release
+  (JNIEnv *, jclass, jobject);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
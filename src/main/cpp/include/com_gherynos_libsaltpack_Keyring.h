@@ -0,0 +1,45 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class com_gherynos_libsaltpack_Keyring */
+
+#ifndef _Included_com_gherynos_libsaltpack_Keyring
+#define _Included_com_gherynos_libsaltpack_Keyring
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     com_gherynos_libsaltpack_Keyring
+ * Method:    constructor
+ * Signature: ()Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_Keyring_constructor
+  (JNIEnv *, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_Keyring
+ * Method:    destructor
+ * Signature: (Ljava/nio/ByteBuffer;)V
+ */
+JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_Keyring_destructor
+  (JNIEnv *, jobject, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_Keyring
+ * Method:    addSecretkey
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/lang/Object;)V
+ */
+JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_Keyring_addSecretkey
+  (JNIEnv *, jobject, jobject, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_Keyring
+ * Method:    addSymmetricKey
+ * Signature: (Ljava/nio/ByteBuffer;[B[B)V
+ */
+JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_Keyring_addSymmetricKey
+  (JNIEnv *, jobject, jobject, jbyteArray, jbyteArray);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -7,13 +7,15 @@
 #ifdef __cplusplus
 extern "C" {
 #endif
+#undef com_gherynos_libsaltpack_MessageReader_TRANSFER_BUFFER_SIZE
+#define com_gherynos_libsaltpack_MessageReader_TRANSFER_BUFFER_SIZE 65536L
 /*
  * Class:     com_gherynos_libsaltpack_MessageReader
  * Method:    constructor
- * Signature: (Lcom/gherynos/libsaltpack/InputParameters;[B)Ljava/nio/ByteBuffer;
+ * Signature: (Lcom/gherynos/libsaltpack/InputParameters;Ljava/lang/Object;)Ljava/nio/ByteBuffer;
  */
-JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_MessageReader_constructor__Lcom_gherynos_libsaltpack_InputParameters_2_3B
-  (JNIEnv *, jobject, jobject, jbyteArray);
+JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_MessageReader_constructor__Lcom_gherynos_libsaltpack_InputParameters_2Ljava_lang_Object_2
+  (JNIEnv *, jobject, jobject, jobject);
 
 /*
  * Class:     com_gherynos_libsaltpack_MessageReader
@@ -34,10 +36,26 @@ JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_MessageReader_constructo
 /*
  * Class:     com_gherynos_libsaltpack_MessageReader
  * Method:    constructor
- * Signature: (Lcom/gherynos/libsaltpack/InputParameters;[B[[B)Ljava/nio/ByteBuffer;
+ * Signature: (Lcom/gherynos/libsaltpack/InputParameters;Ljava/lang/Object;[[B)Ljava/nio/ByteBuffer;
  */
-JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_MessageReader_constructor__Lcom_gherynos_libsaltpack_InputParameters_2_3B_3_3B
-  (JNIEnv *, jobject, jobject, jbyteArray, jobjectArray);
+JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_MessageReader_constructor__Lcom_gherynos_libsaltpack_InputParameters_2Ljava_lang_Object_2_3_3B
+  (JNIEnv *, jobject, jobject, jobject, jobjectArray);
+
+/*
+ * Class:     com_gherynos_libsaltpack_MessageReader
+ * Method:    keyringConstructor
+ * Signature: (Lcom/gherynos/libsaltpack/InputParameters;Ljava/nio/ByteBuffer;)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_MessageReader_keyringConstructor
+  (JNIEnv *, jclass, jobject, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_MessageReader
+ * Method:    peekHeaderNative
+ * Signature: (Lcom/gherynos/libsaltpack/InputParameters;Ljava/nio/ByteBuffer;)Lcom/gherynos/libsaltpack/SaltpackHeader;
+ */
+JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_MessageReader_peekHeaderNative
+  (JNIEnv *, jclass, jobject, jobject);
 
 /*
  * Class:     com_gherynos_libsaltpack_MessageReader
@@ -47,6 +65,14 @@ JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_MessageReader_constructo
 JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_MessageReader_destructor
   (JNIEnv *, jobject, jobject);
 
+/*
+ * Class:     com_gherynos_libsaltpack_MessageReader
+ * Method:    reset
+ * Signature: (Ljava/nio/ByteBuffer;Lcom/gherynos/libsaltpack/InputParameters;)V
+ */
+JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_MessageReader_reset
+  (JNIEnv *, jobject, jobject, jobject);
+
 /*
  * Class:     com_gherynos_libsaltpack_MessageReader
  * Method:    hasMoreBlocks
@@ -63,6 +89,30 @@ JNIEXPORT jboolean JNICALL Java_com_gherynos_libsaltpack_MessageReader_hasMoreBl
 JNIEXPORT jbyteArray JNICALL Java_com_gherynos_libsaltpack_MessageReader_getBlock
   (JNIEnv *, jobject, jobject);
 
+/*
+ * Class:     com_gherynos_libsaltpack_MessageReader
+ * Method:    read
+ * Signature: (Ljava/nio/ByteBuffer;[BII)I
+ */
+JNIEXPORT jint JNICALL Java_com_gherynos_libsaltpack_MessageReader_read
+  (JNIEnv *, jobject, jobject, jbyteArray, jint, jint);
+
+/*
+ * Class:     com_gherynos_libsaltpack_MessageReader
+ * Method:    readDirect
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_com_gherynos_libsaltpack_MessageReader_readDirect
+  (JNIEnv *, jobject, jobject, jobject, jint, jint);
+
+/*
+ * Class:     com_gherynos_libsaltpack_MessageReader
+ * Method:    transferTo
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/io/OutputStream;I)J
+ */
+JNIEXPORT jlong JNICALL Java_com_gherynos_libsaltpack_MessageReader_transferTo
+  (JNIEnv *, jobject, jobject, jobject, jint);
+
 /*
  * Class:     com_gherynos_libsaltpack_MessageReader
  * Method:    getRecipients
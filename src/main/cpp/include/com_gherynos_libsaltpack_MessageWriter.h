@@ -7,21 +7,23 @@
 #ifdef __cplusplus
 extern "C" {
 #endif
+#undef com_gherynos_libsaltpack_MessageWriter_TRANSFER_BUFFER_SIZE
+#define com_gherynos_libsaltpack_MessageWriter_TRANSFER_BUFFER_SIZE 65536L
 /*
  * Class:     com_gherynos_libsaltpack_MessageWriter
  * Method:    constructor
- * Signature: (Lcom/gherynos/libsaltpack/OutputParameters;[B[[BZ)Ljava/nio/ByteBuffer;
+ * Signature: (Lcom/gherynos/libsaltpack/OutputParameters;Ljava/lang/Object;[[BZ)Ljava/nio/ByteBuffer;
  */
-JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpack_OutputParameters_2_3B_3_3BZ
-  (JNIEnv *, jobject, jobject, jbyteArray, jobjectArray, jboolean);
+JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpack_OutputParameters_2Ljava_lang_Object_2_3_3BZ
+  (JNIEnv *, jobject, jobject, jobject, jobjectArray, jboolean);
 
 /*
  * Class:     com_gherynos_libsaltpack_MessageWriter
  * Method:    constructor
- * Signature: (Lcom/gherynos/libsaltpack/OutputParameters;[B[[B)Ljava/nio/ByteBuffer;
+ * Signature: (Lcom/gherynos/libsaltpack/OutputParameters;Ljava/lang/Object;[[B)Ljava/nio/ByteBuffer;
  */
-JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpack_OutputParameters_2_3B_3_3B
-  (JNIEnv *, jobject, jobject, jbyteArray, jobjectArray);
+JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpack_OutputParameters_2Ljava_lang_Object_2_3_3B
+  (JNIEnv *, jobject, jobject, jobject, jobjectArray);
 
 /*
  * Class:     com_gherynos_libsaltpack_MessageWriter
@@ -42,18 +44,18 @@ JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_MessageWriter_constructo
 /*
  * Class:     com_gherynos_libsaltpack_MessageWriter
  * Method:    constructor
- * Signature: (Lcom/gherynos/libsaltpack/OutputParameters;[BZ)Ljava/nio/ByteBuffer;
+ * Signature: (Lcom/gherynos/libsaltpack/OutputParameters;Ljava/lang/Object;Z)Ljava/nio/ByteBuffer;
  */
-JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpack_OutputParameters_2_3BZ
-  (JNIEnv *, jobject, jobject, jbyteArray, jboolean);
+JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpack_OutputParameters_2Ljava_lang_Object_2Z
+  (JNIEnv *, jobject, jobject, jobject, jboolean);
 
 /*
  * Class:     com_gherynos_libsaltpack_MessageWriter
  * Method:    constructor
- * Signature: (Lcom/gherynos/libsaltpack/OutputParameters;[B[[B[[[B)Ljava/nio/ByteBuffer;
+ * Signature: (Lcom/gherynos/libsaltpack/OutputParameters;Ljava/lang/Object;[[B[[[B)Ljava/nio/ByteBuffer;
  */
-JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpack_OutputParameters_2_3B_3_3B_3_3_3B
-  (JNIEnv *, jobject, jobject, jbyteArray, jobjectArray, jobjectArray);
+JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_MessageWriter_constructor__Lcom_gherynos_libsaltpack_OutputParameters_2Ljava_lang_Object_2_3_3B_3_3_3B
+  (JNIEnv *, jobject, jobject, jobject, jobjectArray, jobjectArray);
 
 /*
  * Class:     com_gherynos_libsaltpack_MessageWriter
@@ -71,6 +73,14 @@ JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_MessageWriter_constructo
 JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_MessageWriter_destructor
   (JNIEnv *, jobject, jobject);
 
+/*
+ * Class:     com_gherynos_libsaltpack_MessageWriter
+ * Method:    reset
+ * Signature: (Ljava/nio/ByteBuffer;Lcom/gherynos/libsaltpack/OutputParameters;)V
+ */
+JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_MessageWriter_reset
+  (JNIEnv *, jobject, jobject, jobject);
+
 /*
  * Class:     com_gherynos_libsaltpack_MessageWriter
  * Method:    addBlock
@@ -79,6 +89,30 @@ JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_MessageWriter_destructor
 JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_MessageWriter_addBlock
   (JNIEnv *, jobject, jobject, jbyteArray, jint, jint, jboolean);
 
+/*
+ * Class:     com_gherynos_libsaltpack_MessageWriter
+ * Method:    transferFrom
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/io/InputStream;I)J
+ */
+JNIEXPORT jlong JNICALL Java_com_gherynos_libsaltpack_MessageWriter_transferFrom
+  (JNIEnv *, jobject, jobject, jobject, jint);
+
+/*
+ * Class:     com_gherynos_libsaltpack_MessageWriter
+ * Method:    addBlockDirect
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;IIZ)V
+ */
+JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_MessageWriter_addBlockDirect
+  (JNIEnv *, jobject, jobject, jobject, jint, jint, jboolean);
+
+/*
+ * Class:     com_gherynos_libsaltpack_MessageWriter
+ * Method:    drain
+ * Signature: (Ljava/nio/ByteBuffer;)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_gherynos_libsaltpack_MessageWriter_drain
+  (JNIEnv *, jobject, jobject);
+
 #ifdef __cplusplus
 }
 #endif
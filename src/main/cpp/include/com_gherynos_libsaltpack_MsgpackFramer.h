@@ -0,0 +1,35 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class com_gherynos_libsaltpack_MsgpackFramer */
+
+#ifndef _Included_com_gherynos_libsaltpack_MsgpackFramer
+#define _Included_com_gherynos_libsaltpack_MsgpackFramer
+#ifdef __cplusplus
+extern "C" {
+#endif
+#undef com_gherynos_libsaltpack_MsgpackFramer_MAX_PACKET_SIZE
+#define com_gherynos_libsaltpack_MsgpackFramer_MAX_PACKET_SIZE 1114112L
+#undef com_gherynos_libsaltpack_MsgpackFramer_MAX_HEADER_SIZE
+#define com_gherynos_libsaltpack_MsgpackFramer_MAX_HEADER_SIZE 16777216L
+#undef com_gherynos_libsaltpack_MsgpackFramer_INITIAL_BUFFER_SIZE
+#define com_gherynos_libsaltpack_MsgpackFramer_INITIAL_BUFFER_SIZE 8192L
+#undef com_gherynos_libsaltpack_MsgpackFramer_MAX_BLOCK_SIZE
+#define com_gherynos_libsaltpack_MsgpackFramer_MAX_BLOCK_SIZE 1048576LL
+#undef com_gherynos_libsaltpack_MsgpackFramer_SECRETBOX_MAC_SIZE
+#define com_gherynos_libsaltpack_MsgpackFramer_SECRETBOX_MAC_SIZE 16LL
+#undef com_gherynos_libsaltpack_MsgpackFramer_AUTHENTICATOR_SIZE
+#define com_gherynos_libsaltpack_MsgpackFramer_AUTHENTICATOR_SIZE 34LL
+#undef com_gherynos_libsaltpack_MsgpackFramer_PACKET_FRAMING_SIZE
+#define com_gherynos_libsaltpack_MsgpackFramer_PACKET_FRAMING_SIZE 16LL
+/*
+ * Class:     com_gherynos_libsaltpack_MsgpackFramer
+ * Method:    frame
+ * Signature: ([BI)[J
+ */
+JNIEXPORT jlongArray JNICALL Java_com_gherynos_libsaltpack_MsgpackFramer_frame
+  (JNIEnv *, jclass, jbyteArray, jint);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -0,0 +1,61 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class com_gherynos_libsaltpack_RecipientKeyCache */
+
+#ifndef _Included_com_gherynos_libsaltpack_RecipientKeyCache
+#define _Included_com_gherynos_libsaltpack_RecipientKeyCache
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     com_gherynos_libsaltpack_RecipientKeyCache
+ * Method:    constructor
+ * Signature: (I)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_RecipientKeyCache_constructor
+  (JNIEnv *, jobject, jint);
+
+/*
+ * Class:     com_gherynos_libsaltpack_RecipientKeyCache
+ * Method:    destructor
+ * Signature: (Ljava/nio/ByteBuffer;)V
+ */
+JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_RecipientKeyCache_destructor
+  (JNIEnv *, jobject, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_RecipientKeyCache
+ * Method:    hits
+ * Signature: (Ljava/nio/ByteBuffer;)J
+ */
+JNIEXPORT jlong JNICALL Java_com_gherynos_libsaltpack_RecipientKeyCache_hits
+  (JNIEnv *, jobject, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_RecipientKeyCache
+ * Method:    misses
+ * Signature: (Ljava/nio/ByteBuffer;)J
+ */
+JNIEXPORT jlong JNICALL Java_com_gherynos_libsaltpack_RecipientKeyCache_misses
+  (JNIEnv *, jobject, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_RecipientKeyCache
+ * Method:    size
+ * Signature: (Ljava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL Java_com_gherynos_libsaltpack_RecipientKeyCache_size
+  (JNIEnv *, jobject, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_RecipientKeyCache
+ * Method:    clear
+ * Signature: (Ljava/nio/ByteBuffer;)V
+ */
+JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_RecipientKeyCache_clear
+  (JNIEnv *, jobject, jobject);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -0,0 +1,77 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class com_gherynos_libsaltpack_Saltpack */
+
+#ifndef _Included_com_gherynos_libsaltpack_Saltpack
+#define _Included_com_gherynos_libsaltpack_Saltpack
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     com_gherynos_libsaltpack_Saltpack
+ * Method:    encryptNative
+ * Signature: ([BLjava/lang/Object;[[B)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_gherynos_libsaltpack_Saltpack_encryptNative
+  (JNIEnv *, jclass, jbyteArray, jobject, jobjectArray);
+
+/*
+ * Class:     com_gherynos_libsaltpack_Saltpack
+ * Method:    encryptBatchNative
+ * Signature: ([[BLjava/lang/Object;[[B[I)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_gherynos_libsaltpack_Saltpack_encryptBatchNative
+  (JNIEnv *, jclass, jobjectArray, jobject, jobjectArray, jintArray);
+
+/*
+ * Class:     com_gherynos_libsaltpack_Saltpack
+ * Method:    verifyDetachedBatchNative
+ * Signature: ([[B[[B[[B[[B[Ljava/lang/String;)V
+ */
+JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_Saltpack_verifyDetachedBatchNative
+  (JNIEnv *, jclass, jobjectArray, jobjectArray, jobjectArray, jobjectArray, jobjectArray);
+
+/*
+ * Class:     com_gherynos_libsaltpack_Saltpack
+ * Method:    decryptNative
+ * Signature: ([BLjava/lang/Object;)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_gherynos_libsaltpack_Saltpack_decryptNative
+  (JNIEnv *, jclass, jbyteArray, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_Saltpack
+ * Method:    signNative
+ * Signature: ([BLjava/lang/Object;)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_gherynos_libsaltpack_Saltpack_signNative
+  (JNIEnv *, jclass, jbyteArray, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_Saltpack
+ * Method:    verifyNative
+ * Signature: ([B[B)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_gherynos_libsaltpack_Saltpack_verifyNative
+  (JNIEnv *, jclass, jbyteArray, jbyteArray);
+
+/*
+ * Class:     com_gherynos_libsaltpack_Saltpack
+ * Method:    signcryptNative
+ * Signature: ([BLjava/lang/Object;[[B[[[B)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_gherynos_libsaltpack_Saltpack_signcryptNative
+  (JNIEnv *, jclass, jbyteArray, jobject, jobjectArray, jobjectArray);
+
+/*
+ * Class:     com_gherynos_libsaltpack_Saltpack
+ * Method:    designcryptNative
+ * Signature: ([BLjava/lang/Object;[[B)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_gherynos_libsaltpack_Saltpack_designcryptNative
+  (JNIEnv *, jclass, jbyteArray, jobject, jobjectArray);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
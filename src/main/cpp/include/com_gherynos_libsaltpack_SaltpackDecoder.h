@@ -0,0 +1,85 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class com_gherynos_libsaltpack_SaltpackDecoder */
+
+#ifndef _Included_com_gherynos_libsaltpack_SaltpackDecoder
+#define _Included_com_gherynos_libsaltpack_SaltpackDecoder
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     com_gherynos_libsaltpack_SaltpackDecoder
+ * Method:    constructor
+ * Signature: (Ljava/lang/Object;)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_SaltpackDecoder_constructor
+  (JNIEnv *, jobject, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_SaltpackDecoder
+ * Method:    destructor
+ * Signature: (Ljava/nio/ByteBuffer;)V
+ */
+JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_SaltpackDecoder_destructor
+  (JNIEnv *, jobject, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_SaltpackDecoder
+ * Method:    feed
+ * Signature: (Ljava/nio/ByteBuffer;[BII)[[B
+ */
+JNIEXPORT jobjectArray JNICALL Java_com_gherynos_libsaltpack_SaltpackDecoder_feed
+  (JNIEnv *, jobject, jobject, jbyteArray, jint, jint);
+
+/*
+ * Class:     com_gherynos_libsaltpack_SaltpackDecoder
+ * Method:    feedDirect
+ * Signature: (Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;II)[[B
+ */
+JNIEXPORT jobjectArray JNICALL Java_com_gherynos_libsaltpack_SaltpackDecoder_feedDirect
+  (JNIEnv *, jobject, jobject, jobject, jint, jint);
+
+/*
+ * Class:     com_gherynos_libsaltpack_SaltpackDecoder
+ * Method:    isHeaderParsed
+ * Signature: (Ljava/nio/ByteBuffer;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_com_gherynos_libsaltpack_SaltpackDecoder_isHeaderParsed
+  (JNIEnv *, jobject, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_SaltpackDecoder
+ * Method:    isFinished
+ * Signature: (Ljava/nio/ByteBuffer;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_com_gherynos_libsaltpack_SaltpackDecoder_isFinished
+  (JNIEnv *, jobject, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_SaltpackDecoder
+ * Method:    getRecipients
+ * Signature: (Ljava/nio/ByteBuffer;)[[B
+ */
+JNIEXPORT jobjectArray JNICALL Java_com_gherynos_libsaltpack_SaltpackDecoder_getRecipients
+  (JNIEnv *, jobject, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_SaltpackDecoder
+ * Method:    getSender
+ * Signature: (Ljava/nio/ByteBuffer;)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_gherynos_libsaltpack_SaltpackDecoder_getSender
+  (JNIEnv *, jobject, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_SaltpackDecoder
+ * Method:    isIntentionallyAnonymous
+ * Signature: (Ljava/nio/ByteBuffer;)Z
+ */
+JNIEXPORT jboolean JNICALL Java_com_gherynos_libsaltpack_SaltpackDecoder_isIntentionallyAnonymous
+  (JNIEnv *, jobject, jobject);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
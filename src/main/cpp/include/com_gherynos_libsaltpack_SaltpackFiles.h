@@ -0,0 +1,53 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class com_gherynos_libsaltpack_SaltpackFiles */
+
+#ifndef _Included_com_gherynos_libsaltpack_SaltpackFiles
+#define _Included_com_gherynos_libsaltpack_SaltpackFiles
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     com_gherynos_libsaltpack_SaltpackFiles
+ * Method:    encrypt
+ * Signature: (Ljava/lang/String;Ljava/lang/String;Ljava/lang/Object;[[B)J
+ */
+JNIEXPORT jlong JNICALL Java_com_gherynos_libsaltpack_SaltpackFiles_encrypt
+  (JNIEnv *, jclass, jstring, jstring, jobject, jobjectArray);
+
+/*
+ * Class:     com_gherynos_libsaltpack_SaltpackFiles
+ * Method:    decrypt
+ * Signature: (Ljava/lang/String;Ljava/lang/String;Ljava/lang/Object;)J
+ */
+JNIEXPORT jlong JNICALL Java_com_gherynos_libsaltpack_SaltpackFiles_decrypt
+  (JNIEnv *, jclass, jstring, jstring, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_SaltpackFiles
+ * Method:    sign
+ * Signature: (Ljava/lang/String;Ljava/lang/String;Ljava/lang/Object;Z)J
+ */
+JNIEXPORT jlong JNICALL Java_com_gherynos_libsaltpack_SaltpackFiles_sign
+  (JNIEnv *, jclass, jstring, jstring, jobject, jboolean);
+
+/*
+ * Class:     com_gherynos_libsaltpack_SaltpackFiles
+ * Method:    verify
+ * Signature: (Ljava/lang/String;Ljava/lang/String;)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_gherynos_libsaltpack_SaltpackFiles_verify
+  (JNIEnv *, jclass, jstring, jstring);
+
+/*
+ * Class:     com_gherynos_libsaltpack_SaltpackFiles
+ * Method:    verifyDetached
+ * Signature: (Ljava/lang/String;Ljava/lang/String;)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_gherynos_libsaltpack_SaltpackFiles_verifyDetached
+  (JNIEnv *, jclass, jstring, jstring);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -0,0 +1,45 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class com_gherynos_libsaltpack_SecretKeyHandle */
+
+#ifndef _Included_com_gherynos_libsaltpack_SecretKeyHandle
+#define _Included_com_gherynos_libsaltpack_SecretKeyHandle
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     com_gherynos_libsaltpack_SecretKeyHandle
+ * Method:    constructor
+ * Signature: ([B)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_SecretKeyHandle_constructor
+  (JNIEnv *, jclass, jbyteArray);
+
+/*
+ * Class:     com_gherynos_libsaltpack_SecretKeyHandle
+ * Method:    generateKeypair
+ * Signature: ([BZ)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_com_gherynos_libsaltpack_SecretKeyHandle_generateKeypair
+  (JNIEnv *, jclass, jbyteArray, jboolean);
+
+/*
+ * Class:     com_gherynos_libsaltpack_SecretKeyHandle
+ * Method:    derivePublickey
+ * Signature: (Ljava/nio/ByteBuffer;)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_gherynos_libsaltpack_SecretKeyHandle_derivePublickey
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     com_gherynos_libsaltpack_SecretKeyHandle
+ * Method:    destructor
+ * Signature: (Ljava/nio/ByteBuffer;)V
+ */
+JNIEXPORT void JNICALL Java_com_gherynos_libsaltpack_SecretKeyHandle_destructor
+  (JNIEnv *, jclass, jobject);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
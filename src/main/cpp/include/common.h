@@ -19,14 +19,69 @@
 
 #include <saltpack.h>
 #include <sodium.h>
+#include <string>
+#include <unordered_map>
+#include <utility>
 #include "InputStreamWrapper.h"
 
 #define GET_BYTES(array) ((unsigned char *) env->GetByteArrayElements(array, NULL))
 #define RELEASE_BYTES(array, data) (env->ReleaseByteArrayElements(array, (jbyte *) data, 0))
 #define GET_BYTES_SIZE(array) ((size_t) env->GetArrayLength(array))
 
-#define EXCEPTION_CLASS(env) (loadClass(env, "com/gherynos/libsaltpack/SaltpackException"))
-#define BYTE_ARRAY_CLASS(env) (loadClass(env, "[B"))
+#define EXCEPTION_CLASS(env) (jniCache.saltpackException)
+#define BYTE_ARRAY_CLASS(env) (jniCache.byteArray)
+
+/*
+ * Classes and method IDs resolved once in JNI_OnLoad (see common.cpp).
+ * Classes are held as global references, so the IDs stay valid until JNI_OnUnload.
+ */
+struct JNICache {
+
+    JavaVM *vm;
+
+    jclass saltpackException;
+    jclass byteArray;
+
+    jclass inputStream;
+    jmethodID inputStreamRead;
+    jmethodID inputStreamAvailable;
+
+    jclass outputStream;
+    jmethodID outputStreamWrite;
+
+    jclass readableByteChannel;
+    jmethodID readableByteChannelRead;
+
+    jclass writableByteChannel;
+    jmethodID writableByteChannelWrite;
+
+    jclass buffer;
+    jmethodID bufferClear;
+    jmethodID bufferLimit;
+
+    jclass inputParameters;
+    jmethodID ipGetInputStream;
+    jmethodID ipGetChannel;
+    jmethodID ipIsArmored;
+    jmethodID ipGetApp;
+    jmethodID ipGetBufferSize;
+
+    jclass outputParameters;
+    jmethodID opGetOutputStream;
+    jmethodID opGetChannel;
+    jmethodID opIsArmored;
+    jmethodID opIntParamsPopulated;
+    jmethodID opGetApp;
+    jmethodID opGetLettersInWords;
+    jmethodID opGetWordsInPhrase;
+    jmethodID opGetBufferSize;
+    jmethodID opIsMemory;
+
+    jclass saltpackHeader;
+    jmethodID saltpackHeaderInit;
+};
+
+extern JNICache jniCache;
 
 inline jclass loadClass(JNIEnv *env, const char *cls) {
 
@@ -91,6 +146,25 @@ inline jbyteArray copyBytes(JNIEnv *env, saltpack::BYTE_ARRAY array) {
     return out;
 }
 
+struct SKObjects {
+
+    unsigned char *key; // allocated with sodium_malloc
+    size_t size;
+};
+
+// the secret key can be provided either as a byte array or as the buffer of a SecretKeyHandle
+inline saltpack::BYTE_ARRAY copySecretkey(JNIEnv *env, jobject secretkey) {
+
+    if (env->IsInstanceOf(secretkey, BYTE_ARRAY_CLASS(env)))
+        return copyBytes(env, (jbyteArray) secretkey);
+
+    auto *objs = (SKObjects *) env->GetDirectBufferAddress(secretkey);
+    if (objs == nullptr)
+        throw saltpack::SaltpackException("null secret key provided");
+
+    return saltpack::BYTE_ARRAY(objs->key, objs->key + objs->size);
+}
+
 inline std::list<saltpack::BYTE_ARRAY> convertRecipients(JNIEnv *env, jobjectArray recipients) {
 
     if (recipients == nullptr)
@@ -102,13 +176,34 @@ inline std::list<saltpack::BYTE_ARRAY> convertRecipients(JNIEnv *env, jobjectArr
 
         auto rec = (jbyteArray) env->GetObjectArrayElement(recipients, i);
 
+        // large recipient lists would overflow the local references table
         saltpack::BYTE_ARRAY recipient = copyBytes(env, rec);
-        lRecipients.push_back(recipient);
+        env->DeleteLocalRef(rec);
+        lRecipients.push_back(std::move(recipient));
     }
 
     return lRecipients;
 }
 
+struct KObjects {
+
+    // Curve25519 secret keys indexed by public key, symmetric keys indexed by identifier
+    std::unordered_map<std::string, saltpack::BYTE_ARRAY> secretkeys;
+    std::unordered_map<std::string, saltpack::BYTE_ARRAY> symmetricKeys;
+};
+
+inline KObjects *getKObjects(JNIEnv *env, jobject ptr) {
+
+    if (ptr == nullptr)
+        throw saltpack::SaltpackException("null keyring provided");
+
+    auto *objs = (KObjects *) env->GetDirectBufferAddress(ptr);
+    if (objs == nullptr)
+        throw saltpack::SaltpackException("null keyring provided");
+
+    return objs;
+}
+
 inline std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY> convertPair(JNIEnv *env, jobjectArray pair) {
 
     if (pair == nullptr)
@@ -123,8 +218,10 @@ inline std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY> convertPair(JNIEnv
 
     saltpack::BYTE_ARRAY pair1A = copyBytes(env, pair1);
     saltpack::BYTE_ARRAY pair2A = copyBytes(env, pair2);
+    env->DeleteLocalRef(pair1);
+    env->DeleteLocalRef(pair2);
 
-    return std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY>(pair1A, pair2A);
+    return std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY>(std::move(pair1A), std::move(pair2A));
 }
 
 inline std::list<std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY>> convertKeys(JNIEnv *env, jobjectArray keys) {
@@ -138,6 +235,7 @@ inline std::list<std::pair<saltpack::BYTE_ARRAY, saltpack::BYTE_ARRAY>> convertK
 
         auto current = (jobjectArray) env->GetObjectArrayElement(keys, i);
         lKeys.push_back(convertPair(env, current));
+        env->DeleteLocalRef(current);
     }
 
     return lKeys;
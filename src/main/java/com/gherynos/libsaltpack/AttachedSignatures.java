@@ -0,0 +1,77 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+/**
+ * Native primitives of the attached signature format, used to sign and verify the blocks of a message independently.
+ * <p>
+ * Every payload packet is signed over the header hash, its sequence number and its content only,
+ * so the packets can be processed concurrently once the header is known.
+ * </p>
+ */
+final class AttachedSignatures {  // NOPMD
+
+    static {
+
+        Loader.loadLibrary();
+    }
+
+    private AttachedSignatures() {
+    }
+
+    /**
+     * Generates the header of a new message (version 2).
+     *
+     * @param senderSecretkey the private key of the sender.
+     * @return the header packet and the header hash.
+     * @throws SaltpackException
+     */
+    static native byte[][] header(Object senderSecretkey) throws SaltpackException;
+
+    /**
+     * Generates a signed payload packet (version 2).
+     *
+     * @return the payload packet.
+     * @throws SaltpackException
+     */
+    static native byte[] signPacket(Object senderSecretkey, byte[] headerHash, long seqno, boolean isFinal, byte[] data, int off, int len) throws SaltpackException;
+
+    /**
+     * Parses the header of a message.
+     *
+     * @param header the header packet.
+     * @return the public key of the sender, the header hash and the major version (single byte array).
+     * @throws SaltpackException if the header is not valid or doesn't belong to an attached signature.
+     */
+    static native byte[][] parseHeader(byte[] header) throws SaltpackException;
+
+    /**
+     * Final flag of a payload packet.
+     *
+     * @return true if the packet is the last one of the message.
+     * @throws SaltpackException if the packet is not valid.
+     */
+    static native boolean isFinalPacket(int version, byte[] packet) throws SaltpackException;
+
+    /**
+     * Verifies a payload packet.
+     *
+     * @return the payload.
+     * @throws SaltpackException if the packet is not valid or the signature verification fails.
+     */
+    static native byte[] verifyPacket(byte[] senderPublickey, byte[] headerHash, int version, long seqno, byte[] packet) throws SaltpackException;
+}
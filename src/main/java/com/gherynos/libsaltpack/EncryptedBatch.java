@@ -0,0 +1,80 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import java.util.Arrays;
+
+/**
+ * Messages generated by {@link com.gherynos.libsaltpack.Saltpack#encryptBatch(java.util.List, byte[], byte[][])},
+ * packed one after the other in a single array.
+ * <p>
+ * The message {@code i} spans from {@code getOffsets()[i]} (inclusive) to {@code getOffsets()[i + 1]} (exclusive).
+ * </p>
+ */
+public final class EncryptedBatch {
+
+    private final byte[] data;
+
+    private final int[] offsets;
+
+    EncryptedBatch(byte[] data, int[] offsets) {
+
+        this.data = data;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Returns the number of messages in the batch.
+     *
+     * @return the number of messages.
+     */
+    public int size() {
+
+        return offsets.length - 1;
+    }
+
+    /**
+     * Returns the packed messages, not copied.
+     *
+     * @return the messages of the batch, one after the other.
+     */
+    public byte[] getData() {
+
+        return data;  // NOPMD
+    }
+
+    /**
+     * Returns the boundaries of the messages in the packed data, not copied.
+     *
+     * @return {@link #size()} + 1 offsets, the first one being 0 and the last one the length of the data.
+     */
+    public int[] getOffsets() {
+
+        return offsets;  // NOPMD
+    }
+
+    /**
+     * Returns a copy of a message of the batch.
+     *
+     * @param index the index of the message, in the order of the plaintexts.
+     * @return the encrypted message.
+     */
+    public byte[] get(int index) {
+
+        return Arrays.copyOfRange(data, offsets[index], offsets[index + 1]);
+    }
+}
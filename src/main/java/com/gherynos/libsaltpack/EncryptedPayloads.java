@@ -0,0 +1,138 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.gherynos.libsaltpack;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Native primitives of the encryption format, used to encrypt and decrypt the blocks of a message independently.
+ * <p>
+ * Every payload packet is sealed with the payload key and a nonce derived from its index, and authenticated
+ * over the header hash, so the packets can be processed concurrently once the header is known.
+ * The keys are kept in native memory and securely deleted by {@link #release(ByteBuffer)}.
+ * </p>
+ */
+final class EncryptedPayloads {  // NOPMD
+
+    static {
+
+        Loader.loadLibrary();
+    }
+
+    private EncryptedPayloads() {
+    }
+
+    /**
+     * Starts the header of a new message (version 2) with a random payload key.
+     * <p>
+     * The header is completed by {@link #sealPayloadKeys(ByteBuffer, int, int)} over all the recipients,
+     * {@link #hashHeader(ByteBuffer)}, {@link #computeMacKeys(ByteBuffer, int, int)} over all the recipients
+     * and {@link #finishHeader(ByteBuffer)}; the ranges of recipients can be processed concurrently.
+     * </p>
+     *
+     * @param senderSecretkey   the private key of the sender (byte array or {@link SecretKeyHandle} buffer), null for anonymous messages.
+     * @param recipients        the list of public keys of the recipients.
+     * @param visibleRecipients if true, the public keys of the recipients will be visible in the header.
+     * @param cache             the {@link RecipientKeyCache} buffer, to be kept until the header is finished; null to compute all the key exchanges.
+     * @return the keys of the message, to be released.
+     * @throws SaltpackException
+     */
+    static native ByteBuffer header(Object senderSecretkey, byte[][] recipients, boolean visibleRecipients, ByteBuffer cache) throws SaltpackException;
+
+    /**
+     * Encrypts the payload key for the recipients from {@code from} (inclusive) to {@code to} (exclusive).
+     *
+     * @throws SaltpackException if the range is not valid or the header is already complete.
+     */
+    static native void sealPayloadKeys(ByteBuffer ptr, int from, int to) throws SaltpackException;
+
+    /**
+     * Serialises and hashes the header, once the payload key has been encrypted for every recipient.
+     *
+     * @throws SaltpackException if a payload key box is missing or the header is already complete.
+     */
+    static native void hashHeader(ByteBuffer ptr) throws SaltpackException;
+
+    /**
+     * Computes the MAC keys of the recipients from {@code from} (inclusive) to {@code to} (exclusive).
+     *
+     * @throws SaltpackException if the range is not valid, the header has not been hashed or is already complete.
+     */
+    static native void computeMacKeys(ByteBuffer ptr, int from, int to) throws SaltpackException;
+
+    /**
+     * Completes the header, securely deleting the ephemeral and sender keys; packets can be sealed from now on.
+     *
+     * @throws SaltpackException if a MAC key is missing or the header is already complete.
+     */
+    static native void finishHeader(ByteBuffer ptr) throws SaltpackException;
+
+    /**
+     * Header packet of a message generated by {@link #header(Object, byte[][], boolean, ByteBuffer)}.
+     *
+     * @return the header packet.
+     * @throws SaltpackException
+     */
+    static native byte[] headerPacket(ByteBuffer ptr) throws SaltpackException;
+
+    /**
+     * Generates an encrypted payload packet (version 2).
+     *
+     * @return the payload packet.
+     * @throws SaltpackException
+     */
+    static native byte[] sealPacket(ByteBuffer ptr, long index, boolean isFinal, byte[] data, int off, int len) throws SaltpackException;
+
+    /**
+     * Decodes the header of a message (version 2) and decrypts the payload key.
+     *
+     * @param header             the header packet.
+     * @param recipientSecretkey the private key of the recipient (byte array or {@link SecretKeyHandle} buffer).
+     * @return the keys of the message, to be released.
+     * @throws SaltpackException if the header is not valid or the message is not addressed to the recipient.
+     */
+    static native ByteBuffer openHeader(byte[] header, Object recipientSecretkey) throws SaltpackException;
+
+    /**
+     * Authenticates and decrypts a payload packet.
+     *
+     * @return the payload.
+     * @throws SaltpackException if the packet is not valid or its authentication fails.
+     */
+    static native byte[] openPacket(ByteBuffer ptr, long index, byte[] packet) throws SaltpackException;
+
+    /**
+     * Public key of the sender of a message decoded by {@link #openHeader(byte[], Object)}.
+     *
+     * @return the sender's public key, or the ephemeral key for anonymous senders.
+     * @throws SaltpackException
+     */
+    static native byte[] sender(ByteBuffer ptr) throws SaltpackException;
+
+    /**
+     * Number of recipients listed in the header of a message decoded by {@link #openHeader(byte[], Object)}.
+     *
+     * @return the number of recipients, that is the number of authenticators in each payload packet.
+     */
+    static native long recipients(ByteBuffer ptr);
+
+    /**
+     * Securely deletes the keys of a message.
+     */
+    static native void release(ByteBuffer ptr);
+}
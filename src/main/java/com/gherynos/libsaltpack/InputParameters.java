@@ -17,21 +17,32 @@
 package com.gherynos.libsaltpack;
 
 import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
 
 /**
- * POJO class containing the InputStream and the parameters to parse BaseX armored content.
+ * POJO class containing the InputStream (or ReadableByteChannel) and the parameters to parse BaseX armored content.
  * <p>
  * The alphabet used is BASE62.
  * </p>
  */
 public class InputParameters {  // NOPMD
 
+    /**
+     * Default size, in bytes, of the chunks read from the {@code InputStream}.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
     private final InputStream inputStream;
 
+    private final ReadableByteChannel channel;
+
     private boolean armored;
 
     private String app;
 
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
     /**
      * Creates a new InputParameters instance for a specific InputStream.
      *
@@ -40,18 +51,50 @@ public class InputParameters {  // NOPMD
     public InputParameters(InputStream inputStream) {
 
         this.inputStream = inputStream;
+        this.channel = null;
+    }
+
+    /**
+     * Creates a new InputParameters instance for a specific ReadableByteChannel.
+     * <p>
+     * The channel reads directly into native memory, avoiding the copy needed for {@code InputStream}s.
+     * The channel must stay in blocking mode: the native code waits for the data by calling the channel again.
+     * </p>
+     *
+     * @param channel the source channel containing binary or armored data.
+     * @throws IllegalArgumentException if the channel is in non-blocking mode.
+     */
+    public InputParameters(ReadableByteChannel channel) {
+
+        if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+
+            throw new IllegalArgumentException("non-blocking channel provided");
+        }
+
+        this.inputStream = null;
+        this.channel = channel;
     }
 
     /**
      * Returns the instance of {@link java.io.InputStream}.
      *
-     * @return the input stream.
+     * @return the input stream, null if the instance was created for a channel.
      */
     public InputStream getInputStream() {
 
         return inputStream;
     }
 
+    /**
+     * Returns the instance of {@link java.nio.channels.ReadableByteChannel}.
+     *
+     * @return the channel, null if the instance was created for an input stream.
+     */
+    public ReadableByteChannel getChannel() {
+
+        return channel;
+    }
+
     /**
      * Armored content flag.
      *
@@ -91,4 +134,27 @@ public class InputParameters {  // NOPMD
 
         this.app = app;
     }
+
+    /**
+     * Returns the size of the chunks read from the {@code InputStream}.
+     *
+     * @return the number of bytes requested to the input stream on every refill.
+     */
+    public int getBufferSize() {
+
+        return bufferSize;
+    }
+
+    /**
+     * Sets the size of the chunks read from the {@code InputStream}.
+     * <p>
+     * Larger values reduce the number of calls to the input stream when processing big messages.
+     * </p>
+     *
+     * @param bufferSize the number of bytes requested to the input stream on every refill, must be greater than zero.
+     */
+    public void setBufferSize(int bufferSize) {
+
+        this.bufferSize = bufferSize;
+    }
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Set of recipient keys used to open messages addressed to any of them.
+ * <p>
+ * The header of the message is read once: the Curve25519 secret keys are indexed by public key and the
+ * symmetric keys by identifier, so visible recipients are resolved with a single lookup; for anonymous
+ * recipients every secret key is tried against the recipient boxes of the header already in memory.
+ * </p>
+ * <p>
+ * The keys are stored in native memory, securely deleted by {@link #destroy()}.
+ * Keys must not be added while readers are being created from other threads.
+ * </p>
+ */
+public class Keyring {  // NOPMD
+
+    static {
+
+        Loader.loadLibrary();
+    }
+
+    private ByteBuffer ptr;  // NOPMD
+
+    /**
+     * Creates a new empty Keyring instance.
+     */
+    public Keyring() {
+
+        ptr = constructor();
+    }
+
+    /**
+     * Adds a recipient key, to decrypt encrypted and signcrypted messages.
+     *
+     * @param secretkey the private key of the recipient, generated by {@link com.gherynos.libsaltpack.Utils#generateKeypair(byte[] publickey, byte[] secretkey)}.
+     * @throws SaltpackException if the key is not valid.
+     */
+    public void addSecretkey(byte[] secretkey) throws SaltpackException {
+
+        addSecretkey(getPtr(), secretkey);
+    }
+
+    /**
+     * Adds a recipient key, to decrypt encrypted and signcrypted messages.
+     * <p>
+     * The key is copied in the native memory of the keyring, so the handle can be closed afterwards.
+     * </p>
+     *
+     * @param secretkey the private key of the recipient.
+     * @throws SaltpackException if the key is not valid.
+     */
+    public void addSecretkey(SecretKeyHandle secretkey) throws SaltpackException {
+
+        final ByteBuffer keyringPtr = getPtr();
+        SecretKeyHandle.withKey(secretkey, key -> {
+
+            addSecretkey(keyringPtr, key);
+            return null;
+        });
+    }
+
+    /**
+     * Adds a symmetric key, to decrypt signcrypted messages.
+     *
+     * @param identifier the identifier of the key, as used by the sender.
+     * @param key        the symmetric key.
+     * @throws SaltpackException if the key is not valid.
+     */
+    public void addSymmetricKey(byte[] identifier, byte[] key) throws SaltpackException {
+
+        addSymmetricKey(getPtr(), identifier, key);
+    }
+
+    /**
+     * Creates a new MessageReader instance to decrypt an encrypted or signcrypted message with the matching key.
+     *
+     * @param in the InputParameters with the source input stream containing the message.
+     * @return the reader.
+     * @throws SaltpackException if none of the keys can open the message.
+     */
+    public MessageReader newReader(InputParameters in) throws SaltpackException {
+
+        return MessageReader.fromKeyring(in, getPtr());
+    }
+
+    /**
+     * Reads the header of a message without processing its payload, opening it with the matching key.
+     * <p>
+     * The source has to be repositionable, as described in {@link com.gherynos.libsaltpack.MessageReader#peekHeader(InputParameters)}.
+     * </p>
+     *
+     * @param in the InputParameters with the source containing the message.
+     * @return the fields of the header, including the sender when one of the keys opens it.
+     * @throws SaltpackException if the header is not valid, or the source can't be moved back.
+     */
+    public SaltpackHeader peekHeader(InputParameters in) throws SaltpackException {
+
+        return MessageReader.peekHeader(in, getPtr());
+    }
+
+    /**
+     * Desctructor.
+     * <p>
+     * Securely deletes the keys using `sodium_memzero`.
+     * </p>
+     * <p>
+     * This method has to be called when the instance is no longer required;
+     * the readers already created are not affected.
+     * </p>
+     */
+    public void destroy() {
+
+        if (ptr != null) {
+
+            destructor(ptr);
+            ptr = null;  // NOPMD
+        }
+    }
+
+    private ByteBuffer getPtr() throws SaltpackException {
+
+        if (ptr == null) {
+
+            throw new SaltpackException("keyring destroyed");
+        }
+
+        return ptr;
+    }
+
+    private native ByteBuffer constructor();
+
+    private native void destructor(ByteBuffer ptr);
+
+    private native void addSecretkey(ByteBuffer ptr, Object secretkey) throws SaltpackException;
+
+    private native void addSymmetricKey(ByteBuffer ptr, byte[] identifier, byte[] key) throws SaltpackException;
+}
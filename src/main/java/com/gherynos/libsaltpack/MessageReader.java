@@ -16,8 +16,13 @@
 
 package com.gherynos.libsaltpack;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Objects;
 
 /**
  * The class used to decrypt or verify a message.
@@ -29,6 +34,8 @@ public class MessageReader {
         Loader.loadLibrary();
     }
 
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
     private ByteBuffer ptr;  // NOPMD
 
     /**
@@ -43,6 +50,26 @@ public class MessageReader {
         ptr = constructor(in, recipientSecretkey);
     }
 
+    /**
+     * Creates a new MessageReader instance to decrypt a message.
+     *
+     * @param in                 the InputParameters with the source input stream containing the encrypted message.
+     * @param recipientSecretkey the private key of the recipient.
+     * @throws SaltpackException
+     */
+    public MessageReader(InputParameters in, SecretKeyHandle recipientSecretkey) throws SaltpackException {
+
+        ByteBuffer keyPtr = SecretKeyHandle.acquire(recipientSecretkey);
+        try {
+
+            ptr = constructor(in, keyPtr);
+
+        } finally {
+
+            recipientSecretkey.release();
+        }
+    }
+
     /**
      * Creates a new MessageReader instance to verify a signed message.
      *
@@ -80,6 +107,119 @@ public class MessageReader {
         ptr = constructor(in, recipientSecretkey, symmetricKey);
     }
 
+    /**
+     * Creates a new MessageReader instance to decrypt and verify a signcrypted message.
+     *
+     * @param in                 the InputParameters with the source input stream containing the signcrypted message.
+     * @param recipientSecretkey the Curve25519 private key of the recipient.
+     * @param symmetricKey       the symmetric key of the recipient: the first array is treated as the identifier,
+     *                           the second as the key itself. The arrays can be empty.
+     * @throws SaltpackException if the signature verification fails.
+     */
+    public MessageReader(InputParameters in, SecretKeyHandle recipientSecretkey, byte[][] symmetricKey) throws SaltpackException {
+
+        ByteBuffer keyPtr = SecretKeyHandle.acquire(recipientSecretkey);
+        try {
+
+            ptr = constructor(in, keyPtr, symmetricKey);
+
+        } finally {
+
+            recipientSecretkey.release();
+        }
+    }
+
+    private MessageReader(ByteBuffer ptr) {
+
+        this.ptr = ptr;
+    }
+
+    static MessageReader fromKeyring(InputParameters in, ByteBuffer keyring) throws SaltpackException {
+
+        return new MessageReader(keyringConstructor(in, keyring));
+    }
+
+    /**
+     * Reads the header of a message without processing its payload.
+     * <p>
+     * The sender of encrypted and signcrypted messages is not available, as the header is not opened
+     * (see {@link com.gherynos.libsaltpack.Keyring#peekHeader(InputParameters)}).
+     * </p>
+     * <p>
+     * The source has to be an input stream supporting {@code mark} or a {@code SeekableByteChannel}: it is moved back
+     * to the start of the message, ready for a full read. Other sources are rejected, as the data read would be lost;
+     * wrap them in a {@link java.io.BufferedInputStream}.
+     * </p>
+     *
+     * @param in the InputParameters with the source containing the message.
+     * @return the fields of the header.
+     * @throws SaltpackException if the header is not valid, or the source can't be moved back.
+     */
+    public static SaltpackHeader peekHeader(InputParameters in) throws SaltpackException {
+
+        return peekHeader(in, null);
+    }
+
+    static SaltpackHeader peekHeader(InputParameters in, ByteBuffer keyring) throws SaltpackException {
+
+        if (in == null) {
+
+            throw new SaltpackException("null input parameters provided");
+        }
+
+        long position = markSource(in);
+        try {
+
+            return peekHeaderNative(in, keyring);
+
+        } finally {
+
+            rewindSource(in, position);
+        }
+    }
+
+    private static long markSource(InputParameters in) throws SaltpackException {
+
+        try {
+
+            if (in.getChannel() instanceof SeekableByteChannel) {
+
+                return ((SeekableByteChannel) in.getChannel()).position();
+            }
+
+            if (in.getChannel() == null && in.getInputStream() != null && in.getInputStream().markSupported()) {
+
+                in.getInputStream().mark(Integer.MAX_VALUE);
+                return 0;
+            }
+
+            throw new SaltpackException("source not repositionable: a markable input stream or a seekable channel is required");
+
+        } catch (IOException ex) {
+
+            throw new SaltpackException("unable to mark the source: " + ex.getMessage());  // NOPMD
+        }
+    }
+
+    private static void rewindSource(InputParameters in, long position) throws SaltpackException {
+
+        try {
+
+            if (in.getChannel() instanceof SeekableByteChannel) {
+
+                ((SeekableByteChannel) in.getChannel()).position(position);
+
+            } else {
+
+                in.getInputStream().reset();
+            }
+
+        } catch (IOException ex) {
+
+            throw new SaltpackException("unable to rewind the source: " + ex.getMessage());  // NOPMD
+        }
+    }
+
     /**
      * Desctructor.
      * <p>
@@ -98,6 +238,22 @@ public class MessageReader {
         }
     }
 
+    /**
+     * Starts reading a new message from a different source, with the same keys and configuration of the current one.
+     * <p>
+     * The keys provided to the constructor and the native buffers are reused, avoiding to convert them again;
+     * the data of the current message not read yet is discarded.
+     * Instances verifying detached signatures or created by a {@link com.gherynos.libsaltpack.Keyring} cannot be reset.
+     * </p>
+     *
+     * @param in the InputParameters with the source of the new message.
+     * @throws SaltpackException if the new message cannot be read: the instance must be reset again before being used.
+     */
+    public void reset(InputParameters in) throws SaltpackException {
+
+        reset(ptr, in);
+    }
+
     /**
      * Helper method to process all the blocks.
      *
@@ -120,6 +276,90 @@ public class MessageReader {
         return getBlock(ptr);
     }
 
+    /**
+     * Reads up to {@code len} bytes of the decrypted/verified message into {@code dst}.
+     * <p>
+     * Any remainder of the current block is kept in the native context and returned by the following calls,
+     * so no memory is allocated on the Java heap.
+     * </p>
+     *
+     * @param dst the destination array.
+     * @param off the start offset in {@code dst}.
+     * @param len the maximum number of bytes to read.
+     * @return the number of bytes read, or -1 when the end of the message has been reached.
+     * @throws SaltpackException if a block cannot be decrypted or its signature is not valid.
+     */
+    public int read(byte[] dst, int off, int len) throws SaltpackException {
+
+        if (dst == null) {
+
+            throw new SaltpackException("null byte array provided");
+        }
+        Objects.checkFromIndexSize(off, len, dst.length);
+
+        return read(ptr, dst, off, len);
+    }
+
+    /**
+     * Reads the decrypted/verified message into the bytes between the position and the limit of {@code dst}.
+     * <p>
+     * On success the position of the buffer is advanced by the number of bytes read.
+     * </p>
+     *
+     * @param dst the destination buffer.
+     * @return the number of bytes read, or -1 when the end of the message has been reached.
+     * @throws SaltpackException if a block cannot be decrypted or its signature is not valid.
+     */
+    public int read(ByteBuffer dst) throws SaltpackException {
+
+        if (dst == null) {
+
+            throw new SaltpackException("null byte buffer provided");
+        }
+        if (dst.isReadOnly()) {
+
+            throw new ReadOnlyBufferException();
+        }
+
+        int read;
+        if (dst.isDirect()) {
+
+            read = readDirect(ptr, dst, dst.position(), dst.remaining());
+
+        } else {
+
+            read = read(ptr, dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+        }
+
+        if (read > 0) {
+
+            dst.position(dst.position() + read);
+        }
+
+        return read;
+    }
+
+    /**
+     * Writes the rest of the decrypted/verified message to {@code out}.
+     * <p>
+     * The whole message is processed by a single native call, without returning the blocks to Java.
+     * </p>
+     *
+     * @param out the destination output stream.
+     * @return the number of bytes written.
+     * @throws SaltpackException if a block cannot be decrypted or its signature is not valid.
+     * @throws IOException       if the output stream throws an exception.
+     */
+    public long transferTo(OutputStream out) throws SaltpackException, IOException {
+
+        if (out == null) {
+
+            throw new SaltpackException("null output stream provided");
+        }
+
+        return transferTo(ptr, out, TRANSFER_BUFFER_SIZE);
+    }
+
     /**
      * Returns the public keys of the recipients if they're visible (see flag {@code visibleRecipients} in {@link com.gherynos.libsaltpack.MessageWriter}).
      *
@@ -153,20 +393,32 @@ public class MessageReader {
         return isIntentionallyAnonymous(ptr);
     }
 
-    private native ByteBuffer constructor(InputParameters in, byte[] recipientSecretkey) throws SaltpackException;
+    private native ByteBuffer constructor(InputParameters in, Object recipientSecretkey) throws SaltpackException;
 
     private native ByteBuffer constructor(InputParameters in) throws SaltpackException;
 
     private native ByteBuffer constructor(InputParameters in, InputStream messageIn) throws SaltpackException;
 
-    private native ByteBuffer constructor(InputParameters in, byte[] recipientSecretkey, byte[][] symmetricKey) throws SaltpackException;
+    private native ByteBuffer constructor(InputParameters in, Object recipientSecretkey, byte[][] symmetricKey) throws SaltpackException;
+
+    private static native ByteBuffer keyringConstructor(InputParameters in, ByteBuffer keyring) throws SaltpackException;
+
+    private static native SaltpackHeader peekHeaderNative(InputParameters in, ByteBuffer keyring) throws SaltpackException;
 
     private native void destructor(ByteBuffer ptr);
 
+    private native void reset(ByteBuffer ptr, InputParameters in) throws SaltpackException;
+
     private native boolean hasMoreBlocks(ByteBuffer ptr) throws SaltpackException;
 
     private native byte[] getBlock(ByteBuffer ptr) throws SaltpackException;
 
+    private native int read(ByteBuffer ptr, byte[] dst, int off, int len) throws SaltpackException;
+
+    private native int readDirect(ByteBuffer ptr, ByteBuffer dst, int off, int len) throws SaltpackException;
+
+    private native long transferTo(ByteBuffer ptr, OutputStream out, int bufferSize) throws SaltpackException, IOException;
+
     private native byte[][] getRecipients(ByteBuffer ptr) throws SaltpackException;
 
     private native byte[] getSender(ByteBuffer ptr) throws SaltpackException;
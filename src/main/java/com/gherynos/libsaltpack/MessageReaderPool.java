@@ -0,0 +1,112 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+/**
+ * Pool of MessageReader instances sharing the same keys and configuration, one for each thread.
+ * <p>
+ * The first message of a thread creates its reader using the factory, the following ones
+ * reset it (see {@link com.gherynos.libsaltpack.MessageReader#reset(InputParameters)}), reusing the native context.
+ * A reader returned by {@link #get(InputParameters)} is valid until the next call of the same thread;
+ * readers verifying detached signatures or created by a {@link com.gherynos.libsaltpack.Keyring} cannot be pooled.
+ * </p>
+ * <p>
+ * The readers are destroyed by {@link #destroy()}, to be called once no thread is using the pool.
+ * </p>
+ */
+public class MessageReaderPool {  // NOPMD
+
+    /**
+     * Creator of the readers of the pool.
+     */
+    public interface Factory {
+
+        /**
+         * Creates a new MessageReader instance.
+         *
+         * @param in the InputParameters with the source of the first message.
+         * @return the reader.
+         * @throws SaltpackException
+         */
+        MessageReader create(InputParameters in) throws SaltpackException;
+    }
+
+    private final ThreadLocalPool<MessageReader, InputParameters> pool;
+
+    /**
+     * Creates a new MessageReaderPool.
+     *
+     * @param factory the creator of the readers, invoked once for each thread.
+     * @throws SaltpackException if the factory is null.
+     */
+    public MessageReaderPool(Factory factory) throws SaltpackException {
+
+        if (factory == null) {
+
+            throw new SaltpackException("null factory provided");
+        }
+
+        pool = new ThreadLocalPool<MessageReader, InputParameters>() {
+
+            @Override
+            MessageReader create(InputParameters in) throws SaltpackException {
+
+                return factory.create(in);
+            }
+
+            @Override
+            void reset(MessageReader reader, InputParameters in) throws SaltpackException {
+
+                reader.reset(in);
+            }
+
+            @Override
+            void destroy(MessageReader reader) {
+
+                reader.destroy();
+            }
+        };
+    }
+
+    /**
+     * Returns the reader of the calling thread, ready for a new message.
+     *
+     * @param in the InputParameters with the source of the new message.
+     * @return the reader.
+     * @throws SaltpackException if the reader cannot be created or reset, or the pool has been destroyed.
+     */
+    public MessageReader get(InputParameters in) throws SaltpackException {
+
+        return pool.get(in);
+    }
+
+    /**
+     * Desctructor.
+     * <p>
+     * Destroys the readers created by the pool.
+     * </p>
+     * <p>
+     * This method has to be called when the pool is no longer required.
+     * All the readers are destroyed, freeing their native memory, but only the thread-local reference of the
+     * calling thread is cleared: the other threads drop theirs when they terminate or the pool is garbage collected.
+     * </p>
+     */
+    public void destroy() {
+
+        pool.destroy();
+    }
+}
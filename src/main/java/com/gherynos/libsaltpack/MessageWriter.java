@@ -16,6 +16,8 @@
 
 package com.gherynos.libsaltpack;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 
 /**
@@ -28,6 +30,8 @@ public class MessageWriter {  // NOPMD
         Loader.loadLibrary();
     }
 
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
     private ByteBuffer ptr;  // NOPMD
 
     /**
@@ -58,6 +62,50 @@ public class MessageWriter {  // NOPMD
         ptr = constructor(op, senderSecretkey, recipients);
     }
 
+    /**
+     * Creates a new MessageWriter instance to encrypt a message.
+     *
+     * @param op                the OutputParameters with the destination output stream that will contain the encrypted data.
+     * @param senderSecretkey   the private key of the sender.
+     * @param recipients        the list of public keys of the recipients.
+     * @param visibleRecipients if true, the public keys of the recipients will be visible in the encrypted message.
+     * @throws SaltpackException
+     */
+    public MessageWriter(OutputParameters op, SecretKeyHandle senderSecretkey, byte[][] recipients, boolean visibleRecipients) throws SaltpackException {
+
+        ByteBuffer keyPtr = SecretKeyHandle.acquire(senderSecretkey);
+        try {
+
+            ptr = constructor(op, keyPtr, recipients, visibleRecipients);
+
+        } finally {
+
+            senderSecretkey.release();
+        }
+    }
+
+    /**
+     * Creates a new MessageWriter instance to encrypt a message.
+     * The recipients public keys will be visible in the encrypted message.
+     *
+     * @param op              the OutputParameters with the destination output stream that will contain the encrypted data.
+     * @param senderSecretkey the private key of the sender.
+     * @param recipients      the list of public keys of the recipients.
+     * @throws SaltpackException
+     */
+    public MessageWriter(OutputParameters op, SecretKeyHandle senderSecretkey, byte[][] recipients) throws SaltpackException {
+
+        ByteBuffer keyPtr = SecretKeyHandle.acquire(senderSecretkey);
+        try {
+
+            ptr = constructor(op, keyPtr, recipients);
+
+        } finally {
+
+            senderSecretkey.release();
+        }
+    }
+
     /**
      * Creates a new MessageWriter instance to encrypt a message remaining anonymous.
      *
@@ -97,6 +145,27 @@ public class MessageWriter {  // NOPMD
         ptr = constructor(op, senderSecretkey, detatchedSignature);
     }
 
+    /**
+     * Creates a new MessageWriter instance to sign a message.
+     *
+     * @param op                 the OutputParameters with the destination output stream that will contain the signed data.
+     * @param senderSecretkey    the signing private key of the sender.
+     * @param detatchedSignature attached/detached signature flag.
+     * @throws SaltpackException
+     */
+    public MessageWriter(OutputParameters op, SecretKeyHandle senderSecretkey, boolean detatchedSignature) throws SaltpackException {
+
+        ByteBuffer keyPtr = SecretKeyHandle.acquire(senderSecretkey);
+        try {
+
+            ptr = constructor(op, keyPtr, detatchedSignature);
+
+        } finally {
+
+            senderSecretkey.release();
+        }
+    }
+
     /**
      * Creates a new MessageWriter instance to signcrypt a message.
      *
@@ -111,6 +180,28 @@ public class MessageWriter {  // NOPMD
         ptr = constructor(op, senderSecretkey, recipientsPublickeys, symmetricKeys);
     }
 
+    /**
+     * Creates a new MessageWriter instance to signcrypt a message.
+     *
+     * @param op                   the OutputParameters with the destination output stream that will contain the signcrypted data.
+     * @param senderSecretkey      the signing private key of the sender.
+     * @param recipientsPublickeys the list of Curve25519 public keys of the recipients. The list can be empty.
+     * @param symmetricKeys        the list of symmetric keys of the recipients: the first array is treated as the identifier, the second as the key itself. The list can be empty.
+     * @throws SaltpackException
+     */
+    public MessageWriter(OutputParameters op, SecretKeyHandle senderSecretkey, byte[][] recipientsPublickeys, byte[][][] symmetricKeys) throws SaltpackException {
+
+        ByteBuffer keyPtr = SecretKeyHandle.acquire(senderSecretkey);
+        try {
+
+            ptr = constructor(op, keyPtr, recipientsPublickeys, symmetricKeys);
+
+        } finally {
+
+            senderSecretkey.release();
+        }
+    }
+
     /**
      * Creates a new MessageWriter instance to signcrypt a message remaining anonymous.
      *
@@ -142,6 +233,21 @@ public class MessageWriter {  // NOPMD
         }
     }
 
+    /**
+     * Starts a new message on a different destination, with the same keys and configuration of the current one.
+     * <p>
+     * The keys provided to the constructor and the native buffers are reused, avoiding to convert them again;
+     * the data of the current message not flagged as final yet is discarded.
+     * </p>
+     *
+     * @param op the OutputParameters with the destination of the new message.
+     * @throws SaltpackException if the new message cannot be started: the instance must be reset again before being used.
+     */
+    public void reset(OutputParameters op) throws SaltpackException {
+
+        reset(ptr, op);
+    }
+
     /**
      * Adds a block to the current message.
      *
@@ -173,21 +279,98 @@ public class MessageWriter {  // NOPMD
         addBlock(ptr, data, off, len, isFinal);
     }
 
-    private native ByteBuffer constructor(OutputParameters op, byte[] senderSecretkey, byte[][] recipients, boolean visibleRecipients) throws SaltpackException;
+    /**
+     * Adds a block to the current message, reading the bytes between the position and the limit of the buffer.
+     * <p>
+     * Direct buffers are read in place; heap buffers are read from their backing array.
+     * On success the position of the buffer is advanced to its limit.
+     * </p>
+     *
+     * @param src     the buffer containing the data for the block, maximum 1MB.
+     * @param isFinal the flag defining the last packet of the message.
+     * @throws SaltpackException
+     */
+    public void addBuffer(ByteBuffer src, boolean isFinal) throws SaltpackException {
+
+        if (src == null) {
+
+            throw new SaltpackException("null byte buffer provided");
+        }
+
+        int len = src.remaining();
+        if (src.isDirect()) {
+
+            addBlockDirect(ptr, src, src.position(), len, isFinal);
+
+        } else if (src.hasArray()) {
+
+            addBlock(ptr, src.array(), src.arrayOffset() + src.position(), len, isFinal);
+
+        } else {
+
+            byte[] data = new byte[len];
+            src.duplicate().get(data);
+            addBlock(ptr, data, 0, len, isFinal);
+        }
+
+        src.position(src.limit());
+    }
+
+    /**
+     * Adds all the data of {@code in} to the current message, in blocks of 1MB; the last block is flagged as final.
+     * <p>
+     * The whole input is processed by a single native call, without passing the blocks through Java.
+     * </p>
+     *
+     * @param in the source input stream, read until its end.
+     * @return the number of bytes read from the input stream.
+     * @throws SaltpackException if the blocks cannot be generated.
+     * @throws IOException       if the input stream throws an exception.
+     */
+    public long transferFrom(InputStream in) throws SaltpackException, IOException {
+
+        if (in == null) {
 
-    private native ByteBuffer constructor(OutputParameters op, byte[] senderSecretkey, byte[][] recipients) throws SaltpackException;
+            throw new SaltpackException("null input stream provided");
+        }
+
+        return transferFrom(ptr, in, TRANSFER_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns the data generated so far when the instance was created with the OutputParameters without destination.
+     *
+     * @return the bytes of the message not drained yet, possibly none.
+     * @throws SaltpackException if the data is written to an output stream or channel.
+     */
+    byte[] drain() throws SaltpackException {
+
+        return drain(ptr);
+    }
+
+    private native ByteBuffer constructor(OutputParameters op, Object senderSecretkey, byte[][] recipients, boolean visibleRecipients) throws SaltpackException;
+
+    private native ByteBuffer constructor(OutputParameters op, Object senderSecretkey, byte[][] recipients) throws SaltpackException;
 
     private native ByteBuffer constructor(OutputParameters op, byte[][] recipients, boolean visibleRecipients) throws SaltpackException;
 
     private native ByteBuffer constructor(OutputParameters op, byte[][] recipients) throws SaltpackException;
 
-    private native ByteBuffer constructor(OutputParameters op, byte[] senderSecretkey, boolean detatchedSignature) throws SaltpackException;
+    private native ByteBuffer constructor(OutputParameters op, Object senderSecretkey, boolean detatchedSignature) throws SaltpackException;
 
-    private native ByteBuffer constructor(OutputParameters op, byte[] senderSecretkey, byte[][] recipientsPublickeys, byte[][][] symmetricKeys) throws SaltpackException;
+    private native ByteBuffer constructor(OutputParameters op, Object senderSecretkey, byte[][] recipientsPublickeys, byte[][][] symmetricKeys) throws SaltpackException;
 
     private native ByteBuffer constructor(OutputParameters op, byte[][] recipientsPublickeys, byte[][][] symmetricKeys) throws SaltpackException;
 
     private native void destructor(ByteBuffer ptr);
 
+    private native void reset(ByteBuffer ptr, OutputParameters op) throws SaltpackException;
+
     private native void addBlock(ByteBuffer ptr, byte[] data, int off, int len, boolean isFinal) throws SaltpackException;
+
+    private native long transferFrom(ByteBuffer ptr, InputStream in, int bufferSize) throws SaltpackException, IOException;
+
+    private native void addBlockDirect(ByteBuffer ptr, ByteBuffer src, int off, int len, boolean isFinal) throws SaltpackException;
+
+    private native byte[] drain(ByteBuffer ptr) throws SaltpackException;
 }
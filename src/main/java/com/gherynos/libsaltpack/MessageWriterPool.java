@@ -0,0 +1,111 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+/**
+ * Pool of MessageWriter instances sharing the same keys and configuration, one for each thread.
+ * <p>
+ * The first message of a thread creates its writer using the factory, the following ones
+ * reset it (see {@link com.gherynos.libsaltpack.MessageWriter#reset(OutputParameters)}), reusing the native context.
+ * A writer returned by {@link #get(OutputParameters)} is valid until the next call of the same thread.
+ * </p>
+ * <p>
+ * The writers are destroyed by {@link #destroy()}, to be called once no thread is using the pool.
+ * </p>
+ */
+public class MessageWriterPool {  // NOPMD
+
+    /**
+     * Creator of the writers of the pool.
+     */
+    public interface Factory {
+
+        /**
+         * Creates a new MessageWriter instance.
+         *
+         * @param op the OutputParameters with the destination of the first message.
+         * @return the writer.
+         * @throws SaltpackException
+         */
+        MessageWriter create(OutputParameters op) throws SaltpackException;
+    }
+
+    private final ThreadLocalPool<MessageWriter, OutputParameters> pool;
+
+    /**
+     * Creates a new MessageWriterPool.
+     *
+     * @param factory the creator of the writers, invoked once for each thread.
+     * @throws SaltpackException if the factory is null.
+     */
+    public MessageWriterPool(Factory factory) throws SaltpackException {
+
+        if (factory == null) {
+
+            throw new SaltpackException("null factory provided");
+        }
+
+        pool = new ThreadLocalPool<MessageWriter, OutputParameters>() {
+
+            @Override
+            MessageWriter create(OutputParameters op) throws SaltpackException {
+
+                return factory.create(op);
+            }
+
+            @Override
+            void reset(MessageWriter writer, OutputParameters op) throws SaltpackException {
+
+                writer.reset(op);
+            }
+
+            @Override
+            void destroy(MessageWriter writer) {
+
+                writer.destroy();
+            }
+        };
+    }
+
+    /**
+     * Returns the writer of the calling thread, ready for a new message.
+     *
+     * @param op the OutputParameters with the destination of the new message.
+     * @return the writer.
+     * @throws SaltpackException if the writer cannot be created or reset, or the pool has been destroyed.
+     */
+    public MessageWriter get(OutputParameters op) throws SaltpackException {
+
+        return pool.get(op);
+    }
+
+    /**
+     * Desctructor.
+     * <p>
+     * Destroys the writers created by the pool.
+     * </p>
+     * <p>
+     * This method has to be called when the pool is no longer required.
+     * All the writers are destroyed, freeing their native memory, but only the thread-local reference of the
+     * calling thread is cleared: the other threads drop theirs when they terminate or the pool is garbage collected.
+     * </p>
+     */
+    public void destroy() {
+
+        pool.destroy();
+    }
+}
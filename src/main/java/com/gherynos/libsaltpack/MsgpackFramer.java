@@ -0,0 +1,188 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.gherynos.libsaltpack;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Framing of the msgpack objects of a binary message, using the native framer shared with {@link SaltpackDecoder}.
+ * <p>
+ * Only the size of the objects is determined here, their content is validated when they are decoded;
+ * the size is known as soon as the header of the last value has been read, so the payload is never scanned.
+ * </p>
+ */
+final class MsgpackFramer {  // NOPMD
+
+    /**
+     * Maximum size of a signature packet: a 1 MB block plus the packet overhead.
+     * <p>
+     * The payload packets of encrypted messages carry an authenticator per recipient, see {@link #maxPacketSize(long)}.
+     * </p>
+     */
+    static final int MAX_PACKET_SIZE = 1024 * 1024 + 64 * 1024;
+
+    /**
+     * Maximum size of a header packet.
+     */
+    static final int MAX_HEADER_SIZE = 16 * 1024 * 1024;
+
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    private static final long MAX_BLOCK_SIZE = 1024 * 1024;
+
+    private static final long SECRETBOX_MAC_SIZE = 16;
+
+    private static final long AUTHENTICATOR_SIZE = 32 + 2;  // bin8
+
+    private static final long PACKET_FRAMING_SIZE = 16;
+
+    static {
+
+        Loader.loadLibrary();
+    }
+
+    private MsgpackFramer() {
+    }
+
+    /**
+     * Maximum size of a payload packet of an encrypted message.
+     *
+     * @param recipients the number of recipients listed in the header.
+     * @return a 1 MB block plus its secretbox, the authenticators and the msgpack framing.
+     */
+    static int maxPacketSize(long recipients) {
+
+        long size = MAX_BLOCK_SIZE + SECRETBOX_MAC_SIZE + AUTHENTICATOR_SIZE * recipients + PACKET_FRAMING_SIZE;
+        return (int) Math.min(size, Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * Reads the next msgpack object.
+     * <p>
+     * The bytes read past the object while framing it are pushed back using mark and reset,
+     * so the stream has to support them (e.g. a {@link java.io.BufferedInputStream}).
+     * </p>
+     *
+     * @param in      the source input stream.
+     * @param maxSize the maximum size of the object.
+     * @return the object, null at the end of the stream.
+     * @throws SaltpackException if the object is not valid, truncated or larger than {@code maxSize}.
+     * @throws IOException       if the input stream throws an exception.
+     */
+    static byte[] readObject(InputStream in, int maxSize) throws SaltpackException, IOException {
+
+        in.mark(maxSize);
+
+        byte[] buffer = new byte[Math.min(INITIAL_BUFFER_SIZE, maxSize)];
+        int available = 0;
+        long[] size;
+        while ((size = frame(buffer, available)) == null) {
+
+            if (available == buffer.length) {
+
+                if (buffer.length == maxSize) {
+
+                    throw new SaltpackException("packet too large");
+                }
+                buffer = Arrays.copyOf(buffer, (int) Math.min(2L * buffer.length, maxSize));
+            }
+
+            int read = in.read(buffer, available, buffer.length - available);
+            if (read < 0) {
+
+                if (available == 0) {
+
+                    return null;
+                }
+                throw new SaltpackException("not enough data found to decode block (message truncated?)");
+            }
+            available += read;
+        }
+        if (size[0] > maxSize) {
+
+            throw new SaltpackException("packet too large");
+        }
+
+        in.reset();
+        byte[] object = in.readNBytes((int) size[0]);
+        if (object.length < size[0]) {
+
+            throw new SaltpackException("not enough data found to decode block (message truncated?)");
+        }
+
+        return object;
+    }
+
+    /**
+     * Frames the msgpack object at a position of a channel, without reading its last value.
+     *
+     * @param channel  the source channel.
+     * @param position the position of the object.
+     * @param maxSize  the maximum size of the object.
+     * @return the size of the object and the length of its last value.
+     * @throws SaltpackException if the object is not valid, truncated or larger than {@code maxSize}.
+     * @throws IOException       if the channel throws an exception.
+     */
+    static long[] frameAt(SeekableByteChannel channel, long position, int maxSize) throws SaltpackException, IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(Math.min(INITIAL_BUFFER_SIZE, maxSize), Math.max(1, channel.size() - position)));
+        channel.position(position);
+        long[] size;
+        while ((size = frame(buffer.array(), buffer.position())) == null) {
+
+            if (!buffer.hasRemaining()) {
+
+                if (buffer.capacity() == maxSize) {
+
+                    throw new SaltpackException("packet too large");
+                }
+                ByteBuffer larger = ByteBuffer.allocate((int) Math.min(2L * buffer.capacity(), maxSize));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+
+            if (channel.read(buffer) < 0) {
+
+                throw new SaltpackException("not enough data found to decode block (message truncated?)");
+            }
+        }
+        if (size[0] > maxSize) {
+
+            throw new SaltpackException("packet too large");
+        }
+        if (size[0] > channel.size() - position) {
+
+            throw new SaltpackException("not enough data found to decode block (message truncated?)");
+        }
+
+        return size;
+    }
+
+    /**
+     * Frames the msgpack object at the beginning of the first {@code len} bytes of {@code data}.
+     *
+     * @return the size of the object and the length of its last value, null if more bytes are required.
+     * @throws SaltpackException if the data is not valid msgpack.
+     */
+    private static native long[] frame(byte[] data, int len) throws SaltpackException;
+}
@@ -17,17 +17,28 @@
 package com.gherynos.libsaltpack;
 
 import java.io.OutputStream;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
- * POJO class containing the OutputStream and the parameters to generate BaseX armored content.
+ * POJO class containing the OutputStream (or WritableByteChannel) and the parameters to generate BaseX armored content.
  * <p>
  * The alphabet used is BASE62.
  * </p>
  */
 public class OutputParameters {  // NOPMD
 
+    /**
+     * Default size, in bytes, of the chunks written to the {@code OutputStream}.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
     private final OutputStream outputStream;
 
+    private final WritableByteChannel channel;
+
+    private final boolean memory;
+
     private boolean armored;
 
     private String app;
@@ -36,6 +47,18 @@ public class OutputParameters {  // NOPMD
 
     private int wordsInPhrase = -1;
 
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    /*
+     * Without destination, used by SaltpackEncoder: the generated data is kept in native memory until drained.
+     */
+    OutputParameters() {
+
+        this.outputStream = null;
+        this.channel = null;
+        this.memory = true;
+    }
+
     /**
      * Creates a new OutputParameters instance for a specific OutputStream.
      *
@@ -44,18 +67,52 @@ public class OutputParameters {  // NOPMD
     public OutputParameters(OutputStream outputStream) {
 
         this.outputStream = outputStream;
+        this.channel = null;
+        this.memory = false;
+    }
+
+    /**
+     * Creates a new OutputParameters instance for a specific WritableByteChannel.
+     * <p>
+     * The channel writes directly from native memory, avoiding the copy needed for {@code OutputStream}s.
+     * The channel must stay in blocking mode: the native code writes again until all the data is accepted.
+     * </p>
+     *
+     * @param channel the destination channel that will contain binary or armored data.
+     * @throws IllegalArgumentException if the channel is in non-blocking mode.
+     */
+    public OutputParameters(WritableByteChannel channel) {
+
+        if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+
+            throw new IllegalArgumentException("non-blocking channel provided");
+        }
+
+        this.outputStream = null;
+        this.channel = channel;
+        this.memory = false;
     }
 
     /**
      * Returns the instance of {@link java.io.OutputStream}.
      *
-     * @return the output stream.
+     * @return the output stream, null if the instance was created for a channel.
      */
     public OutputStream getOutputStream() {
 
         return outputStream;
     }
 
+    /**
+     * Returns the instance of {@link java.nio.channels.WritableByteChannel}.
+     *
+     * @return the channel, null if the instance was created for an output stream.
+     */
+    public WritableByteChannel getChannel() {
+
+        return channel;
+    }
+
     /**
      * Armored content flag.
      *
@@ -136,6 +193,52 @@ public class OutputParameters {  // NOPMD
         this.wordsInPhrase = wordsInPhrase;
     }
 
+    /**
+     * Returns the size of the chunks written to the {@code OutputStream}.
+     *
+     * @return the number of bytes buffered before writing to the output stream.
+     */
+    public int getBufferSize() {
+
+        return bufferSize;
+    }
+
+    /**
+     * Sets the size of the chunks written to the {@code OutputStream}.
+     * <p>
+     * The buffer is allocated once per {@link com.gherynos.libsaltpack.MessageWriter} and reused for every write.
+     * </p>
+     *
+     * @param bufferSize the number of bytes buffered before writing to the output stream, must be greater than zero.
+     */
+    public void setBufferSize(int bufferSize) {
+
+        this.bufferSize = bufferSize;
+    }
+
+    /*
+     * Parameters without destination with the armoring and buffering settings of the ones provided.
+     */
+    static OutputParameters withoutDestination(OutputParameters settings) {
+
+        OutputParameters op = new OutputParameters();
+        op.armored = settings.armored;
+        op.app = settings.app;
+        op.lettersInWords = settings.lettersInWords;
+        op.wordsInPhrase = settings.wordsInPhrase;
+        op.bufferSize = settings.bufferSize;
+
+        return op;
+    }
+
+    /*
+     * Internal method used by the JNI interface: true for the parameters without destination.
+     */
+    boolean isMemory() {
+
+        return memory;
+    }
+
     /**
      * Internal method used by the JNI interface.
      *
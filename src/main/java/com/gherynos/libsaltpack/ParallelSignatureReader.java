@@ -0,0 +1,243 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Reader of messages with their signature attached, verifying the blocks concurrently.
+ * <p>
+ * The packets are read ahead by the calling thread and up to {@code readAheadBlocks} of them are verified
+ * in parallel on an {@code Executor}; the blocks are returned in order by {@link #getBlock()}.
+ * A block is returned only if its signature is valid: the first failure is thrown in place of the block
+ * and nothing is read after it.
+ * </p>
+ * <p>
+ * Binary input only (no armoring); both version 1 and version 2 messages are supported.
+ * Packets larger than a 1 MB block plus their overhead are rejected before being read.
+ * </p>
+ */
+public class ParallelSignatureReader {  // NOPMD
+
+    /**
+     * Default maximum number of blocks verified concurrently.
+     */
+    public static final int DEFAULT_READ_AHEAD_BLOCKS = 4;
+
+    private final InputStream in;
+
+    private final Executor executor;
+
+    private final int readAheadBlocks;
+
+    private final byte[] sender;
+
+    private final byte[] headerHash;
+
+    private final int version;
+
+    private final Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+
+    private long seqno;
+
+    private boolean finalRead;
+
+    private boolean failed;
+
+    /**
+     * Creates a new ParallelSignatureReader.
+     *
+     * @param in              the source input stream containing the message with its signature attached.
+     * @param executor        the executor verifying the blocks.
+     * @param readAheadBlocks the maximum number of blocks verified concurrently, greater than zero.
+     * @throws SaltpackException if the header is not valid.
+     * @throws IOException       if the input stream throws an exception.
+     */
+    public ParallelSignatureReader(InputStream in, Executor executor, int readAheadBlocks) throws SaltpackException, IOException {
+
+        if (in == null) {
+
+            throw new SaltpackException("null input stream provided");
+        }
+        if (executor == null) {
+
+            throw new IllegalArgumentException("null executor provided");
+        }
+        if (readAheadBlocks <= 0) {
+
+            throw new IllegalArgumentException("invalid read ahead blocks");
+        }
+
+        // the framer pushes back the bytes read past a packet
+        this.in = in.markSupported() ? in : new BufferedInputStream(in);
+        this.executor = executor;
+        this.readAheadBlocks = readAheadBlocks;
+
+        byte[] header = MsgpackFramer.readObject(this.in, MsgpackFramer.MAX_HEADER_SIZE);
+        if (header == null) {
+
+            throw new SaltpackException("header not found");
+        }
+
+        byte[][] parsed = AttachedSignatures.parseHeader(header);
+        this.sender = parsed[0];
+        this.headerHash = parsed[1];
+        this.version = parsed[2][0];
+    }
+
+    /**
+     * Returns the public key of the sender.
+     * <p>
+     * The key is read from the header: it is trustworthy once all the blocks have been verified.
+     * </p>
+     *
+     * @return the sender's public key.
+     */
+    public byte[] getSender() {
+
+        return sender.clone();
+    }
+
+    /**
+     * Helper method to process all the blocks.
+     *
+     * @return true when there are more blocks to read, false otherwise.
+     * @throws SaltpackException if the message is truncated or a packet is not valid.
+     * @throws IOException       if the input stream throws an exception.
+     */
+    public boolean hasMoreBlocks() throws SaltpackException, IOException {
+
+        fill();
+
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Returns the next block of the verified message.
+     *
+     * @return the verified data.
+     * @throws SaltpackException if the signature of the block is not valid, or there are no more blocks.
+     * @throws IOException       if the input stream throws an exception.
+     */
+    public byte[] getBlock() throws SaltpackException, IOException {
+
+        fill();
+        if (pending.isEmpty()) {
+
+            throw new SaltpackException("no more blocks");
+        }
+
+        try {
+
+            byte[] block = pending.peek().get();
+            pending.poll();
+
+            return block;
+
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+            throw new SaltpackException("interrupted while waiting for a block to be verified");  // NOPMD
+
+        } catch (ExecutionException ex) {
+
+            failed = true;
+            if (ex.getCause() instanceof SaltpackException) {
+
+                throw (SaltpackException) ex.getCause();
+            }
+
+            throw new SaltpackException(String.valueOf(ex.getCause()));  // NOPMD
+        }
+    }
+
+    /**
+     * Desctructor.
+     * <p>
+     * Waits for the blocks being verified and discards them.
+     * </p>
+     * <p>
+     * This method has to be called when the instance is no longer required.
+     * </p>
+     */
+    public void destroy() {
+
+        for (CompletableFuture<byte[]> future : pending) {
+
+            try {
+
+                future.join();
+
+            } catch (CompletionException ex) {  // NOPMD
+                // the message is being discarded
+            }
+        }
+        pending.clear();
+    }
+
+    private void fill() throws SaltpackException, IOException {
+
+        while (!finalRead && !failed && pending.size() < readAheadBlocks) {
+
+            // a later packet failing stops the read ahead, the blocks before it are still returned
+            for (CompletableFuture<byte[]> future : pending) {
+
+                if (future.isCompletedExceptionally()) {
+
+                    return;
+                }
+            }
+
+            final byte[] packet = MsgpackFramer.readObject(in, MsgpackFramer.MAX_PACKET_SIZE);
+            if (packet == null) {
+
+                throw new SaltpackException("not enough data found to decode block (message truncated?)");
+            }
+
+            finalRead = AttachedSignatures.isFinalPacket(version, packet);
+
+            final long index = seqno++;
+            try {
+
+                pending.add(CompletableFuture.supplyAsync(() -> {
+
+                    try {
+
+                        return AttachedSignatures.verifyPacket(sender, headerHash, version, index, packet);
+
+                    } catch (SaltpackException ex) {
+
+                        throw new CompletionException(ex);
+                    }
+                }, executor));
+
+            } catch (RejectedExecutionException ex) {
+
+                throw new SaltpackException("executor rejected the task");  // NOPMD
+            }
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Writer of messages with their signature attached, signing the blocks concurrently.
+ * <p>
+ * The signature of every block depends only on the header hash, the block index and its content,
+ * so up to {@code maxPendingBlocks} blocks are signed in parallel on an {@code Executor}.
+ * The packets are written to the {@code OutputStream} in order by the calling thread, and the output
+ * can be verified by {@link com.gherynos.libsaltpack.MessageReader#MessageReader(InputParameters)}.
+ * </p>
+ * <p>
+ * Binary output only (no armoring).
+ * </p>
+ */
+public class ParallelSignatureWriter {  // NOPMD
+
+    /**
+     * Default maximum number of blocks signed concurrently.
+     */
+    public static final int DEFAULT_MAX_PENDING_BLOCKS = 4;
+
+    // largest packet accepted by the readers
+    private static final int PACKET_SIZE = 1024 * 1024;
+
+    private final OutputStream out;
+
+    private final Executor executor;
+
+    private final int maxPendingBlocks;
+
+    private final SecretKeyHandle senderSecretkey;
+
+    private final boolean ownsKey;
+
+    private final byte[] headerHash;
+
+    private final Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+
+    private long seqno;
+
+    private boolean finalAdded;
+
+    /**
+     * Creates a new ParallelSignatureWriter.
+     *
+     * @param out              the destination output stream that will contain the signed data.
+     * @param senderSecretkey  the private key of the sender, generated by {@link com.gherynos.libsaltpack.Utils#generateSignKeypair(byte[] publickey, byte[] secretkey)}.
+     * @param executor         the executor signing the blocks.
+     * @param maxPendingBlocks the maximum number of blocks signed concurrently, greater than zero.
+     * @throws SaltpackException
+     * @throws IOException       if the header cannot be written.
+     */
+    public ParallelSignatureWriter(OutputStream out, byte[] senderSecretkey, Executor executor, int maxPendingBlocks) throws SaltpackException, IOException {
+
+        this(out, (Object) check(senderSecretkey), executor, maxPendingBlocks);
+    }
+
+    /**
+     * Creates a new ParallelSignatureWriter.
+     *
+     * @param out              the destination output stream that will contain the signed data.
+     * @param senderSecretkey  the signing private key of the sender, which is read by the signing threads until {@link #destroy()} is called.
+     * @param executor         the executor signing the blocks.
+     * @param maxPendingBlocks the maximum number of blocks signed concurrently, greater than zero.
+     * @throws SaltpackException
+     * @throws IOException       if the header cannot be written.
+     */
+    public ParallelSignatureWriter(OutputStream out, SecretKeyHandle senderSecretkey, Executor executor, int maxPendingBlocks) throws SaltpackException, IOException {
+
+        this(out, (Object) SecretKeyHandle.check(senderSecretkey), executor, maxPendingBlocks);
+    }
+
+    private ParallelSignatureWriter(OutputStream out, Object senderSecretkey, Executor executor, int maxPendingBlocks) throws SaltpackException, IOException {
+
+        if (out == null) {
+
+            throw new SaltpackException("null output stream provided");
+        }
+        if (executor == null) {
+
+            throw new IllegalArgumentException("null executor provided");
+        }
+        if (maxPendingBlocks <= 0) {
+
+            throw new IllegalArgumentException("invalid max pending blocks");
+        }
+
+        this.out = out;
+        this.executor = executor;
+        this.maxPendingBlocks = maxPendingBlocks;
+
+        // arrays are copied in native memory instead of on the heap
+        ownsKey = !(senderSecretkey instanceof SecretKeyHandle);
+        this.senderSecretkey = ownsKey ? new SecretKeyHandle((byte[]) senderSecretkey) : (SecretKeyHandle) senderSecretkey;
+        try {
+
+            byte[][] header = SecretKeyHandle.withKey(this.senderSecretkey, AttachedSignatures::header);
+            this.headerHash = header[1];
+            out.write(header[0]);
+
+        } catch (SaltpackException | IOException | RuntimeException ex) {
+
+            destroy();
+            throw ex;
+        }
+    }
+
+    /**
+     * Adds a block to the message.
+     * <p>
+     * The data is copied, and the packets signed so far are written to the output stream.
+     * </p>
+     *
+     * @param data    the data of the block.
+     * @param isFinal true if it's the last block of the message: all the pending packets are written before returning.
+     * @throws SaltpackException if a block cannot be signed.
+     * @throws IOException       if the output stream throws an exception.
+     */
+    public void addBlock(byte[] data, boolean isFinal) throws SaltpackException, IOException {
+
+        if (data == null) {
+
+            throw new SaltpackException("null byte array provided");
+        }
+
+        addBlock(data, 0, data.length, isFinal);
+    }
+
+    /**
+     * Adds {@code len} bytes of {@code data}, starting at {@code off}, as a block of the message.
+     * <p>
+     * Blocks larger than 1 MB are signed as multiple packets.
+     * </p>
+     *
+     * @param data    the array containing the data of the block.
+     * @param off     the offset of the first byte.
+     * @param len     the number of bytes.
+     * @param isFinal true if it's the last block of the message: all the pending packets are written before returning.
+     * @throws SaltpackException if a block cannot be signed.
+     * @throws IOException       if the output stream throws an exception.
+     */
+    public void addBlock(byte[] data, int off, int len, boolean isFinal) throws SaltpackException, IOException {
+
+        if (data == null) {
+
+            throw new SaltpackException("null byte array provided");
+        }
+        Objects.checkFromIndexSize(off, len, data.length);
+        if (finalAdded) {
+
+            throw new SaltpackException("final block already added");
+        }
+
+        finalAdded = isFinal;
+
+        // blocks larger than a packet are split, only the last packet carries the final flag
+        int position = off;
+        do {
+
+            int size = Math.min(PACKET_SIZE, off + len - position);
+            sign(data, position, size, isFinal && position + size == off + len);
+            position += size;
+
+        } while (position < off + len);
+
+        // write what's ready without waiting
+        while (!pending.isEmpty() && (isFinal || pending.peek().isDone())) {
+
+            writeNext();
+        }
+    }
+
+    /**
+     * Desctructor.
+     * <p>
+     * Waits for the blocks being signed and deletes the copy of the private key, if it was provided as an array.
+     * </p>
+     * <p>
+     * This method has to be called when the instance is no longer required.
+     * </p>
+     */
+    public void destroy() {
+
+        // the tasks still running use the private key
+        for (CompletableFuture<byte[]> future : pending) {
+
+            try {
+
+                future.join();
+
+            } catch (CompletionException ex) {  // NOPMD
+                // failures have already been reported, or the message is being discarded
+            }
+        }
+        pending.clear();
+
+        if (ownsKey) {
+
+            senderSecretkey.close();
+        }
+    }
+
+    private void sign(byte[] data, int off, int len, boolean isFinal) throws SaltpackException, IOException {
+
+        while (pending.size() >= maxPendingBlocks) {
+
+            writeNext();
+        }
+
+        final byte[] block = Arrays.copyOfRange(data, off, off + len);
+        final long index = seqno++;
+        try {
+
+            pending.add(CompletableFuture.supplyAsync(() -> {
+
+                try {
+
+                    return SecretKeyHandle.withKey(senderSecretkey, key -> AttachedSignatures.signPacket(key, headerHash, index, isFinal, block, 0, block.length));
+
+                } catch (SaltpackException ex) {
+
+                    throw new CompletionException(ex);
+
+                } finally {
+
+                    Arrays.fill(block, (byte) 0);
+                }
+            }, executor));
+
+        } catch (RejectedExecutionException ex) {
+
+            Arrays.fill(block, (byte) 0);
+            throw new SaltpackException("executor rejected the task");  // NOPMD
+        }
+    }
+
+    private void writeNext() throws SaltpackException, IOException {
+
+        try {
+
+            byte[] packet = pending.peek().get();
+            pending.poll();
+            out.write(packet);
+
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+            throw new SaltpackException("interrupted while waiting for a block to be signed");  // NOPMD
+
+        } catch (ExecutionException ex) {
+
+            if (ex.getCause() instanceof SaltpackException) {
+
+                throw (SaltpackException) ex.getCause();
+            }
+
+            throw new SaltpackException(String.valueOf(ex.getCause()));  // NOPMD
+        }
+    }
+
+    private static byte[] check(byte[] senderSecretkey) throws SaltpackException {
+
+        if (senderSecretkey == null) {
+
+            throw new SaltpackException("null byte array provided");
+        }
+
+        return senderSecretkey;
+    }
+}
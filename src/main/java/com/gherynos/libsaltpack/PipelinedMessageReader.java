@@ -0,0 +1,309 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Reader of encrypted messages, decrypting the blocks concurrently.
+ * <p>
+ * The header is decoded by the constructor; the packets are then framed by the calling thread and up to
+ * {@code readAheadBlocks} of them are authenticated and decrypted in parallel on an {@code Executor}, as every packet
+ * depends only on the payload key, the header hash and its index. The blocks are returned in order by {@link #getBlock()}.
+ * A block is returned only if it has been authenticated: the first failure is thrown in place of its block,
+ * and nothing is read or decrypted after a failure has been detected.
+ * </p>
+ * <p>
+ * Binary version 2 encrypted messages only (no armoring, no signcryption); messages with their signature attached are
+ * verified concurrently by {@link com.gherynos.libsaltpack.ParallelSignatureReader}.
+ * The executor has to be provided explicitly, as the tasks hold a packet each: a small dedicated pool
+ * (e.g. one thread per core) is usually the right choice.
+ * </p>
+ */
+public class PipelinedMessageReader {  // NOPMD
+
+    /**
+     * Default maximum number of blocks decrypted concurrently.
+     */
+    public static final int DEFAULT_READ_AHEAD_BLOCKS = 4;
+
+    private final InputStream in;
+
+    private final Executor executor;
+
+    private final int readAheadBlocks;
+
+    private final int maxPacketSize;
+
+    private final Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+
+    private long index;
+
+    private boolean finalRead;
+
+    private SaltpackException failure;
+
+    private ByteBuffer ptr;  // NOPMD
+
+    /**
+     * Creates a new PipelinedMessageReader to decrypt a message.
+     *
+     * @param in                 the source input stream containing the encrypted message.
+     * @param recipientSecretkey the private key of the recipient.
+     * @param executor           the executor decrypting the blocks.
+     * @param readAheadBlocks    the maximum number of blocks decrypted concurrently, greater than zero.
+     * @throws SaltpackException if the header is not valid or the message is not addressed to the recipient.
+     * @throws IOException       if the input stream throws an exception.
+     */
+    public PipelinedMessageReader(InputStream in, byte[] recipientSecretkey, Executor executor, int readAheadBlocks) throws SaltpackException, IOException {
+
+        this(in, (Object) check(recipientSecretkey), executor, readAheadBlocks);
+    }
+
+    /**
+     * Creates a new PipelinedMessageReader to decrypt a message.
+     *
+     * @param in                 the source input stream containing the encrypted message.
+     * @param recipientSecretkey the private key of the recipient.
+     * @param executor           the executor decrypting the blocks.
+     * @param readAheadBlocks    the maximum number of blocks decrypted concurrently, greater than zero.
+     * @throws SaltpackException if the header is not valid or the message is not addressed to the recipient.
+     * @throws IOException       if the input stream throws an exception.
+     */
+    public PipelinedMessageReader(InputStream in, SecretKeyHandle recipientSecretkey, Executor executor, int readAheadBlocks) throws SaltpackException, IOException {
+
+        this(in, (Object) SecretKeyHandle.check(recipientSecretkey), executor, readAheadBlocks);
+    }
+
+    private PipelinedMessageReader(InputStream in, Object recipientSecretkey, Executor executor, int readAheadBlocks) throws SaltpackException, IOException {
+
+        if (in == null) {
+
+            throw new SaltpackException("null input stream provided");
+        }
+        if (executor == null) {
+
+            throw new IllegalArgumentException("null executor provided");
+        }
+        if (readAheadBlocks <= 0) {
+
+            throw new IllegalArgumentException("invalid read ahead blocks");
+        }
+
+        // the framer pushes back the bytes read past a packet
+        this.in = in.markSupported() ? in : new BufferedInputStream(in);
+        this.executor = executor;
+        this.readAheadBlocks = readAheadBlocks;
+
+        byte[] header = MsgpackFramer.readObject(this.in, MsgpackFramer.MAX_HEADER_SIZE);
+        if (header == null) {
+
+            throw new SaltpackException("header not found");
+        }
+
+        ptr = SecretKeyHandle.withKey(recipientSecretkey, key -> EncryptedPayloads.openHeader(header, key));
+        maxPacketSize = MsgpackFramer.maxPacketSize(EncryptedPayloads.recipients(ptr));
+    }
+
+    /**
+     * Returns the public key of the sender.
+     * <p>
+     * The key is read from the header: it is trustworthy once all the blocks have been authenticated.
+     * </p>
+     *
+     * @return the sender's public key, or the ephemeral key for anonymous senders.
+     * @throws SaltpackException if the reader has been destroyed.
+     */
+    public byte[] getSender() throws SaltpackException {
+
+        return EncryptedPayloads.sender(checkPtr());
+    }
+
+    /**
+     * Helper method to process all the blocks.
+     *
+     * @return true when there are more blocks to read, false otherwise.
+     * @throws SaltpackException if the message is truncated, a packet is not valid or a previous block failed.
+     * @throws IOException       if the input stream throws an exception.
+     */
+    public boolean hasMoreBlocks() throws SaltpackException, IOException {
+
+        fill();
+
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Returns the next block of the decrypted message.
+     *
+     * @return the decrypted data.
+     * @throws SaltpackException if the block cannot be authenticated, or there are no more blocks.
+     * @throws IOException       if the input stream throws an exception.
+     */
+    public byte[] getBlock() throws SaltpackException, IOException {
+
+        fill();
+        if (pending.isEmpty()) {
+
+            throw new SaltpackException("no more blocks");
+        }
+
+        try {
+
+            byte[] block = pending.peek().get();
+            pending.poll();
+
+            return block;
+
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+            throw new SaltpackException("interrupted while waiting for a block to be decrypted");  // NOPMD
+
+        } catch (ExecutionException ex) {
+
+            abort();
+            failure = ex.getCause() instanceof SaltpackException
+                    ? (SaltpackException) ex.getCause() : new SaltpackException(String.valueOf(ex.getCause()));
+
+            throw failure;
+        }
+    }
+
+    /**
+     * Desctructor.
+     * <p>
+     * Waits for the blocks being decrypted, discards them and securely deletes the keys.
+     * </p>
+     * <p>
+     * This method has to be called when the instance is no longer required.
+     * </p>
+     */
+    public void destroy() {
+
+        abort();
+
+        if (ptr != null) {
+
+            EncryptedPayloads.release(ptr);
+            ptr = null;  // NOPMD
+        }
+    }
+
+    private ByteBuffer checkPtr() throws SaltpackException {
+
+        if (ptr == null) {
+
+            throw new SaltpackException("reader destroyed");
+        }
+
+        return ptr;
+    }
+
+    private void fill() throws SaltpackException, IOException {
+
+        // nothing is returned after a failure
+        if (failure != null) {
+
+            throw failure;
+        }
+        checkPtr();
+
+        while (!finalRead && pending.size() < readAheadBlocks) {
+
+            // a later packet failing stops the read ahead, the blocks before it are still returned
+            for (CompletableFuture<byte[]> future : pending) {
+
+                if (future.isCompletedExceptionally()) {
+
+                    return;
+                }
+            }
+
+            final byte[] packet = MsgpackFramer.readObject(in, maxPacketSize);
+            if (packet == null) {
+
+                throw new SaltpackException("not enough data found to decode block (message truncated?)");
+            }
+            if (packet.length < 2 || packet[0] != (byte) 0x93) {
+
+                throw new SaltpackException("wrong payload packet");
+            }
+
+            // the final flag is authenticated with the packet
+            finalRead = packet[1] == (byte) 0xc3;
+
+            final long packetIndex = index++;
+            final ByteBuffer keys = checkPtr();
+            try {
+
+                pending.add(CompletableFuture.supplyAsync(() -> {
+
+                    try {
+
+                        return EncryptedPayloads.openPacket(keys, packetIndex, packet);
+
+                    } catch (SaltpackException ex) {
+
+                        throw new CompletionException(ex);
+                    }
+                }, executor));
+
+            } catch (RejectedExecutionException ex) {
+
+                throw new SaltpackException("executor rejected the task");  // NOPMD
+            }
+        }
+    }
+
+    // waits for the blocks being decrypted and discards them
+    private void abort() {
+
+        for (CompletableFuture<byte[]> future : pending) {
+
+            try {
+
+                Arrays.fill(future.join(), (byte) 0);
+
+            } catch (CompletionException ex) {  // NOPMD
+                // the message is being discarded
+            }
+        }
+        pending.clear();
+    }
+
+    private static byte[] check(byte[] recipientSecretkey) throws SaltpackException {
+
+        if (recipientSecretkey == null) {
+
+            throw new SaltpackException("null byte array provided");
+        }
+
+        return recipientSecretkey;
+    }
+}
@@ -0,0 +1,589 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.gherynos.libsaltpack;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Writer of encrypted messages, encrypting the blocks concurrently.
+ * <p>
+ * The header is generated by the constructor; every payload packet depends only on the payload key, the header hash,
+ * its index and its content, so up to {@code maxPendingBlocks} packets are encrypted in parallel on an {@code Executor}.
+ * The data is split in packets of 1 MB like {@link com.gherynos.libsaltpack.MessageWriter} does, and the packets
+ * are written to the {@code OutputStream} in order by the calling thread: the output can be decrypted by
+ * {@link com.gherynos.libsaltpack.MessageReader}.
+ * </p>
+ * <p>
+ * Binary version 2 output only (no armoring, no signcryption): the header is built on the {@code Executor} for encryption
+ * only, as {@link com.gherynos.libsaltpack.MessageWriter} builds the headers of every mode within libsaltpack on a single thread.
+ * The executor has to be provided explicitly, as the tasks hold a packet each: a small dedicated pool
+ * (e.g. one thread per core) is usually the right choice.
+ * </p>
+ */
+public class PipelinedMessageWriter {  // NOPMD
+
+    /**
+     * Default maximum number of packets encrypted concurrently.
+     */
+    public static final int DEFAULT_MAX_PENDING_BLOCKS = 4;
+
+    /**
+     * Default number of recipients from which the header is built on multiple threads.
+     */
+    public static final int DEFAULT_PARALLEL_HEADER_THRESHOLD = 256;
+
+    private static final int PACKET_SIZE = 1024 * 1024;
+
+    private final OutputStream out;
+
+    private final Executor executor;
+
+    private final int maxPendingBlocks;
+
+    private final Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+
+    private byte[] chunk = new byte[PACKET_SIZE];
+
+    private int chunkSize;
+
+    private long index;
+
+    private boolean finalAdded;
+
+    private ByteBuffer ptr;  // NOPMD
+
+    /**
+     * Creates a new PipelinedMessageWriter to encrypt a message.
+     *
+     * @param out               the destination output stream that will contain the encrypted data.
+     * @param senderSecretkey   the private key of the sender, generated by {@link com.gherynos.libsaltpack.Utils#generateKeypair(byte[] publickey, byte[] secretkey)}.
+     * @param recipients        the list of public keys of the recipients.
+     * @param visibleRecipients if true, the public keys of the recipients will be visible in the encrypted message.
+     * @param executor          the executor encrypting the packets.
+     * @param maxPendingBlocks  the maximum number of packets encrypted concurrently, greater than zero.
+     * @throws SaltpackException
+     * @throws IOException       if the header cannot be written.
+     */
+    public PipelinedMessageWriter(OutputStream out, byte[] senderSecretkey, byte[][] recipients, boolean visibleRecipients,
+                                  Executor executor, int maxPendingBlocks) throws SaltpackException, IOException {
+
+        this(out, (Object) check(senderSecretkey), recipients, visibleRecipients, executor, maxPendingBlocks, DEFAULT_PARALLEL_HEADER_THRESHOLD, null);
+    }
+
+    /**
+     * Creates a new PipelinedMessageWriter to encrypt a message.
+     *
+     * @param out               the destination output stream that will contain the encrypted data.
+     * @param senderSecretkey   the private key of the sender.
+     * @param recipients        the list of public keys of the recipients.
+     * @param visibleRecipients if true, the public keys of the recipients will be visible in the encrypted message.
+     * @param executor          the executor encrypting the packets.
+     * @param maxPendingBlocks  the maximum number of packets encrypted concurrently, greater than zero.
+     * @throws SaltpackException
+     * @throws IOException       if the header cannot be written.
+     */
+    public PipelinedMessageWriter(OutputStream out, SecretKeyHandle senderSecretkey, byte[][] recipients, boolean visibleRecipients,
+                                  Executor executor, int maxPendingBlocks) throws SaltpackException, IOException {
+
+        this(out, (Object) SecretKeyHandle.check(senderSecretkey), recipients, visibleRecipients, executor, maxPendingBlocks, DEFAULT_PARALLEL_HEADER_THRESHOLD, null);
+    }
+
+    /**
+     * Creates a new PipelinedMessageWriter to encrypt a message.
+     * <p>
+     * The payload key box and the MAC key of every recipient are independent: for lists of at least
+     * {@code parallelHeaderThreshold} recipients they are computed on the {@code executor}, in one range of recipients per core.
+     * </p>
+     *
+     * @param out                     the destination output stream that will contain the encrypted data.
+     * @param senderSecretkey         the private key of the sender, generated by {@link com.gherynos.libsaltpack.Utils#generateKeypair(byte[] publickey, byte[] secretkey)}.
+     * @param recipients              the list of public keys of the recipients.
+     * @param visibleRecipients       if true, the public keys of the recipients will be visible in the encrypted message.
+     * @param executor                the executor encrypting the packets.
+     * @param maxPendingBlocks        the maximum number of packets encrypted concurrently, greater than zero.
+     * @param parallelHeaderThreshold the number of recipients from which the header is built on multiple threads, greater than zero.
+     * @throws SaltpackException
+     * @throws IOException       if the header cannot be written.
+     */
+    public PipelinedMessageWriter(OutputStream out, byte[] senderSecretkey, byte[][] recipients, boolean visibleRecipients,
+                                  Executor executor, int maxPendingBlocks, int parallelHeaderThreshold) throws SaltpackException, IOException {
+
+        this(out, (Object) check(senderSecretkey), recipients, visibleRecipients, executor, maxPendingBlocks, parallelHeaderThreshold, null);
+    }
+
+    /**
+     * Creates a new PipelinedMessageWriter to encrypt a message.
+     * <p>
+     * The payload key box and the MAC key of every recipient are independent: for lists of at least
+     * {@code parallelHeaderThreshold} recipients they are computed on the {@code executor}, in one range of recipients per core.
+     * </p>
+     *
+     * @param out                     the destination output stream that will contain the encrypted data.
+     * @param senderSecretkey         the private key of the sender.
+     * @param recipients              the list of public keys of the recipients.
+     * @param visibleRecipients       if true, the public keys of the recipients will be visible in the encrypted message.
+     * @param executor                the executor encrypting the packets.
+     * @param maxPendingBlocks        the maximum number of packets encrypted concurrently, greater than zero.
+     * @param parallelHeaderThreshold the number of recipients from which the header is built on multiple threads, greater than zero.
+     * @throws SaltpackException
+     * @throws IOException       if the header cannot be written.
+     */
+    public PipelinedMessageWriter(OutputStream out, SecretKeyHandle senderSecretkey, byte[][] recipients, boolean visibleRecipients,
+                                  Executor executor, int maxPendingBlocks, int parallelHeaderThreshold) throws SaltpackException, IOException {
+
+        this(out, (Object) SecretKeyHandle.check(senderSecretkey), recipients, visibleRecipients, executor, maxPendingBlocks, parallelHeaderThreshold, null);
+    }
+
+    /**
+     * Creates a new PipelinedMessageWriter to encrypt a message, using a cache of shared secrets.
+     * <p>
+     * The key exchanges between the long-term keys of the sender and of the recipients are taken from
+     * {@code cache}, and stored there on a miss, so that messages from the same sender to the same recipients
+     * skip one of the three X25519 operations per recipient.
+     * </p>
+     *
+     * @param out                     the destination output stream that will contain the encrypted data.
+     * @param senderSecretkey         the private key of the sender, generated by {@link com.gherynos.libsaltpack.Utils#generateKeypair(byte[] publickey, byte[] secretkey)}.
+     * @param recipients              the list of public keys of the recipients.
+     * @param visibleRecipients       if true, the public keys of the recipients will be visible in the encrypted message.
+     * @param executor                the executor encrypting the packets.
+     * @param maxPendingBlocks        the maximum number of packets encrypted concurrently, greater than zero.
+     * @param parallelHeaderThreshold the number of recipients from which the header is built on multiple threads, greater than zero.
+     * @param cache                   the cache of the shared secrets.
+     * @throws SaltpackException
+     * @throws IOException       if the header cannot be written.
+     */
+    public PipelinedMessageWriter(OutputStream out, byte[] senderSecretkey, byte[][] recipients, boolean visibleRecipients,
+                                  Executor executor, int maxPendingBlocks, int parallelHeaderThreshold, RecipientKeyCache cache) throws SaltpackException, IOException {
+
+        this(out, (Object) check(senderSecretkey), recipients, visibleRecipients, executor, maxPendingBlocks, parallelHeaderThreshold, checkCache(cache));
+    }
+
+    /**
+     * Creates a new PipelinedMessageWriter to encrypt a message, using a cache of shared secrets.
+     * <p>
+     * The key exchanges between the long-term keys of the sender and of the recipients are taken from
+     * {@code cache}, and stored there on a miss, so that messages from the same sender to the same recipients
+     * skip one of the three X25519 operations per recipient.
+     * </p>
+     *
+     * @param out                     the destination output stream that will contain the encrypted data.
+     * @param senderSecretkey         the private key of the sender.
+     * @param recipients              the list of public keys of the recipients.
+     * @param visibleRecipients       if true, the public keys of the recipients will be visible in the encrypted message.
+     * @param executor                the executor encrypting the packets.
+     * @param maxPendingBlocks        the maximum number of packets encrypted concurrently, greater than zero.
+     * @param parallelHeaderThreshold the number of recipients from which the header is built on multiple threads, greater than zero.
+     * @param cache                   the cache of the shared secrets.
+     * @throws SaltpackException
+     * @throws IOException       if the header cannot be written.
+     */
+    public PipelinedMessageWriter(OutputStream out, SecretKeyHandle senderSecretkey, byte[][] recipients, boolean visibleRecipients,
+                                  Executor executor, int maxPendingBlocks, int parallelHeaderThreshold, RecipientKeyCache cache) throws SaltpackException, IOException {
+
+        this(out, (Object) SecretKeyHandle.check(senderSecretkey), recipients, visibleRecipients, executor, maxPendingBlocks, parallelHeaderThreshold, checkCache(cache));
+    }
+
+    /**
+     * Creates a new PipelinedMessageWriter to encrypt a message, without sender details.
+     *
+     * @param out               the destination output stream that will contain the encrypted data.
+     * @param recipients        the list of public keys of the recipients.
+     * @param visibleRecipients if true, the public keys of the recipients will be visible in the encrypted message.
+     * @param executor          the executor encrypting the packets.
+     * @param maxPendingBlocks  the maximum number of packets encrypted concurrently, greater than zero.
+     * @throws SaltpackException
+     * @throws IOException       if the header cannot be written.
+     */
+    public PipelinedMessageWriter(OutputStream out, byte[][] recipients, boolean visibleRecipients,
+                                  Executor executor, int maxPendingBlocks) throws SaltpackException, IOException {
+
+        this(out, (Object) null, recipients, visibleRecipients, executor, maxPendingBlocks, DEFAULT_PARALLEL_HEADER_THRESHOLD, null);
+    }
+
+    /**
+     * Creates a new PipelinedMessageWriter to encrypt a message, without sender details.
+     *
+     * @param out                     the destination output stream that will contain the encrypted data.
+     * @param recipients              the list of public keys of the recipients.
+     * @param visibleRecipients       if true, the public keys of the recipients will be visible in the encrypted message.
+     * @param executor                the executor encrypting the packets.
+     * @param maxPendingBlocks        the maximum number of packets encrypted concurrently, greater than zero.
+     * @param parallelHeaderThreshold the number of recipients from which the header is built on multiple threads, greater than zero.
+     * @throws SaltpackException
+     * @throws IOException       if the header cannot be written.
+     */
+    public PipelinedMessageWriter(OutputStream out, byte[][] recipients, boolean visibleRecipients,
+                                  Executor executor, int maxPendingBlocks, int parallelHeaderThreshold) throws SaltpackException, IOException {
+
+        this(out, (Object) null, recipients, visibleRecipients, executor, maxPendingBlocks, parallelHeaderThreshold, null);
+    }
+
+    private PipelinedMessageWriter(OutputStream out, Object senderSecretkey, byte[][] recipients, boolean visibleRecipients,
+                                   Executor executor, int maxPendingBlocks, int parallelHeaderThreshold, RecipientKeyCache cache) throws SaltpackException, IOException {
+
+        if (out == null) {
+
+            throw new SaltpackException("null output stream provided");
+        }
+        if (executor == null) {
+
+            throw new IllegalArgumentException("null executor provided");
+        }
+        if (maxPendingBlocks <= 0) {
+
+            throw new IllegalArgumentException("invalid max pending blocks");
+        }
+        if (parallelHeaderThreshold <= 0) {
+
+            throw new IllegalArgumentException("invalid parallel header threshold");
+        }
+
+        this.out = out;
+        this.executor = executor;
+        this.maxPendingBlocks = maxPendingBlocks;
+
+        // the cache is used until the header is finished
+        ByteBuffer cachePtr = cache == null ? null : cache.acquire();
+        try {
+
+            ptr = SecretKeyHandle.withKey(senderSecretkey, key -> EncryptedPayloads.header(key, recipients, visibleRecipients, cachePtr));
+            try {
+
+                buildHeader(recipients.length, parallelHeaderThreshold);
+                out.write(EncryptedPayloads.headerPacket(ptr));
+
+            } catch (SaltpackException | IOException | RuntimeException ex) {
+
+                destroy();
+                throw ex;
+            }
+
+        } finally {
+
+            if (cache != null) {
+
+                cache.release();
+            }
+        }
+    }
+
+    /**
+     * Adds a block to the message.
+     * <p>
+     * The data is copied, and the packets encrypted so far are written to the output stream.
+     * </p>
+     *
+     * @param data    the data of the block.
+     * @param isFinal true if it's the last block of the message: all the pending packets are written before returning.
+     * @throws SaltpackException if a packet cannot be encrypted.
+     * @throws IOException       if the output stream throws an exception.
+     */
+    public void addBlock(byte[] data, boolean isFinal) throws SaltpackException, IOException {
+
+        if (data == null) {
+
+            throw new SaltpackException("null byte array provided");
+        }
+
+        addBlock(data, 0, data.length, isFinal);
+    }
+
+    /**
+     * Adds {@code len} bytes of {@code data}, starting at {@code off}, as a block of the message.
+     *
+     * @param data    the array containing the data of the block.
+     * @param off     the offset of the first byte.
+     * @param len     the number of bytes.
+     * @param isFinal true if it's the last block of the message: all the pending packets are written before returning.
+     * @throws SaltpackException if a packet cannot be encrypted.
+     * @throws IOException       if the output stream throws an exception.
+     */
+    public void addBlock(byte[] data, int off, int len, boolean isFinal) throws SaltpackException, IOException {
+
+        if (data == null) {
+
+            throw new SaltpackException("null byte array provided");
+        }
+        Objects.checkFromIndexSize(off, len, data.length);
+
+        addBuffer(ByteBuffer.wrap(data, off, len), isFinal);
+    }
+
+    /**
+     * Adds the bytes between the position and the limit of {@code src} as a block of the message, advancing the position to the limit.
+     *
+     * @param src     the data of the block.
+     * @param isFinal true if it's the last block of the message: all the pending packets are written before returning.
+     * @throws SaltpackException if a packet cannot be encrypted.
+     * @throws IOException       if the output stream throws an exception.
+     */
+    public void addBuffer(ByteBuffer src, boolean isFinal) throws SaltpackException, IOException {
+
+        if (src == null) {
+
+            throw new SaltpackException("null byte buffer provided");
+        }
+        if (ptr == null) {
+
+            throw new SaltpackException("writer destroyed");
+        }
+        if (finalAdded) {
+
+            throw new SaltpackException("final block already added");
+        }
+
+        while (src.hasRemaining()) {
+
+            // a full packet is sealed only when more data follows, as the last one carries the final flag
+            if (chunkSize == PACKET_SIZE) {
+
+                seal(false);
+            }
+
+            int count = Math.min(src.remaining(), PACKET_SIZE - chunkSize);
+            src.get(chunk, chunkSize, count);
+            chunkSize += count;
+        }
+
+        if (isFinal) {
+
+            finalAdded = true;
+            seal(true);
+        }
+
+        // write what's ready without waiting
+        while (!pending.isEmpty() && (isFinal || pending.peek().isDone())) {
+
+            writeNext();
+        }
+    }
+
+    /**
+     * Desctructor.
+     * <p>
+     * Waits for the packets being encrypted and securely deletes the keys and the buffered data.
+     * </p>
+     * <p>
+     * This method has to be called when the instance is no longer required.
+     * </p>
+     */
+    public void destroy() {
+
+        // the tasks still running use the keys
+        for (CompletableFuture<byte[]> future : pending) {
+
+            try {
+
+                future.join();
+
+            } catch (CompletionException ex) {  // NOPMD
+                // failures have already been reported, or the message is being discarded
+            }
+        }
+        pending.clear();
+
+        Arrays.fill(chunk, (byte) 0);
+        chunkSize = 0;
+
+        if (ptr != null) {
+
+            EncryptedPayloads.release(ptr);
+            ptr = null;  // NOPMD
+        }
+    }
+
+    // the keys of every recipient are computed over ranges on the executor, one per core, from the threshold
+    private void buildHeader(int recipients, int parallelHeaderThreshold) throws SaltpackException {
+
+        final ByteBuffer keys = ptr;
+        int ranges = recipients < parallelHeaderThreshold ? 1 : Math.min(recipients, Runtime.getRuntime().availableProcessors());
+
+        runRanges(recipients, ranges, (from, to) -> EncryptedPayloads.sealPayloadKeys(keys, from, to));
+        EncryptedPayloads.hashHeader(keys);
+        runRanges(recipients, ranges, (from, to) -> EncryptedPayloads.computeMacKeys(keys, from, to));
+        EncryptedPayloads.finishHeader(keys);
+    }
+
+    private interface Range {
+
+        void run(int from, int to) throws SaltpackException;
+    }
+
+    // every submitted range is waited for, even after a failure, as they all use the native keys
+    private void runRanges(int count, int ranges, Range task) throws SaltpackException {
+
+        if (ranges <= 1) {
+
+            task.run(0, count);
+            return;
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>(ranges);
+        boolean rejected = false;
+        for (int r = 0; r < ranges && !rejected; r++) {
+
+            final int from = (int) ((long) count * r / ranges);
+            final int to = (int) ((long) count * (r + 1) / ranges);
+            try {
+
+                futures.add(CompletableFuture.runAsync(() -> {
+
+                    try {
+
+                        task.run(from, to);
+
+                    } catch (SaltpackException ex) {
+
+                        throw new CompletionException(ex);
+                    }
+                }, executor));
+
+            } catch (RejectedExecutionException ex) {
+
+                rejected = true;
+            }
+        }
+
+        Throwable failure = null;
+        for (CompletableFuture<Void> future : futures) {
+
+            try {
+
+                future.join();
+
+            } catch (CompletionException ex) {
+
+                if (failure == null) {
+
+                    failure = ex.getCause();
+                }
+            }
+        }
+
+        if (rejected) {
+
+            throw new SaltpackException("executor rejected the task");
+        }
+        if (failure instanceof SaltpackException) {
+
+            throw (SaltpackException) failure;
+        }
+        if (failure != null) {
+
+            throw new SaltpackException(String.valueOf(failure));
+        }
+    }
+
+    private void seal(boolean isFinal) throws SaltpackException, IOException {
+
+        while (pending.size() >= maxPendingBlocks) {
+
+            writeNext();
+        }
+
+        // the buffer is handed over to the task
+        final byte[] block = chunk;
+        final int size = chunkSize;
+        final long packetIndex = index++;
+        final ByteBuffer keys = ptr;
+        chunk = isFinal ? new byte[0] : new byte[PACKET_SIZE];
+        chunkSize = 0;
+
+        try {
+
+            pending.add(CompletableFuture.supplyAsync(() -> {
+
+                try {
+
+                    return EncryptedPayloads.sealPacket(keys, packetIndex, isFinal, block, 0, size);
+
+                } catch (SaltpackException ex) {
+
+                    throw new CompletionException(ex);
+
+                } finally {
+
+                    Arrays.fill(block, 0, size, (byte) 0);
+                }
+            }, executor));
+
+        } catch (RejectedExecutionException ex) {
+
+            Arrays.fill(block, 0, size, (byte) 0);
+            throw new SaltpackException("executor rejected the task");  // NOPMD
+        }
+    }
+
+    private void writeNext() throws SaltpackException, IOException {
+
+        try {
+
+            byte[] packet = pending.peek().get();
+            pending.poll();
+            out.write(packet);
+
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+            throw new SaltpackException("interrupted while waiting for a block to be encrypted");  // NOPMD
+
+        } catch (ExecutionException ex) {
+
+            if (ex.getCause() instanceof SaltpackException) {
+
+                throw (SaltpackException) ex.getCause();
+            }
+
+            throw new SaltpackException(String.valueOf(ex.getCause()));  // NOPMD
+        }
+    }
+
+    private static RecipientKeyCache checkCache(RecipientKeyCache cache) throws SaltpackException {
+
+        if (cache == null) {
+
+            throw new SaltpackException("null cache provided");
+        }
+
+        return cache;
+    }
+
+    private static byte[] check(byte[] senderSecretkey) throws SaltpackException {
+
+        if (senderSecretkey == null) {
+
+            throw new SaltpackException("null byte array provided");
+        }
+
+        return senderSecretkey;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.gherynos.libsaltpack;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Cache of the X25519 shared secrets between a sender and its recipients, for repeated encryption.
+ * <p>
+ * The MAC key of every recipient is derived from two key exchanges: one with the ephemeral key of the message
+ * and one between the long-term keys of the sender and the recipient, which is the same for every message.
+ * The latter is precomputed with {@code crypto_box_beforenm} and stored in native memory keyed by
+ * (sender public key, recipient public key), saving one of the three X25519 operations per recipient
+ * of every {@link com.gherynos.libsaltpack.PipelinedMessageWriter} using the cache.
+ * </p>
+ * <p>
+ * The cache applies to {@link com.gherynos.libsaltpack.PipelinedMessageWriter} only:
+ * {@link com.gherynos.libsaltpack.MessageWriter}, {@link com.gherynos.libsaltpack.SaltpackOutputStream} and the
+ * one-shot methods of {@link com.gherynos.libsaltpack.Saltpack} build the header within libsaltpack,
+ * which always computes the key exchanges itself.
+ * </p>
+ * <p>
+ * The least recently used entries are evicted when the cache holds {@code maxEntries} secrets, and their
+ * memory is zeroed on eviction, {@link #clear()} and {@link #destroy()}.
+ * Instances are thread safe and can be shared by concurrent writers.
+ * </p>
+ */
+public class RecipientKeyCache {  // NOPMD
+
+    static {
+
+        Loader.loadLibrary();
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private ByteBuffer ptr;  // NOPMD
+
+    /**
+     * Creates a new RecipientKeyCache instance.
+     *
+     * @param maxEntries the maximum number of shared secrets stored, greater than zero.
+     * @throws SaltpackException
+     */
+    public RecipientKeyCache(int maxEntries) throws SaltpackException {
+
+        if (maxEntries <= 0) {
+
+            throw new IllegalArgumentException("invalid max entries");
+        }
+
+        ptr = constructor(maxEntries);
+    }
+
+    /**
+     * Returns the number of lookups that found the shared secret in the cache.
+     *
+     * @return the number of hits.
+     * @throws SaltpackException if the cache has been destroyed.
+     */
+    public long getHits() throws SaltpackException {
+
+        try {
+
+            return hits(acquire());
+
+        } finally {
+
+            release();
+        }
+    }
+
+    /**
+     * Returns the number of lookups that computed the shared secret.
+     *
+     * @return the number of misses.
+     * @throws SaltpackException if the cache has been destroyed.
+     */
+    public long getMisses() throws SaltpackException {
+
+        try {
+
+            return misses(acquire());
+
+        } finally {
+
+            release();
+        }
+    }
+
+    /**
+     * Returns the number of shared secrets stored.
+     *
+     * @return the number of entries.
+     * @throws SaltpackException if the cache has been destroyed.
+     */
+    public int size() throws SaltpackException {
+
+        try {
+
+            return size(acquire());
+
+        } finally {
+
+            release();
+        }
+    }
+
+    /**
+     * Securely deletes all the shared secrets stored; the counters are not reset.
+     *
+     * @throws SaltpackException if the cache has been destroyed.
+     */
+    public void clear() throws SaltpackException {
+
+        try {
+
+            clear(acquire());
+
+        } finally {
+
+            release();
+        }
+    }
+
+    /**
+     * Desctructor.
+     * <p>
+     * Securely deletes the shared secrets using `sodium_memzero`, waiting for the writers using the cache.
+     * </p>
+     * <p>
+     * This method has to be called when the instance is no longer required.
+     * </p>
+     */
+    public void destroy() {
+
+        lock.writeLock().lock();
+        try {
+
+            if (ptr != null) {
+
+                destructor(ptr);
+                ptr = null;  // NOPMD
+            }
+
+        } finally {
+
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * Pointer to the native cache, which can't be destroyed until release() is called.
+     * release() has to be called even when an exception is thrown.
+     */
+    ByteBuffer acquire() throws SaltpackException {
+
+        lock.readLock().lock();
+        if (ptr == null) {
+
+            throw new SaltpackException("cache destroyed");
+        }
+
+        return ptr;
+    }
+
+    void release() {
+
+        lock.readLock().unlock();
+    }
+
+    private native ByteBuffer constructor(int maxEntries) throws SaltpackException;
+
+    private native void destructor(ByteBuffer ptr);
+
+    private native long hits(ByteBuffer ptr);
+
+    private native long misses(ByteBuffer ptr);
+
+    private native int size(ByteBuffer ptr);
+
+    private native void clear(ByteBuffer ptr);
+}
@@ -0,0 +1,560 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Processes whole messages held in memory with a single native call each.
+ * <p>
+ * Meant for small messages: the input is read straight from the array and the output is collected natively,
+ * so no streams, wrappers or calls back to Java are involved.
+ * The messages are binary (not armored) and are compatible with {@link com.gherynos.libsaltpack.MessageWriter}
+ * and {@link com.gherynos.libsaltpack.MessageReader}.
+ * </p>
+ */
+public final class Saltpack {  // NOPMD
+
+    static {
+
+        Loader.loadLibrary();
+    }
+
+    private Saltpack() {
+    }
+
+    /**
+     * Encrypts a message.
+     *
+     * @param plaintext       the message to encrypt.
+     * @param senderSecretkey the private key of the sender, generated by {@link com.gherynos.libsaltpack.Utils#generateKeypair(byte[] publickey, byte[] secretkey)}.
+     * @param recipients      the list of public keys of the recipients.
+     * @return the encrypted message.
+     * @throws SaltpackException if the message cannot be generated.
+     */
+    public static byte[] encrypt(byte[] plaintext, byte[] senderSecretkey, byte[][] recipients) throws SaltpackException {
+
+        return encryptNative(plaintext, check(senderSecretkey), recipients);
+    }
+
+    /**
+     * Encrypts a message.
+     *
+     * @param plaintext       the message to encrypt.
+     * @param senderSecretkey the private key of the sender.
+     * @param recipients      the list of public keys of the recipients.
+     * @return the encrypted message.
+     * @throws SaltpackException if the message cannot be generated.
+     */
+    public static byte[] encrypt(byte[] plaintext, SecretKeyHandle senderSecretkey, byte[][] recipients) throws SaltpackException {
+
+        return SecretKeyHandle.withKey(senderSecretkey, key -> encryptNative(plaintext, key, recipients));
+    }
+
+    /**
+     * Encrypts a message remaining anonymous.
+     *
+     * @param plaintext  the message to encrypt.
+     * @param recipients the list of public keys of the recipients.
+     * @return the encrypted message.
+     * @throws SaltpackException if the message cannot be generated.
+     */
+    public static byte[] encrypt(byte[] plaintext, byte[][] recipients) throws SaltpackException {
+
+        return encryptNative(plaintext, null, recipients);
+    }
+
+    /**
+     * Decrypts a message.
+     *
+     * @param message            the encrypted message.
+     * @param recipientSecretkey the private key of the recipient.
+     * @return the decrypted message.
+     * @throws SaltpackException if the message cannot be decrypted.
+     */
+    public static byte[] decrypt(byte[] message, byte[] recipientSecretkey) throws SaltpackException {
+
+        return decryptNative(message, recipientSecretkey);
+    }
+
+    /**
+     * Decrypts a message.
+     *
+     * @param message            the encrypted message.
+     * @param recipientSecretkey the private key of the recipient.
+     * @return the decrypted message.
+     * @throws SaltpackException if the message cannot be decrypted.
+     */
+    public static byte[] decrypt(byte[] message, SecretKeyHandle recipientSecretkey) throws SaltpackException {
+
+        return SecretKeyHandle.withKey(recipientSecretkey, key -> decryptNative(message, key));
+    }
+
+    /**
+     * Signs a message, attaching the signature.
+     *
+     * @param plaintext       the message to sign.
+     * @param senderSecretkey the private key of the sender, generated by {@link com.gherynos.libsaltpack.Utils#generateSignKeypair(byte[] publickey, byte[] secretkey)}.
+     * @return the signed message.
+     * @throws SaltpackException if the message cannot be generated.
+     */
+    public static byte[] sign(byte[] plaintext, byte[] senderSecretkey) throws SaltpackException {
+
+        return signNative(plaintext, senderSecretkey);
+    }
+
+    /**
+     * Signs a message, attaching the signature.
+     *
+     * @param plaintext       the message to sign.
+     * @param senderSecretkey the signing private key of the sender.
+     * @return the signed message.
+     * @throws SaltpackException if the message cannot be generated.
+     */
+    public static byte[] sign(byte[] plaintext, SecretKeyHandle senderSecretkey) throws SaltpackException {
+
+        return SecretKeyHandle.withKey(senderSecretkey, key -> signNative(plaintext, key));
+    }
+
+    /**
+     * Verifies a message with its signature attached.
+     *
+     * @param message         the signed message.
+     * @param senderPublickey the public key of the expected signer.
+     * @return the verified message.
+     * @throws SaltpackException if the signature verification fails or the message was signed by someone else.
+     */
+    public static byte[] verify(byte[] message, byte[] senderPublickey) throws SaltpackException {
+
+        return verifyNative(message, senderPublickey);
+    }
+
+    /**
+     * Signcrypts a message.
+     *
+     * @param plaintext            the message to signcrypt.
+     * @param senderSecretkey      the Ed25519 private key of the sender, generated by {@link com.gherynos.libsaltpack.Utils#generateSignKeypair(byte[] publickey, byte[] secretkey)}.
+     * @param recipientsPublickeys the list of Curve25519 public keys of the recipients. The list can be empty.
+     * @param symmetricKeys        the list of symmetric keys of the recipients: the first array is treated as the identifier, the second as the key itself. The list can be empty.
+     * @return the signcrypted message.
+     * @throws SaltpackException if the message cannot be generated.
+     */
+    public static byte[] signcrypt(byte[] plaintext, byte[] senderSecretkey, byte[][] recipientsPublickeys, byte[][][] symmetricKeys) throws SaltpackException {
+
+        return signcryptNative(plaintext, senderSecretkey, recipientsPublickeys, symmetricKeys);
+    }
+
+    /**
+     * Signcrypts a message.
+     *
+     * @param plaintext            the message to signcrypt.
+     * @param senderSecretkey      the Ed25519 signing private key of the sender.
+     * @param recipientsPublickeys the list of Curve25519 public keys of the recipients. The list can be empty.
+     * @param symmetricKeys        the list of symmetric keys of the recipients: the first array is treated as the identifier, the second as the key itself. The list can be empty.
+     * @return the signcrypted message.
+     * @throws SaltpackException if the message cannot be generated.
+     */
+    public static byte[] signcrypt(byte[] plaintext, SecretKeyHandle senderSecretkey, byte[][] recipientsPublickeys, byte[][][] symmetricKeys) throws SaltpackException {
+
+        return SecretKeyHandle.withKey(senderSecretkey, key -> signcryptNative(plaintext, key, recipientsPublickeys, symmetricKeys));
+    }
+
+    /**
+     * Decrypts a signcrypted message.
+     *
+     * @param message            the signcrypted message.
+     * @param recipientSecretkey the Curve25519 private key of the recipient. The array can be empty.
+     * @param symmetricKey       the symmetric key of the recipient: the first array is treated as the identifier, the second as the key itself. The array can be empty.
+     * @return the decrypted message.
+     * @throws SaltpackException if the message cannot be decrypted.
+     */
+    public static byte[] designcrypt(byte[] message, byte[] recipientSecretkey, byte[][] symmetricKey) throws SaltpackException {
+
+        return designcryptNative(message, recipientSecretkey, symmetricKey);
+    }
+
+    /**
+     * Decrypts a signcrypted message.
+     *
+     * @param message            the signcrypted message.
+     * @param recipientSecretkey the Curve25519 private key of the recipient.
+     * @param symmetricKey       the symmetric key of the recipient: the first array is treated as the identifier, the second as the key itself. The array can be empty.
+     * @return the decrypted message.
+     * @throws SaltpackException if the message cannot be decrypted.
+     */
+    public static byte[] designcrypt(byte[] message, SecretKeyHandle recipientSecretkey, byte[][] symmetricKey) throws SaltpackException {
+
+        return SecretKeyHandle.withKey(recipientSecretkey, key -> designcryptNative(message, key, symmetricKey));
+    }
+
+    /**
+     * Encrypts many messages for the same recipients with a single native call.
+     * <p>
+     * The keys are converted once for the whole batch and the messages are packed in a single array.
+     * </p>
+     *
+     * @param plaintexts      the messages to encrypt.
+     * @param senderSecretkey the private key of the sender, generated by {@link com.gherynos.libsaltpack.Utils#generateKeypair(byte[] publickey, byte[] secretkey)}.
+     * @param recipients      the list of public keys of the recipients.
+     * @return the encrypted messages, in the order of the plaintexts.
+     * @throws SaltpackException if any of the messages cannot be generated.
+     */
+    public static EncryptedBatch encryptBatch(List<byte[]> plaintexts, byte[] senderSecretkey, byte[][] recipients) throws SaltpackException {
+
+        return encryptAll(plaintexts, check(senderSecretkey), recipients);
+    }
+
+    /**
+     * Encrypts many messages for the same recipients with a single native call.
+     * <p>
+     * The keys are converted once for the whole batch and the messages are packed in a single array.
+     * </p>
+     *
+     * @param plaintexts      the messages to encrypt.
+     * @param senderSecretkey the private key of the sender.
+     * @param recipients      the list of public keys of the recipients.
+     * @return the encrypted messages, in the order of the plaintexts.
+     * @throws SaltpackException if any of the messages cannot be generated.
+     */
+    public static EncryptedBatch encryptBatch(List<byte[]> plaintexts, SecretKeyHandle senderSecretkey, byte[][] recipients) throws SaltpackException {
+
+        return encryptAll(plaintexts, SecretKeyHandle.check(senderSecretkey), recipients);
+    }
+
+    /**
+     * Encrypts many messages for the same recipients with a single native call, remaining anonymous.
+     * <p>
+     * The keys are converted once for the whole batch and the messages are packed in a single array.
+     * </p>
+     *
+     * @param plaintexts the messages to encrypt.
+     * @param recipients the list of public keys of the recipients.
+     * @return the encrypted messages, in the order of the plaintexts.
+     * @throws SaltpackException if any of the messages cannot be generated.
+     */
+    public static EncryptedBatch encryptBatch(List<byte[]> plaintexts, byte[][] recipients) throws SaltpackException {
+
+        return encryptAll(plaintexts, null, recipients);
+    }
+
+    /**
+     * Encrypts many messages for the same recipients, spreading the batch across threads.
+     * <p>
+     * The batch is split in up to {@code parallelism} contiguous chunks, each one encrypted with a single native call
+     * on the {@code Executor}; the results are then packed together.
+     * </p>
+     *
+     * @param plaintexts      the messages to encrypt.
+     * @param senderSecretkey the private key of the sender, generated by {@link com.gherynos.libsaltpack.Utils#generateKeypair(byte[] publickey, byte[] secretkey)}.
+     * @param recipients      the list of public keys of the recipients.
+     * @param executor        the executor running the chunks.
+     * @param parallelism     the maximum number of chunks.
+     * @return the encrypted messages, in the order of the plaintexts.
+     * @throws SaltpackException if any of the messages cannot be generated.
+     */
+    public static EncryptedBatch encryptBatch(List<byte[]> plaintexts, byte[] senderSecretkey, byte[][] recipients, Executor executor, int parallelism) throws SaltpackException {
+
+        return encryptAll(plaintexts, check(senderSecretkey), recipients, executor, parallelism);
+    }
+
+    /**
+     * Encrypts many messages for the same recipients, spreading the batch across threads.
+     * <p>
+     * The batch is split in up to {@code parallelism} contiguous chunks, each one encrypted with a single native call
+     * on the {@code Executor}; the results are then packed together.
+     * </p>
+     *
+     * @param plaintexts      the messages to encrypt.
+     * @param senderSecretkey the private key of the sender.
+     * @param recipients      the list of public keys of the recipients.
+     * @param executor        the executor running the chunks.
+     * @param parallelism     the maximum number of chunks.
+     * @return the encrypted messages, in the order of the plaintexts.
+     * @throws SaltpackException if any of the messages cannot be generated.
+     */
+    public static EncryptedBatch encryptBatch(List<byte[]> plaintexts, SecretKeyHandle senderSecretkey, byte[][] recipients, Executor executor, int parallelism) throws SaltpackException {
+
+        return encryptAll(plaintexts, SecretKeyHandle.check(senderSecretkey), recipients, executor, parallelism);
+    }
+
+    /**
+     * Encrypts many messages for the same recipients remaining anonymous, spreading the batch across threads.
+     * <p>
+     * The batch is split in up to {@code parallelism} contiguous chunks, each one encrypted with a single native call
+     * on the {@code Executor}; the results are then packed together.
+     * </p>
+     *
+     * @param plaintexts  the messages to encrypt.
+     * @param recipients  the list of public keys of the recipients.
+     * @param executor    the executor running the chunks.
+     * @param parallelism the maximum number of chunks.
+     * @return the encrypted messages, in the order of the plaintexts.
+     * @throws SaltpackException if any of the messages cannot be generated.
+     */
+    public static EncryptedBatch encryptBatch(List<byte[]> plaintexts, byte[][] recipients, Executor executor, int parallelism) throws SaltpackException {
+
+        return encryptAll(plaintexts, null, recipients, executor, parallelism);
+    }
+
+    /**
+     * Verifies many detached signatures with a single native call.
+     * <p>
+     * The failures are reported by the results, without interrupting the verification of the other items.
+     * The arrays are read in small chunks, neither copied whole nor pinned; large artefacts can be verified from files
+     * with {@link com.gherynos.libsaltpack.SaltpackFiles#verifyDetachedBatch(List, List, byte[][])}.
+     * </p>
+     *
+     * @param signatures     the detached signatures, generated by {@link com.gherynos.libsaltpack.MessageWriter#MessageWriter(OutputParameters, byte[], boolean)}.
+     * @param messages       the signed messages, in the order of the signatures.
+     * @param trustedSigners the public keys of the signers to accept, or null to accept any signer.
+     * @return the result of each verification, in the order of the signatures.
+     * @throws SaltpackException if the parameters are not valid.
+     */
+    public static VerificationResult[] verifyDetachedBatch(List<byte[]> signatures, List<byte[]> messages, byte[][] trustedSigners) throws SaltpackException {
+
+        checkPairs(signatures, messages);
+
+        return verifyChunk(signatures.toArray(new byte[0][]), messages.toArray(new byte[0][]), trustedSigners);
+    }
+
+    /**
+     * Verifies many detached signatures, spreading the batch across threads.
+     * <p>
+     * The batch is split in up to {@code parallelism} contiguous chunks, each one verified with a single native call
+     * on the {@code Executor}. The failures are reported by the results, without interrupting the verification of the other items.
+     * </p>
+     *
+     * @param signatures     the detached signatures, generated by {@link com.gherynos.libsaltpack.MessageWriter#MessageWriter(OutputParameters, byte[], boolean)}.
+     * @param messages       the signed messages, in the order of the signatures.
+     * @param trustedSigners the public keys of the signers to accept, or null to accept any signer.
+     * @param executor       the executor running the chunks.
+     * @param parallelism    the maximum number of chunks.
+     * @return the result of each verification, in the order of the signatures.
+     * @throws SaltpackException if the parameters are not valid.
+     */
+    public static VerificationResult[] verifyDetachedBatch(List<byte[]> signatures, List<byte[]> messages, byte[][] trustedSigners, Executor executor, int parallelism) throws SaltpackException {
+
+        checkPairs(signatures, messages);
+
+        final byte[][] allSignatures = signatures.toArray(new byte[0][]);
+        final byte[][] allMessages = messages.toArray(new byte[0][]);
+        List<VerificationResult[]> chunks = runChunks(allSignatures.length, executor, parallelism,
+                (from, to) -> verifyChunk(Arrays.copyOfRange(allSignatures, from, to), Arrays.copyOfRange(allMessages, from, to), trustedSigners));
+
+        VerificationResult[] results = new VerificationResult[allSignatures.length];
+        int position = 0;
+        for (VerificationResult[] chunk : chunks) {
+
+            System.arraycopy(chunk, 0, results, position, chunk.length);
+            position += chunk.length;
+        }
+
+        return results;
+    }
+
+    // the key is either an array, null to remain anonymous, or a handle
+    private static EncryptedBatch encryptAll(List<byte[]> plaintexts, Object senderSecretkey, byte[][] recipients) throws SaltpackException {
+
+        if (plaintexts == null) {
+
+            throw new SaltpackException("null plaintexts provided");
+        }
+
+        return encryptChunk(plaintexts.toArray(new byte[0][]), senderSecretkey, recipients);
+    }
+
+    private static EncryptedBatch encryptAll(List<byte[]> plaintexts, Object senderSecretkey, byte[][] recipients, Executor executor, int parallelism) throws SaltpackException {
+
+        if (plaintexts == null) {
+
+            throw new SaltpackException("null plaintexts provided");
+        }
+
+        final byte[][] all = plaintexts.toArray(new byte[0][]);
+
+        return merge(runChunks(all.length, executor, parallelism, (from, to) -> encryptChunk(Arrays.copyOfRange(all, from, to), senderSecretkey, recipients)), all.length);
+    }
+
+    interface Chunk<T> {
+
+        T run(int from, int to) throws SaltpackException;
+    }
+
+    static <T> List<T> runChunks(int count, Executor executor, int parallelism, Chunk<T> task) throws SaltpackException {
+
+        if (executor == null) {
+
+            throw new IllegalArgumentException("null executor provided");
+        }
+        if (parallelism <= 0) {
+
+            throw new IllegalArgumentException("invalid parallelism");
+        }
+
+        int chunks = Math.min(parallelism, count);
+        if (chunks <= 1) {
+
+            List<T> results = new ArrayList<>(1);
+            results.add(task.run(0, count));
+
+            return results;
+        }
+
+        List<CompletableFuture<T>> futures = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) {
+
+            final int from = (int) ((long) count * c / chunks);
+            final int to = (int) ((long) count * (c + 1) / chunks);
+            futures.add(CompletableFuture.supplyAsync(() -> {
+
+                try {
+
+                    return task.run(from, to);
+
+                } catch (SaltpackException ex) {
+
+                    throw new CompletionException(ex);
+                }
+            }, executor));
+        }
+
+        List<T> results = new ArrayList<>(chunks);
+        try {
+
+            for (CompletableFuture<T> future : futures) {
+
+                results.add(future.get());
+            }
+
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+            throw new SaltpackException("interrupted while waiting for a batch to be processed");  // NOPMD
+
+        } catch (ExecutionException ex) {
+
+            if (ex.getCause() instanceof SaltpackException) {
+
+                throw (SaltpackException) ex.getCause();
+            }
+
+            throw new SaltpackException(String.valueOf(ex.getCause()));  // NOPMD
+        }
+
+        return results;
+    }
+
+    private static byte[] check(byte[] secretkey) throws SaltpackException {
+
+        if (secretkey == null) {
+
+            throw new SaltpackException("null byte array provided");
+        }
+
+        return secretkey;
+    }
+
+    private static void checkPairs(List<byte[]> signatures, List<byte[]> messages) throws SaltpackException {
+
+        if (signatures == null) {
+
+            throw new SaltpackException("null signatures provided");
+        }
+        if (messages == null) {
+
+            throw new SaltpackException("null messages provided");
+        }
+        if (signatures.size() != messages.size()) {
+
+            throw new SaltpackException("signatures and messages count mismatch");
+        }
+    }
+
+    private static VerificationResult[] verifyChunk(byte[][] signatures, byte[][] messages, byte[][] trustedSigners) throws SaltpackException {
+
+        byte[][] signers = new byte[signatures.length][];
+        String[] errors = new String[signatures.length];
+        verifyDetachedBatchNative(signatures, messages, trustedSigners, signers, errors);
+
+        VerificationResult[] results = new VerificationResult[signatures.length];
+        for (int i = 0; i < results.length; i++) {
+
+            results[i] = new VerificationResult(signers[i], errors[i]);
+        }
+
+        return results;
+    }
+
+    private static EncryptedBatch encryptChunk(byte[][] plaintexts, Object senderSecretkey, byte[][] recipients) throws SaltpackException {
+
+        int[] offsets = new int[plaintexts.length + 1];
+        byte[] data = SecretKeyHandle.withKey(senderSecretkey, key -> encryptBatchNative(plaintexts, key, recipients, offsets));
+
+        return new EncryptedBatch(data, offsets);
+    }
+
+    private static EncryptedBatch merge(List<EncryptedBatch> batches, int count) throws SaltpackException {
+
+        long total = 0;
+        for (EncryptedBatch batch : batches) {
+
+            total += batch.getData().length;
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+
+            throw new SaltpackException("batch too large");
+        }
+
+        byte[] data = new byte[(int) total];
+        int[] offsets = new int[count + 1];
+        int position = 0;
+        int index = 0;
+        for (EncryptedBatch batch : batches) {
+
+            System.arraycopy(batch.getData(), 0, data, position, batch.getData().length);
+            for (int i = 1; i <= batch.size(); i++) {
+
+                offsets[++index] = position + batch.getOffsets()[i];
+            }
+            position += batch.getData().length;
+        }
+
+        return new EncryptedBatch(data, offsets);
+    }
+
+    private static native byte[] encryptNative(byte[] plaintext, Object senderSecretkey, byte[][] recipients) throws SaltpackException;
+
+    private static native byte[] encryptBatchNative(byte[][] plaintexts, Object senderSecretkey, byte[][] recipients, int[] offsets) throws SaltpackException;
+
+    private static native void verifyDetachedBatchNative(byte[][] signatures, byte[][] messages, byte[][] trustedSigners, byte[][] signers, String[] errors) throws SaltpackException;
+
+    private static native byte[] decryptNative(byte[] message, Object recipientSecretkey) throws SaltpackException;
+
+    private static native byte[] signNative(byte[] plaintext, Object senderSecretkey) throws SaltpackException;
+
+    private static native byte[] verifyNative(byte[] message, byte[] senderPublickey) throws SaltpackException;
+
+    private static native byte[] signcryptNative(byte[] plaintext, Object senderSecretkey, byte[][] recipientsPublickeys, byte[][][] symmetricKeys) throws SaltpackException;
+
+    private static native byte[] designcryptNative(byte[] message, Object recipientSecretkey, byte[][] symmetricKey) throws SaltpackException;
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Push-style decoder to decrypt or verify a binary message as its bytes become available.
+ * <p>
+ * Unlike {@link com.gherynos.libsaltpack.MessageReader}, the decoder never calls back into Java: the input is handed
+ * over with {@code feed} and the parsing state is kept in the native context between calls, so it can be used
+ * from non-blocking code (e.g. event loops) without a dedicated thread per message.
+ * </p>
+ */
+public class SaltpackDecoder {  // NOPMD
+
+    static {
+
+        Loader.loadLibrary();
+    }
+
+    private static final byte[][] NO_BLOCKS = new byte[0][];
+
+    private ByteBuffer ptr;  // NOPMD
+
+    /**
+     * Creates a new SaltpackDecoder instance to decrypt a message.
+     *
+     * @param recipientSecretkey the private key of the recipient.
+     * @throws SaltpackException
+     */
+    public SaltpackDecoder(byte[] recipientSecretkey) throws SaltpackException {
+
+        if (recipientSecretkey == null) {
+
+            throw new SaltpackException("null byte array provided");
+        }
+
+        ptr = constructor(recipientSecretkey);
+    }
+
+    /**
+     * Creates a new SaltpackDecoder instance to decrypt a message.
+     * <p>
+     * The key is copied in the native memory of the decoder until the header has been decrypted.
+     * </p>
+     *
+     * @param recipientSecretkey the private key of the recipient.
+     * @throws SaltpackException
+     */
+    public SaltpackDecoder(SecretKeyHandle recipientSecretkey) throws SaltpackException {
+
+        ptr = SecretKeyHandle.withKey(recipientSecretkey, this::constructor);
+    }
+
+    /**
+     * Creates a new SaltpackDecoder instance to verify a message with its signature attached.
+     *
+     * @throws SaltpackException
+     */
+    public SaltpackDecoder() throws SaltpackException {
+
+        ptr = constructor(null);
+    }
+
+    /**
+     * Deallocates the native resources associated with the decoder.
+     * <p>
+     * This method has to be called when the instance is no longer required.
+     * </p>
+     */
+    public void destroy() {
+
+        if (ptr != null) {
+
+            destructor(ptr);
+            ptr = null;  // NOPMD
+        }
+    }
+
+    /**
+     * Adds the bytes between the position and the limit of {@code src} to the message, advancing the position to the limit.
+     *
+     * @param src the next bytes of the message.
+     * @return the decrypted/verified blocks completed by the new bytes, possibly none.
+     * @throws SaltpackException if the header is not valid, a block cannot be decrypted or its signature is not valid.
+     */
+    public byte[][] feed(ByteBuffer src) throws SaltpackException {
+
+        if (src == null) {
+
+            throw new SaltpackException("null byte buffer provided");
+        }
+
+        byte[][] blocks;
+        int len = src.remaining();
+        if (src.isDirect()) {
+
+            blocks = feedDirect(ptr, src, src.position(), len);
+
+        } else if (src.hasArray()) {
+
+            blocks = feed(ptr, src.array(), src.arrayOffset() + src.position(), len);
+
+        } else {
+
+            byte[] data = new byte[len];
+            src.duplicate().get(data);
+            blocks = feed(ptr, data, 0, len);
+        }
+
+        src.position(src.limit());
+
+        return blocks == null ? NO_BLOCKS : blocks;
+    }
+
+    /**
+     * Adds {@code len} bytes of {@code data}, starting at {@code off}, to the message.
+     *
+     * @param data the array containing the next bytes of the message.
+     * @param off  the offset of the first byte.
+     * @param len  the number of bytes.
+     * @return the decrypted/verified blocks completed by the new bytes, possibly none.
+     * @throws SaltpackException if the header is not valid, a block cannot be decrypted or its signature is not valid.
+     */
+    public byte[][] feed(byte[] data, int off, int len) throws SaltpackException {
+
+        if (data == null) {
+
+            throw new SaltpackException("null byte array provided");
+        }
+        Objects.checkFromIndexSize(off, len, data.length);
+
+        byte[][] blocks = feed(ptr, data, off, len);
+
+        return blocks == null ? NO_BLOCKS : blocks;
+    }
+
+    /**
+     * Header status.
+     *
+     * @return true once the header of the message has been received and validated, false otherwise.
+     */
+    public boolean isHeaderParsed() {
+
+        return isHeaderParsed(ptr);
+    }
+
+    /**
+     * Message status.
+     *
+     * @return true once the final block of the message has been returned, false otherwise.
+     * @throws SaltpackException
+     */
+    public boolean isFinished() throws SaltpackException {
+
+        return isFinished(ptr);
+    }
+
+    /**
+     * Returns the public keys of the recipients if they're visible (see flag {@code visibleRecipients} in {@link com.gherynos.libsaltpack.MessageWriter}).
+     *
+     * @return the recipients if they're visible, an empty array otherwise.
+     * @throws SaltpackException if the header has not been parsed yet.
+     */
+    public byte[][] getRecipients() throws SaltpackException {
+
+        return getRecipients(ptr);
+    }
+
+    /**
+     * Returns the public key of the sender.
+     *
+     * @return the sender's public key.
+     * @throws SaltpackException if the header has not been parsed yet.
+     */
+    public byte[] getSender() throws SaltpackException {
+
+        return getSender(ptr);
+    }
+
+    /**
+     * Sender's anonimity status (see {@link com.gherynos.libsaltpack.MessageWriter#MessageWriter(OutputParameters, byte[][])}).
+     *
+     * @return true if the sender of the message is intentionally anonymous, false otherwise.
+     * @throws SaltpackException if the header has not been parsed yet.
+     */
+    public boolean isIntentionallyAnonymous() throws SaltpackException {
+
+        return isIntentionallyAnonymous(ptr);
+    }
+
+    private native ByteBuffer constructor(Object recipientSecretkey) throws SaltpackException;
+
+    private native void destructor(ByteBuffer ptr);
+
+    private native byte[][] feed(ByteBuffer ptr, byte[] data, int off, int len) throws SaltpackException;
+
+    private native byte[][] feedDirect(ByteBuffer ptr, ByteBuffer src, int off, int len) throws SaltpackException;
+
+    private native boolean isHeaderParsed(ByteBuffer ptr);
+
+    private native boolean isFinished(ByteBuffer ptr) throws SaltpackException;
+
+    private native byte[][] getRecipients(ByteBuffer ptr) throws SaltpackException;
+
+    private native byte[] getSender(ByteBuffer ptr) throws SaltpackException;
+
+    private native boolean isIntentionallyAnonymous(ByteBuffer ptr) throws SaltpackException;
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Push-style encoder to encrypt or sign a message, returning the generated bytes instead of writing them to a stream.
+ * <p>
+ * The encoder supports the same modes of {@link com.gherynos.libsaltpack.MessageWriter}; the {@code OutputParameters}
+ * are used for the armoring and buffering settings only, their destination is never written.
+ * The header of the message is returned together with the output of the first call to {@code encode}.
+ * </p>
+ */
+public class SaltpackEncoder {  // NOPMD
+
+    private final MessageWriter mw;
+
+    /**
+     * Creates a new SaltpackEncoder instance to encrypt a message.
+     *
+     * @param op                the OutputParameters with the armoring and buffering settings.
+     * @param senderSecretkey   the private key of the sender, generated by {@link com.gherynos.libsaltpack.Utils#generateKeypair(byte[] publickey, byte[] secretkey)}.
+     * @param recipients        the list of public keys of the recipients.
+     * @param visibleRecipients if true, the public keys of the recipients will be visible in the encrypted message.
+     * @throws SaltpackException
+     */
+    public SaltpackEncoder(OutputParameters op, byte[] senderSecretkey, byte[][] recipients, boolean visibleRecipients) throws SaltpackException {
+
+        mw = new MessageWriter(check(op), senderSecretkey, recipients, visibleRecipients);
+    }
+
+    /**
+     * Creates a new SaltpackEncoder instance to encrypt a message.
+     *
+     * @param op                the OutputParameters with the armoring and buffering settings.
+     * @param senderSecretkey   the private key of the sender.
+     * @param recipients        the list of public keys of the recipients.
+     * @param visibleRecipients if true, the public keys of the recipients will be visible in the encrypted message.
+     * @throws SaltpackException
+     */
+    public SaltpackEncoder(OutputParameters op, SecretKeyHandle senderSecretkey, byte[][] recipients, boolean visibleRecipients) throws SaltpackException {
+
+        mw = new MessageWriter(check(op), senderSecretkey, recipients, visibleRecipients);
+    }
+
+    /**
+     * Creates a new SaltpackEncoder instance to encrypt a message.
+     * The recipients public keys will be visible in the encrypted message.
+     *
+     * @param op              the OutputParameters with the armoring and buffering settings.
+     * @param senderSecretkey the private key of the sender, generated by {@link com.gherynos.libsaltpack.Utils#generateKeypair(byte[] publickey, byte[] secretkey)}.
+     * @param recipients      the list of public keys of the recipients.
+     * @throws SaltpackException
+     */
+    public SaltpackEncoder(OutputParameters op, byte[] senderSecretkey, byte[][] recipients) throws SaltpackException {
+
+        mw = new MessageWriter(check(op), senderSecretkey, recipients);
+    }
+
+    /**
+     * Creates a new SaltpackEncoder instance to encrypt a message.
+     * The recipients public keys will be visible in the encrypted message.
+     *
+     * @param op              the OutputParameters with the armoring and buffering settings.
+     * @param senderSecretkey the private key of the sender.
+     * @param recipients      the list of public keys of the recipients.
+     * @throws SaltpackException
+     */
+    public SaltpackEncoder(OutputParameters op, SecretKeyHandle senderSecretkey, byte[][] recipients) throws SaltpackException {
+
+        mw = new MessageWriter(check(op), senderSecretkey, recipients);
+    }
+
+    /**
+     * Creates a new SaltpackEncoder instance to encrypt a message remaining anonymous.
+     *
+     * @param op                the OutputParameters with the armoring and buffering settings.
+     * @param recipients        the list of public keys of the recipients.
+     * @param visibleRecipients if true, the public keys of the recipients will be visible in the encrypted message.
+     * @throws SaltpackException
+     */
+    public SaltpackEncoder(OutputParameters op, byte[][] recipients, boolean visibleRecipients) throws SaltpackException {
+
+        mw = new MessageWriter(check(op), recipients, visibleRecipients);
+    }
+
+    /**
+     * Creates a new SaltpackEncoder instance to encrypt a message remaining anonymous.
+     * The recipients public keys will be visible in the encrypted message.
+     *
+     * @param op         the OutputParameters with the armoring and buffering settings.
+     * @param recipients the list of public keys of the recipients.
+     * @throws SaltpackException
+     */
+    public SaltpackEncoder(OutputParameters op, byte[][] recipients) throws SaltpackException {
+
+        mw = new MessageWriter(check(op), recipients);
+    }
+
+    /**
+     * Creates a new SaltpackEncoder instance to sign a message.
+     *
+     * @param op                 the OutputParameters with the armoring and buffering settings.
+     * @param senderSecretkey    the private key of the sender, generated by {@link com.gherynos.libsaltpack.Utils#generateSignKeypair(byte[] publickey, byte[] secretkey)}.
+     * @param detatchedSignature attached/detached signature flag.
+     * @throws SaltpackException
+     */
+    public SaltpackEncoder(OutputParameters op, byte[] senderSecretkey, boolean detatchedSignature) throws SaltpackException {
+
+        mw = new MessageWriter(check(op), senderSecretkey, detatchedSignature);
+    }
+
+    /**
+     * Creates a new SaltpackEncoder instance to sign a message.
+     *
+     * @param op                 the OutputParameters with the armoring and buffering settings.
+     * @param senderSecretkey    the signing private key of the sender.
+     * @param detatchedSignature attached/detached signature flag.
+     * @throws SaltpackException
+     */
+    public SaltpackEncoder(OutputParameters op, SecretKeyHandle senderSecretkey, boolean detatchedSignature) throws SaltpackException {
+
+        mw = new MessageWriter(check(op), senderSecretkey, detatchedSignature);
+    }
+
+    /**
+     * Creates a new SaltpackEncoder instance to signcrypt a message.
+     *
+     * @param op                   the OutputParameters with the armoring and buffering settings.
+     * @param senderSecretkey      the private key of the sender, generated by {@link com.gherynos.libsaltpack.Utils#generateSignKeypair(byte[] publickey, byte[] secretkey)}.
+     * @param recipientsPublickeys the list of Curve25519 public keys of the recipients. The list can be empty.
+     * @param symmetricKeys        the list of symmetric keys of the recipients: the first array is treated as the identifier, the second as the key itself. The list can be empty.
+     * @throws SaltpackException
+     */
+    public SaltpackEncoder(OutputParameters op, byte[] senderSecretkey, byte[][] recipientsPublickeys, byte[][][] symmetricKeys) throws SaltpackException {
+
+        mw = new MessageWriter(check(op), senderSecretkey, recipientsPublickeys, symmetricKeys);
+    }
+
+    /**
+     * Creates a new SaltpackEncoder instance to signcrypt a message.
+     *
+     * @param op                   the OutputParameters with the armoring and buffering settings.
+     * @param senderSecretkey      the signing private key of the sender.
+     * @param recipientsPublickeys the list of Curve25519 public keys of the recipients. The list can be empty.
+     * @param symmetricKeys        the list of symmetric keys of the recipients: the first array is treated as the identifier, the second as the key itself. The list can be empty.
+     * @throws SaltpackException
+     */
+    public SaltpackEncoder(OutputParameters op, SecretKeyHandle senderSecretkey, byte[][] recipientsPublickeys, byte[][][] symmetricKeys) throws SaltpackException {
+
+        mw = new MessageWriter(check(op), senderSecretkey, recipientsPublickeys, symmetricKeys);
+    }
+
+    /**
+     * Creates a new SaltpackEncoder instance to signcrypt a message remaining anonymous.
+     *
+     * @param op                   the OutputParameters with the armoring and buffering settings.
+     * @param recipientsPublickeys the list of Curve25519 public keys of the recipients. The list can be empty.
+     * @param symmetricKeys        the list of symmetric keys of the recipients: the first array is treated as the identifier, the second as the key itself. The list can be empty.
+     * @throws SaltpackException
+     */
+    public SaltpackEncoder(OutputParameters op, byte[][] recipientsPublickeys, byte[][][] symmetricKeys) throws SaltpackException {
+
+        mw = new MessageWriter(check(op), recipientsPublickeys, symmetricKeys);
+    }
+
+    private static OutputParameters check(OutputParameters op) throws SaltpackException {
+
+        if (op == null) {
+
+            throw new SaltpackException("null output parameters provided");
+        }
+
+        return op.isMemory() ? op : OutputParameters.withoutDestination(op);
+    }
+
+    /**
+     * Desctructor.
+     * <p>
+     * This method has to be called when the instance is no longer required.
+     * </p>
+     */
+    public void destroy() {
+
+        mw.destroy();
+    }
+
+    /**
+     * Adds the bytes between the position and the limit of {@code src} to the message, advancing the position to the limit.
+     *
+     * @param src     the next block of the message.
+     * @param isFinal true if it's the last block of the message.
+     * @return the bytes of the message generated since the previous call, possibly none.
+     * @throws SaltpackException
+     */
+    public ByteBuffer encode(ByteBuffer src, boolean isFinal) throws SaltpackException {
+
+        mw.addBuffer(src, isFinal);
+
+        return ByteBuffer.wrap(mw.drain());
+    }
+
+    /**
+     * Adds {@code len} bytes of {@code data}, starting at {@code off}, to the message.
+     *
+     * @param data    the array containing the next block of the message.
+     * @param off     the offset of the first byte.
+     * @param len     the number of bytes.
+     * @param isFinal true if it's the last block of the message.
+     * @return the bytes of the message generated since the previous call, possibly none.
+     * @throws SaltpackException
+     */
+    public byte[] encode(byte[] data, int off, int len, boolean isFinal) throws SaltpackException {
+
+        if (data == null) {
+
+            throw new SaltpackException("null byte array provided");
+        }
+        Objects.checkFromIndexSize(off, len, data.length);
+
+        mw.addBlock(data, off, len, isFinal);
+
+        return mw.drain();
+    }
+
+    /**
+     * Returns the bytes of the message generated and not returned yet, i.e. the header before the first call to {@code encode}.
+     *
+     * @return the pending bytes of the message, possibly none.
+     * @throws SaltpackException
+     */
+    public byte[] drain() throws SaltpackException {
+
+        return mw.drain();
+    }
+}
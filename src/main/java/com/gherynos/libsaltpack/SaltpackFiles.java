@@ -0,0 +1,317 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Encrypts, decrypts, signs and verifies files entirely in native code.
+ * <p>
+ * The input files are memory-mapped and the output files are written natively, so no data goes through Java streams.
+ * The messages are binary (not armored) and are compatible with {@link com.gherynos.libsaltpack.MessageWriter}
+ * and {@link com.gherynos.libsaltpack.MessageReader}.
+ * </p>
+ * <p>
+ * The output is written to a temporary file in the destination directory, renamed over the destination only when
+ * the operation succeeds: a message failing authentication part way through leaves no plaintext behind.
+ * The destination can't be the input file.
+ * </p>
+ */
+public final class SaltpackFiles {  // NOPMD
+
+    static {
+
+        Loader.loadLibrary();
+    }
+
+    private SaltpackFiles() {
+    }
+
+    /**
+     * Encrypts a file.
+     *
+     * @param in              the file to encrypt.
+     * @param out             the destination file, created or replaced.
+     * @param senderSecretkey the private key of the sender, generated by {@link com.gherynos.libsaltpack.Utils#generateKeypair(byte[] publickey, byte[] secretkey)}.
+     * @param recipients      the list of public keys of the recipients.
+     * @return the number of bytes encrypted.
+     * @throws SaltpackException if the files cannot be accessed or the message cannot be generated.
+     */
+    public static long encrypt(Path in, Path out, byte[] senderSecretkey, byte[][] recipients) throws SaltpackException {
+
+        return encrypt(path(in), output(in, out), senderSecretkey, recipients);
+    }
+
+    /**
+     * Encrypts a file.
+     *
+     * @param in              the file to encrypt.
+     * @param out             the destination file, created or replaced.
+     * @param senderSecretkey the private key of the sender.
+     * @param recipients      the list of public keys of the recipients.
+     * @return the number of bytes encrypted.
+     * @throws SaltpackException if the files cannot be accessed or the message cannot be generated.
+     */
+    public static long encrypt(Path in, Path out, SecretKeyHandle senderSecretkey, byte[][] recipients) throws SaltpackException {
+
+        final String inPath = path(in);
+        final String outPath = output(in, out);
+
+        return SecretKeyHandle.withKey(senderSecretkey, key -> encrypt(inPath, outPath, key, recipients));
+    }
+
+    /**
+     * Decrypts a file.
+     *
+     * @param in                 the file containing the encrypted message.
+     * @param out                the destination file, created or replaced.
+     * @param recipientSecretkey the private key of the recipient.
+     * @return the number of bytes decrypted.
+     * @throws SaltpackException if the files cannot be accessed or the message cannot be decrypted.
+     */
+    public static long decrypt(Path in, Path out, byte[] recipientSecretkey) throws SaltpackException {
+
+        return decrypt(path(in), output(in, out), recipientSecretkey);
+    }
+
+    /**
+     * Decrypts a file.
+     *
+     * @param in                 the file containing the encrypted message.
+     * @param out                the destination file, created or replaced.
+     * @param recipientSecretkey the private key of the recipient.
+     * @return the number of bytes decrypted.
+     * @throws SaltpackException if the files cannot be accessed or the message cannot be decrypted.
+     */
+    public static long decrypt(Path in, Path out, SecretKeyHandle recipientSecretkey) throws SaltpackException {
+
+        final String inPath = path(in);
+        final String outPath = output(in, out);
+
+        return SecretKeyHandle.withKey(recipientSecretkey, key -> decrypt(inPath, outPath, key));
+    }
+
+    /**
+     * Signs a file.
+     *
+     * @param in                 the file to sign.
+     * @param out                the destination file, created or replaced, that will contain the signed message or the detached signature.
+     * @param senderSecretkey    the private key of the sender, generated by {@link com.gherynos.libsaltpack.Utils#generateSignKeypair(byte[] publickey, byte[] secretkey)}.
+     * @param detachedSignature  attached/detached signature flag.
+     * @return the number of bytes signed.
+     * @throws SaltpackException if the files cannot be accessed or the message cannot be generated.
+     */
+    public static long sign(Path in, Path out, byte[] senderSecretkey, boolean detachedSignature) throws SaltpackException {
+
+        return sign(path(in), output(in, out), senderSecretkey, detachedSignature);
+    }
+
+    /**
+     * Signs a file.
+     *
+     * @param in                 the file to sign.
+     * @param out                the destination file, created or replaced, that will contain the signed message or the detached signature.
+     * @param senderSecretkey    the signing private key of the sender.
+     * @param detachedSignature  attached/detached signature flag.
+     * @return the number of bytes signed.
+     * @throws SaltpackException if the files cannot be accessed or the message cannot be generated.
+     */
+    public static long sign(Path in, Path out, SecretKeyHandle senderSecretkey, boolean detachedSignature) throws SaltpackException {
+
+        final String inPath = path(in);
+        final String outPath = output(in, out);
+
+        return SecretKeyHandle.withKey(senderSecretkey, key -> sign(inPath, outPath, key, detachedSignature));
+    }
+
+    /**
+     * Verifies a file containing a message with its signature attached.
+     *
+     * @param in  the file containing the signed message.
+     * @param out the destination file, created or replaced, that will contain the verified message.
+     * @return the public key of the signer.
+     * @throws SaltpackException if the files cannot be accessed or the signature verification fails.
+     */
+    public static byte[] verify(Path in, Path out) throws SaltpackException {
+
+        return verify(path(in), output(in, out));
+    }
+
+    /**
+     * Verifies a detached signature.
+     *
+     * @param signature the file containing the detached signature.
+     * @param message   the file containing the signed message.
+     * @return the public key of the signer.
+     * @throws SaltpackException if the files cannot be accessed or the signature verification fails.
+     */
+    public static byte[] verifyDetached(Path signature, Path message) throws SaltpackException {
+
+        return verifyDetached(path(signature), path(message));
+    }
+
+    /**
+     * Verifies many detached signatures stored in files.
+     * <p>
+     * The files are memory-mapped one pair at a time, so the messages are never loaded in the Java heap.
+     * The failures are reported by the results, without interrupting the verification of the other items.
+     * </p>
+     *
+     * @param signatures     the files containing the detached signatures.
+     * @param messages       the files containing the signed messages, in the order of the signatures.
+     * @param trustedSigners the public keys of the signers to accept, or null to accept any signer.
+     * @return the result of each verification, in the order of the signatures.
+     * @throws SaltpackException if the parameters are not valid.
+     */
+    public static VerificationResult[] verifyDetachedBatch(List<Path> signatures, List<Path> messages, byte[][] trustedSigners) throws SaltpackException {
+
+        checkPairs(signatures, messages);
+
+        return verifyChunk(signatures.toArray(new Path[0]), messages.toArray(new Path[0]), trustedSigners);
+    }
+
+    /**
+     * Verifies many detached signatures stored in files, spreading the batch across threads.
+     * <p>
+     * The batch is split in up to {@code parallelism} contiguous chunks, each one verified on the {@code Executor}.
+     * The failures are reported by the results, without interrupting the verification of the other items.
+     * </p>
+     *
+     * @param signatures     the files containing the detached signatures.
+     * @param messages       the files containing the signed messages, in the order of the signatures.
+     * @param trustedSigners the public keys of the signers to accept, or null to accept any signer.
+     * @param executor       the executor running the chunks.
+     * @param parallelism    the maximum number of chunks.
+     * @return the result of each verification, in the order of the signatures.
+     * @throws SaltpackException if the parameters are not valid.
+     */
+    public static VerificationResult[] verifyDetachedBatch(List<Path> signatures, List<Path> messages, byte[][] trustedSigners, Executor executor, int parallelism) throws SaltpackException {
+
+        checkPairs(signatures, messages);
+
+        final Path[] allSignatures = signatures.toArray(new Path[0]);
+        final Path[] allMessages = messages.toArray(new Path[0]);
+        List<VerificationResult[]> chunks = Saltpack.runChunks(allSignatures.length, executor, parallelism,
+                (from, to) -> verifyChunk(Arrays.copyOfRange(allSignatures, from, to), Arrays.copyOfRange(allMessages, from, to), trustedSigners));
+
+        VerificationResult[] results = new VerificationResult[allSignatures.length];
+        int position = 0;
+        for (VerificationResult[] chunk : chunks) {
+
+            System.arraycopy(chunk, 0, results, position, chunk.length);
+            position += chunk.length;
+        }
+
+        return results;
+    }
+
+    private static void checkPairs(List<Path> signatures, List<Path> messages) throws SaltpackException {
+
+        if (signatures == null) {
+
+            throw new SaltpackException("null signatures provided");
+        }
+        if (messages == null) {
+
+            throw new SaltpackException("null messages provided");
+        }
+        if (signatures.size() != messages.size()) {
+
+            throw new SaltpackException("signatures and messages count mismatch");
+        }
+    }
+
+    private static VerificationResult[] verifyChunk(Path[] signatures, Path[] messages, byte[][] trustedSigners) {
+
+        VerificationResult[] results = new VerificationResult[signatures.length];
+        for (int i = 0; i < results.length; i++) {
+
+            try {
+
+                byte[] signer = verifyDetached(signatures[i], messages[i]);
+                results[i] = new VerificationResult(signer, trusted(signer, trustedSigners) ? null : "untrusted signer");
+
+            } catch (SaltpackException ex) {
+
+                results[i] = new VerificationResult(null, ex.getMessage());
+            }
+        }
+
+        return results;
+    }
+
+    private static boolean trusted(byte[] signer, byte[][] trustedSigners) {
+
+        if (trustedSigners == null) {
+
+            return true;
+        }
+        for (byte[] trustedSigner : trustedSigners) {
+
+            if (Arrays.equals(signer, trustedSigner)) {
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String path(Path path) throws SaltpackException {
+
+        if (path == null) {
+
+            throw new SaltpackException("null path provided");
+        }
+
+        return path.toAbsolutePath().toString();
+    }
+
+    // the input is memory-mapped: truncating it as the output would crash the JVM
+    private static String output(Path in, Path out) throws SaltpackException {
+
+        String path = path(out);
+        try {
+
+            if (in != null && Files.exists(in) && Files.exists(out) && Files.isSameFile(in, out)) {
+
+                throw new SaltpackException("input and output are the same file");
+            }
+
+        } catch (IOException ex) {
+
+            throw new SaltpackException(ex.getMessage());
+        }
+
+        return path;
+    }
+
+    private static native long encrypt(String in, String out, Object senderSecretkey, byte[][] recipients) throws SaltpackException;
+
+    private static native long decrypt(String in, String out, Object recipientSecretkey) throws SaltpackException;
+
+    private static native long sign(String in, String out, Object senderSecretkey, boolean detachedSignature) throws SaltpackException;
+
+    private static native byte[] verify(String in, String out) throws SaltpackException;
+
+    private static native byte[] verifyDetached(String signature, String message) throws SaltpackException;
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+/**
+ * Fields of the header of a message, read without processing its payload.
+ * <p>
+ * See {@link com.gherynos.libsaltpack.MessageReader#peekHeader(InputParameters)}
+ * and {@link com.gherynos.libsaltpack.Keyring#peekHeader(InputParameters)}.
+ * </p>
+ */
+public final class SaltpackHeader {
+
+    /**
+     * Encrypted message.
+     */
+    public static final int MODE_ENCRYPTION = 0;
+
+    /**
+     * Message with its signature attached.
+     */
+    public static final int MODE_ATTACHED_SIGNATURE = 1;
+
+    /**
+     * Detached signature.
+     */
+    public static final int MODE_DETACHED_SIGNATURE = 2;
+
+    /**
+     * Signcrypted message.
+     */
+    public static final int MODE_SIGNCRYPTION = 3;
+
+    private final int mode;
+
+    private final int majorVersion;
+
+    private final int minorVersion;
+
+    private final byte[][] recipients;
+
+    private final byte[] sender;
+
+    private final boolean recipient;
+
+    SaltpackHeader(int mode, int majorVersion, int minorVersion, byte[][] recipients, byte[] sender, boolean recipient) {
+
+        this.mode = mode;
+        this.majorVersion = majorVersion;
+        this.minorVersion = minorVersion;
+        this.recipients = recipients;
+        this.sender = sender;
+        this.recipient = recipient;
+    }
+
+    /**
+     * Returns the mode of the message.
+     *
+     * @return one of the {@code MODE_*} constants.
+     */
+    public int getMode() {
+
+        return mode;
+    }
+
+    /**
+     * Returns the major version of the format.
+     *
+     * @return the major version.
+     */
+    public int getMajorVersion() {
+
+        return majorVersion;
+    }
+
+    /**
+     * Returns the minor version of the format.
+     *
+     * @return the minor version.
+     */
+    public int getMinorVersion() {
+
+        return minorVersion;
+    }
+
+    /**
+     * Returns the identifiers of the recipients, for encrypted and signcrypted messages.
+     * <p>
+     * The identifiers are the public keys of visible recipients (encryption) or the key identifiers (signcryption);
+     * the entries of anonymous recipients are null.
+     * </p>
+     *
+     * @return the identifiers, empty for signatures.
+     */
+    public byte[][] getRecipients() {
+
+        return recipients;  // NOPMD
+    }
+
+    /**
+     * Returns the public key of the sender.
+     * <p>
+     * Always available for signatures; for encrypted and signcrypted messages only when the header has been opened
+     * by a key of a {@link com.gherynos.libsaltpack.Keyring}.
+     * </p>
+     *
+     * @return the sender's public key, or null.
+     */
+    public byte[] getSender() {
+
+        return sender;  // NOPMD
+    }
+
+    /**
+     * Checks whether the header has been opened by a key of the {@link com.gherynos.libsaltpack.Keyring}.
+     *
+     * @return true when the message can be decrypted with the keyring, false otherwise.
+     */
+    public boolean isRecipient() {
+
+        return recipient;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * InputStream returning the decrypted/verified data of a message read by a {@link com.gherynos.libsaltpack.MessageReader}.
+ * <p>
+ * The stream holds one block of data at a time and invokes the native code once per block;
+ * reads larger than a block are served directly into the caller's array.
+ * </p>
+ */
+public class SaltpackInputStream extends InputStream {
+
+    private final MessageReader reader;
+
+    private final int blockSize;
+
+    private byte[] block;
+
+    private int pos;
+
+    private int count;
+
+    private boolean eof;
+
+    private boolean closed;
+
+    /**
+     * Creates a new SaltpackInputStream holding blocks of {@link SaltpackOutputStream#MAX_BLOCK_SIZE} bytes.
+     *
+     * @param reader the MessageReader used to process the message; it is destroyed when the stream is closed.
+     */
+    public SaltpackInputStream(MessageReader reader) {
+
+        this(reader, SaltpackOutputStream.MAX_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates a new SaltpackInputStream.
+     *
+     * @param reader    the MessageReader used to process the message; it is destroyed when the stream is closed.
+     * @param blockSize the size of the internal buffer, between 1 and {@link SaltpackOutputStream#MAX_BLOCK_SIZE}.
+     */
+    public SaltpackInputStream(MessageReader reader, int blockSize) {
+
+        if (reader == null) {
+
+            throw new IllegalArgumentException("null reader provided");
+        }
+        if (blockSize <= 0 || blockSize > SaltpackOutputStream.MAX_BLOCK_SIZE) {
+
+            throw new IllegalArgumentException("invalid block size");
+        }
+
+        this.reader = reader;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        if (!fill()) {
+
+            return -1;
+        }
+
+        return block[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        Objects.checkFromIndexSize(off, len, b.length);
+        ensureOpen();
+
+        if (len == 0) {
+
+            return 0;
+        }
+
+        if (pos == count && len >= blockSize) {
+
+            return readNative(b, off, len);
+        }
+
+        if (!fill()) {
+
+            return -1;
+        }
+
+        int chunk = Math.min(len, count - pos);
+        System.arraycopy(block, pos, b, off, chunk);
+        pos += chunk;
+
+        return chunk;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+
+        ensureOpen();
+
+        long skipped = 0;
+        while (skipped < n && fill()) {
+
+            int chunk = (int) Math.min(n - skipped, count - pos);
+            pos += chunk;
+            skipped += chunk;
+        }
+
+        return skipped;
+    }
+
+    /**
+     * Returns the number of decrypted/verified bytes already available without invoking the native code.
+     *
+     * @return the number of bytes left in the current block.
+     * @throws IOException if the stream has been closed.
+     */
+    @Override
+    public int available() throws IOException {
+
+        ensureOpen();
+
+        return count - pos;
+    }
+
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+
+        Objects.requireNonNull(out, "out");
+
+        long transferred = 0;
+        while (fill()) {
+
+            out.write(block, pos, count - pos);
+            transferred += count - pos;
+            pos = count;
+        }
+
+        return transferred;
+    }
+
+    /**
+     * Destroys the {@link com.gherynos.libsaltpack.MessageReader}.
+     */
+    @Override
+    public void close() {
+
+        if (closed) {
+
+            return;
+        }
+        closed = true;
+
+        if (block != null) {
+
+            Arrays.fill(block, (byte) 0);
+        }
+        pos = 0;
+        count = 0;
+        reader.destroy();
+    }
+
+    private boolean fill() throws IOException {
+
+        ensureOpen();
+
+        if (pos < count) {
+
+            return true;
+        }
+
+        if (block == null) {
+
+            block = new byte[blockSize];
+        }
+
+        pos = 0;
+        count = 0;
+        int read = readNative(block, 0, blockSize);
+        if (read <= 0) {
+
+            return false;
+        }
+        count = read;
+
+        return true;
+    }
+
+    private int readNative(byte[] b, int off, int len) throws IOException {
+
+        if (eof) {
+
+            return -1;
+        }
+
+        try {
+
+            int read = reader.read(b, off, len);
+            if (read == -1) {
+
+                eof = true;
+            }
+
+            return read;
+
+        } catch (SaltpackException ex) {
+
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+
+        if (closed) {
+
+            throw new IOException("stream closed");
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * OutputStream that encrypts, signs or signcrypts the data written using a {@link com.gherynos.libsaltpack.MessageWriter}.
+ * <p>
+ * Writes are coalesced into full payload blocks, so the native code is invoked once per block
+ * regardless of the size of the single writes.
+ * </p>
+ * <p>
+ * {@link #flush()} does not emit partial blocks: the last block is emitted, flagged as final, by {@link #close()}.
+ * </p>
+ */
+public class SaltpackOutputStream extends OutputStream {
+
+    /**
+     * Maximum size of a payload block.
+     */
+    public static final int MAX_BLOCK_SIZE = 1024 * 1024;
+
+    private final MessageWriter writer;
+
+    private final byte[] block;
+
+    private int count;
+
+    private boolean closed;
+
+    /**
+     * Creates a new SaltpackOutputStream producing blocks of {@link #MAX_BLOCK_SIZE} bytes.
+     *
+     * @param writer the MessageWriter used to generate the message; it is destroyed when the stream is closed.
+     */
+    public SaltpackOutputStream(MessageWriter writer) {
+
+        this(writer, MAX_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates a new SaltpackOutputStream.
+     *
+     * @param writer    the MessageWriter used to generate the message; it is destroyed when the stream is closed.
+     * @param blockSize the size of the payload blocks, between 1 and {@link #MAX_BLOCK_SIZE}.
+     */
+    public SaltpackOutputStream(MessageWriter writer, int blockSize) {
+
+        if (writer == null) {
+
+            throw new IllegalArgumentException("null writer provided");
+        }
+        if (blockSize <= 0 || blockSize > MAX_BLOCK_SIZE) {
+
+            throw new IllegalArgumentException("invalid block size");
+        }
+
+        this.writer = writer;
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+
+        ensureOpen();
+
+        if (count == block.length) {
+
+            emit(block, 0, count, false);
+            count = 0;
+        }
+
+        block[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+
+        Objects.checkFromIndexSize(off, len, b.length);
+        ensureOpen();
+
+        int remaining = len;
+        int offset = off;
+        while (remaining > 0) {
+
+            if (count == block.length) {
+
+                emit(block, 0, count, false);
+                count = 0;
+            }
+
+            // full blocks not followed by the end of the data are sent straight from the caller's array
+            if (count == 0 && remaining > block.length) {
+
+                emit(b, offset, block.length, false);
+                offset += block.length;
+                remaining -= block.length;
+                continue;
+            }
+
+            int chunk = Math.min(remaining, block.length - count);
+            System.arraycopy(b, offset, block, count, chunk);
+            count += chunk;
+            offset += chunk;
+            remaining -= chunk;
+        }
+    }
+
+    /**
+     * Emits the buffered data as the final block of the message and destroys the {@link com.gherynos.libsaltpack.MessageWriter}.
+     *
+     * @throws IOException if the final block cannot be generated.
+     */
+    @Override
+    public void close() throws IOException {
+
+        if (closed) {
+
+            return;
+        }
+        closed = true;
+
+        try {
+
+            emit(block, 0, count, true);
+
+        } finally {
+
+            Arrays.fill(block, (byte) 0);
+            count = 0;
+            writer.destroy();
+        }
+    }
+
+    private void emit(byte[] data, int off, int len, boolean isFinal) throws IOException {
+
+        try {
+
+            writer.addBlock(data, off, len, isFinal);
+
+        } catch (SaltpackException ex) {
+
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+
+        if (closed) {
+
+            throw new IOException("stream closed");
+        }
+    }
+}
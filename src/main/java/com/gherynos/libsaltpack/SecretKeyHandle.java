@@ -0,0 +1,210 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Private key stored in native memory allocated with `sodium_malloc` (guarded and locked pages).
+ * <p>
+ * Every class taking a private key as an array accepts a handle too, reading the key straight from the native memory,
+ * so it is never copied back on the Java heap.
+ * A handle can be shared by any number of readers and writers, also concurrently: {@link #close()} waits for the
+ * operations reading the key to finish, and the ones started afterwards fail with a {@link SaltpackException}.
+ * </p>
+ * <p>
+ * The memory is securely released by {@link #close()}, or when the handle is garbage collected.
+ * </p>
+ */
+public final class SecretKeyHandle implements AutoCloseable {
+
+    static {
+
+        Loader.loadLibrary();
+    }
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final State state;
+
+    private final Cleaner.Cleanable cleanable;
+
+    /**
+     * Creates a new SecretKeyHandle instance copying the given private key.
+     * <p>
+     * The array can be zeroed by the caller afterwards.
+     * </p>
+     *
+     * @param secretkey the private key, either for encryption or for signing.
+     * @throws SaltpackException if the key is not valid.
+     */
+    public SecretKeyHandle(byte[] secretkey) throws SaltpackException {
+
+        this(constructor(secretkey));
+    }
+
+    private SecretKeyHandle(ByteBuffer ptr) {
+
+        state = new State(ptr);
+        cleanable = CLEANER.register(this, state);
+    }
+
+    static SecretKeyHandle generate(byte[] publickey, boolean signing) throws SaltpackException {
+
+        return new SecretKeyHandle(generateKeypair(publickey, signing));
+    }
+
+    /**
+     * Derives the public key.
+     *
+     * @return the public key.
+     * @throws SaltpackException if the handle has been closed.
+     */
+    public byte[] derivePublickey() throws SaltpackException {
+
+        ByteBuffer keyPtr = acquire(this);
+        try {
+
+            return derivePublickey(keyPtr);
+
+        } finally {
+
+            release();
+        }
+    }
+
+    /**
+     * Securely deletes the key.
+     * <p>
+     * This method has to be called when the instance is no longer required.
+     * </p>
+     */
+    @Override
+    public void close() {
+
+        cleanable.clean();
+    }
+
+    /*
+     * Pointer to the native key, which can't be released until release() is called on the handle.
+     * release() has to be called even when the native call using the pointer throws an exception.
+     */
+    static ByteBuffer acquire(SecretKeyHandle handle) throws SaltpackException {
+
+        check(handle).state.lock.readLock().lock();
+        ByteBuffer ptr = handle.state.ptr;
+        if (ptr == null) {
+
+            handle.state.lock.readLock().unlock();
+            throw new SaltpackException("secret key closed");
+        }
+
+        return ptr;
+    }
+
+    static SecretKeyHandle check(SecretKeyHandle handle) throws SaltpackException {
+
+        if (handle == null) {
+
+            throw new SaltpackException("null secret key provided");
+        }
+
+        return handle;
+    }
+
+    void release() {
+
+        state.lock.readLock().unlock();
+    }
+
+    /*
+     * Applies the function to the pointer of the handle, which can't be closed until the function returns.
+     */
+    static <T> T withKey(SecretKeyHandle handle, KeyFunction<T> function) throws SaltpackException {
+
+        ByteBuffer keyPtr = acquire(handle);
+        try {
+
+            return function.apply(keyPtr);
+
+        } finally {
+
+            handle.release();
+        }
+    }
+
+    /*
+     * As above for handles, any other key (an array, or null for anonymous senders) is passed as it is.
+     */
+    static <T> T withKey(Object secretkey, KeyFunction<T> function) throws SaltpackException {
+
+        if (secretkey instanceof SecretKeyHandle) {
+
+            return withKey((SecretKeyHandle) secretkey, function);
+        }
+
+        return function.apply(secretkey);
+    }
+
+    // the key is either a byte array or the pointer of a handle, as accepted by the natives
+    interface KeyFunction<T> {
+
+        T apply(Object secretkey) throws SaltpackException;
+    }
+
+    // does not reference the handle, so that it can become phantom reachable
+    private static final class State implements Runnable {
+
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        private ByteBuffer ptr;  // NOPMD
+
+        State(ByteBuffer ptr) {
+
+            this.ptr = ptr;
+        }
+
+        @Override
+        public void run() {
+
+            lock.writeLock().lock();
+            try {
+
+                if (ptr != null) {
+
+                    destructor(ptr);
+                    ptr = null;  // NOPMD
+                }
+
+            } finally {
+
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static native ByteBuffer constructor(byte[] secretkey) throws SaltpackException;
+
+    private static native ByteBuffer generateKeypair(byte[] publickey, boolean signing) throws SaltpackException;
+
+    private static native byte[] derivePublickey(ByteBuffer ptr) throws SaltpackException;
+
+    private static native void destructor(ByteBuffer ptr);
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.gherynos.libsaltpack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Reader of stored encrypted messages, decrypting any block or plaintext range without reading the whole message.
+ * <p>
+ * The header is decoded once by the constructor; every payload packet is sealed with its own nonce and authenticated
+ * independently, so a block is decrypted by reading and checking its packet only.
+ * The position of the packets is indexed lazily, skipping over their content: reaching a block
+ * reads a few bytes for each packet before it, the first time only.
+ * </p>
+ * <p>
+ * Binary version 2 encrypted messages only (no armoring, no signcryption).
+ * The final packet is checked as soon as the index reaches it: a truncated message fails when the missing
+ * blocks are requested, or by {@link #getBlockCount()} and {@link #size()}, which also authenticate the final packet.
+ * Instances are not thread safe.
+ * </p>
+ */
+public class SeekableMessageReader {  // NOPMD
+
+    private static final int INITIAL_INDEX_SIZE = 16;
+
+    private static final int SECRETBOX_MAC_SIZE = 16;
+
+    private final SeekableByteChannel channel;
+
+    private final boolean closeChannel;
+
+    // packet k spans [packetOffsets[k], packetOffsets[k + 1]) and decrypts to [plaintextOffsets[k], plaintextOffsets[k + 1])
+    private long[] packetOffsets = new long[INITIAL_INDEX_SIZE];
+
+    private long[] plaintextOffsets = new long[INITIAL_INDEX_SIZE];
+
+    private int indexed;
+
+    private boolean finalIndexed;
+
+    private boolean finalVerified;
+
+    private int cachedIndex = -1;
+
+    private byte[] cachedBlock;
+
+    private ByteBuffer ptr;  // NOPMD
+
+    private int maxPacketSize;
+
+    /**
+     * Creates a new SeekableMessageReader instance to decrypt a message.
+     *
+     * @param channel            the channel containing the encrypted message, starting at position zero.
+     * @param recipientSecretkey the private key of the recipient.
+     * @throws SaltpackException if the header is not valid or the message is not addressed to the recipient.
+     * @throws IOException       if the channel throws an exception.
+     */
+    public SeekableMessageReader(SeekableByteChannel channel, byte[] recipientSecretkey) throws SaltpackException, IOException {
+
+        this(channel, false, (Object) recipientSecretkey);
+    }
+
+    /**
+     * Creates a new SeekableMessageReader instance to decrypt a message.
+     *
+     * @param channel            the channel containing the encrypted message, starting at position zero.
+     * @param recipientSecretkey the private key of the recipient.
+     * @throws SaltpackException if the header is not valid or the message is not addressed to the recipient.
+     * @throws IOException       if the channel throws an exception.
+     */
+    public SeekableMessageReader(SeekableByteChannel channel, SecretKeyHandle recipientSecretkey) throws SaltpackException, IOException {
+
+        this(channel, false, (Object) SecretKeyHandle.check(recipientSecretkey));
+    }
+
+    /**
+     * Creates a new SeekableMessageReader instance to decrypt a message stored in a file.
+     * <p>
+     * The file is kept open until {@link #destroy()} is called.
+     * </p>
+     *
+     * @param path               the file containing the encrypted message.
+     * @param recipientSecretkey the private key of the recipient.
+     * @throws SaltpackException if the header is not valid or the message is not addressed to the recipient.
+     * @throws IOException       if the file can't be read.
+     */
+    public SeekableMessageReader(Path path, byte[] recipientSecretkey) throws SaltpackException, IOException {
+
+        this(open(path), true, recipientSecretkey);
+    }
+
+    /**
+     * Creates a new SeekableMessageReader instance to decrypt a message stored in a file.
+     * <p>
+     * The file is kept open until {@link #destroy()} is called.
+     * </p>
+     *
+     * @param path               the file containing the encrypted message.
+     * @param recipientSecretkey the private key of the recipient.
+     * @throws SaltpackException if the header is not valid or the message is not addressed to the recipient.
+     * @throws IOException       if the file can't be read.
+     */
+    public SeekableMessageReader(Path path, SecretKeyHandle recipientSecretkey) throws SaltpackException, IOException {
+
+        this((Object) SecretKeyHandle.check(recipientSecretkey), path);
+    }
+
+    // the key is checked before the file is opened
+    private SeekableMessageReader(Object recipientSecretkey, Path path) throws SaltpackException, IOException {
+
+        this(open(path), true, recipientSecretkey);
+    }
+
+    private SeekableMessageReader(SeekableByteChannel channel, boolean closeChannel, Object recipientSecretkey) throws SaltpackException, IOException {
+
+        this.channel = channel;
+        this.closeChannel = closeChannel;
+
+        try {
+
+            init(recipientSecretkey);
+
+        } catch (SaltpackException | IOException | RuntimeException ex) {
+
+            if (closeChannel) {
+
+                channel.close();
+            }
+            throw ex;
+        }
+    }
+
+    private void init(Object recipientSecretkey) throws SaltpackException, IOException {
+
+        if (channel == null) {
+
+            throw new SaltpackException("null channel provided");
+        }
+
+        byte[] header = readAt(0, MsgpackFramer.frameAt(channel, 0, MsgpackFramer.MAX_HEADER_SIZE)[0], channel);
+        ptr = SecretKeyHandle.withKey(recipientSecretkey, key -> EncryptedPayloads.openHeader(header, key));
+        maxPacketSize = MsgpackFramer.maxPacketSize(EncryptedPayloads.recipients(ptr));
+        packetOffsets[0] = header.length;
+    }
+
+    /**
+     * Returns the public key of the sender.
+     *
+     * @return the sender's public key, or the ephemeral key for anonymous senders.
+     * @throws SaltpackException if the reader has been destroyed.
+     */
+    public byte[] getSender() throws SaltpackException {
+
+        return EncryptedPayloads.sender(checkPtr());
+    }
+
+    /**
+     * Returns the number of blocks of the message, indexing the whole message if required.
+     * <p>
+     * The final packet is authenticated the first time, as its final flag and its index determine the count.
+     * </p>
+     *
+     * @return the number of blocks.
+     * @throws SaltpackException if the message is not valid or truncated, or the final packet fails authentication.
+     * @throws IOException       if the channel throws an exception.
+     */
+    public int getBlockCount() throws SaltpackException, IOException {
+
+        while (indexNext()) {
+
+            // index all the packets
+        }
+        if (!finalVerified) {
+
+            block(indexed - 1);
+            finalVerified = true;
+        }
+
+        return indexed;
+    }
+
+    /**
+     * Returns the size of the plaintext, indexing the whole message if required.
+     * <p>
+     * The block count is authenticated as by {@link #getBlockCount()}; the size of the other blocks is taken
+     * from their packets, which are authenticated only when the blocks are decrypted.
+     * </p>
+     *
+     * @return the number of bytes of the decrypted message.
+     * @throws SaltpackException if the message is not valid or truncated, or the final packet fails authentication.
+     * @throws IOException       if the channel throws an exception.
+     */
+    public long size() throws SaltpackException, IOException {
+
+        return plaintextOffsets[getBlockCount()];
+    }
+
+    /**
+     * Decrypts a block of the message.
+     *
+     * @param index the index of the block, starting from zero.
+     * @return the decrypted block.
+     * @throws SaltpackException         if the packet is not valid or its authentication fails.
+     * @throws IOException               if the channel throws an exception.
+     * @throws IndexOutOfBoundsException if the message has fewer blocks.
+     */
+    public byte[] getBlock(int index) throws SaltpackException, IOException {
+
+        if (index < 0) {
+
+            throw new IndexOutOfBoundsException("negative block index");
+        }
+        while (index >= indexed && indexNext()) {
+
+            // index the packets up to the requested one
+        }
+        if (index >= indexed) {
+
+            throw new IndexOutOfBoundsException("block index out of range");
+        }
+
+        return block(index).clone();
+    }
+
+    /**
+     * Decrypts a range of the plaintext.
+     * <p>
+     * Only the blocks overlapping the range are decrypted; the last one is kept until a different block
+     * is requested, so sequential reads decrypt each block once.
+     * </p>
+     *
+     * @param position the position of the first byte in the plaintext.
+     * @param dst      the destination array.
+     * @param off      the offset in the destination array.
+     * @param len      the maximum number of bytes to read.
+     * @return the number of bytes read (less than {@code len} at the end of the message only), -1 if the position is
+     * beyond the end of the message.
+     * @throws SaltpackException if a packet is not valid or its authentication fails.
+     * @throws IOException       if the channel throws an exception.
+     */
+    public int read(long position, byte[] dst, int off, int len) throws SaltpackException, IOException {
+
+        Objects.checkFromIndexSize(off, len, dst.length);
+        if (position < 0) {
+
+            throw new IllegalArgumentException("negative position");
+        }
+
+        while (plaintextOffsets[indexed] <= position && indexNext()) {
+
+            // index the packets up to the requested position
+        }
+        if (plaintextOffsets[indexed] <= position) {
+
+            return len == 0 ? 0 : -1;
+        }
+
+        int total = 0;
+        int index = find(position);
+        while (total < len && (index < indexed || indexNext())) {
+
+            byte[] data = block(index);
+            int start = (int) (position + total - plaintextOffsets[index]);
+            int count = Math.min(len - total, data.length - start);
+            System.arraycopy(data, start, dst, off + total, count);
+            total += count;
+            index++;
+        }
+
+        return total;
+    }
+
+    /**
+     * Desctructor.
+     * <p>
+     * Securely deletes the allocated buffers using `sodium_memzero` and closes the file opened by the constructor.
+     * </p>
+     * <p>
+     * This method has to be called when the instance is no longer required.
+     * </p>
+     *
+     * @throws IOException if the file can't be closed.
+     */
+    public void destroy() throws IOException {
+
+        if (ptr != null) {
+
+            EncryptedPayloads.release(ptr);
+            ptr = null;  // NOPMD
+
+            clearCache();
+            if (closeChannel) {
+
+                channel.close();
+            }
+        }
+    }
+
+    private ByteBuffer checkPtr() throws SaltpackException {
+
+        if (ptr == null) {
+
+            throw new SaltpackException("reader destroyed");
+        }
+
+        return ptr;
+    }
+
+    private byte[] block(int index) throws SaltpackException, IOException {
+
+        if (index != cachedIndex) {
+
+            long offset = packetOffsets[index];
+            byte[] packet = readAt(offset, packetOffsets[index + 1] - offset, channel);
+            byte[] data = EncryptedPayloads.openPacket(checkPtr(), index, packet);
+            if (data.length != plaintextOffsets[index + 1] - plaintextOffsets[index]) {
+
+                throw new SaltpackException("wrong payload packet length");
+            }
+
+            clearCache();
+            cachedBlock = data;
+            cachedIndex = index;
+        }
+
+        return cachedBlock;
+    }
+
+    private void clearCache() {
+
+        if (cachedBlock != null) {
+
+            Arrays.fill(cachedBlock, (byte) 0);
+            cachedBlock = null;  // NOPMD
+        }
+        cachedIndex = -1;
+    }
+
+    // first indexed block ending after the position, skipping the empty ones
+    private int find(long position) {
+
+        int low = 0;
+        int high = indexed - 1;
+        while (low < high) {
+
+            int mid = (low + high) >>> 1;
+            if (plaintextOffsets[mid + 1] > position) {
+
+                high = mid;
+
+            } else {
+
+                low = mid + 1;
+            }
+        }
+
+        return low;
+    }
+
+    /*
+     * Frames the next payload packet: [ final flag, [authenticator, ...], payload secretbox ].
+     * Only the sizes are read here, the content is validated by the native code when the block is decrypted.
+     */
+    private boolean indexNext() throws SaltpackException, IOException {
+
+        if (finalIndexed) {
+
+            return false;
+        }
+
+        long offset = packetOffsets[indexed];
+        byte[] prefix = readAt(offset, 2, channel);
+        if ((prefix[0] & 0xff) != 0x93 || (prefix[1] & 0xfe) != 0xc2) {
+
+            throw new SaltpackException("wrong payload packet");
+        }
+        boolean isFinal = prefix[1] == (byte) 0xc3;
+
+        // the secretbox is the last value of the packet
+        long[] size = MsgpackFramer.frameAt(channel, offset, maxPacketSize);
+        if (size[1] < SECRETBOX_MAC_SIZE) {
+
+            throw new SaltpackException("wrong size for payload secretbox");
+        }
+
+        if (indexed + 2 > packetOffsets.length) {
+
+            packetOffsets = Arrays.copyOf(packetOffsets, packetOffsets.length * 2);
+            plaintextOffsets = Arrays.copyOf(plaintextOffsets, plaintextOffsets.length * 2);
+        }
+        packetOffsets[indexed + 1] = offset + size[0];
+        plaintextOffsets[indexed + 1] = plaintextOffsets[indexed] + size[1] - SECRETBOX_MAC_SIZE;
+        indexed++;
+        finalIndexed = isFinal;
+
+        return true;
+    }
+
+    private static byte[] readAt(long position, long length, SeekableByteChannel channel) throws SaltpackException, IOException {
+
+        if (length > Integer.MAX_VALUE - 8) {
+
+            throw new SaltpackException("packet too large");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        channel.position(position);
+        while (buffer.hasRemaining()) {
+
+            if (channel.read(buffer) < 0) {
+
+                throw new SaltpackException("not enough data found to decode block (message truncated?)");
+            }
+        }
+
+        return buffer.array();
+    }
+
+    private static SeekableByteChannel open(Path path) throws SaltpackException, IOException {
+
+        if (path == null) {
+
+            throw new SaltpackException("null path provided");
+        }
+
+        return Files.newByteChannel(path);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+ * Instances sharing the same configuration, one for each thread: created on the first call of a thread,
+ * then reset for the following ones.
+ */
+abstract class ThreadLocalPool<T, P> {  // NOPMD
+
+    private final ThreadLocal<T> instances = new ThreadLocal<>();
+
+    private final Queue<T> created = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean destroyed;
+
+    abstract T create(P params) throws SaltpackException;
+
+    abstract void reset(T instance, P params) throws SaltpackException;
+
+    abstract void destroy(T instance);
+
+    T get(P params) throws SaltpackException {
+
+        if (destroyed) {
+
+            throw new SaltpackException("pool destroyed");
+        }
+
+        T instance = instances.get();
+        if (instance != null) {
+
+            reset(instance, params);
+            return instance;
+        }
+
+        instance = create(params);
+        instances.set(instance);
+        created.add(instance);
+
+        return instance;
+    }
+
+    /*
+     * The entries of the other threads can't be removed from here: they keep the destroyed instances, holding
+     * no native memory, until the threads terminate or the pool is garbage collected.
+     */
+    void destroy() {
+
+        destroyed = true;
+        instances.remove();
+
+        T instance;
+        while ((instance = created.poll()) != null) {
+
+            destroy(instance);
+        }
+    }
+}
@@ -56,6 +56,47 @@ public class Utils {  // NOPMD
      */
     public static native byte[] derivePublickey(byte[] secretkey) throws SaltpackException;
 
+    /**
+     * Generates an encryption keypair using `libsodium`, keeping the private key in native memory.
+     *
+     * @param publickey the array that will be populated with the public key.
+     * @return the handle of the private key.
+     * @throws SaltpackException
+     */
+    public static SecretKeyHandle generateKeypair(byte[] publickey) throws SaltpackException {
+
+        return SecretKeyHandle.generate(publickey, false);
+    }
+
+    /**
+     * Generates a signing keypair using `libsodium`, keeping the private key in native memory.
+     *
+     * @param publickey the array that will be populated with the public key.
+     * @return the handle of the private key.
+     * @throws SaltpackException
+     */
+    public static SecretKeyHandle generateSignKeypair(byte[] publickey) throws SaltpackException {
+
+        return SecretKeyHandle.generate(publickey, true);
+    }
+
+    /**
+     * Derives the public key from a private key.
+     *
+     * @param secretkey the handle of the private key.
+     * @return the public key.
+     * @throws SaltpackException
+     */
+    public static byte[] derivePublickey(SecretKeyHandle secretkey) throws SaltpackException {
+
+        if (secretkey == null) {
+
+            throw new SaltpackException("null secret key provided");
+        }
+
+        return secretkey.derivePublickey();
+    }
+
     /**
      * Returns the number of required characters to represent in BaseX, for a given {@code alphabet}, {@code size} characters.
      *
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+/**
+ * Outcome of the verification of a signature within a batch.
+ */
+public final class VerificationResult {
+
+    private final byte[] signer;
+
+    private final String error;
+
+    VerificationResult(byte[] signer, String error) {
+
+        this.signer = signer;
+        this.error = error;
+    }
+
+    /**
+     * Returns the outcome of the verification.
+     *
+     * @return true when the signature is valid and made by an accepted signer, false otherwise.
+     */
+    public boolean isValid() {
+
+        return error == null;
+    }
+
+    /**
+     * Returns the public key of the signer.
+     *
+     * @return the signer's public key, or null when the signature could not be verified.
+     */
+    public byte[] getSigner() {
+
+        return signer;  // NOPMD
+    }
+
+    /**
+     * Returns the reason of the failure.
+     *
+     * @return the error message, or null when the signature is valid.
+     */
+    public String getError() {
+
+        return error;
+    }
+}
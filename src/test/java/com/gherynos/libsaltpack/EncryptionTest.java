@@ -21,6 +21,10 @@ import org.junit.function.ThrowingRunnable;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.Arrays;
 import java.util.Random;
 
 import static org.junit.Assert.*;
@@ -708,4 +712,452 @@ public class EncryptionTest {
             }
         });
     }
+
+    @Test
+    public void bufferSize() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[] buf = new byte[300 * 1024];
+        new Random().nextBytes(buf);
+
+        for (boolean armored : new boolean[]{false, true}) {
+
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+
+            OutputParameters op = new OutputParameters(bout);
+            op.setArmored(armored);
+
+            MessageWriter mw = new MessageWriter(op, secretkey, new byte[][]{publickey});
+
+            mw.addBlock(buf, 0, 1000, false);
+            mw.addBlock(buf, 1000, buf.length - 1000, true);
+
+            mw.destroy();
+
+            byte[] raw = bout.toByteArray();
+
+            for (int size : new int[]{1, 7, 4096, 1024 * 1024}) {
+
+                InputParameters ip = new InputParameters(new ByteArrayInputStream(raw));
+                ip.setArmored(armored);
+                ip.setBufferSize(size);
+
+                MessageReader mr = new MessageReader(ip, secretkey);
+
+                ByteArrayOutputStream dec = new ByteArrayOutputStream();
+                while (mr.hasMoreBlocks()) {
+
+                    dec.write(mr.getBlock());
+                }
+
+                assertArrayEquals(dec.toByteArray(), buf);
+
+                mr.destroy();
+            }
+        }
+
+        final InputParameters ip = new InputParameters(new ByteArrayInputStream(new byte[10]));
+        ip.setBufferSize(0);
+
+        Exception exception = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                new MessageReader(ip, secretkey);
+            }
+        });
+        assertTrue(exception.getMessage().contains("invalid buffer size"));
+    }
+
+    @Test
+    public void outputBufferSize() throws Exception {
+
+        final byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        final byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[] buf = new byte[200 * 1024];
+        new Random().nextBytes(buf);
+
+        for (boolean armored : new boolean[]{false, true}) {
+
+            for (int size : new int[]{1, 13, 4096, 1024 * 1024}) {
+
+                ByteArrayOutputStream bout = new ByteArrayOutputStream();
+
+                OutputParameters op = new OutputParameters(bout);
+                op.setArmored(armored);
+                op.setBufferSize(size);
+
+                MessageWriter mw = new MessageWriter(op, secretkey, new byte[][]{publickey});
+
+                mw.addBlock(buf, 0, 100, false);
+                mw.addBlock(buf, 100, buf.length - 100, true);
+
+                mw.destroy();
+
+                InputParameters ip = new InputParameters(new ByteArrayInputStream(bout.toByteArray()));
+                ip.setArmored(armored);
+
+                MessageReader mr = new MessageReader(ip, secretkey);
+
+                ByteArrayOutputStream dec = new ByteArrayOutputStream();
+                while (mr.hasMoreBlocks()) {
+
+                    dec.write(mr.getBlock());
+                }
+
+                assertArrayEquals(dec.toByteArray(), buf);
+
+                mr.destroy();
+            }
+        }
+
+        final OutputParameters op = new OutputParameters(new ByteArrayOutputStream());
+        op.setBufferSize(-1);
+
+        Exception exception = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                new MessageWriter(op, secretkey, new byte[][]{publickey});
+            }
+        });
+        assertTrue(exception.getMessage().contains("invalid buffer size"));
+    }
+
+    private static byte[] decrypt(byte[] raw, byte[] secretkey) throws Exception {
+
+        InputParameters ip = new InputParameters(new ByteArrayInputStream(raw));
+        MessageReader mr = new MessageReader(ip, secretkey);
+
+        ByteArrayOutputStream dec = new ByteArrayOutputStream();
+        while (mr.hasMoreBlocks()) {
+
+            dec.write(mr.getBlock());
+        }
+
+        mr.destroy();
+
+        return dec.toByteArray();
+    }
+
+    @Test
+    public void byteBuffer() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[] buf = new byte[64 * 1024];
+        new Random().nextBytes(buf);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(buf.length);
+        direct.put(buf);
+        direct.position(10);
+        direct.limit(1010);
+
+        ByteBuffer heap = ByteBuffer.wrap(buf, 5, buf.length - 5).slice();
+        heap.position(1000);
+        heap.limit(3000);
+
+        ByteBuffer readOnly = ByteBuffer.wrap(buf).asReadOnlyBuffer();
+        readOnly.position(3005);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        MessageWriter mw = new MessageWriter(new OutputParameters(bout), secretkey, new byte[][]{publickey});
+
+        mw.addBuffer(direct, false);
+        assertEquals(direct.position(), 1010);
+        assertEquals(direct.limit(), 1010);
+
+        mw.addBuffer(heap, false);
+        assertEquals(heap.position(), 3000);
+        assertEquals(heap.limit(), 3000);
+
+        mw.addBuffer(readOnly, true);
+        assertEquals(readOnly.position(), buf.length);
+
+        mw.destroy();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(buf, 10, 1000);
+        expected.write(buf, 1005, 2000);
+        expected.write(buf, 3005, buf.length - 3005);
+
+        assertArrayEquals(decrypt(bout.toByteArray(), secretkey), expected.toByteArray());
+
+        // empty final block
+        bout = new ByteArrayOutputStream();
+        mw = new MessageWriter(new OutputParameters(bout), secretkey, new byte[][]{publickey});
+
+        mw.addBuffer(ByteBuffer.wrap(buf, 0, 16), false);
+        mw.addBuffer(ByteBuffer.allocateDirect(0), true);
+
+        mw.destroy();
+
+        assertArrayEquals(decrypt(bout.toByteArray(), secretkey), Arrays.copyOf(buf, 16));
+
+        final MessageWriter nmw = new MessageWriter(new OutputParameters(new ByteArrayOutputStream()), secretkey, new byte[][]{publickey});
+        Exception exception = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                nmw.addBuffer(null, true);
+            }
+        });
+        assertTrue(exception.getMessage().contains("null byte buffer provided"));
+        nmw.destroy();
+    }
+
+    @Test
+    public void read() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[] buf = new byte[100 * 1024];
+        new Random().nextBytes(buf);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        MessageWriter mw = new MessageWriter(new OutputParameters(bout), secretkey, new byte[][]{publickey});
+        mw.addBlock(buf, 0, 5000, false);
+        mw.addBlock(buf, 5000, buf.length - 5000, true);
+        mw.destroy();
+
+        // byte array
+        MessageReader mr = new MessageReader(new InputParameters(new ByteArrayInputStream(bout.toByteArray())), secretkey);
+
+        ByteArrayOutputStream dec = new ByteArrayOutputStream();
+        byte[] chunk = new byte[3000];
+        int read;
+        while ((read = mr.read(chunk, 10, 1500)) != -1) {
+
+            assertTrue(read > 0);
+            dec.write(chunk, 10, read);
+        }
+        assertFalse(mr.hasMoreBlocks());
+        assertEquals(mr.read(chunk, 0, chunk.length), -1);
+        assertArrayEquals(dec.toByteArray(), buf);
+
+        mr.destroy();
+
+        // direct buffer mixed with getBlock
+        mr = new MessageReader(new InputParameters(new ByteArrayInputStream(bout.toByteArray())), secretkey);
+
+        dec = new ByteArrayOutputStream();
+        ByteBuffer direct = ByteBuffer.allocateDirect(4096);
+        direct.position(96);
+        assertEquals(mr.read(direct), 4000);
+        assertEquals(direct.position(), 4096);
+
+        byte[] first = new byte[4000];
+        direct.position(96);
+        direct.get(first);
+        dec.write(first);
+
+        assertTrue(mr.hasMoreBlocks());
+        byte[] remainder = mr.getBlock();
+        assertEquals(remainder.length, 1000);
+        dec.write(remainder);
+
+        while (mr.hasMoreBlocks()) {
+
+            dec.write(mr.getBlock());
+        }
+        assertEquals(mr.read(ByteBuffer.allocate(10)), -1);
+        assertArrayEquals(dec.toByteArray(), buf);
+
+        mr.destroy();
+    }
+
+    @Test
+    public void transfer() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        for (int size : new int[]{0, 1000, 2 * 1024 * 1024, 2 * 1024 * 1024 + 17}) {
+
+            byte[] buf = new byte[size];
+            new Random().nextBytes(buf);
+
+            for (boolean armored : new boolean[]{false, true}) {
+
+                ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                OutputParameters op = new OutputParameters(bout);
+                op.setArmored(armored);
+
+                MessageWriter mw = new MessageWriter(op, secretkey, new byte[][]{publickey});
+                assertEquals(mw.transferFrom(new ByteArrayInputStream(buf)), size);
+                mw.destroy();
+
+                InputParameters ip = new InputParameters(new ByteArrayInputStream(bout.toByteArray()));
+                ip.setArmored(armored);
+
+                MessageReader mr = new MessageReader(ip, secretkey);
+
+                ByteArrayOutputStream dec = new ByteArrayOutputStream();
+                if (size > 10) {
+
+                    byte[] first = new byte[10];
+                    assertEquals(mr.read(first, 0, 10), 10);
+                    dec.write(first);
+                }
+                assertEquals(mr.transferTo(dec), size > 10 ? size - 10 : size);
+                assertFalse(mr.hasMoreBlocks());
+
+                mr.destroy();
+
+                assertArrayEquals(dec.toByteArray(), buf);
+            }
+        }
+    }
+
+    @Test
+    public void channels() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[] buf = new byte[300 * 1024];
+        new Random().nextBytes(buf);
+
+        for (boolean armored : new boolean[]{false, true}) {
+
+            for (int size : new int[]{7, 4096, 1024 * 1024}) {
+
+                ByteArrayOutputStream bout = new ByteArrayOutputStream();
+
+                OutputParameters op = new OutputParameters(Channels.newChannel(bout));
+                op.setArmored(armored);
+                op.setBufferSize(size);
+
+                MessageWriter mw = new MessageWriter(op, secretkey, new byte[][]{publickey});
+
+                mw.addBlock(buf, 0, 1000, false);
+                mw.addBlock(buf, 1000, buf.length - 1000, true);
+
+                mw.destroy();
+
+                byte[] raw = bout.toByteArray();
+
+                InputParameters ip = new InputParameters(Channels.newChannel(new ByteArrayInputStream(raw)));
+                ip.setArmored(armored);
+                ip.setBufferSize(size);
+
+                MessageReader mr = new MessageReader(ip, secretkey);
+
+                ByteArrayOutputStream dec = new ByteArrayOutputStream();
+                while (mr.hasMoreBlocks()) {
+
+                    dec.write(mr.getBlock());
+                }
+
+                assertArrayEquals(dec.toByteArray(), buf);
+
+                mr.destroy();
+
+                // same output as the stream based writer
+                InputParameters sip = new InputParameters(new ByteArrayInputStream(raw));
+                sip.setArmored(armored);
+                mr = new MessageReader(sip, secretkey);
+
+                dec = new ByteArrayOutputStream();
+                while (mr.hasMoreBlocks()) {
+
+                    dec.write(mr.getBlock());
+                }
+
+                assertArrayEquals(dec.toByteArray(), buf);
+
+                mr.destroy();
+            }
+        }
+    }
+
+    @Test
+    public void nonBlockingChannels() throws Exception {
+
+        final Pipe pipe = Pipe.open();
+        try {
+
+            pipe.source().configureBlocking(false);
+            pipe.sink().configureBlocking(false);
+
+            assertThrows(IllegalArgumentException.class, new ThrowingRunnable() {
+
+                @Override
+                public void run() throws Throwable {
+
+                    new InputParameters(pipe.source());
+                }
+            });
+
+            assertThrows(IllegalArgumentException.class, new ThrowingRunnable() {
+
+                @Override
+                public void run() throws Throwable {
+
+                    new OutputParameters(pipe.sink());
+                }
+            });
+
+        } finally {
+
+            pipe.source().close();
+            pipe.sink().close();
+        }
+    }
+
+    @Test
+    public void manyRecipients() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[][] recipients = new byte[20000][];
+        for (int i = 0; i < recipients.length; i++) {
+
+            recipients[i] = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+            Utils.generateKeypair(recipients[i], new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES]);
+        }
+        recipients[recipients.length - 1] = publickey;
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+
+        OutputParameters op = new OutputParameters(bout);
+        op.setArmored(false);
+
+        MessageWriter mw = new MessageWriter(op, secretkey, recipients, true);
+        mw.addBlock("Sample message.".getBytes("UTF-8"), true);
+        mw.destroy();
+
+        InputParameters ip = new InputParameters(new ByteArrayInputStream(bout.toByteArray()));
+        ip.setArmored(false);
+
+        MessageReader mr = new MessageReader(ip, secretkey);
+
+        StringBuilder sb = new StringBuilder();
+        while (mr.hasMoreBlocks()) {
+
+            sb.append(new String(mr.getBlock(), "UTF-8"));
+        }
+
+        assertEquals(sb.toString(), "Sample message.");
+
+        assertEquals(mr.getRecipients().length, recipients.length);
+
+        mr.destroy();
+    }
 }
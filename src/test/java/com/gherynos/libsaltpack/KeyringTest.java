@@ -0,0 +1,205 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.function.ThrowingRunnable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+public class KeyringTest {
+
+    private static final int KEYS = 100;
+
+    private byte[][] publickeys;
+
+    private byte[][] secretkeys;
+
+    private Keyring keyring;
+
+    @Before
+    public void setUp() throws Exception {
+
+        publickeys = new byte[KEYS][Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        secretkeys = new byte[KEYS][Constants.CRYPTO_BOX_SECRETKEYBYTES];
+
+        keyring = new Keyring();
+        for (int i = 0; i < KEYS; i++) {
+
+            Utils.generateKeypair(publickeys[i], secretkeys[i]);
+            keyring.addSecretkey(secretkeys[i]);
+        }
+    }
+
+    @After
+    public void tearDown() {
+
+        keyring.destroy();
+    }
+
+    private static String read(MessageReader mr) throws Exception {
+
+        StringBuilder sb = new StringBuilder();
+        while (mr.hasMoreBlocks()) {
+
+            sb.append(new String(mr.getBlock(), "UTF-8"));
+        }
+        mr.destroy();
+
+        return sb.toString();
+    }
+
+    @Test
+    public void encryption() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        for (boolean visibleRecipients : new boolean[]{true, false}) {
+
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            OutputParameters op = new OutputParameters(bout);
+            op.setArmored(false);
+
+            MessageWriter mw = new MessageWriter(op, secretkey, new byte[][]{publickey, publickeys[KEYS / 2]}, visibleRecipients);
+            mw.addBlock("Sample".getBytes("UTF-8"), false);
+            mw.addBlock(" message.".getBytes("UTF-8"), true);
+            mw.destroy();
+
+            InputParameters ip = new InputParameters(new ByteArrayInputStream(bout.toByteArray()));
+            ip.setArmored(false);
+
+            MessageReader mr = keyring.newReader(ip);
+            assertArrayEquals(publickey, mr.getSender());
+            assertEquals("Sample message.", read(mr));
+        }
+    }
+
+    @Test
+    public void armored() throws Exception {
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        OutputParameters op = new OutputParameters(bout);
+        op.setArmored(true);
+
+        MessageWriter mw = new MessageWriter(op, new byte[][]{publickeys[KEYS - 1]});
+        mw.addBlock("Armored message.".getBytes("UTF-8"), true);
+        mw.destroy();
+
+        InputParameters ip = new InputParameters(new ByteArrayInputStream(bout.toByteArray()));
+        ip.setArmored(true);
+
+        assertEquals("Armored message.", read(keyring.newReader(ip)));
+    }
+
+    @Test
+    public void signcryption() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        byte[] symmetricKey = Utils.generateRandomBytes(Constants.CRYPTO_SECRETBOX_KEYBYTES);
+        keyring.addSymmetricKey(new byte[]{'i', 'd', '1'}, Utils.generateRandomBytes(Constants.CRYPTO_SECRETBOX_KEYBYTES));
+        keyring.addSymmetricKey(new byte[]{'i', 'd', '2'}, symmetricKey);
+
+        // symmetric key
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        OutputParameters op = new OutputParameters(bout);
+        op.setArmored(false);
+
+        MessageWriter mw = new MessageWriter(op, secretkey, new byte[][]{}, new byte[][][]{{{'i', 'd', '2'}, symmetricKey}});
+        mw.addBlock("Sample message.".getBytes("UTF-8"), true);
+        mw.destroy();
+
+        InputParameters ip = new InputParameters(new ByteArrayInputStream(bout.toByteArray()));
+        ip.setArmored(false);
+
+        MessageReader mr = keyring.newReader(ip);
+        assertArrayEquals(publickey, mr.getSender());
+        assertEquals("Sample message.", read(mr));
+
+        // Curve25519 key
+        bout = new ByteArrayOutputStream();
+        op = new OutputParameters(bout);
+        op.setArmored(false);
+
+        mw = new MessageWriter(op, secretkey, new byte[][]{publickeys[3]}, new byte[][][]{});
+        mw.addBlock("Another message.".getBytes("UTF-8"), true);
+        mw.destroy();
+
+        ip = new InputParameters(new ByteArrayInputStream(bout.toByteArray()));
+        ip.setArmored(false);
+
+        assertEquals("Another message.", read(keyring.newReader(ip)));
+    }
+
+    @Test
+    public void noMatchingKey() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        OutputParameters op = new OutputParameters(bout);
+        op.setArmored(false);
+
+        MessageWriter mw = new MessageWriter(op, secretkey, new byte[][]{publickey}, false);
+        mw.addBlock("Sample message.".getBytes("UTF-8"), true);
+        mw.destroy();
+
+        final InputParameters ip = new InputParameters(new ByteArrayInputStream(bout.toByteArray()));
+        ip.setArmored(false);
+
+        assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                keyring.newReader(ip);
+            }
+        });
+    }
+
+    @Test
+    public void invalidKeys() {
+
+        assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                keyring.addSecretkey(new byte[5]);
+            }
+        });
+        assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                keyring.addSymmetricKey(new byte[]{'i', 'd'}, new byte[5]);
+            }
+        });
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import org.junit.Test;
+import org.junit.function.ThrowingRunnable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class MessagePoolTest {
+
+    private static String readAll(MessageReader mr) throws Exception {
+
+        StringBuilder sb = new StringBuilder();
+        while (mr.hasMoreBlocks()) {
+
+            sb.append(new String(mr.getBlock(), "UTF-8"));
+        }
+
+        return sb.toString();
+    }
+
+    @Test
+    public void resetEncryption() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[][] recipients = {publickey};
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        MessageWriter mw = new MessageWriter(new OutputParameters(bout), secretkey, recipients, false);
+        mw.addBlock("Message 0.".getBytes("UTF-8"), true);
+
+        InputParameters ip = new InputParameters(new ByteArrayInputStream(bout.toByteArray()));
+        MessageReader mr = new MessageReader(ip, secretkey);
+        assertEquals("Message 0.", readAll(mr));
+
+        for (int i = 1; i < 4; i++) {
+
+            // armoring changes between messages, the keys are the ones of the constructor
+            bout = new ByteArrayOutputStream();
+            OutputParameters op = new OutputParameters(bout);
+            op.setArmored(i % 2 == 0);
+            mw.reset(op);
+            mw.addBlock(("Message " + i + ".").getBytes("UTF-8"), true);
+
+            ip = new InputParameters(new ByteArrayInputStream(bout.toByteArray()));
+            ip.setArmored(i % 2 == 0);
+            mr.reset(ip);
+            assertEquals("Message " + i + ".", readAll(mr));
+            assertArrayEquals(publickey, mr.getSender());
+        }
+
+        mw.destroy();
+        mr.destroy();
+    }
+
+    @Test
+    public void resetDiscardsUnreadData() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        OutputParameters op = new OutputParameters(first);
+        op.setArmored(false);
+        MessageWriter mw = new MessageWriter(op, secretkey, false);
+        mw.addBlock("First block.".getBytes("UTF-8"), false);
+        mw.addBlock("Second block.".getBytes("UTF-8"), true);
+
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        op = new OutputParameters(second);
+        op.setArmored(false);
+        mw.reset(op);
+        mw.addBlock("Another message.".getBytes("UTF-8"), true);
+        mw.destroy();
+
+        InputParameters ip = new InputParameters(new ByteArrayInputStream(first.toByteArray()));
+        ip.setArmored(false);
+        MessageReader mr = new MessageReader(ip);
+        byte[] part = new byte[5];
+        assertEquals(5, mr.read(part, 0, part.length));
+        assertEquals("First", new String(part, "UTF-8"));
+
+        ip = new InputParameters(new ByteArrayInputStream(second.toByteArray()));
+        ip.setArmored(false);
+        mr.reset(ip);
+        assertEquals("Another message.", readAll(mr));
+        assertArrayEquals(publickey, mr.getSender());
+        mr.destroy();
+    }
+
+    @Test
+    public void failedReset() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        final MessageWriter mw = new MessageWriter(new OutputParameters(new ByteArrayOutputStream()), new byte[][]{publickey});
+
+        SaltpackException ex = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                mw.reset(null);
+            }
+        });
+        assertEquals("null output parameters provided", ex.getMessage());
+
+        ex = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                mw.addBlock(new byte[]{1}, true);
+            }
+        });
+        assertEquals("writer not reset after a failure", ex.getMessage());
+
+        // a successful reset makes the writer usable again
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        mw.reset(new OutputParameters(bout));
+        mw.addBlock("Message.".getBytes("UTF-8"), true);
+        mw.destroy();
+
+        MessageReader mr = new MessageReader(new InputParameters(new ByteArrayInputStream(bout.toByteArray())), secretkey);
+        assertEquals("Message.", readAll(mr));
+        mr.destroy();
+    }
+
+    @Test
+    public void resetNotSupported() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        MessageWriter mw = new MessageWriter(new OutputParameters(bout), new byte[][]{publickey});
+        mw.addBlock("Message.".getBytes("UTF-8"), true);
+        mw.destroy();
+
+        Keyring keyring = new Keyring();
+        keyring.addSecretkey(secretkey);
+
+        final byte[] raw = bout.toByteArray();
+        final MessageReader mr = keyring.newReader(new InputParameters(new ByteArrayInputStream(raw)));
+        SaltpackException ex = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                mr.reset(new InputParameters(new ByteArrayInputStream(raw)));
+            }
+        });
+        assertEquals("reset not supported by this reader", ex.getMessage());
+        assertEquals("Message.", readAll(mr));
+
+        mr.destroy();
+        keyring.destroy();
+    }
+
+    @Test
+    public void pools() throws Exception {
+
+        final byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        final byte[][] recipients = {publickey};
+
+        final MessageWriterPool writers = new MessageWriterPool(new MessageWriterPool.Factory() {
+
+            @Override
+            public MessageWriter create(OutputParameters op) throws SaltpackException {
+
+                return new MessageWriter(op, secretkey, recipients);
+            }
+        });
+        final MessageReaderPool readers = new MessageReaderPool(new MessageReaderPool.Factory() {
+
+            @Override
+            public MessageReader create(InputParameters in) throws SaltpackException {
+
+                return new MessageReader(in, secretkey);
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+
+            final String message = "Message " + i + ".";
+            results.add(executor.submit(new Callable<String>() {
+
+                @Override
+                public String call() throws Exception {
+
+                    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                    OutputParameters op = new OutputParameters(bout);
+                    op.setArmored(false);
+                    writers.get(op).addBlock(message.getBytes("UTF-8"), true);
+
+                    InputParameters ip = new InputParameters(new ByteArrayInputStream(bout.toByteArray()));
+                    ip.setArmored(false);
+
+                    return readAll(readers.get(ip));
+                }
+            }));
+        }
+
+        for (int i = 0; i < 40; i++) {
+
+            assertEquals("Message " + i + ".", results.get(i).get());
+        }
+        executor.shutdown();
+
+        writers.destroy();
+        readers.destroy();
+
+        SaltpackException ex = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                writers.get(new OutputParameters(new ByteArrayOutputStream()));
+            }
+        });
+        assertEquals("pool destroyed", ex.getMessage());
+    }
+}
@@ -43,7 +43,7 @@ public class NullParametersTest {
             @Override
             public void run() throws Throwable {
 
-                new MessageWriter(op, null, new byte[][]{publickey});
+                new MessageWriter(op, (byte[]) null, new byte[][]{publickey});
             }
         });
         assertTrue(exception.getMessage().contains("null byte array provided"));
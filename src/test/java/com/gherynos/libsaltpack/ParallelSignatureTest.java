@@ -0,0 +1,275 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.function.ThrowingRunnable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class ParallelSignatureTest {
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void signing() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        byte[] data = new byte[5 * BLOCK_SIZE + 11];
+        new Random().nextBytes(data);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ParallelSignatureWriter pw = new ParallelSignatureWriter(bout, secretkey, executor, ParallelSignatureWriter.DEFAULT_MAX_PENDING_BLOCKS);
+        for (int i = 0; i < data.length; i += BLOCK_SIZE) {
+
+            int len = Math.min(BLOCK_SIZE, data.length - i);
+            pw.addBlock(data, i, len, i + len == data.length);
+        }
+        pw.destroy();
+
+        // verified by libsaltpack
+        MessageReader mr = new MessageReader(new InputParameters(new ByteArrayInputStream(bout.toByteArray())));
+        ByteArrayOutputStream ver = new ByteArrayOutputStream();
+        while (mr.hasMoreBlocks()) {
+
+            ver.write(mr.getBlock());
+        }
+        assertArrayEquals(publickey, mr.getSender());
+        mr.destroy();
+        assertArrayEquals(data, ver.toByteArray());
+
+        // verified in parallel
+        ParallelSignatureReader pr = new ParallelSignatureReader(new ByteArrayInputStream(bout.toByteArray()), executor, 2);
+        assertArrayEquals(publickey, pr.getSender());
+        ver.reset();
+        while (pr.hasMoreBlocks()) {
+
+            ver.write(pr.getBlock());
+        }
+        pr.destroy();
+        assertArrayEquals(data, ver.toByteArray());
+    }
+
+    @Test
+    public void verification() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        MessageWriter mw = new MessageWriter(new OutputParameters(bout), secretkey, false);
+        mw.addBlock("A simple".getBytes("UTF-8"), false);
+        mw.addBlock(" message.".getBytes("UTF-8"), true);
+        mw.destroy();
+
+        ParallelSignatureReader pr = new ParallelSignatureReader(new ByteArrayInputStream(bout.toByteArray()), executor, 2);
+        assertArrayEquals(publickey, pr.getSender());
+
+        StringBuilder sb = new StringBuilder();
+        while (pr.hasMoreBlocks()) {
+
+            sb.append(new String(pr.getBlock(), "UTF-8"));
+        }
+        pr.destroy();
+
+        assertEquals("A simple message.", sb.toString());
+    }
+
+    @Test
+    public void tampered() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        byte[] data = new byte[3 * BLOCK_SIZE];
+        new Random().nextBytes(data);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ParallelSignatureWriter pw = new ParallelSignatureWriter(bout, secretkey, executor, 2);
+        pw.addBlock(data, 0, BLOCK_SIZE, false);
+        pw.addBlock(data, BLOCK_SIZE, BLOCK_SIZE, false);
+        pw.addBlock(data, 2 * BLOCK_SIZE, BLOCK_SIZE, true);
+        pw.destroy();
+
+        // last bytes of the final payload
+        byte[] raw = bout.toByteArray();
+        raw[raw.length - 10] ^= 1;
+
+        final ParallelSignatureReader pr = new ParallelSignatureReader(new ByteArrayInputStream(raw), executor, 2);
+
+        ByteArrayOutputStream ver = new ByteArrayOutputStream();
+        ver.write(pr.getBlock());
+        ver.write(pr.getBlock());
+
+        assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                pr.getBlock();
+            }
+        });
+        pr.destroy();
+
+        // only the verified blocks have been returned
+        assertArrayEquals(Arrays.copyOf(data, 2 * BLOCK_SIZE), ver.toByteArray());
+    }
+
+    @Test
+    public void largeBlock() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        byte[] data = new byte[3 * BLOCK_SIZE];
+        new Random().nextBytes(data);
+
+        // a single block is split in packets the reader accepts
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ParallelSignatureWriter pw = new ParallelSignatureWriter(bout, secretkey, executor, 2);
+        pw.addBlock(data, true);
+        pw.destroy();
+
+        ParallelSignatureReader pr = new ParallelSignatureReader(new ByteArrayInputStream(bout.toByteArray()), executor, 2);
+        ByteArrayOutputStream ver = new ByteArrayOutputStream();
+        int blocks = 0;
+        while (pr.hasMoreBlocks()) {
+
+            ver.write(pr.getBlock());
+            blocks++;
+        }
+        pr.destroy();
+        assertEquals(3, blocks);
+        assertArrayEquals(data, ver.toByteArray());
+    }
+
+    @Test
+    public void truncated() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ParallelSignatureWriter pw = new ParallelSignatureWriter(bout, secretkey, executor, 2);
+        pw.addBlock("A simple".getBytes("UTF-8"), false);
+        pw.addBlock(" message.".getBytes("UTF-8"), true);
+        pw.destroy();
+
+        byte[] raw = bout.toByteArray();
+        final ParallelSignatureReader pr = new ParallelSignatureReader(new ByteArrayInputStream(Arrays.copyOf(raw, raw.length - 1)), executor, 2);
+
+        assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                while (pr.hasMoreBlocks()) {
+
+                    pr.getBlock();
+                }
+            }
+        });
+        pr.destroy();
+    }
+
+    @Test
+    public void rejected() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ParallelSignatureWriter pw = new ParallelSignatureWriter(bout, secretkey, executor, 2);
+        pw.addBlock("A simple message.".getBytes("UTF-8"), true);
+        pw.destroy();
+
+        ExecutorService stopped = Executors.newSingleThreadExecutor();
+        stopped.shutdown();
+        final ParallelSignatureReader pr = new ParallelSignatureReader(new ByteArrayInputStream(bout.toByteArray()), stopped, 2);
+
+        Exception exception = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                pr.hasMoreBlocks();
+            }
+        });
+        assertEquals("executor rejected the task", exception.getMessage());
+        pr.destroy();
+    }
+
+    @Test
+    public void oversized() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ParallelSignatureWriter pw = new ParallelSignatureWriter(bout, secretkey, executor, 2);
+        pw.destroy();
+
+        // header followed by a packet declaring a 2 GB payload
+        bout.write(new byte[]{(byte) 0x93, (byte) 0xc3, (byte) 0xc4, 64});
+        bout.write(new byte[64]);
+        bout.write(new byte[]{(byte) 0xc6, 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff});
+        final ParallelSignatureReader pr = new ParallelSignatureReader(new ByteArrayInputStream(bout.toByteArray()), executor, 2);
+
+        Exception exception = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                pr.hasMoreBlocks();
+            }
+        });
+        assertTrue(exception.getMessage().contains("packet too large"));
+        pr.destroy();
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import org.junit.Test;
+import org.junit.function.ThrowingRunnable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class PipelinedMessageReaderTest {
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    private static byte[] encrypt(byte[] secretkey, byte[] publickey, byte[] data) throws Exception {
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        MessageWriter mw = new MessageWriter(new OutputParameters(bout), secretkey, new byte[][]{publickey});
+        for (int i = 0; i < data.length; i += BLOCK_SIZE) {
+
+            int len = Math.min(BLOCK_SIZE, data.length - i);
+            mw.addBlock(data, i, len, i + len == data.length);
+        }
+        mw.destroy();
+
+        return bout.toByteArray();
+    }
+
+    @Test
+    public void decryption() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[] data = new byte[5 * BLOCK_SIZE + 11];
+        new Random().nextBytes(data);
+        byte[] raw = encrypt(secretkey, publickey, data);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+
+            for (int readAhead : new int[]{1, PipelinedMessageReader.DEFAULT_READ_AHEAD_BLOCKS}) {
+
+                PipelinedMessageReader pr = new PipelinedMessageReader(new ByteArrayInputStream(raw), secretkey, executor, readAhead);
+                assertArrayEquals(publickey, pr.getSender());
+
+                ByteArrayOutputStream dec = new ByteArrayOutputStream();
+                while (pr.hasMoreBlocks()) {
+
+                    dec.write(pr.getBlock());
+                }
+                assertFalse(pr.hasMoreBlocks());
+                pr.destroy();
+
+                assertArrayEquals(data, dec.toByteArray());
+            }
+
+            // output of the parallel writer
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            PipelinedMessageWriter pw = new PipelinedMessageWriter(bout, new byte[][]{publickey}, false, executor, 4);
+            pw.addBlock(data, true);
+            pw.destroy();
+
+            PipelinedMessageReader pr = new PipelinedMessageReader(new ByteArrayInputStream(bout.toByteArray()), secretkey, executor, 4);
+            ByteArrayOutputStream dec = new ByteArrayOutputStream();
+            while (pr.hasMoreBlocks()) {
+
+                dec.write(pr.getBlock());
+            }
+            pr.destroy();
+
+            assertArrayEquals(data, dec.toByteArray());
+
+        } finally {
+
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void manyRecipients() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        // the authenticators of 2500 recipients exceed the fixed signature packet limit
+        byte[][] recipients = new byte[2500][];
+        for (int i = 0; i < recipients.length - 1; i++) {
+
+            recipients[i] = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+            Utils.generateKeypair(recipients[i], new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES]);
+        }
+        recipients[recipients.length - 1] = publickey;
+
+        byte[] data = new byte[2 * BLOCK_SIZE];
+        new Random().nextBytes(data);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            PipelinedMessageWriter pw = new PipelinedMessageWriter(bout, recipients, false, executor, 4);
+            pw.addBlock(data, true);
+            pw.destroy();
+
+            PipelinedMessageReader pr = new PipelinedMessageReader(new ByteArrayInputStream(bout.toByteArray()), secretkey, executor, 4);
+            ByteArrayOutputStream dec = new ByteArrayOutputStream();
+            while (pr.hasMoreBlocks()) {
+
+                dec.write(pr.getBlock());
+            }
+            pr.destroy();
+
+            assertArrayEquals(data, dec.toByteArray());
+
+            Path file = Files.createTempFile("saltpack", ".bin");
+            try {
+
+                Files.write(file, bout.toByteArray());
+                SeekableMessageReader sr = new SeekableMessageReader(file, secretkey);
+                assertEquals(data.length, sr.size());
+                sr.destroy();
+
+            } finally {
+
+                Files.delete(file);
+            }
+
+        } finally {
+
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void tampered() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[] data = new byte[4 * BLOCK_SIZE];
+        new Random().nextBytes(data);
+        byte[] raw = encrypt(secretkey, publickey, data);
+
+        // last bytes of the third payload
+        raw[raw.length - BLOCK_SIZE - 200] ^= 1;
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+
+            final PipelinedMessageReader pr = new PipelinedMessageReader(new ByteArrayInputStream(raw), secretkey, executor, 4);
+
+            ByteArrayOutputStream dec = new ByteArrayOutputStream();
+            dec.write(pr.getBlock());
+            dec.write(pr.getBlock());
+
+            Exception exception = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+                @Override
+                public void run() throws Throwable {
+
+                    pr.getBlock();
+                }
+            });
+            assertTrue(exception.getMessage().contains("invalid authenticator"));
+            assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+                @Override
+                public void run() throws Throwable {
+
+                    pr.hasMoreBlocks();
+                }
+            });
+            pr.destroy();
+
+            // only the authenticated blocks have been returned
+            assertArrayEquals(Arrays.copyOf(data, 2 * BLOCK_SIZE), dec.toByteArray());
+
+        } finally {
+
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void truncated() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[] data = new byte[2 * BLOCK_SIZE];
+        new Random().nextBytes(data);
+        byte[] raw = encrypt(secretkey, publickey, data);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+
+            final PipelinedMessageReader pr = new PipelinedMessageReader(
+                    new ByteArrayInputStream(Arrays.copyOf(raw, raw.length - 1)), secretkey, executor, 2);
+
+            Exception exception = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+                @Override
+                public void run() throws Throwable {
+
+                    while (pr.hasMoreBlocks()) {
+
+                        pr.getBlock();
+                    }
+                }
+            });
+            assertTrue(exception.getMessage().contains("message truncated"));
+            pr.destroy();
+
+        } finally {
+
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void errors() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        final byte[] otherSecretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] otherPublickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(otherPublickey, otherSecretkey);
+
+        final byte[] raw = encrypt(secretkey, publickey, new byte[10]);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+
+            Exception exception = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+                @Override
+                public void run() throws Throwable {
+
+                    new PipelinedMessageReader(new ByteArrayInputStream(raw), otherSecretkey, executor, 2);
+                }
+            });
+            assertTrue(exception.getMessage().contains("failed to find matching recipient"));
+
+            assertThrows(IllegalArgumentException.class, new ThrowingRunnable() {
+
+                @Override
+                public void run() throws Throwable {
+
+                    new PipelinedMessageReader(new ByteArrayInputStream(raw), otherSecretkey, null, 2);
+                }
+            });
+
+            final PipelinedMessageReader pr = new PipelinedMessageReader(new ByteArrayInputStream(raw), secretkey, executor, 2);
+            pr.destroy();
+            exception = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+                @Override
+                public void run() throws Throwable {
+
+                    pr.getBlock();
+                }
+            });
+            assertTrue(exception.getMessage().contains("reader destroyed"));
+
+        } finally {
+
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import org.junit.Test;
+import org.junit.function.ThrowingRunnable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class PipelinedMessageWriterTest {
+
+    @Test
+    public void encryption() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[] rSecretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] rPublickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(rPublickey, rSecretkey);
+
+        byte[] data = new byte[5 * 1024 * 1024 + 11];
+        new Random().nextBytes(data);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+
+            for (int pending : new int[]{1, PipelinedMessageWriter.DEFAULT_MAX_PENDING_BLOCKS}) {
+
+                ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                PipelinedMessageWriter pw = new PipelinedMessageWriter(bout, secretkey, new byte[][]{publickey, rPublickey},
+                        pending == 1, executor, pending);
+
+                int blockSize = 700 * 1024;
+                for (int i = 0; i < data.length; i += blockSize) {
+
+                    int len = Math.min(blockSize, data.length - i);
+                    if (i % (2 * blockSize) == 0) {
+
+                        pw.addBlock(data, i, len, i + len == data.length);
+
+                    } else {
+
+                        pw.addBuffer(ByteBuffer.wrap(data, i, len), i + len == data.length);
+                    }
+                }
+                pw.destroy();
+
+                MessageReader mr = new MessageReader(new InputParameters(new ByteArrayInputStream(bout.toByteArray())), rSecretkey);
+                ByteArrayOutputStream dec = new ByteArrayOutputStream();
+                while (mr.hasMoreBlocks()) {
+
+                    dec.write(mr.getBlock());
+                }
+                assertArrayEquals(publickey, mr.getSender());
+                mr.destroy();
+
+                assertArrayEquals(data, dec.toByteArray());
+            }
+
+        } finally {
+
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void compatibility() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[] data = new byte[3 * 1024 * 1024 + 5];
+        new Random().nextBytes(data);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+
+            for (boolean anonymous : new boolean[]{false, true}) {
+
+                // same packets and sizes as MessageWriter, with different keys only
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                MessageWriter mw = anonymous
+                        ? new MessageWriter(new OutputParameters(expected), new byte[][]{publickey}, false)
+                        : new MessageWriter(new OutputParameters(expected), secretkey, new byte[][]{publickey}, false);
+                mw.addBlock(data, true);
+                mw.destroy();
+
+                ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                PipelinedMessageWriter pw = anonymous
+                        ? new PipelinedMessageWriter(bout, new byte[][]{publickey}, false, executor, 3)
+                        : new PipelinedMessageWriter(bout, secretkey, new byte[][]{publickey}, false, executor, 3);
+                pw.addBlock(data, true);
+                pw.destroy();
+
+                assertEquals(expected.size(), bout.size());
+
+                Path file = Files.createTempFile("pipelined", ".saltpack");
+                try {
+
+                    // packet by packet decryption of both outputs
+                    for (byte[] message : new byte[][]{expected.toByteArray(), bout.toByteArray()}) {
+
+                        Files.write(file, message);
+                        SeekableMessageReader reader = new SeekableMessageReader(file, secretkey);
+                        assertEquals(4, reader.getBlockCount());
+                        assertEquals(data.length, reader.size());
+                        assertEquals(anonymous, !Arrays.equals(publickey, reader.getSender()));
+
+                        byte[] dec = new byte[data.length];
+                        assertEquals(data.length, reader.read(0, dec, 0, dec.length));
+                        assertArrayEquals(data, dec);
+                        reader.destroy();
+                    }
+
+                } finally {
+
+                    Files.delete(file);
+                }
+            }
+
+        } finally {
+
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void manyRecipients() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[][] recipients = new byte[5000][];
+        byte[][] secretkeys = new byte[recipients.length][];
+        for (int i = 0; i < recipients.length; i++) {
+
+            recipients[i] = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+            secretkeys[i] = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+            Utils.generateKeypair(recipients[i], secretkeys[i]);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+
+            // header built on multiple threads and on the calling thread only
+            for (int threshold : new int[]{1, Integer.MAX_VALUE}) {
+
+                ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                PipelinedMessageWriter pw = new PipelinedMessageWriter(bout, secretkey, recipients, true, executor, 2, threshold);
+                pw.addBlock("Sample message.".getBytes("UTF-8"), true);
+                pw.destroy();
+
+                for (int r : new int[]{0, recipients.length / 2 + 1, recipients.length - 1}) {
+
+                    MessageReader mr = new MessageReader(new InputParameters(new ByteArrayInputStream(bout.toByteArray())), secretkeys[r]);
+                    StringBuilder sb = new StringBuilder();
+                    while (mr.hasMoreBlocks()) {
+
+                        sb.append(new String(mr.getBlock(), "UTF-8"));
+                    }
+
+                    assertEquals("Sample message.", sb.toString());
+                    assertArrayEquals(publickey, mr.getSender());
+                    assertEquals(recipients.length, mr.getRecipients().length);
+                    mr.destroy();
+                }
+            }
+
+        } finally {
+
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void emptyMessage() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            PipelinedMessageWriter pw = new PipelinedMessageWriter(bout, secretkey, new byte[][]{publickey}, true, executor, 1);
+            pw.addBlock(new byte[0], true);
+            pw.destroy();
+
+            MessageReader mr = new MessageReader(new InputParameters(new ByteArrayInputStream(bout.toByteArray())), secretkey);
+            ByteArrayOutputStream dec = new ByteArrayOutputStream();
+            while (mr.hasMoreBlocks()) {
+
+                dec.write(mr.getBlock());
+            }
+            mr.destroy();
+
+            assertEquals(0, dec.size());
+
+        } finally {
+
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void errors() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        final byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+
+            final PipelinedMessageWriter pw = new PipelinedMessageWriter(new ByteArrayOutputStream(), secretkey,
+                    new byte[][]{publickey}, false, executor, 2);
+            pw.addBlock(new byte[10], true);
+
+            Exception exception = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+                @Override
+                public void run() throws Throwable {
+
+                    pw.addBlock(new byte[10], false);
+                }
+            });
+            assertTrue(exception.getMessage().contains("final block already added"));
+
+            pw.destroy();
+
+            exception = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+                @Override
+                public void run() throws Throwable {
+
+                    pw.addBlock(new byte[10], true);
+                }
+            });
+            assertTrue(exception.getMessage().contains("writer destroyed"));
+
+            exception = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+                @Override
+                public void run() throws Throwable {
+
+                    new PipelinedMessageWriter(new ByteArrayOutputStream(), new byte[][]{new byte[3]}, false, executor, 2);
+                }
+            });
+            assertTrue(exception.getMessage().contains("wrong size for recipient public key"));
+
+            assertThrows(IllegalArgumentException.class, new ThrowingRunnable() {
+
+                @Override
+                public void run() throws Throwable {
+
+                    new PipelinedMessageWriter(new ByteArrayOutputStream(), new byte[][]{publickey}, false, null, 2);
+                }
+            });
+
+            assertThrows(IllegalArgumentException.class, new ThrowingRunnable() {
+
+                @Override
+                public void run() throws Throwable {
+
+                    new PipelinedMessageWriter(new ByteArrayOutputStream(), new byte[][]{publickey}, false, executor, 0);
+                }
+            });
+
+        } finally {
+
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.gherynos.libsaltpack;
+
+import org.junit.Test;
+import org.junit.function.ThrowingRunnable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class RecipientKeyCacheTest {
+
+    private static byte[][] recipients(int count, byte[][] secretkeys) throws SaltpackException {
+
+        byte[][] publickeys = new byte[count][];
+        for (int i = 0; i < count; i++) {
+
+            publickeys[i] = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+            secretkeys[i] = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+            Utils.generateKeypair(publickeys[i], secretkeys[i]);
+        }
+
+        return publickeys;
+    }
+
+    private static String decrypt(byte[] raw, byte[] secretkey, byte[] sender) throws Exception {
+
+        MessageReader mr = new MessageReader(new InputParameters(new ByteArrayInputStream(raw)), secretkey);
+        StringBuilder sb = new StringBuilder();
+        while (mr.hasMoreBlocks()) {
+
+            sb.append(new String(mr.getBlock(), "UTF-8"));
+        }
+        assertArrayEquals(sender, mr.getSender());
+        mr.destroy();
+
+        return sb.toString();
+    }
+
+    @Test
+    public void encryption() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[][] secretkeys = new byte[300][];
+        byte[][] publickeys = recipients(secretkeys.length, secretkeys);
+
+        RecipientKeyCache cache = new RecipientKeyCache(1000);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+
+            // cold cache, then warm cache, on multiple threads and on the calling thread only
+            int threshold = 1;
+            for (int round = 0; round < 3; round++) {
+
+                ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                PipelinedMessageWriter pw = new PipelinedMessageWriter(bout, secretkey, publickeys, round % 2 == 0,
+                        executor, 2, threshold, cache);
+                pw.addBlock("Sample message.".getBytes("UTF-8"), true);
+                pw.destroy();
+                threshold = Integer.MAX_VALUE;
+
+                assertEquals(publickeys.length, cache.getMisses());
+                assertEquals((long) round * publickeys.length, cache.getHits());
+                assertEquals(publickeys.length, cache.size());
+
+                for (int r : new int[]{0, 150, publickeys.length - 1}) {
+
+                    assertEquals("Sample message.", decrypt(bout.toByteArray(), secretkeys[r], publickey));
+                }
+            }
+
+            cache.clear();
+            assertEquals(0, cache.size());
+            assertEquals(publickeys.length, cache.getMisses());
+
+        } finally {
+
+            executor.shutdown();
+            cache.destroy();
+        }
+    }
+
+    @Test
+    public void eviction() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[][] secretkeys = new byte[3][];
+        byte[][] publickeys = recipients(secretkeys.length, secretkeys);
+
+        RecipientKeyCache cache = new RecipientKeyCache(2);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+
+            for (byte[][] list : new byte[][][]{{publickeys[0], publickeys[1]}, {publickeys[2]}, {publickeys[1]}, {publickeys[0]}}) {
+
+                ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                PipelinedMessageWriter pw = new PipelinedMessageWriter(bout, secretkey, list, false, executor, 1,
+                        PipelinedMessageWriter.DEFAULT_PARALLEL_HEADER_THRESHOLD, cache);
+                pw.addBlock("Sample message.".getBytes("UTF-8"), true);
+                pw.destroy();
+            }
+
+            // the least recently used entry (recipient 0) was evicted by recipient 2
+            assertEquals(2, cache.size());
+            assertEquals(1, cache.getHits());
+            assertEquals(4, cache.getMisses());
+
+        } finally {
+
+            executor.shutdown();
+            cache.destroy();
+        }
+    }
+
+    @Test
+    public void errors() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        final byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        assertThrows(IllegalArgumentException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                new RecipientKeyCache(0);
+            }
+        });
+
+        final RecipientKeyCache cache = new RecipientKeyCache(10);
+        cache.destroy();
+        cache.destroy();
+
+        Exception exception = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                cache.getHits();
+            }
+        });
+        assertTrue(exception.getMessage().contains("cache destroyed"));
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+
+            exception = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+                @Override
+                public void run() throws Throwable {
+
+                    new PipelinedMessageWriter(new ByteArrayOutputStream(), secretkey, new byte[][]{publickey}, false,
+                            executor, 1, 1, cache);
+                }
+            });
+            assertTrue(exception.getMessage().contains("cache destroyed"));
+
+        } finally {
+
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import org.junit.Test;
+import org.junit.function.ThrowingRunnable;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SaltpackDecoderTest {
+
+    private static byte[] encrypt(byte[] secretkey, byte[] publickey, byte[] data) throws Exception {
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+
+        OutputParameters op = new OutputParameters(bout);
+        op.setArmored(false);
+
+        MessageWriter mw = new MessageWriter(op, secretkey, new byte[][]{publickey}, true);
+        mw.addBlock(data, 0, 1000, false);
+        mw.addBlock(data, 1000, data.length - 1000, true);
+        mw.destroy();
+
+        return bout.toByteArray();
+    }
+
+    @Test
+    public void decryption() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[] data = new byte[300 * 1024];
+        new Random().nextBytes(data);
+
+        byte[] raw = encrypt(secretkey, publickey, data);
+
+        for (int chunk : new int[]{1, 13, 4096, raw.length}) {
+
+            SaltpackDecoder decoder = new SaltpackDecoder(secretkey);
+            ByteArrayOutputStream dec = new ByteArrayOutputStream();
+
+            for (int i = 0; i < raw.length; i += chunk) {
+
+                assertFalse(decoder.isFinished());
+
+                for (byte[] block : decoder.feed(raw, i, Math.min(chunk, raw.length - i))) {
+
+                    dec.write(block);
+                }
+            }
+
+            assertTrue(decoder.isHeaderParsed());
+            assertTrue(decoder.isFinished());
+            assertArrayEquals(data, dec.toByteArray());
+            assertArrayEquals(publickey, decoder.getRecipients()[0]);
+
+            decoder.destroy();
+        }
+    }
+
+    @Test
+    public void byteBuffers() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[] data = new byte[10 * 1024];
+        new Random().nextBytes(data);
+
+        byte[] raw = encrypt(secretkey, publickey, data);
+
+        for (ByteBuffer src : new ByteBuffer[]{ByteBuffer.allocate(raw.length), ByteBuffer.allocateDirect(raw.length)}) {
+
+            src.put(raw).flip();
+
+            SaltpackDecoder decoder = new SaltpackDecoder(secretkey);
+            ByteArrayOutputStream dec = new ByteArrayOutputStream();
+
+            ByteBuffer half = src.duplicate();
+            half.limit(raw.length / 2);
+            for (byte[] block : decoder.feed(half)) {
+
+                dec.write(block);
+            }
+            assertEquals(half.limit(), half.position());
+
+            src.position(raw.length / 2);
+            for (byte[] block : decoder.feed(src.asReadOnlyBuffer())) {
+
+                dec.write(block);
+            }
+
+            assertTrue(decoder.isFinished());
+            assertArrayEquals(data, dec.toByteArray());
+
+            decoder.destroy();
+        }
+    }
+
+    @Test
+    public void verification() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+
+        OutputParameters op = new OutputParameters(bout);
+        op.setArmored(false);
+
+        MessageWriter mw = new MessageWriter(op, secretkey, false);
+        mw.addBlock("A simple".getBytes("UTF-8"), false);
+        mw.addBlock(" message.".getBytes("UTF-8"), true);
+        mw.destroy();
+
+        byte[] raw = bout.toByteArray();
+
+        SaltpackDecoder decoder = new SaltpackDecoder();
+        StringBuilder sb = new StringBuilder();
+        for (byte b : raw) {
+
+            for (byte[] block : decoder.feed(new byte[]{b}, 0, 1)) {
+
+                sb.append(new String(block, "UTF-8"));
+            }
+        }
+
+        assertEquals("A simple message.", sb.toString());
+        assertArrayEquals(publickey, decoder.getSender());
+
+        decoder.destroy();
+    }
+
+    @Test
+    public void errors() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        final SaltpackDecoder decoder = new SaltpackDecoder(secretkey);
+        assertEquals(0, decoder.feed(new byte[]{(byte) 0xc4}, 0, 1).length);
+        assertFalse(decoder.isHeaderParsed());
+
+        Exception exception = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                decoder.getSender();
+            }
+        });
+        assertTrue(exception.getMessage().contains("header not parsed yet"));
+
+        decoder.destroy();
+
+        final byte[] raw = encrypt(secretkey, publickey, new byte[2000]);
+        raw[raw.length - 5] ^= 1;
+
+        final SaltpackDecoder tampered = new SaltpackDecoder(secretkey);
+        assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                tampered.feed(raw, 0, raw.length);
+            }
+        });
+        tampered.destroy();
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import org.junit.Test;
+import org.junit.function.ThrowingRunnable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SaltpackEncoderTest {
+
+    private static String read(MessageReader mr) throws Exception {
+
+        StringBuilder sb = new StringBuilder();
+        while (mr.hasMoreBlocks()) {
+
+            sb.append(new String(mr.getBlock(), "UTF-8"));
+        }
+        mr.destroy();
+
+        return sb.toString();
+    }
+
+    private static byte[] encode(SaltpackEncoder encoder) throws Exception {
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        bout.write(encoder.drain());
+        bout.write(encoder.encode("Sample".getBytes("UTF-8"), 0, 6, false));
+
+        ByteBuffer out = encoder.encode(ByteBuffer.wrap(" message.".getBytes("UTF-8")), true);
+        bout.write(out.array(), out.arrayOffset() + out.position(), out.remaining());
+
+        encoder.destroy();
+
+        return bout.toByteArray();
+    }
+
+    @Test
+    public void encryption() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        for (boolean armored : new boolean[]{false, true}) {
+
+            OutputParameters op = new OutputParameters();
+            op.setArmored(armored);
+
+            byte[] raw = encode(new SaltpackEncoder(op, secretkey, new byte[][]{publickey}));
+
+            InputParameters ip = new InputParameters(new ByteArrayInputStream(raw));
+            ip.setArmored(armored);
+
+            assertEquals("Sample message.", read(new MessageReader(ip, secretkey)));
+
+            // the encoder output has the same layout as the MessageWriter one
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            OutputParameters sop = new OutputParameters(bout);
+            sop.setArmored(armored);
+            MessageWriter mw = new MessageWriter(sop, secretkey, new byte[][]{publickey});
+            mw.addBlock("Sample".getBytes("UTF-8"), false);
+            mw.addBlock(" message.".getBytes("UTF-8"), true);
+            mw.destroy();
+
+            assertEquals(bout.size(), raw.length);
+        }
+    }
+
+    @Test
+    public void largeBlocks() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[] data = new byte[3 * 1024 * 1024];
+        new Random().nextBytes(data);
+
+        SaltpackEncoder encoder = new SaltpackEncoder(new OutputParameters(), new byte[][]{publickey}, false);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        bout.write(encoder.drain());
+        ByteBuffer src = ByteBuffer.allocateDirect(1024 * 1024);
+        for (int i = 0; i < data.length; i += src.capacity()) {
+
+            src.clear();
+            src.put(data, i, src.capacity()).flip();
+
+            ByteBuffer out = encoder.encode(src, i + src.capacity() == data.length);
+            assertTrue(out.remaining() > 0);
+            bout.write(out.array(), out.arrayOffset() + out.position(), out.remaining());
+        }
+        assertEquals(0, encoder.drain().length);
+        encoder.destroy();
+
+        InputParameters ip = new InputParameters(new ByteArrayInputStream(bout.toByteArray()));
+        MessageReader mr = new MessageReader(ip, secretkey);
+        ByteArrayOutputStream dec = new ByteArrayOutputStream();
+        while (mr.hasMoreBlocks()) {
+
+            dec.write(mr.getBlock());
+        }
+        mr.destroy();
+
+        assertArrayEquals(data, dec.toByteArray());
+    }
+
+    @Test
+    public void signature() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        byte[] raw = encode(new SaltpackEncoder(new OutputParameters(), secretkey, false));
+
+        InputParameters ip = new InputParameters(new ByteArrayInputStream(raw));
+        MessageReader mr = new MessageReader(ip);
+        assertEquals("Sample message.", read(mr));
+
+        byte[] signature = encode(new SaltpackEncoder(new OutputParameters(), secretkey, true));
+
+        ip = new InputParameters(new ByteArrayInputStream(signature));
+        mr = new MessageReader(ip, new ByteArrayInputStream("Sample message.".getBytes("UTF-8")));
+        assertArrayEquals(publickey, mr.getSender());
+        mr.destroy();
+    }
+
+    @Test
+    public void signcryption() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        byte[] symmetricKey = Utils.generateRandomBytes(Constants.CRYPTO_SECRETBOX_KEYBYTES);
+
+        byte[] raw = encode(new SaltpackEncoder(new OutputParameters(), secretkey, new byte[][]{}, new byte[][][]{
+                {{'i', 'd'}, symmetricKey}
+        }));
+
+        InputParameters ip = new InputParameters(new ByteArrayInputStream(raw));
+        MessageReader mr = new MessageReader(ip, new byte[]{}, new byte[][]{{'i', 'd'}, symmetricKey});
+        assertEquals("Sample message.", read(mr));
+    }
+
+    @Test
+    public void destination() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        final byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        // only the settings are used
+        ByteArrayOutputStream destination = new ByteArrayOutputStream();
+        OutputParameters op = new OutputParameters(destination);
+        op.setArmored(true);
+        byte[] raw = encode(new SaltpackEncoder(op, new byte[][]{publickey}));
+        assertEquals(0, destination.size());
+
+        InputParameters ip = new InputParameters(new ByteArrayInputStream(raw));
+        ip.setArmored(true);
+        assertEquals("Sample message.", read(new MessageReader(ip, secretkey)));
+
+        // a writer never switches to memory silently
+        Exception exception = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                new MessageWriter(new OutputParameters((OutputStream) null), new byte[][]{publickey});
+            }
+        });
+        assertEquals("null output stream provided", exception.getMessage());
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.function.ThrowingRunnable;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class SaltpackFilesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(String name, byte[] data) throws Exception {
+
+        Path path = folder.newFile(name).toPath();
+        Files.write(path, data);
+
+        return path;
+    }
+
+    @Test
+    public void encryption() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        for (int size : new int[]{0, 1, 1024 * 1024, 3 * 1024 * 1024 + 17}) {
+
+            byte[] data = new byte[size];
+            new Random().nextBytes(data);
+
+            Path plain = write("plain" + size, data);
+            Path encrypted = folder.getRoot().toPath().resolve("encrypted" + size);
+            Path decrypted = folder.getRoot().toPath().resolve("decrypted" + size);
+
+            assertEquals(size, SaltpackFiles.encrypt(plain, encrypted, secretkey, new byte[][]{publickey}));
+            assertEquals(size, SaltpackFiles.decrypt(encrypted, decrypted, secretkey));
+            assertArrayEquals(data, Files.readAllBytes(decrypted));
+
+            // interoperable with the stream API
+            InputParameters ip = new InputParameters(new ByteArrayInputStream(Files.readAllBytes(encrypted)));
+            ip.setArmored(false);
+            MessageReader mr = new MessageReader(ip, secretkey);
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            while (mr.hasMoreBlocks()) {
+
+                bout.write(mr.getBlock());
+            }
+            mr.destroy();
+
+            assertArrayEquals(data, bout.toByteArray());
+        }
+    }
+
+    @Test
+    public void signature() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        byte[] data = new byte[2 * 1024 * 1024 + 5];
+        new Random().nextBytes(data);
+        Path plain = write("plain", data);
+
+        Path signed = folder.getRoot().toPath().resolve("signed");
+        Path verified = folder.getRoot().toPath().resolve("verified");
+        assertEquals(data.length, SaltpackFiles.sign(plain, signed, secretkey, false));
+        assertArrayEquals(publickey, SaltpackFiles.verify(signed, verified));
+        assertArrayEquals(data, Files.readAllBytes(verified));
+
+        Path signature = folder.getRoot().toPath().resolve("signature");
+        assertEquals(data.length, SaltpackFiles.sign(plain, signature, secretkey, true));
+        assertArrayEquals(publickey, SaltpackFiles.verifyDetached(signature, plain));
+
+        data[12345] ^= 1;
+        final Path tampered = write("tampered", data);
+        assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                SaltpackFiles.verifyDetached(signature, tampered);
+            }
+        });
+    }
+
+    @Test
+    public void detachedBatch() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        List<Path> signatures = new ArrayList<>();
+        List<Path> messages = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+
+            byte[] data = new byte[(i + 1) * 300000];
+            new Random().nextBytes(data);
+            Path plain = write("plain" + i, data);
+            Path signature = folder.getRoot().toPath().resolve("signature" + i);
+            SaltpackFiles.sign(plain, signature, secretkey, true);
+
+            signatures.add(signature);
+            messages.add(plain);
+        }
+
+        // the second message doesn't match its signature
+        Collections.swap(messages, 1, 2);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+
+            for (VerificationResult[] results : new VerificationResult[][]{
+                    SaltpackFiles.verifyDetachedBatch(signatures, messages, null),
+                    SaltpackFiles.verifyDetachedBatch(signatures, messages, new byte[][]{publickey}, executor, 3)}) {
+
+                assertEquals(5, results.length);
+                for (int i = 0; i < 5; i++) {
+
+                    assertEquals(i != 1 && i != 2, results[i].isValid());
+                }
+                assertArrayEquals(publickey, results[0].getSigner());
+                assertNull(results[1].getSigner());
+            }
+
+        } finally {
+
+            executor.shutdown();
+        }
+
+        VerificationResult[] results = SaltpackFiles.verifyDetachedBatch(signatures, messages, new byte[][]{new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES]});
+        assertEquals("untrusted signer", results[0].getError());
+        assertArrayEquals(publickey, results[0].getSigner());
+    }
+
+    @Test
+    public void errors() {
+
+        final Path missing = folder.getRoot().toPath().resolve("missing");
+        final Path out = folder.getRoot().toPath().resolve("out");
+
+        assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                SaltpackFiles.decrypt(missing, out, new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES]);
+            }
+        });
+
+        assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                SaltpackFiles.verify(null, out);
+            }
+        });
+    }
+
+    @Test
+    public void failedDecryption() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[] data = new byte[3 * 1024 * 1024];
+        new Random().nextBytes(data);
+        Path plain = write("plain", data);
+        Path encrypted = folder.getRoot().toPath().resolve("encrypted");
+        SaltpackFiles.encrypt(plain, encrypted, secretkey, new byte[][]{publickey});
+
+        // the last block fails after the first ones have been authenticated
+        byte[] message = Files.readAllBytes(encrypted);
+        message[message.length - 100] ^= 1;
+        final Path tampered = write("tampered", message);
+        final Path out = folder.getRoot().toPath().resolve("out");
+        assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                SaltpackFiles.decrypt(tampered, out, secretkey);
+            }
+        });
+        assertFalse(Files.exists(out));
+        assertEquals(3, folder.getRoot().list().length);
+
+        // an existing destination is left untouched
+        final Path existing = write("existing", new byte[]{1, 2, 3});
+        assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                SaltpackFiles.decrypt(tampered, existing, secretkey);
+            }
+        });
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(existing));
+    }
+
+    @Test
+    public void sameFile() throws Exception {
+
+        final byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        final byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        final Path plain = write("plain", new byte[]{1, 2, 3});
+        final Path alias = plain.getParent().resolve(".").resolve(plain.getFileName());
+        SaltpackException ex = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                SaltpackFiles.encrypt(plain, alias, secretkey, new byte[][]{publickey});
+            }
+        });
+        assertEquals("input and output are the same file", ex.getMessage());
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(plain));
+    }
+}
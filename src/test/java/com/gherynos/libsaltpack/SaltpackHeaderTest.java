@@ -0,0 +1,213 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import org.junit.Test;
+import org.junit.function.ThrowingRunnable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+public class SaltpackHeaderTest {
+
+    @Test
+    public void encryption() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[] rSecretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] rPublickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(rPublickey, rSecretkey);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        MessageWriter mw = new MessageWriter(new OutputParameters(bout), secretkey, new byte[][]{publickey, rPublickey}, true);
+        mw.addBlock("Sample message.".getBytes("UTF-8"), true);
+        mw.destroy();
+
+        // armored, as the default parameters
+        InputStream source = new BufferedInputStream(new ByteArrayInputStream(bout.toByteArray()));
+        InputParameters ip = new InputParameters(source);
+
+        SaltpackHeader header = MessageReader.peekHeader(ip);
+        assertEquals(SaltpackHeader.MODE_ENCRYPTION, header.getMode());
+        assertTrue(header.getMajorVersion() >= 1);
+        assertEquals(2, header.getRecipients().length);
+        assertArrayEquals(publickey, header.getRecipients()[0]);
+        assertArrayEquals(rPublickey, header.getRecipients()[1]);
+        assertNull(header.getSender());
+        assertFalse(header.isRecipient());
+
+        Keyring keyring = new Keyring();
+        keyring.addSecretkey(rSecretkey);
+        header = keyring.peekHeader(ip);
+        assertTrue(header.isRecipient());
+        assertArrayEquals(publickey, header.getSender());
+        keyring.destroy();
+
+        // the stream is back at the start of the message
+        MessageReader mr = new MessageReader(ip, rSecretkey);
+        StringBuilder sb = new StringBuilder();
+        while (mr.hasMoreBlocks()) {
+
+            sb.append(new String(mr.getBlock(), "UTF-8"));
+        }
+        mr.destroy();
+        assertEquals("Sample message.", sb.toString());
+    }
+
+    @Test
+    public void anonymousRecipients() throws Exception {
+
+        byte[] rSecretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] rPublickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(rPublickey, rSecretkey);
+
+        byte[] otherSecretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        Utils.generateKeypair(new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES], otherSecretkey);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        OutputParameters op = new OutputParameters(bout);
+        op.setArmored(false);
+        MessageWriter mw = new MessageWriter(op, new byte[][]{rPublickey}, false);
+        mw.addBlock("Sample message.".getBytes("UTF-8"), true);
+        mw.destroy();
+
+        InputParameters ip = new InputParameters(new ByteArrayInputStream(bout.toByteArray()));
+        ip.setArmored(false);
+
+        SaltpackHeader header = MessageReader.peekHeader(ip);
+        assertEquals(1, header.getRecipients().length);
+        assertNull(header.getRecipients()[0]);
+
+        Keyring keyring = new Keyring();
+        keyring.addSecretkey(otherSecretkey);
+        header = keyring.peekHeader(ip);
+        assertFalse(header.isRecipient());
+        assertNull(header.getSender());
+
+        keyring.addSecretkey(rSecretkey);
+        header = keyring.peekHeader(ip);
+        assertTrue(header.isRecipient());
+        assertNotNull(header.getSender());
+        keyring.destroy();
+    }
+
+    @Test
+    public void signature() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        for (boolean detached : new boolean[]{false, true}) {
+
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            OutputParameters op = new OutputParameters(bout);
+            op.setArmored(false);
+            MessageWriter mw = new MessageWriter(op, secretkey, detached);
+            mw.addBlock("Sample message.".getBytes("UTF-8"), true);
+            mw.destroy();
+
+            InputParameters ip = new InputParameters(new ByteArrayInputStream(bout.toByteArray()));
+            ip.setArmored(false);
+
+            SaltpackHeader header = MessageReader.peekHeader(ip);
+            assertEquals(detached ? SaltpackHeader.MODE_DETACHED_SIGNATURE : SaltpackHeader.MODE_ATTACHED_SIGNATURE, header.getMode());
+            assertArrayEquals(publickey, header.getSender());
+            assertEquals(0, header.getRecipients().length);
+        }
+    }
+
+    @Test
+    public void signcryption() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        byte[] symmetricKey = Utils.generateRandomBytes(32);
+        byte[] id = "id".getBytes("UTF-8");
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        OutputParameters op = new OutputParameters(bout);
+        op.setArmored(false);
+        MessageWriter mw = new MessageWriter(op, secretkey, new byte[][]{}, new byte[][][]{{id, symmetricKey}});
+        mw.addBlock("Sample message.".getBytes("UTF-8"), true);
+        mw.destroy();
+
+        InputParameters ip = new InputParameters(new ByteArrayInputStream(bout.toByteArray()));
+        ip.setArmored(false);
+
+        SaltpackHeader header = MessageReader.peekHeader(ip);
+        assertEquals(SaltpackHeader.MODE_SIGNCRYPTION, header.getMode());
+        assertEquals(1, header.getRecipients().length);
+        assertArrayEquals(id, header.getRecipients()[0]);
+
+        Keyring keyring = new Keyring();
+        keyring.addSymmetricKey(id, symmetricKey);
+        header = keyring.peekHeader(ip);
+        assertTrue(header.isRecipient());
+        assertArrayEquals(publickey, header.getSender());
+        keyring.destroy();
+    }
+
+    @Test
+    public void notRepositionable() throws Exception {
+
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        OutputParameters op = new OutputParameters(bout);
+        op.setArmored(false);
+        MessageWriter mw = new MessageWriter(op, secretkey, new byte[][]{publickey});
+        mw.addBlock("Sample message.".getBytes("UTF-8"), true);
+        mw.destroy();
+
+        final InputStream source = new FilterInputStream(new ByteArrayInputStream(bout.toByteArray())) {
+
+            @Override
+            public boolean markSupported() {
+
+                return false;
+            }
+        };
+        final InputParameters ip = new InputParameters(source);
+        ip.setArmored(false);
+
+        SaltpackException ex = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                MessageReader.peekHeader(ip);
+            }
+        });
+        assertTrue(ex.getMessage().contains("source not repositionable"));
+
+        // nothing has been consumed
+        assertEquals(bout.size(), source.available());
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import org.junit.Test;
+import org.junit.function.ThrowingRunnable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SaltpackInputStreamTest {
+
+    private static final byte[] DATA = new byte[2 * 1024 * 1024 + 321];
+
+    static {
+
+        new Random().nextBytes(DATA);
+    }
+
+    private static final byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+
+    private static byte[] encrypted;
+
+    static {
+
+        try {
+
+            byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+            Utils.generateKeypair(publickey, secretkey);
+
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            SaltpackOutputStream out = new SaltpackOutputStream(new MessageWriter(new OutputParameters(bout), secretkey,
+                    new byte[][]{publickey}));
+            out.write(DATA);
+            out.close();
+
+            encrypted = bout.toByteArray();
+
+        } catch (SaltpackException | IOException ex) {
+
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static SaltpackInputStream open(int blockSize) throws SaltpackException {
+
+        return new SaltpackInputStream(new MessageReader(new InputParameters(new ByteArrayInputStream(encrypted)),
+                secretkey), blockSize);
+    }
+
+    @Test
+    public void read() throws Exception {
+
+        for (int blockSize : new int[]{1000, SaltpackOutputStream.MAX_BLOCK_SIZE}) {
+
+            SaltpackInputStream in = open(blockSize);
+
+            ByteArrayOutputStream dec = new ByteArrayOutputStream();
+            dec.write(in.read());
+            assertEquals(in.available(), blockSize - 1);
+
+            byte[] buf = new byte[1500];
+            int read;
+            while ((read = in.read(buf, 0, 700)) != -1) {
+
+                dec.write(buf, 0, read);
+                if (dec.size() > 100000) {
+
+                    break;
+                }
+            }
+
+            // large reads go straight to the destination array
+            byte[] large = new byte[SaltpackOutputStream.MAX_BLOCK_SIZE];
+            while ((read = in.read(large, 0, large.length)) != -1) {
+
+                dec.write(large, 0, read);
+            }
+
+            assertEquals(in.read(), -1);
+            assertEquals(in.available(), 0);
+            in.close();
+
+            assertArrayEquals(dec.toByteArray(), DATA);
+        }
+    }
+
+    @Test
+    public void skipAndTransfer() throws Exception {
+
+        SaltpackInputStream in = open(SaltpackOutputStream.MAX_BLOCK_SIZE);
+
+        assertEquals(in.skip(10), 10);
+        assertEquals(in.skip(SaltpackOutputStream.MAX_BLOCK_SIZE), SaltpackOutputStream.MAX_BLOCK_SIZE);
+
+        ByteArrayOutputStream dec = new ByteArrayOutputStream();
+        assertEquals(in.transferTo(dec), DATA.length - 10 - SaltpackOutputStream.MAX_BLOCK_SIZE);
+        assertEquals(in.skip(10), 0);
+        in.close();
+
+        assertArrayEquals(dec.toByteArray(), Arrays.copyOfRange(DATA, 10 + SaltpackOutputStream.MAX_BLOCK_SIZE, DATA.length));
+
+        Path tmp = Files.createTempFile("saltpack", ".bin");
+        try {
+
+            try (SaltpackInputStream fin = open(SaltpackOutputStream.MAX_BLOCK_SIZE)) {
+
+                Files.copy(fin, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            assertArrayEquals(Files.readAllBytes(tmp), DATA);
+
+        } finally {
+
+            Files.delete(tmp);
+        }
+    }
+
+    @Test
+    public void attachedSignature() throws Exception {
+
+        byte[] sSecretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] sPublickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(sPublickey, sSecretkey);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        SaltpackOutputStream out = new SaltpackOutputStream(new MessageWriter(new OutputParameters(bout), sSecretkey, false));
+        out.write(DATA);
+        out.close();
+
+        MessageReader mr = new MessageReader(new InputParameters(new ByteArrayInputStream(bout.toByteArray())));
+        assertArrayEquals(mr.getSender(), sPublickey);
+
+        try (SaltpackInputStream in = new SaltpackInputStream(mr)) {
+
+            assertArrayEquals(in.readAllBytes(), DATA);
+        }
+    }
+
+    @Test
+    public void closed() throws Exception {
+
+        final SaltpackInputStream in = open(100);
+        in.close();
+        in.close();
+
+        assertThrows(IOException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                in.read();
+            }
+        });
+
+        assertThrows(IllegalArgumentException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                new SaltpackInputStream(null);
+            }
+        });
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import org.junit.Test;
+import org.junit.function.ThrowingRunnable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SaltpackOutputStreamTest {
+
+    private static final byte[] DATA = new byte[3 * 1024 * 1024 + 123];
+
+    static {
+
+        new Random().nextBytes(DATA);
+    }
+
+    private static void writeSmall(OutputStream out) throws IOException {
+
+        int off = 0;
+        while (off < DATA.length) {
+
+            int len = Math.min(17, DATA.length - off);
+            out.write(DATA, off, len);
+            off += len;
+        }
+        out.close();
+    }
+
+    private static void writeLarge(OutputStream out) throws IOException {
+
+        out.write(DATA[0]);
+        out.write(DATA, 1, DATA.length - 1);
+        out.close();
+    }
+
+    private static byte[] readAll(MessageReader mr) throws Exception {
+
+        ByteArrayOutputStream dec = new ByteArrayOutputStream();
+        while (mr.hasMoreBlocks()) {
+
+            dec.write(mr.getBlock());
+        }
+        mr.destroy();
+
+        return dec.toByteArray();
+    }
+
+    @Test
+    public void encryption() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        for (boolean small : new boolean[]{true, false}) {
+
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            OutputParameters op = new OutputParameters(bout);
+            op.setArmored(true);
+
+            SaltpackOutputStream out = new SaltpackOutputStream(new MessageWriter(op, secretkey, new byte[][]{publickey}));
+            if (small) {
+
+                writeSmall(out);
+
+            } else {
+
+                writeLarge(out);
+            }
+
+            InputParameters ip = new InputParameters(new ByteArrayInputStream(bout.toByteArray()));
+            ip.setArmored(true);
+
+            assertArrayEquals(readAll(new MessageReader(ip, secretkey)), DATA);
+        }
+    }
+
+    @Test
+    public void attachedSignature() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        writeSmall(new SaltpackOutputStream(new MessageWriter(new OutputParameters(bout), secretkey, false), 4096));
+
+        MessageReader mr = new MessageReader(new InputParameters(new ByteArrayInputStream(bout.toByteArray())));
+        assertArrayEquals(mr.getSender(), publickey);
+        assertArrayEquals(readAll(mr), DATA);
+    }
+
+    @Test
+    public void detachedSignature() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        writeLarge(new SaltpackOutputStream(new MessageWriter(new OutputParameters(bout), secretkey, true)));
+
+        MessageReader mr = new MessageReader(new InputParameters(new ByteArrayInputStream(bout.toByteArray())),
+                new ByteArrayInputStream(DATA));
+        assertArrayEquals(mr.getSender(), publickey);
+        mr.destroy();
+    }
+
+    @Test
+    public void signcryption() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        byte[] rSecretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] rPublickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(rPublickey, rSecretkey);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        writeSmall(new SaltpackOutputStream(new MessageWriter(new OutputParameters(bout), secretkey,
+                new byte[][]{rPublickey}, new byte[][][]{})));
+
+        MessageReader mr = new MessageReader(new InputParameters(new ByteArrayInputStream(bout.toByteArray())),
+                rSecretkey, new byte[][]{});
+        assertArrayEquals(readAll(mr), DATA);
+    }
+
+    @Test
+    public void emptyAndClosed() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        final SaltpackOutputStream out = new SaltpackOutputStream(new MessageWriter(new OutputParameters(bout), secretkey,
+                new byte[][]{publickey}));
+        out.close();
+        out.close();
+
+        assertEquals(readAll(new MessageReader(new InputParameters(new ByteArrayInputStream(bout.toByteArray())),
+                secretkey)).length, 0);
+
+        assertThrows(IOException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                out.write(1);
+            }
+        });
+
+        assertThrows(IllegalArgumentException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                new SaltpackOutputStream(null);
+            }
+        });
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import org.junit.Test;
+import org.junit.function.ThrowingRunnable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class SaltpackTest {
+
+    private static byte[] random(int size) {
+
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+
+        return data;
+    }
+
+    @Test
+    public void encryption() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[] rSecretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] rPublickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(rPublickey, rSecretkey);
+
+        for (int size : new int[]{0, 64, 1024, 16 * 1024, 1024 * 1024 + 1}) {
+
+            byte[] plaintext = random(size);
+
+            byte[] message = Saltpack.encrypt(plaintext, secretkey, new byte[][]{rPublickey});
+            assertArrayEquals(plaintext, Saltpack.decrypt(message, rSecretkey));
+
+            // compatible with the streaming API
+            InputParameters ip = new InputParameters(new ByteArrayInputStream(message));
+            ip.setArmored(false);
+            MessageReader mr = new MessageReader(ip, rSecretkey);
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            mr.transferTo(bout);
+            assertArrayEquals(publickey, mr.getSender());
+            mr.destroy();
+            assertArrayEquals(plaintext, bout.toByteArray());
+        }
+
+        byte[] message = Saltpack.encrypt("Anonymous message.".getBytes("UTF-8"), new byte[][]{rPublickey});
+        assertEquals("Anonymous message.", new String(Saltpack.decrypt(message, rSecretkey), "UTF-8"));
+    }
+
+    @Test
+    public void decryptStreamingMessage() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        OutputParameters op = new OutputParameters(bout);
+        op.setArmored(false);
+        MessageWriter mw = new MessageWriter(op, secretkey, new byte[][]{publickey});
+        mw.addBlock("First block, ".getBytes("UTF-8"), false);
+        mw.addBlock("second block.".getBytes("UTF-8"), true);
+        mw.destroy();
+
+        assertEquals("First block, second block.", new String(Saltpack.decrypt(bout.toByteArray(), secretkey), "UTF-8"));
+    }
+
+    @Test
+    public void signature() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        final byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        byte[] plaintext = random(1024);
+        final byte[] message = Saltpack.sign(plaintext, secretkey);
+        assertArrayEquals(plaintext, Saltpack.verify(message, publickey));
+
+        final byte[] other = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(other, new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES]);
+        SaltpackException ex = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                Saltpack.verify(message, other);
+            }
+        });
+        assertEquals("message signed by a different sender", ex.getMessage());
+
+        message[message.length - 10] ^= 1;
+        assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                Saltpack.verify(message, publickey);
+            }
+        });
+    }
+
+    @Test
+    public void signcryption() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        byte[] rSecretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] rPublickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(rPublickey, rSecretkey);
+
+        byte[][] symmetricKey = {"id".getBytes("UTF-8"), random(32)};
+
+        byte[] plaintext = random(16 * 1024);
+        byte[] message = Saltpack.signcrypt(plaintext, secretkey, new byte[][]{rPublickey}, new byte[][][]{symmetricKey});
+
+        assertArrayEquals(plaintext, Saltpack.designcrypt(message, rSecretkey, new byte[][]{}));
+        assertArrayEquals(plaintext, Saltpack.designcrypt(message, new byte[]{}, symmetricKey));
+    }
+
+    @Test
+    public void encryptionBatch() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        byte[] rSecretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        byte[] rPublickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(rPublickey, rSecretkey);
+
+        List<byte[]> plaintexts = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+
+            plaintexts.add(random(i * 10));
+        }
+
+        EncryptedBatch batch = Saltpack.encryptBatch(plaintexts, secretkey, new byte[][]{rPublickey});
+        assertEquals(100, batch.size());
+        assertEquals(0, batch.getOffsets()[0]);
+        assertEquals(batch.getData().length, batch.getOffsets()[100]);
+        for (int i = 0; i < 100; i++) {
+
+            assertArrayEquals(plaintexts.get(i), Saltpack.decrypt(batch.get(i), rSecretkey));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        batch = Saltpack.encryptBatch(plaintexts, new byte[][]{rPublickey}, executor, 7);
+        executor.shutdown();
+        assertEquals(100, batch.size());
+        assertEquals(batch.getData().length, batch.getOffsets()[100]);
+        for (int i = 0; i < 100; i++) {
+
+            byte[] message = Arrays.copyOfRange(batch.getData(), batch.getOffsets()[i], batch.getOffsets()[i + 1]);
+            assertArrayEquals(plaintexts.get(i), Saltpack.decrypt(message, rSecretkey));
+        }
+
+        batch = Saltpack.encryptBatch(Collections.<byte[]>emptyList(), secretkey, new byte[][]{rPublickey});
+        assertEquals(0, batch.size());
+        assertEquals(0, batch.getData().length);
+
+        final List<byte[]> withNull = new ArrayList<>(plaintexts);
+        withNull.set(50, null);
+        SaltpackException ex = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                ExecutorService executor = Executors.newFixedThreadPool(2);
+                try {
+
+                    Saltpack.encryptBatch(withNull, new byte[][]{new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES]}, executor, 4);
+
+                } finally {
+
+                    executor.shutdown();
+                }
+            }
+        });
+        assertEquals("null plaintext provided", ex.getMessage());
+
+        batch = Saltpack.encryptBatch(plaintexts.subList(0, 3), new byte[][]{rPublickey});
+        assertEquals(3, batch.size());
+        assertArrayEquals(plaintexts.get(2), Saltpack.decrypt(batch.get(2), rSecretkey));
+
+        ex = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                Saltpack.encryptBatch(withNull, (byte[]) null, new byte[][]{new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES]});
+            }
+        });
+        assertEquals("null byte array provided", ex.getMessage());
+    }
+
+    private static byte[] signDetached(byte[] message, byte[] secretkey) throws Exception {
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        OutputParameters op = new OutputParameters(bout);
+        op.setArmored(false);
+        MessageWriter mw = new MessageWriter(op, secretkey, true);
+        mw.addBlock(message, true);
+        mw.destroy();
+
+        return bout.toByteArray();
+    }
+
+    @Test
+    public void verificationBatch() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        byte[] otherSecretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] otherPublickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(otherPublickey, otherSecretkey);
+
+        List<byte[]> signatures = new ArrayList<>();
+        List<byte[]> messages = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+
+            byte[] message = random(100 + i);
+            signatures.add(signDetached(message, i % 5 == 4 ? otherSecretkey : secretkey));
+            messages.add(message);
+        }
+        messages.get(3)[0] ^= 1;
+        signatures.set(7, new byte[]{1, 2, 3});
+        messages.set(9, null);
+
+        VerificationResult[] results = Saltpack.verifyDetachedBatch(signatures, messages, null);
+        assertEquals(20, results.length);
+        for (int i = 0; i < 20; i++) {
+
+            if (i == 3 || i == 7 || i == 9) {
+
+                assertFalse(results[i].isValid());
+                assertNull(results[i].getSigner());
+                assertNotNull(results[i].getError());
+
+            } else {
+
+                assertTrue(results[i].isValid());
+                assertArrayEquals(i % 5 == 4 ? otherPublickey : publickey, results[i].getSigner());
+                assertNull(results[i].getError());
+            }
+        }
+        assertEquals("null message provided", results[9].getError());
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        results = Saltpack.verifyDetachedBatch(signatures, messages, new byte[][]{publickey}, executor, 4);
+        executor.shutdown();
+        assertEquals(20, results.length);
+        for (int i = 0; i < 20; i++) {
+
+            if (i == 3 || i == 7 || i == 9) {
+
+                assertFalse(results[i].isValid());
+
+            } else if (i % 5 == 4) {
+
+                assertFalse(results[i].isValid());
+                assertArrayEquals(otherPublickey, results[i].getSigner());
+                assertEquals("untrusted signer", results[i].getError());
+
+            } else {
+
+                assertTrue(results[i].isValid());
+                assertArrayEquals(publickey, results[i].getSigner());
+            }
+        }
+
+        final List<byte[]> fewer = messages.subList(0, 10);
+        final List<byte[]> all = signatures;
+        SaltpackException ex = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                Saltpack.verifyDetachedBatch(all, fewer, null);
+            }
+        });
+        assertEquals("signatures and messages count mismatch", ex.getMessage());
+    }
+
+    @Test
+    public void nullParameters() throws Exception {
+
+        final byte[] secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        final byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        SaltpackException ex = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                Saltpack.encrypt(null, secretkey, new byte[][]{publickey});
+            }
+        });
+        assertEquals("null plaintext provided", ex.getMessage());
+
+        ex = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                Saltpack.encrypt(new byte[1], (byte[]) null, new byte[][]{publickey});
+            }
+        });
+        assertEquals("null byte array provided", ex.getMessage());
+
+        ex = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                Saltpack.decrypt(null, secretkey);
+            }
+        });
+        assertEquals("null message provided", ex.getMessage());
+
+        ex = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                Saltpack.encrypt(new byte[1], secretkey, null);
+            }
+        });
+        assertEquals("null recipients provided", ex.getMessage());
+    }
+}
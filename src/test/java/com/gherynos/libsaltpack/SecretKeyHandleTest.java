@@ -0,0 +1,223 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gherynos.libsaltpack;
+
+import org.junit.Test;
+import org.junit.function.ThrowingRunnable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SecretKeyHandleTest {
+
+    @Test
+    public void encryption() throws Exception {
+
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        byte[] rPublickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+
+        try (SecretKeyHandle secretkey = Utils.generateKeypair(publickey);
+             SecretKeyHandle rSecretkey = Utils.generateKeypair(rPublickey)) {
+
+            assertArrayEquals(publickey, Utils.derivePublickey(secretkey));
+
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            OutputParameters op = new OutputParameters(bout);
+            op.setArmored(false);
+
+            MessageWriter mw = new MessageWriter(op, secretkey, new byte[][]{rPublickey});
+            mw.addBlock("Sample message.".getBytes("UTF-8"), true);
+            mw.destroy();
+
+            InputParameters ip = new InputParameters(new ByteArrayInputStream(bout.toByteArray()));
+            ip.setArmored(false);
+
+            MessageReader mr = new MessageReader(ip, rSecretkey);
+
+            StringBuilder sb = new StringBuilder();
+            while (mr.hasMoreBlocks()) {
+
+                sb.append(new String(mr.getBlock(), "UTF-8"));
+            }
+
+            assertEquals("Sample message.", sb.toString());
+            assertArrayEquals(publickey, mr.getSender());
+
+            mr.destroy();
+        }
+    }
+
+    @Test
+    public void signature() throws Exception {
+
+        byte[] secretkey = new byte[Constants.CRYPTO_SIGN_SECRETKEYBYTES];
+        byte[] publickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+        Utils.generateSignKeypair(publickey, secretkey);
+
+        SecretKeyHandle handle = new SecretKeyHandle(secretkey);
+        assertArrayEquals(publickey, handle.derivePublickey());
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        OutputParameters op = new OutputParameters(bout);
+        op.setArmored(false);
+
+        MessageWriter mw = new MessageWriter(op, handle, false);
+        mw.addBlock("Signed message.".getBytes("UTF-8"), true);
+        mw.destroy();
+        handle.close();
+
+        InputParameters ip = new InputParameters(new ByteArrayInputStream(bout.toByteArray()));
+        ip.setArmored(false);
+
+        MessageReader mr = new MessageReader(ip);
+
+        StringBuilder sb = new StringBuilder();
+        while (mr.hasMoreBlocks()) {
+
+            sb.append(new String(mr.getBlock(), "UTF-8"));
+        }
+
+        assertEquals("Signed message.", sb.toString());
+        assertArrayEquals(publickey, mr.getSender());
+
+        mr.destroy();
+    }
+
+    @Test
+    public void closed() throws Exception {
+
+        final byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        final SecretKeyHandle handle = Utils.generateKeypair(publickey);
+        handle.close();
+        handle.close();
+
+        Exception exception = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                new MessageWriter(new OutputParameters(new ByteArrayOutputStream()), handle, new byte[][]{publickey});
+            }
+        });
+        assertTrue(exception.getMessage().contains("secret key closed"));
+
+        assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                new SecretKeyHandle(new byte[5]);
+            }
+        });
+    }
+
+    @Test
+    public void singleCallApis() throws Exception {
+
+        byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        byte[] rPublickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        byte[] sPublickey = new byte[Constants.CRYPTO_SIGN_PUBLICKEYBYTES];
+
+        try (SecretKeyHandle secretkey = Utils.generateKeypair(publickey);
+             SecretKeyHandle rSecretkey = Utils.generateKeypair(rPublickey);
+             SecretKeyHandle sSecretkey = Utils.generateSignKeypair(sPublickey)) {
+
+            byte[] plaintext = "Sample message.".getBytes("UTF-8");
+
+            byte[] encrypted = Saltpack.encrypt(plaintext, secretkey, new byte[][]{rPublickey});
+            assertArrayEquals(plaintext, Saltpack.decrypt(encrypted, rSecretkey));
+
+            EncryptedBatch batch = Saltpack.encryptBatch(Arrays.asList(plaintext, plaintext), secretkey, new byte[][]{rPublickey});
+            assertArrayEquals(plaintext, Saltpack.decrypt(batch.get(1), rSecretkey));
+
+            assertArrayEquals(plaintext, Saltpack.verify(Saltpack.sign(plaintext, sSecretkey), sPublickey));
+
+            Keyring keyring = new Keyring();
+            keyring.addSecretkey(rSecretkey);
+            InputParameters ip = new InputParameters(new ByteArrayInputStream(encrypted));
+            ip.setArmored(false);
+            MessageReader mr = keyring.newReader(ip);
+            ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+            while (mr.hasMoreBlocks()) {
+
+                decrypted.write(mr.getBlock());
+            }
+            assertArrayEquals(plaintext, decrypted.toByteArray());
+            mr.destroy();
+            keyring.destroy();
+
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+
+                ParallelSignatureWriter pw = new ParallelSignatureWriter(bout, sSecretkey, executor, 2);
+                pw.addBlock(plaintext, true);
+                pw.destroy();
+
+            } finally {
+
+                executor.shutdown();
+            }
+            assertArrayEquals(plaintext, Saltpack.verify(bout.toByteArray(), sPublickey));
+
+            // the writer didn't take ownership of the handle
+            assertArrayEquals(sPublickey, sSecretkey.derivePublickey());
+        }
+    }
+
+    @Test
+    public void closeWaitsForUsers() throws Exception {
+
+        final byte[] publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        final SecretKeyHandle handle = Utils.generateKeypair(publickey);
+
+        SecretKeyHandle.acquire(handle);
+        final CountDownLatch closed = new CountDownLatch(1);
+        Thread closer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+
+                handle.close();
+                closed.countDown();
+            }
+        });
+        closer.start();
+
+        assertFalse(closed.await(200, TimeUnit.MILLISECONDS));
+        handle.release();
+        assertTrue(closed.await(10, TimeUnit.SECONDS));
+        closer.join();
+
+        Exception exception = assertThrows(SaltpackException.class, new ThrowingRunnable() {
+
+            @Override
+            public void run() throws Throwable {
+
+                Saltpack.decrypt(new byte[10], handle);
+            }
+        });
+        assertTrue(exception.getMessage().contains("secret key closed"));
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2024 Luca Zanconato
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.gherynos.libsaltpack;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SeekableMessageReaderTest {
+
+    private static final int[] BLOCK_SIZES = {1000, 1, 4096, 777};
+
+    private byte[] secretkey;
+
+    private byte[] publickey;
+
+    private byte[] rSecretkey;
+
+    private byte[] rPublickey;
+
+    private byte[] plaintext;
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+
+        secretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        publickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(publickey, secretkey);
+
+        rSecretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        rPublickey = new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES];
+        Utils.generateKeypair(rPublickey, rSecretkey);
+
+        int total = 0;
+        for (int size : BLOCK_SIZES) {
+
+            total += size;
+        }
+        plaintext = new byte[total];
+        for (int i = 0; i < total; i++) {
+
+            plaintext[i] = (byte) (i * 31);
+        }
+
+        file = Files.createTempFile("seekable", ".saltpack");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        Files.deleteIfExists(file);
+    }
+
+    private byte[] encrypt(byte[][] recipients, boolean visibleRecipients) throws Exception {
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        OutputParameters op = new OutputParameters(bout);
+        op.setArmored(false);
+        MessageWriter mw = new MessageWriter(op, secretkey, recipients, visibleRecipients);
+
+        int offset = 0;
+        for (int i = 0; i < BLOCK_SIZES.length; i++) {
+
+            mw.addBlock(Arrays.copyOfRange(plaintext, offset, offset + BLOCK_SIZES[i]), i == BLOCK_SIZES.length - 1);
+            offset += BLOCK_SIZES[i];
+        }
+        mw.destroy();
+
+        return bout.toByteArray();
+    }
+
+    @Test
+    public void blocks() throws Exception {
+
+        Files.write(file, encrypt(new byte[][]{rPublickey}, true));
+
+        SeekableMessageReader reader = new SeekableMessageReader(file, rSecretkey);
+        assertArrayEquals(publickey, reader.getSender());
+
+        // random order, the index is extended on demand
+        int[] offsets = new int[BLOCK_SIZES.length + 1];
+        for (int i = 0; i < BLOCK_SIZES.length; i++) {
+
+            offsets[i + 1] = offsets[i] + BLOCK_SIZES[i];
+        }
+        for (int i : new int[]{2, 0, 3, 1, 2}) {
+
+            assertArrayEquals(Arrays.copyOfRange(plaintext, offsets[i], offsets[i + 1]), reader.getBlock(i));
+        }
+
+        assertEquals(BLOCK_SIZES.length, reader.getBlockCount());
+        assertEquals(plaintext.length, reader.size());
+
+        try {
+
+            reader.getBlock(BLOCK_SIZES.length);
+            fail();
+
+        } catch (IndexOutOfBoundsException ex) {
+
+            assertEquals("block index out of range", ex.getMessage());
+        }
+
+        reader.destroy();
+
+        try {
+
+            reader.getSender();
+            fail();
+
+        } catch (SaltpackException ex) {
+
+            assertEquals("reader destroyed", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void ranges() throws Exception {
+
+        Files.write(file, encrypt(new byte[][]{publickey, rPublickey}, true));
+
+        try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+
+            SeekableMessageReader reader = new SeekableMessageReader(channel, rSecretkey);
+
+            // across several blocks, starting in the middle of one
+            byte[] buf = new byte[2000];
+            assertEquals(2000, reader.read(900, buf, 0, 2000));
+            assertArrayEquals(Arrays.copyOfRange(plaintext, 900, 2900), buf);
+
+            // backwards
+            assertEquals(10, reader.read(5, buf, 3, 10));
+            assertArrayEquals(Arrays.copyOfRange(plaintext, 5, 15), Arrays.copyOfRange(buf, 3, 13));
+
+            // end of the message
+            assertEquals(50, reader.read(plaintext.length - 50, buf, 0, 100));
+            assertArrayEquals(Arrays.copyOfRange(plaintext, plaintext.length - 50, plaintext.length), Arrays.copyOf(buf, 50));
+            assertEquals(-1, reader.read(plaintext.length, buf, 0, 100));
+
+            // whole message
+            byte[] all = new byte[plaintext.length];
+            assertEquals(plaintext.length, reader.read(0, all, 0, all.length));
+            assertArrayEquals(plaintext, all);
+
+            reader.destroy();
+            assertTrue(channel.isOpen());
+        }
+    }
+
+    @Test
+    public void hiddenRecipients() throws Exception {
+
+        Files.write(file, encrypt(new byte[][]{publickey, rPublickey}, false));
+
+        SeekableMessageReader reader = new SeekableMessageReader(file, rSecretkey);
+        assertArrayEquals(publickey, reader.getSender());
+        assertArrayEquals(Arrays.copyOfRange(plaintext, 1001, 5097), reader.getBlock(2));
+        reader.destroy();
+    }
+
+    @Test
+    public void secretKeyHandle() throws Exception {
+
+        Files.write(file, encrypt(new byte[][]{rPublickey}, true));
+
+        try (SeekableByteChannel channel = Files.newByteChannel(file);
+             SecretKeyHandle handle = new SecretKeyHandle(rSecretkey)) {
+
+            SeekableMessageReader reader = new SeekableMessageReader(channel, handle);
+            assertArrayEquals(Arrays.copyOf(plaintext, 1000), reader.getBlock(0));
+            reader.destroy();
+
+            reader = new SeekableMessageReader(file, handle);
+            assertArrayEquals(Arrays.copyOf(plaintext, 1000), reader.getBlock(0));
+            reader.destroy();
+        }
+
+        // the handle is checked before the file is opened
+        try {
+
+            new SeekableMessageReader(file.resolveSibling("missing"), (SecretKeyHandle) null);
+            fail();
+
+        } catch (SaltpackException ex) {
+
+            assertEquals("null secret key provided", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void wrongRecipient() throws Exception {
+
+        byte[] otherSecretkey = new byte[Constants.CRYPTO_BOX_SECRETKEYBYTES];
+        Utils.generateKeypair(new byte[Constants.CRYPTO_BOX_PUBLICKEYBYTES], otherSecretkey);
+
+        Files.write(file, encrypt(new byte[][]{rPublickey}, true));
+
+        try {
+
+            new SeekableMessageReader(file, otherSecretkey);
+            fail();
+
+        } catch (SaltpackException ex) {
+
+            assertEquals("failed to find matching recipient", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void tampered() throws Exception {
+
+        byte[] message = encrypt(new byte[][]{rPublickey}, true);
+        message[message.length - 10] ^= 1;
+        Files.write(file, message);
+
+        SeekableMessageReader reader = new SeekableMessageReader(file, rSecretkey);
+        assertArrayEquals(Arrays.copyOf(plaintext, 1000), reader.getBlock(0));
+
+        try {
+
+            reader.getBlock(3);
+            fail();
+
+        } catch (SaltpackException ex) {
+
+            assertEquals("invalid authenticator", ex.getMessage());
+        }
+
+        // the final packet is authenticated before the count is returned
+        try {
+
+            reader.size();
+            fail();
+
+        } catch (SaltpackException ex) {
+
+            assertEquals("invalid authenticator", ex.getMessage());
+        }
+        reader.destroy();
+    }
+
+    @Test
+    public void truncated() throws Exception {
+
+        byte[] message = encrypt(new byte[][]{rPublickey}, true);
+        Files.write(file, Arrays.copyOf(message, message.length - 800));
+
+        SeekableMessageReader reader = new SeekableMessageReader(file, rSecretkey);
+        assertArrayEquals(Arrays.copyOf(plaintext, 1000), reader.getBlock(0));
+
+        try {
+
+            reader.getBlockCount();
+            fail();
+
+        } catch (SaltpackException ex) {
+
+            assertEquals("not enough data found to decode block (message truncated?)", ex.getMessage());
+        }
+        reader.destroy();
+    }
+}